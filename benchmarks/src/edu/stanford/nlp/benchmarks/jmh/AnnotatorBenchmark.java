@@ -0,0 +1,100 @@
+package edu.stanford.nlp.benchmarks.jmh;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+
+/**
+ * Times each annotator on its own, over the {@link BenchmarkInputs#article bundled article}.
+ * Before each call, a fresh copy of the article is run through the annotators the one
+ * being timed needs, which isn't counted.
+ * <br>
+ * The benchmarks need the CoreNLP models on the classpath.  Run them with
+ * {@code gradle jmh} or {@code mvn -P benchmarks verify}, which write the results
+ * as JSON, with the allocation rate of each benchmark from the GC profiler.
+ * Other JMH options can be given with {@code -PjmhArgs="..."} or {@code -Djmh.args="..."};
+ * for instance {@code AnnotatorBenchmark -p annotator=pos,ner} times just those two.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class AnnotatorBenchmark {
+
+  /** The annotators which have to run before each one, in order. */
+  private static final Map<String, String> PREREQUISITES;
+
+  static {
+    Map<String, String> prerequisites = new HashMap<>();
+    prerequisites.put("tokenize", "");
+    prerequisites.put("ssplit", "tokenize");
+    prerequisites.put("pos", "tokenize,ssplit");
+    prerequisites.put("lemma", "tokenize,ssplit,pos");
+    prerequisites.put("ner", "tokenize,ssplit,pos,lemma");
+    prerequisites.put("regexner", "tokenize,ssplit,pos,lemma,ner");
+    prerequisites.put("parse", "tokenize,ssplit,pos");
+    prerequisites.put("depparse", "tokenize,ssplit,pos");
+    prerequisites.put("coref", "tokenize,ssplit,pos,lemma,ner,parse");
+    PREREQUISITES = Collections.unmodifiableMap(prerequisites);
+  }
+
+  @Param({"tokenize", "ssplit", "pos", "lemma", "ner", "regexner", "parse", "depparse", "coref"})
+  public String annotator;
+
+  private String text;
+  private StanfordCoreNLP prerequisites; // null if there are none
+  private Annotator timed;
+  private Annotation document;
+
+  @Setup(Level.Trial)
+  public void loadAnnotators() {
+    text = BenchmarkInputs.article();
+    String before = PREREQUISITES.get(annotator);
+    if (before == null) {
+      throw new IllegalArgumentException("AnnotatorBenchmark: no prerequisites known for " + annotator);
+    }
+    if (before.isEmpty()) {
+      new StanfordCoreNLP(BenchmarkInputs.properties(annotator));
+    } else {
+      // the annotators are shared between the two pipelines through the annotator cache
+      prerequisites = new StanfordCoreNLP(BenchmarkInputs.properties(before));
+      new StanfordCoreNLP(BenchmarkInputs.properties(before + ',' + annotator));
+    }
+    timed = StanfordCoreNLP.getExistingAnnotator(annotator);
+  }
+
+  @Setup(Level.Invocation)
+  public void annotatePrerequisites() {
+    document = new Annotation(text);
+    if (prerequisites != null) {
+      prerequisites.annotate(document);
+    }
+  }
+
+  @Benchmark
+  public Annotation annotate() {
+    timed.annotate(document);
+    return document;
+  }
+
+}
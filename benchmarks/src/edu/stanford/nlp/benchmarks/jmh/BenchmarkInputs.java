@@ -0,0 +1,44 @@
+package edu.stanford.nlp.benchmarks.jmh;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Properties;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+
+/**
+ * The fixed inputs of the JMH benchmarks, so that the numbers of one run can be
+ * compared with those of another.
+ */
+public class BenchmarkInputs {
+
+  /** A news article of about 400 words, bundled with the benchmarks. */
+  public static final String ARTICLE = "edu/stanford/nlp/benchmarks/jmh/article.txt";
+
+  private BenchmarkInputs() { } // static methods
+
+  /** The text of the bundled article. */
+  public static String article() {
+    try (Reader reader = IOUtils.readerFromString(ARTICLE)) {
+      return IOUtils.slurpReader(reader);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /**
+   * The properties shared by all the benchmarks, which pin down the options that
+   * would otherwise change with the defaults.
+   */
+  public static Properties properties(String annotators) {
+    Properties props = new Properties();
+    props.setProperty("annotators", annotators);
+    props.setProperty("tokenize.language", "en");
+    props.setProperty("ssplit.newlineIsSentenceBreak", "two");
+    props.setProperty("coref.algorithm", "statistical");
+    props.setProperty("threads", "1");
+    return props;
+  }
+
+}
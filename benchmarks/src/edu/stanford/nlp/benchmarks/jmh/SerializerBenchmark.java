@@ -0,0 +1,61 @@
+package edu.stanford.nlp.benchmarks.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.ProtobufAnnotationSerializer;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+
+/**
+ * Times writing and reading the {@link BenchmarkInputs#article bundled article} with the
+ * {@link ProtobufAnnotationSerializer}, once it has been through the usual annotators.
+ *
+ * @see AnnotatorBenchmark for how to run the benchmarks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class SerializerBenchmark {
+
+  private final ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer();
+  private Annotation document;
+  private byte[] serialized;
+
+  @Setup(Level.Trial)
+  public void annotate() throws IOException {
+    document = new Annotation(BenchmarkInputs.article());
+    new StanfordCoreNLP(BenchmarkInputs.properties("tokenize,ssplit,pos,lemma,ner,parse,depparse,coref")).annotate(document);
+    serialized = write();
+  }
+
+  @Benchmark
+  public byte[] write() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    serializer.write(document, out).close();
+    return out.toByteArray();
+  }
+
+  @Benchmark
+  public Annotation read() throws IOException, ClassNotFoundException {
+    return serializer.read(new ByteArrayInputStream(serialized)).first;
+  }
+
+}
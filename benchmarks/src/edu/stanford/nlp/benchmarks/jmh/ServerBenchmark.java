@@ -0,0 +1,62 @@
+package edu.stanford.nlp.benchmarks.jmh;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLPClient;
+import edu.stanford.nlp.pipeline.StanfordCoreNLPServer;
+
+/**
+ * Times a round trip of the {@link BenchmarkInputs#article bundled article} through a
+ * {@link StanfordCoreNLPServer} started on a free local port: sending the text, annotating
+ * it on the server, and reading the serialized document back with the {@link StanfordCoreNLPClient}.
+ * The server lives as long as the forked JVM of the benchmark.
+ *
+ * @see AnnotatorBenchmark for how to run the benchmarks
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class ServerBenchmark {
+
+  private static final String ANNOTATORS = "tokenize,ssplit,pos,lemma,ner,depparse";
+
+  private String text;
+  private StanfordCoreNLPClient client;
+
+  @Setup(Level.Trial)
+  public void startServer() throws IOException {
+    text = BenchmarkInputs.article();
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    new StanfordCoreNLPServer(BenchmarkInputs.properties(ANNOTATORS), port, 120000, false).run();
+    client = new StanfordCoreNLPClient(BenchmarkInputs.properties(ANNOTATORS), "http://localhost", port);
+  }
+
+  @Benchmark
+  public Annotation roundTrip() {
+    Annotation document = new Annotation(text);
+    client.annotate(document);
+    return document;
+  }
+
+}
@@ -3,6 +3,7 @@ package edu.stanford.nlp.parser.shiftreduce;
 import edu.stanford.nlp.ling.SentenceUtils;
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import edu.stanford.nlp.ling.CoreLabel;
@@ -71,4 +72,40 @@ public class ShiftReduceParserITest extends TestCase {
     result = pq.getBestParse();
     assertEquals("(ROOT (S (NP (PRP It)) (VP (VBD was) (NP (NNP Carolina))) (NP (NNP Reapers)) (. .)))", result.toString());
   }
+
+  private static final String[] SAMPLE = {
+    "No , it was n't Black Monday .",
+    "But while the New York Stock Exchange did n't fall apart Friday as the Dow Jones Industrial Average plunged 190.58 points , most of it in the final hour , it barely managed to stay this side of chaos .",
+    "Some circuit breakers installed after the October 1987 crash failed their first test , traders say , unable to cool the selling panic in both stocks and futures .",
+    "The 49 stock specialist firms on the Big Board floor -- the buyers and sellers of last resort who were criticized after the 1987 crash -- once again could n't handle the selling pressure .",
+    "Big investment banks refused to step up to the plate to support the beleaguered floor traders by buying big blocks of stock , traders say .",
+  };
+
+  private List<String> parseSample() {
+    List<String> results = new ArrayList<>();
+    for (String text : SAMPLE) {
+      List<CoreLabel> sentence = SentenceUtils.toCoreLabelList(text.split(" "));
+      englishTagger.tagCoreLabels(sentence);
+      ParserQuery pq = englishParser.parserQuery();
+      assertTrue(pq.parse(sentence));
+      results.add(pq.getBestParse() + " " + pq.getPCFGScore());
+    }
+    return results;
+  }
+
+  /** Scoring only one of each set of equivalent states on the beam doesn't change the parses. */
+  public void testScoreEveryState() {
+    ShiftReduceTestOptions testOptions = englishParser.op.testOptions();
+    int beamSize = testOptions.beamSize;
+    try {
+      testOptions.beamSize = 8;
+      List<String> expected = parseSample();
+      testOptions.scoreEveryState = true;
+      assertEquals(expected, parseSample());
+    } finally {
+      testOptions.beamSize = beamSize;
+      testOptions.scoreEveryState = false;
+    }
+  }
+
 }
@@ -46,6 +46,7 @@ import java.util.List;
 
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.TaggedWord;
 import edu.stanford.nlp.ling.Word;
 
 import edu.stanford.nlp.process.TokenizerFactory;
@@ -255,6 +256,16 @@ public class MaxentTaggerITest extends TestCase {
     }
   }
 
+  public void testTagSentences() {
+    String text = "I think I'll go to Boston.  I think I'm starting over.  I think I'll start a new life where no one knows my name.";
+    List<List<HasWord>> sentences = MaxentTagger.tokenizeText(new BufferedReader(new StringReader(text)));
+    List<List<TaggedWord>> expected = new ArrayList<>();
+    for (List<HasWord> sentence : sentences) {
+      expected.add(tagger.tagSentence(sentence));
+    }
+    assertEquals(expected, tagger.tagSentences(sentences));
+  }
+
   public void testTaggerWrapper() {
     TaggerConfig config = new TaggerConfig(tagger.config);
     config.setProperty("tokenize", "false");
@@ -31,6 +31,7 @@ import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.ling.BasicDatum;
 import edu.stanford.nlp.ling.Datum;
 import edu.stanford.nlp.ling.RVFDatum;
+import edu.stanford.nlp.math.CompactWeights;
 import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.stats.ClassicCounter;
 import edu.stanford.nlp.stats.Counter;
@@ -74,6 +75,9 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
   private Index<F> featureIndex;
   public boolean intern = false;   // variable should be deleted when breaking serialization anyway....
   private double[] thresholds; // = null;
+  /** The weights in reduced precision, after {@link #compactWeights} has been called; weights is then null.
+   *  The classifier is still serialized with double weights. */
+  private transient CompactWeights compactWeights; // = null
 
   private static final long serialVersionUID = 8499574525453275255L;
 
@@ -104,6 +108,9 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
       //logger.info("feature not seen ");
       return 0.0;
     }
+    if (compactWeights != null) {
+      return compactWeights.get(iFeature, iLabel);
+    }
     assert iFeature < weights.length;
     assert iLabel < weights[iFeature].length;
     return weights[iFeature][iLabel];
@@ -395,6 +402,7 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
    */
   public int getFeatureCount(double threshold, boolean useMagnitude)
   {
+    double[][] weights = weights();
     int n = 0;
     for (double[] weightArray : weights) {
       for (double weight : weightArray) {
@@ -438,6 +446,7 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
    */
   protected int getFeatureCountLabelIndices(Set<Integer> iLabels, double threshold, boolean useMagnitude)
   {
+    double[][] weights = weights();
     int n = 0;
     for (double[] weightArray : weights) {
       for (int labIndex : iLabels) {
@@ -500,6 +509,7 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
   protected List<Triple<F,L,Double>> getTopFeaturesLabelIndices(Set<Integer> iLabels,
                                                  double threshold, boolean useMagnitude, int numFeatures,
                                                  boolean descending) {
+    double[][] weights = weights();
     edu.stanford.nlp.util.PriorityQueue<Pair<Integer,Integer>> biggestKeys =
             new FixedPrioritiesPriorityQueue<>();
 
@@ -603,6 +613,7 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
   public String toBiggestWeightFeaturesString(boolean useMagnitude,
       int numFeatures,
       boolean printDescending) {
+    double[][] weights = weights();
     // this used to try to use a TreeSet, but that was WRONG....
     edu.stanford.nlp.util.PriorityQueue<Pair<Integer,Integer>> biggestKeys =
             new FixedPrioritiesPriorityQueue<>();
@@ -692,6 +703,7 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
    * @return A human readable string about the classifier distribution.
    */
   public String toDistributionString(int threshold) {
+    double[][] weights = weights();
     Counter<Double> weightCounts = new ClassicCounter<>();
     StringBuilder s = new StringBuilder();
     s.append("Total number of weights: ").append(totalSize());
@@ -712,6 +724,7 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
   }
 
   public String toHistogramString() {
+    double[][] weights = weights();
     // big classifiers
     double[][] hist = new double[3][202];
     Object[][] histEg = new Object[3][202];
@@ -1147,7 +1160,7 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
       Counter<F> c = new ClassicCounter<>();
       mapOfCounters.put(label, c);
       for (F f : featureIndex) {
-        c.incrementCount(f, weights[featureIndex.indexOf(f)][labelID]);
+        c.incrementCount(f, weight(featureIndex.indexOf(f), labelID));
       }
     }
     return mapOfCounters;
@@ -1300,17 +1313,52 @@ public class LinearClassifier<L, F> implements ProbabilisticClassifier<L, F>, RV
 
 
   public void adaptWeights(Dataset<L, F> adapt,LinearClassifierFactory<L, F> lcf) {
-    logger.info("before adapting, weights size="+weights.length);
-    weights = lcf.adaptWeights(weights,adapt);
+    logger.info("before adapting, weights size="+weights().length);
+    setWeights(lcf.adaptWeights(weights(),adapt));
     logger.info("after adapting, weights size=" + weights.length);
   }
 
+  /**
+   * Returns the weights.  If they have been compacted, this is a new copy of them in double precision.
+   */
   public double[][] weights() {
+    if (weights == null && compactWeights != null) {
+      return compactWeights.toArray();
+    }
     return weights;
   }
 
   public void setWeights(double[][] newWeights) {
     weights = newWeights;
+    compactWeights = null;
+  }
+
+  /**
+   * Replaces the weights with a copy in the given precision, to save memory when the classifier
+   * is only used for classifying.  Scores are then computed from the compacted weights.
+   *
+   * @param precision The precision to keep the weights in. DOUBLE keeps them as they are.
+   */
+  public void compactWeights(CompactWeights.Precision precision) {
+    if (precision == CompactWeights.Precision.DOUBLE) {
+      return;
+    }
+    compactWeights = CompactWeights.compact(weights(), precision);
+    weights = null;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    if (weights == null && compactWeights != null) {
+      // write double weights, so that the classifier can be read by any version of this class
+      weights = compactWeights.toArray();
+      try {
+        out.defaultWriteObject();
+      } finally {
+        weights = null;
+      }
+    } else {
+      out.defaultWriteObject();
+    }
   }
 
   /**
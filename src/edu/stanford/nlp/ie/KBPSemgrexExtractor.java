@@ -9,7 +9,7 @@ import edu.stanford.nlp.pipeline.DefaultPaths;
 import edu.stanford.nlp.semgraph.SemanticGraph;
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
 import edu.stanford.nlp.semgraph.semgrex.SemgrexBatchParser;
-import edu.stanford.nlp.semgraph.semgrex.SemgrexMatcher;
+import edu.stanford.nlp.semgraph.semgrex.SemgrexBatchMatcher;
 import edu.stanford.nlp.semgraph.semgrex.SemgrexPattern;
 import edu.stanford.nlp.simple.Sentence;
 import edu.stanford.nlp.util.ArgumentParser;
@@ -38,7 +38,8 @@ public class KBPSemgrexExtractor implements KBPRelationExtractor {
   @ArgumentParser.Option(name="predictions", gloss="Dump model predictions to this file")
   public static Optional<String> PREDICTIONS = Optional.empty();
 
-  private final Map<RelationType, Collection<SemgrexPattern> > rules = new HashMap<>();
+  /** The rules for each relation, matched together against a graph */
+  private final Map<RelationType, SemgrexBatchMatcher> rules = new HashMap<>();
 
   public KBPSemgrexExtractor(String semgrexdir) throws IOException {
     this(semgrexdir, false);
@@ -55,7 +56,7 @@ public class KBPSemgrexExtractor implements KBPRelationExtractor {
         List<SemgrexPattern> rulesforrel = SemgrexBatchParser.compileStream(IOUtils.getInputStreamFromURLOrClasspathOrFileSystem(filename));
         if (verbose)
           logger.log("Read " + rulesforrel.size() + " rules from " + filename + " for relation " + rel);
-        rules.put(rel, rulesforrel);
+        rules.put(rel, new SemgrexBatchMatcher(rulesforrel));
       }
     }
   }
@@ -63,18 +64,24 @@ public class KBPSemgrexExtractor implements KBPRelationExtractor {
 
   @Override
   public Pair<String, Double> classify(KBPInput input) {
+    CoreMap sentence = null;
+    SemanticGraph graph = null;
+    SemanticGraph alternativeGraph = null;
     for (RelationType rel : RelationType.values()) {
 
       if (rules.containsKey(rel) &&
           rel.entityType == input.subjectType &&
           rel.validNamedEntityLabels.contains(input.objectType)) {
-        Collection<SemgrexPattern> rulesForRel = rules.get(rel);
-        CoreMap sentence = input.sentence.asCoreMap(Sentence::nerTags, Sentence::dependencyGraph);
+        SemgrexBatchMatcher rulesForRel = rules.get(rel);
+        if (sentence == null) {
+          // The sentence is built once, and shared by the rules for all the relations
+          sentence = input.sentence.asCoreMap(Sentence::nerTags, Sentence::dependencyGraph);
+          graph = sentence.get(SemanticGraphCoreAnnotations.EnhancedPlusPlusDependenciesAnnotation.class);
+          alternativeGraph = sentence.get(SemanticGraphCoreAnnotations.AlternativeDependenciesAnnotation.class);
+        }
         boolean matches
-            = matches(sentence, rulesForRel, input,
-            sentence.get(SemanticGraphCoreAnnotations.EnhancedPlusPlusDependenciesAnnotation.class)) ||
-            matches(sentence, rulesForRel, input,
-                sentence.get(SemanticGraphCoreAnnotations.AlternativeDependenciesAnnotation.class));
+            = matches(sentence, rulesForRel, input, graph) ||
+            matches(sentence, rulesForRel, input, alternativeGraph);
         if (matches) {
           //logger.log("MATCH for " + rel +  ". " + sentence: + sentence + " with rules for  " + rel);
           return Pair.makePair(rel.canonicalName, 1.0);
@@ -89,7 +96,7 @@ public class KBPSemgrexExtractor implements KBPRelationExtractor {
   /**
    * Returns whether any of the given patterns match this tree.
    */
-  private boolean matches(CoreMap sentence, Collection<SemgrexPattern> rulesForRel,
+  private boolean matches(CoreMap sentence, SemgrexBatchMatcher rulesForRel,
                           KBPInput input, SemanticGraph graph) {
     if (graph == null || graph.isEmpty()) {
       return false;
@@ -107,26 +114,17 @@ public class KBPSemgrexExtractor implements KBPRelationExtractor {
       }
     }
 
-    for (SemgrexPattern p : rulesForRel) {
-
-      try {
-        SemgrexMatcher n = p.matcher(graph);
-        while (n.find()) {
-          IndexedWord entity = n.getNode("entity");
-          IndexedWord slot = n.getNode("slot");
-          boolean hasSubject = entity.index() >= input.subjectSpan.start() + 1 && entity.index() <= input.subjectSpan.end();
-          boolean hasObject  = slot.index() >= input.objectSpan.start() + 1 && slot.index() <= input.objectSpan.end();
-
-          if (hasSubject && hasObject) {
-            return true;
-          }
-        }
-      } catch (Exception e) {
-        //Happens when graph has no roots
-        return false;
-      }
+    try {
+      return rulesForRel.findAny(graph, match -> {
+        IndexedWord entity = match.getNode("entity");
+        IndexedWord slot = match.getNode("slot");
+        boolean hasSubject = entity.index() >= input.subjectSpan.start() + 1 && entity.index() <= input.subjectSpan.end();
+        boolean hasObject  = slot.index() >= input.objectSpan.start() + 1 && slot.index() <= input.objectSpan.end();
+        return hasSubject && hasObject;
+      });
+    } catch (Exception e) {
+      return false;
     }
-    return false;
   }
 
 
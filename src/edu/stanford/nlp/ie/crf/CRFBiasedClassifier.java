@@ -94,10 +94,11 @@ public class CRFBiasedClassifier<IN extends CoreMap> extends CRFClassifier<IN>
   private void addBiasFeature() {
     if ( ! featureIndex.contains(BIAS)) {
       featureIndex.add(BIAS);
+      double[][] weights = weightsForUpdate();
       double[][] newWeights = new double[weights.length+1][];
       System.arraycopy (weights,0,newWeights,0,weights.length);
       newWeights[weights.length] = new double[classIndex.size()];
-      weights = newWeights;
+      this.weights = newWeights;
     }
   }
 
@@ -109,7 +110,7 @@ public class CRFBiasedClassifier<IN extends CoreMap> extends CRFClassifier<IN>
   public void setBiasWeight(int cindex, double weight) {
     addBiasFeature();
     int fi = featureIndex.indexOf(BIAS);
-    weights[fi][cindex] = weight;
+    weightsForUpdate()[fi][cindex] = weight;
   }
 
   @Override
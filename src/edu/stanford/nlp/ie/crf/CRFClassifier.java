@@ -32,6 +32,7 @@ import edu.stanford.nlp.io.RuntimeIOException;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.math.ArrayMath;
+import edu.stanford.nlp.math.CompactWeights;
 import edu.stanford.nlp.objectbank.ObjectBank;
 import edu.stanford.nlp.optimization.*;
 import edu.stanford.nlp.optimization.Function;
@@ -141,6 +142,12 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   /** Parameter weights of the classifier.  weights[featureIndex][labelIndex] */
   double[][] weights;
 
+  /** The mapped model the feature index and clique potentials come from, if loaded from one; weights is then null until {@link #weights()} is called. */
+  private MappedCRFModel mappedModel; // = null
+
+  /** The weights in reduced precision, if the classifier was loaded with a weightPrecision other than double; weights is then null until {@link #weights()} expands them. */
+  private CompactWeights compactWeights; // = null
+
   /** index the features of CRF */
   Index<String> featureIndex;
   /** caches the featureIndex */
@@ -214,6 +221,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @return number of weights
    */
   public int getNumWeights() {
+    double[][] weights = weights();
     if (weights == null) return 0;
     int numWeights = 0;
     for (double[] wts : weights) {
@@ -264,6 +272,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @param scale The scale to multiply by
    */
   public void scaleWeights(double scale) {
+    double[][] weights = weightsForUpdate();
     for (int i = 0; i < weights.length; i++) {
       for (int j = 0; j < weights[i].length; j++) {
         weights[i][j] *= scale;
@@ -280,6 +289,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @param weight Amount to scale the other CRF's weights by
    */
   private void combineWeights(CRFClassifier<IN> crf, double weight) {
+    double[][] otherWeights = crf.weights();
     int numFeatures = featureIndex.size();
     int oldNumFeatures = weights.length;
 
@@ -322,21 +332,21 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     // Get original weight indices from other crf and weight them in
     // depending on the type of the feature, different number of weights is
     // associated with it
-    for (int i = 0; i < crf.weights.length; i++) {
+    for (int i = 0; i < otherWeights.length; i++) {
       String feature = crf.featureIndex.get(i);
       int newIndex = featureIndex.indexOf(feature);
       // Check weights are okay dimension
-      if (weights[newIndex].length < crf.weights[i].length) {
+      if (weights[newIndex].length < otherWeights[i].length) {
         throw new RuntimeException("Incompatible CRFClassifier: weight length mismatch for feature " + newIndex + ": "
             + featureIndex.get(newIndex) + " (also feature " + i + ": " + crf.featureIndex.get(i) + ") " + ", len1="
-            + weights[newIndex].length + ", len2=" + crf.weights[i].length);
+            + weights[newIndex].length + ", len2=" + otherWeights[i].length);
       }
       int featureTypeIndex = map[newIndex];
-      for (int j = 0; j < crf.weights[i].length; j++) {
+      for (int j = 0; j < otherWeights[i].length; j++) {
         CRFLabel labels = crf.labelIndices.get(featureTypeIndex).get(j);
         CRFLabel newLabels = crfLabelMap.get(labels);
         int k = this.labelIndices.get(featureTypeIndex).indexOf(newLabels);
-        weights[newIndex][k] += crf.weights[i][j] * weight;
+        weights[newIndex][k] += otherWeights[i][j] * weight;
       }
     }
   }
@@ -361,6 +371,10 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       // Should match since this should be same as the windowSize
       throw new RuntimeException("Incompatible CRFClassifier: labelIndices length does not match");
     }
+    if (mappedModel != null) {
+      throw new UnsupportedOperationException("Cannot combine into a classifier loaded from a mapped model, whose feature index is read-only");
+    }
+    weightsForUpdate();
     this.classIndex.addAll(crf.classIndex.objectsList());
 
     // Combine weights of the other classifier with this classifier,
@@ -391,6 +405,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public void dropFeaturesBelowThreshold(double threshold) {
+    double[][] weights = weights();
     Index<String> newFeatureIndex = new HashIndex<>();
     for (int i = 0; i < weights.length; i++) {
       double smallest = weights[i][0];
@@ -537,6 +552,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       classes.add(classIndex.get(i));
     }
     String[] columnHeaders = classes.toArray(new String[classes.size()]);
+    double[][] weights = weights();
 
     // log.info("docSize:"+docSize);
     for (int j = 0; j < document.size(); j++) {
@@ -2381,6 +2397,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
 
     pw.printf("<windowSize> %d </windowSize>%n", windowSize);
 
+    double[][] weights = weights();
     pw.printf("weights.length=\t%d%n", weights.length);
     for (double[] ws : weights) {
       ArrayList<Double> list = new ArrayList<>();
@@ -2444,7 +2461,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     ObjectOutputStream oos = null;
     try {
       oos = IOUtils.writeStreamFromString(serializePath);
-      oos.writeObject(weights);
+      oos.writeObject(weights());
       log.info("Serializing weights to " + serializePath + "... done.");
     } catch (Exception e) {
       log.info("Serializing weights to " + serializePath + "... FAILED.", e);
@@ -2527,10 +2544,20 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    */
   @Override
   public void serializeClassifier(ObjectOutputStream oos) {
+    serializeClassifier(oos, true);
+  }
+
+  /**
+   * Serialize the classifier to the given ObjectOutputStream, leaving out the
+   * feature index and weights if they are written to a mapped model instead.
+   */
+  private void serializeClassifier(ObjectOutputStream oos, boolean withFeaturesAndWeights) {
     try {
       oos.writeObject(labelIndices);
       oos.writeObject(classIndex);
-      oos.writeObject(featureIndex);
+      if (withFeaturesAndWeights) {
+        oos.writeObject(featureIndex);
+      }
       oos.writeObject(flags);
       if (flags.useEmbedding) {
         oos.writeObject(embeddings);
@@ -2543,7 +2570,9 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
         oos.writeObject(ff);
       }
       oos.writeInt(windowSize);
-      oos.writeObject(weights);
+      if (withFeaturesAndWeights) {
+        oos.writeObject(heapWeights());
+      }
       // oos.writeObject(WordShapeClassifier.getKnownLowerCaseWords());
 
       oos.writeObject(knownLCWords);
@@ -2555,6 +2584,106 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
   }
 
+  /**
+   * The weights, as doubles on the heap.  If this classifier was loaded from a mapped model or with a
+   * reduced weightPrecision, they are expanded from those the first time they are asked for, and kept
+   * (classification still reads the mapped or compact weights, unless they are changed).
+   */
+  synchronized double[][] weights() {
+    if (weights == null) {
+      weights = heapWeights();
+    }
+    return weights;
+  }
+
+  /**
+   * The weights, as doubles on the heap, to be changed.  Classification then goes back to
+   * using these weights, rather than the mapped or compact ones.
+   */
+  synchronized double[][] weightsForUpdate() {
+    weights();
+    if (compactWeights != null || mappedModel != null) {
+      // built again from the weights when next needed
+      compactWeights = null;
+      cliquePotentialFunction = null;
+    }
+    return weights;
+  }
+
+  /** The weights, copied onto the heap if this classifier was loaded from a mapped model. */
+  private double[][] heapWeights() {
+    if (weights == null && mappedModel != null) {
+      return mappedModel.weightsArray();
+    }
+    if (weights == null && compactWeights != null) {
+      return compactWeights.toArray();
+    }
+    return weights;
+  }
+
+  /**
+   * Writes the classifier as a memory-mapped model (see {@link MappedCRFModel}),
+   * which can later be loaded without deserializing the feature index or weights.
+   * Only models of the linear CRFClassifier itself can be written this way.
+   *
+   * @param serializePath Where to write the model. It is not compressed, whatever its name.
+   */
+  public void serializeMappedClassifier(String serializePath) {
+    if (getClass() != CRFClassifier.class) {
+      throw new UnsupportedOperationException("Mapped models are only supported for " + CRFClassifier.class.getSimpleName() +
+          ", not " + getClass().getSimpleName());
+    }
+    try {
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(header)) {
+        serializeClassifier(oos, false);
+      }
+      MappedCRFModel.write(serializePath, header.toByteArray(), featureIndex, heapWeights());
+      log.info("Serializing mapped classifier to " + serializePath + "... done.");
+    } catch (IOException e) {
+      throw new RuntimeIOException("Serializing mapped classifier to " + serializePath + "... FAILED", e);
+    }
+  }
+
+  /**
+   * Loads a classifier written by {@link #serializeMappedClassifier}.  The feature index
+   * and weights are not read, but are used where they lie in the mapped file.
+   */
+  private void loadMappedClassifier(File file, Properties props) throws IOException, ClassNotFoundException {
+    Timing t = new Timing();
+    MappedCRFModel model = MappedCRFModel.open(file);
+    try (ObjectInputStream ois = model.header()) {
+      loadClassifier(ois, props, model);
+    }
+    t.done(log, "Loading mapped classifier from " + file.getAbsolutePath());
+  }
+
+  /**
+   * {@inheritDoc}
+   * A file in the mapped format is mapped rather than read.
+   */
+  @Override
+  public void loadClassifier(String loadPath, Properties props) throws ClassCastException, IOException, ClassNotFoundException {
+    if (MappedCRFModel.isMappedModel(loadPath)) {
+      loadMappedClassifier(new File(loadPath), props);
+    } else {
+      super.loadClassifier(loadPath, props);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * A file in the mapped format is mapped rather than read.
+   */
+  @Override
+  public void loadClassifier(File file, Properties props) throws ClassCastException, IOException, ClassNotFoundException {
+    if (MappedCRFModel.isMappedModel(file.getPath())) {
+      loadMappedClassifier(file, props);
+    } else {
+      super.loadClassifier(file, props);
+    }
+  }
+
   /**
    * Loads a classifier from the specified InputStream. This version works
    * quietly (unless VERBOSE is true). If props is non-null then any properties
@@ -2570,6 +2699,16 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   // can't have right types in deserialization
   public void loadClassifier(ObjectInputStream ois, Properties props) throws ClassCastException, IOException,
       ClassNotFoundException {
+    loadClassifier(ois, props, null);
+  }
+
+  /**
+   * Loads a classifier, taking the feature index and weights from the mapped model
+   * if there is one, and otherwise from the stream.
+   */
+  @SuppressWarnings( { "unchecked" })
+  private void loadClassifier(ObjectInputStream ois, Properties props, MappedCRFModel mapped) throws ClassCastException, IOException,
+      ClassNotFoundException {
     Object o = ois.readObject();
     // TODO: when we next break serialization, get rid of this fork and only read the List<Index> (i.e., keep first case)
     if (o instanceof List) {
@@ -2580,7 +2719,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       Collections.addAll(labelIndices, indexArray);
     }
     classIndex = (Index<String>) ois.readObject();
-    featureIndex = (Index<String>) ois.readObject();
+    featureIndex = mapped == null ? (Index<String>) ois.readObject() : mapped.featureIndex();
     flags = (SeqClassifierFlags) ois.readObject();
     if (flags.useEmbedding) {
       embeddings = (Map<String, double[]>) ois.readObject();
@@ -2617,7 +2756,21 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
 
     windowSize = ois.readInt();
-    weights = (double[][]) ois.readObject();
+    mappedModel = mapped;
+    compactWeights = null;
+    if (mapped == null) {
+      weights = (double[][]) ois.readObject();
+      cliquePotentialFunction = null;
+      CompactWeights.Precision precision = CompactWeights.Precision.fromString(flags.weightPrecision);
+      if (precision != CompactWeights.Precision.DOUBLE) {
+        compactWeights = CompactWeights.compact(weights, precision);
+        weights = null;
+        cliquePotentialFunction = new CompactLinearCliquePotentialFunction(compactWeights);
+      }
+    } else {
+      weights = null;
+      cliquePotentialFunction = mapped.cliquePotentialFunction();
+    }
 
     // WordShapeClassifier.setKnownLowerCaseWords((Set) ois.readObject());
     Set<String> lcWords = (Set<String>) ois.readObject();
@@ -2740,6 +2893,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public void writeWeights(PrintStream p) {
+    double[][] weights = weights();
     for (String feature : featureIndex) {
       int index = featureIndex.indexOf(feature);
       // line.add(feature+"["+(-p)+"]");
@@ -2756,6 +2910,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public Map<String, Counter<String>> topWeights() {
+    double[][] weights = weights();
     Map<String, Counter<String>> w = new HashMap<>();
     for (String feature : featureIndex) {
       int index = featureIndex.indexOf(feature);
@@ -0,0 +1,500 @@
+package edu.stanford.nlp.ie.crf;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.logging.Redwood;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * The feature index and weights of a {@link CRFClassifier}, stored in a file which is
+ * memory-mapped rather than deserialized.  Loading such a model only reads the small
+ * Java-serialized header (flags, label indices, feature factories, etc.); the feature
+ * dictionary and the weights stay in the file and are paged in by the operating system
+ * as they are used.  Several processes on one machine which load the same file share
+ * those pages.
+ *
+ * <p>The file is laid out as follows, with all numbers big-endian and each section
+ * starting on an 8 byte boundary:
+ * <ul>
+ *   <li>The magic number and the format version (two ints), and the length of the header (a long),
+ *       followed by the header, an uncompressed Java serialization written by the CRFClassifier.</li>
+ *   <li>The feature dictionary: the number of features and the size of the hash table (two ints),
+ *       an open-addressing hash table of (feature index + 1) with 0 for empty slots, the start of each
+ *       feature's UTF-8 bytes (numFeatures + 1 longs), and then those bytes.</li>
+ *   <li>The weights: the number of rows (an int, padded to 8 bytes), the start of each row in
+ *       the weights (numRows + 1 longs), and then the weights (doubles).</li>
+ * </ul>
+ *
+ * <p>A model is converted from the usual serialized form with
+ * <br>
+ * {@code java edu.stanford.nlp.ie.crf.MappedCRFModel model.ser.gz model.crf.mmap}
+ * <br>
+ * after which {@code model.crf.mmap} can be given anywhere a CRF model file is expected.
+ * The model must be loaded from the file system, not the classpath, to be mapped.</p>
+ */
+public class MappedCRFModel {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(MappedCRFModel.class);
+
+  /** "CRFM" */
+  static final int MAGIC = 0x4352464D;
+  static final int VERSION = 1;
+
+  /** The file is mapped in chunks of this many bytes, since a single mapping is limited to 2GB. */
+  private static final int CHUNK_BITS = 30;
+  private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+  private final ByteBuffer[] chunks;
+  private final byte[] header;
+  private final FeatureIndex featureIndex;
+  private final Weights weights;
+
+
+  private MappedCRFModel(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      chunks = new ByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_BITS)];
+      for (int i = 0; i < chunks.length; i++) {
+        long start = (long) i << CHUNK_BITS;
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << CHUNK_BITS, size - start));
+      }
+    }
+    if (chunks.length == 0 || getInt(0) != MAGIC) {
+      throw new RuntimeIOException(file + " is not a mapped CRF model");
+    }
+    if (getInt(4) != VERSION) {
+      throw new RuntimeIOException(file + " has unsupported mapped CRF model version " + getInt(4));
+    }
+    long headerLength = getLong(8);
+    header = new byte[(int) headerLength];
+    for (int i = 0; i < header.length; i++) {
+      header[i] = getByte(16 + i);
+    }
+    featureIndex = new FeatureIndex(align(16 + headerLength));
+    weights = new Weights(featureIndex.end);
+  }
+
+  /**
+   * Maps a model written by {@link #write}.
+   *
+   * @throws RuntimeIOException If the file is not a mapped model of a version this code reads
+   */
+  static MappedCRFModel open(File file) throws IOException {
+    return new MappedCRFModel(file);
+  }
+
+  /**
+   * Returns whether the given path names a file in the mapped format.
+   */
+  public static boolean isMappedModel(String path) {
+    File file = new File(path);
+    if ( ! file.isFile() || file.length() < 16) {
+      return false;
+    }
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      return in.readInt() == MAGIC;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /** The Java-serialized part of the model. */
+  ObjectInputStream header() throws IOException {
+    return new ObjectInputStream(new ByteArrayInputStream(header));
+  }
+
+  /** The feature dictionary, as a read-only Index. */
+  Index<String> featureIndex() {
+    return featureIndex;
+  }
+
+  /** Scores cliques with the mapped weights. */
+  CliquePotentialFunction cliquePotentialFunction() {
+    return weights;
+  }
+
+  /** Copies the mapped weights onto the heap. */
+  double[][] weightsArray() {
+    double[][] array = new double[weights.numRows][];
+    for (int i = 0; i < array.length; i++) {
+      long start = weights.rowStart(i);
+      array[i] = new double[(int) (weights.rowStart(i + 1) - start)];
+      for (int j = 0; j < array[i].length; j++) {
+        array[i][j] = getDouble(weights.dataBase + ((start + j) << 3));
+      }
+    }
+    return array;
+  }
+
+  private static long align(long position) {
+    return (position + 7) & ~7L;
+  }
+
+  // Absolute reads.  Sections are 8 byte aligned and chunks are a multiple of 8 bytes,
+  // so an aligned int, long, or double never straddles two chunks.
+
+  private byte getByte(long position) {
+    return chunks[(int) (position >>> CHUNK_BITS)].get((int) (position & CHUNK_MASK));
+  }
+
+  private int getInt(long position) {
+    return chunks[(int) (position >>> CHUNK_BITS)].getInt((int) (position & CHUNK_MASK));
+  }
+
+  private long getLong(long position) {
+    return chunks[(int) (position >>> CHUNK_BITS)].getLong((int) (position & CHUNK_MASK));
+  }
+
+  private double getDouble(long position) {
+    return chunks[(int) (position >>> CHUNK_BITS)].getDouble((int) (position & CHUNK_MASK));
+  }
+
+  /** FNV-1a over the UTF-8 bytes of a feature, with a final mix since the table size is a power of 2. */
+  static int hash(byte[] bytes) {
+    int h = 0x811C9DC5;
+    for (byte b : bytes) {
+      h = (h ^ (b & 0xFF)) * 0x01000193;
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private static int tableSize(int numFeatures) {
+    int size = 2;
+    while (size < 2L * numFeatures) {
+      size <<= 1;
+    }
+    return size;
+  }
+
+
+  /**
+   * A feature dictionary which looks features up in the mapped hash table.
+   * Like a locked {@link HashIndex}, it can't be added to.
+   * It serializes as an ordinary HashIndex.
+   */
+  private class FeatureIndex extends AbstractCollection<String> implements Index<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int numFeatures;
+    private final int mask;
+    private final long tableBase;
+    private final long offsetsBase;
+    private final long bytesBase;
+    /** Where the next section starts. */
+    private final long end;
+
+    FeatureIndex(long base) {
+      numFeatures = getInt(base);
+      int tableSize = getInt(base + 4);
+      mask = tableSize - 1;
+      tableBase = base + 8;
+      offsetsBase = align(tableBase + 4L * tableSize);
+      bytesBase = offsetsBase + 8L * (numFeatures + 1);
+      end = align(bytesBase + getLong(offsetsBase + 8L * numFeatures));
+    }
+
+    @Override
+    public int size() {
+      return numFeatures;
+    }
+
+    @Override
+    public String get(int i) {
+      if (i < 0 || i >= numFeatures) {
+        throw new ArrayIndexOutOfBoundsException("Index " + i + " outside the bounds [0," + numFeatures + ")");
+      }
+      long start = getLong(offsetsBase + 8L * i);
+      byte[] bytes = new byte[(int) (getLong(offsetsBase + 8L * (i + 1)) - start)];
+      for (int j = 0; j < bytes.length; j++) {
+        bytes[j] = getByte(bytesBase + start + j);
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int indexOf(String o) {
+      if (o == null) {
+        return -1;
+      }
+      byte[] bytes = o.getBytes(StandardCharsets.UTF_8);
+      for (int slot = hash(bytes) & mask; ; slot = (slot + 1) & mask) {
+        int entry = getInt(tableBase + 4L * slot);
+        if (entry == 0) {
+          return -1;
+        }
+        if (matches(entry - 1, bytes)) {
+          return entry - 1;
+        }
+      }
+    }
+
+    private boolean matches(int i, byte[] bytes) {
+      long start = getLong(offsetsBase + 8L * i);
+      if (getLong(offsetsBase + 8L * (i + 1)) - start != bytes.length) {
+        return false;
+      }
+      for (int j = 0; j < bytes.length; j++) {
+        if (getByte(bytesBase + start + j) != bytes[j]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int addToIndex(String o) {
+      return indexOf(o);
+    }
+
+    @Override
+    @Deprecated
+    public int indexOf(String o, boolean add) {
+      return indexOf(o);
+    }
+
+    @Override
+    public List<String> objectsList() {
+      List<String> list = new ArrayList<>(numFeatures);
+      for (int i = 0; i < numFeatures; i++) {
+        list.add(get(i));
+      }
+      return list;
+    }
+
+    @Override
+    public Collection<String> objects(int[] indices) {
+      List<String> list = new ArrayList<>(indices.length);
+      for (int index : indices) {
+        list.add(get(index));
+      }
+      return list;
+    }
+
+    @Override
+    public boolean isLocked() {
+      return true;
+    }
+
+    @Override
+    public void lock() { }
+
+    @Override
+    public void unlock() {
+      throw new UnsupportedOperationException("A mapped feature index cannot be unlocked");
+    }
+
+    @Override
+    public void saveToWriter(Writer out) throws IOException {
+      new HashIndex<>(objectsList()).saveToWriter(out);
+    }
+
+    @Override
+    public void saveToFilename(String s) {
+      new HashIndex<>(objectsList()).saveToFilename(s);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return o instanceof String && indexOf((String) o) >= 0;
+    }
+
+    @Override
+    public boolean add(String s) {
+      throw new UnsupportedOperationException("A mapped feature index is read-only");
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends String> c) {
+      throw new UnsupportedOperationException("A mapped feature index is read-only");
+    }
+
+    @Override
+    public void clear() {
+      throw new UnsupportedOperationException("A mapped feature index is read-only");
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      return new Iterator<String>() {
+        private int i; // = 0
+
+        @Override
+        public boolean hasNext() {
+          return i < numFeatures;
+        }
+
+        @Override
+        public String next() {
+          if (i >= numFeatures) {
+            throw new NoSuchElementException();
+          }
+          return get(i++);
+        }
+      };
+    }
+
+    private Object writeReplace() {
+      return new HashIndex<>(objectsList());
+    }
+
+  } // end class FeatureIndex
+
+
+  /** Computes clique potentials exactly as {@link LinearCliquePotentialFunction} does, from the mapped weights. */
+  private class Weights implements CliquePotentialFunction {
+
+    private final int numRows;
+    private final long offsetsBase;
+    private final long dataBase;
+
+    Weights(long base) {
+      numRows = getInt(base);
+      offsetsBase = base + 8;
+      dataBase = offsetsBase + 8L * (numRows + 1);
+    }
+
+    long rowStart(int row) {
+      return getLong(offsetsBase + 8L * row);
+    }
+
+    @Override
+    public double computeCliquePotential(int cliqueSize, int labelIndex,
+        int[] cliqueFeatures, double[] featureVal, int posInSent) {
+      double output = 0.0;
+      for (int m = 0; m < cliqueFeatures.length; m++) {
+        double dotProd = getDouble(dataBase + ((rowStart(cliqueFeatures[m]) + labelIndex) << 3));
+        if (featureVal != null) {
+          dotProd *= featureVal[m];
+        }
+        output += dotProd;
+      }
+      return output;
+    }
+
+  } // end class Weights
+
+
+  /**
+   * Writes a model in the mapped format.
+   *
+   * @param path Where to write the model
+   * @param header The Java-serialized part of the model
+   * @param featureIndex The features, whose indices must be 0 to size-1
+   * @param weights The weights, indexed by feature and then label
+   */
+  static void write(String path, byte[] header, Index<String> featureIndex, double[][] weights) throws IOException {
+    try (PositionedOutput out = new PositionedOutput(new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(header.length);
+      out.write(header);
+      out.pad();
+
+      // The feature dictionary.  The strings are encoded once to build the table and again to write them out.
+      int numFeatures = featureIndex.size();
+      int tableSize = tableSize(numFeatures);
+      int mask = tableSize - 1;
+      int[] table = new int[tableSize];
+      long[] offsets = new long[numFeatures + 1];
+      for (int i = 0; i < numFeatures; i++) {
+        byte[] bytes = featureIndex.get(i).getBytes(StandardCharsets.UTF_8);
+        int slot = hash(bytes) & mask;
+        while (table[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        table[slot] = i + 1;
+        offsets[i + 1] = offsets[i] + bytes.length;
+      }
+      out.writeInt(numFeatures);
+      out.writeInt(tableSize);
+      for (int entry : table) {
+        out.writeInt(entry);
+      }
+      out.pad();
+      for (long offset : offsets) {
+        out.writeLong(offset);
+      }
+      for (int i = 0; i < numFeatures; i++) {
+        out.write(featureIndex.get(i).getBytes(StandardCharsets.UTF_8));
+      }
+      out.pad();
+
+      // The weights
+      out.writeInt(weights.length);
+      out.pad();
+      long start = 0;
+      out.writeLong(start);
+      for (double[] row : weights) {
+        start += row.length;
+        out.writeLong(start);
+      }
+      for (double[] row : weights) {
+        for (double weight : row) {
+          out.writeDouble(weight);
+        }
+      }
+    }
+  }
+
+  /** A DataOutputStream which knows how many bytes it has written (as a long), so it can align sections. */
+  private static class PositionedOutput extends DataOutputStream {
+
+    PositionedOutput(OutputStream out) {
+      super(new CountingOutputStream(out));
+    }
+
+    void pad() throws IOException {
+      while ((((CountingOutputStream) out).count & 7) != 0) {
+        writeByte(0);
+      }
+    }
+
+  } // end class PositionedOutput
+
+  private static class CountingOutputStream extends FilterOutputStream {
+
+    private long count; // = 0
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+  } // end class CountingOutputStream
+
+
+  /**
+   * Converts a serialized CRFClassifier to the mapped format.
+   * Usage: {@code java edu.stanford.nlp.ie.crf.MappedCRFModel serializedModel mappedModel}
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length != 2) {
+      log.info("Usage: java " + MappedCRFModel.class.getName() + " serializedModel mappedModel");
+      System.exit(1);
+    }
+    CRFClassifier<CoreLabel> crf = CRFClassifier.getClassifier(args[0]);
+    crf.serializeMappedClassifier(args[1]);
+  }
+
+}
@@ -59,6 +59,7 @@ import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.Datum;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.math.ArrayMath;
+import edu.stanford.nlp.math.CompactWeights;
 import edu.stanford.nlp.math.SloppyMath;
 import edu.stanford.nlp.objectbank.ObjectBank;
 import edu.stanford.nlp.sequences.BeamBestSequenceFinder;
@@ -1106,6 +1107,9 @@ public class CMMClassifier<IN extends CoreLabel> extends AbstractSequenceClassif
       flags.setProperties(props);
     }
     reinit();
+    if (classifier instanceof LinearClassifier) {
+      ((LinearClassifier<String, String>) classifier).compactWeights(CompactWeights.Precision.fromString(flags.weightPrecision));
+    }
 
     classIndex = (Index<String>) ois.readObject();
     answerArrays = (Set<List<String>>) ois.readObject();
@@ -0,0 +1,268 @@
+package edu.stanford.nlp.ling;
+
+import java.util.*;
+
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.ErasureUtils;
+import edu.stanford.nlp.util.HashableCoreMap;
+
+
+/**
+ * A {@link CoreLabel} whose most common annotations are stored in one row of a
+ * document-wide {@link CoreLabelColumns}.  Annotations without a column are kept in
+ * the usual ArrayCoreMap arrays, which start out empty.
+ * It behaves like any other CoreLabel, and it serializes as a plain CoreLabel.
+ * Instances are made with {@link CoreLabelColumns#add()}.
+ */
+public class ColumnarCoreLabel extends CoreLabel {
+
+  private static final long serialVersionUID = 1L;
+
+  private final transient CoreLabelColumns columns;
+  private final int row;
+
+  ColumnarCoreLabel(CoreLabelColumns columns, int row) {
+    super(0);
+    this.columns = columns;
+    this.row = row;
+  }
+
+  /** The storage this token is a row of. */
+  public CoreLabelColumns columns() {
+    return columns;
+  }
+
+  /** This token's row in its storage. */
+  public int row() {
+    return row;
+  }
+
+  @Override
+  protected boolean isArrayBacked() {
+    return false;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <VALUE> VALUE get(Class<? extends Key<VALUE>> key) {
+    int slot = CoreLabelColumns.slotOf(key);
+    if (slot < 0) {
+      return super.get(key);
+    }
+    if (ArrayCoreMap.listener != null && columns.has(row, slot)) {
+      ArrayCoreMap.listener.accept(key);
+    }
+    return ErasureUtils.uncheckedCast(columns.get(row, slot));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <VALUE> VALUE set(Class<? extends Key<VALUE>> key, VALUE value) {
+    int slot = CoreLabelColumns.slotOf(key);
+    if (slot < 0) {
+      return super.set(key, value);
+    }
+    return ErasureUtils.uncheckedCast(columns.set(row, slot, value));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <VALUE> VALUE remove(Class<? extends Key<VALUE>> key) {
+    int slot = CoreLabelColumns.slotOf(key);
+    if (slot < 0) {
+      return super.remove(key);
+    }
+    return ErasureUtils.uncheckedCast(columns.remove(row, slot));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public <VALUE> boolean containsKey(Class<? extends Key<VALUE>> key) {
+    int slot = CoreLabelColumns.slotOf(key);
+    if (slot < 0) {
+      return super.containsKey(key);
+    }
+    return columns.has(row, slot);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Set<Class<?>> keySet() {
+    List<Class<?>> keys = new ArrayList<>(size());
+    for (int slot = 0; slot < CoreLabelColumns.NUM_SLOTS; slot++) {
+      if (columns.has(row, slot)) {
+        keys.add(CoreLabelColumns.KEYS[slot]);
+      }
+    }
+    keys.addAll(super.keySet());
+    return new AbstractSet<Class<?>>() {
+      @Override
+      public Iterator<Class<?>> iterator() {
+        Iterator<Class<?>> it = keys.iterator();
+        return new Iterator<Class<?>>() {
+          private Class<?> last;
+
+          @Override
+          public boolean hasNext() {
+            return it.hasNext();
+          }
+
+          @Override
+          public Class<?> next() {
+            last = it.next();
+            return last;
+          }
+
+          @Override
+          @SuppressWarnings("unchecked")
+          public void remove() {
+            it.remove();
+            ColumnarCoreLabel.this.remove((Class) last);
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return keys.size();
+      }
+    };
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int size() {
+    return Integer.bitCount(columns.presentSlots(row)) + super.size();
+  }
+
+  /** A copy of this token as an ordinary CoreLabel. */
+  private CoreLabel materialize() {
+    return new CoreLabel((CoreMap) this);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Set<Class<?>> keySetNotNull() {
+    return materialize().keySetNotNull();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toShorterString(String... what) {
+    return materialize().toShorterString(what);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toShortString(char separator, String... what) {
+    return materialize().toShortString(separator, what);
+  }
+
+  /**
+   * Two CoreMaps are equal iff all keys and values are .equal, however they are stored.
+   * The columns and the arrays are compared directly, without copying the token.
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if ( ! (obj instanceof CoreMap)) {
+      return false;
+    }
+    if (obj instanceof HashableCoreMap) {
+      // overridden behavior for HashableCoreMap
+      return obj.equals(this);
+    }
+    CoreMap other = (CoreMap) obj;
+    if (size() != other.size()) {
+      return false;
+    }
+    // With the same number of keys, other has the same keys if it has all of ours
+    for (int slot = 0; slot < CoreLabelColumns.NUM_SLOTS; slot++) {
+      if (columns.has(row, slot) && ! hasEqualValue(other, CoreLabelColumns.KEYS[slot], columns.get(row, slot))) {
+        return false;
+      }
+    }
+    for (Class<?> key : super.keySet()) {
+      if ( ! hasEqualValue(other, key, super.get(typed(key)))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Class<? extends Key<Object>> typed(Class<?> key) {
+    return (Class<? extends Key<Object>>) key;
+  }
+
+  private static boolean hasEqualValue(CoreMap other, Class<?> key, Object value) {
+    return other.containsKey(typed(key)) && Objects.equals(value, other.get(typed(key)));
+  }
+
+  /**
+   * The same as the hash code of an ordinary CoreLabel with these keys and values, which
+   * is a sum over them, so the columns can be added to that of the arrays.
+   */
+  @Override
+  public int hashCode() {
+    int keysCode = 0;
+    int valuesCode = 0;
+    for (int slot = 0; slot < CoreLabelColumns.NUM_SLOTS; slot++) {
+      Object value = columns.get(row, slot);
+      if (value != null) {
+        keysCode += CoreLabelColumns.KEYS[slot].hashCode();
+        valuesCode += value.hashCode();
+      }
+    }
+    return keysCode * 37 + valuesCode + super.hashCode();
+  }
+
+  // The int-valued accessors read the columns directly, without boxing
+
+  @Override
+  public int index() {
+    return columns.getInt(row, CoreLabelColumns.INDEX, -1);
+  }
+
+  @Override
+  public int sentIndex() {
+    return columns.getInt(row, CoreLabelColumns.SENTENCE_INDEX, -1);
+  }
+
+  @Override
+  public int beginPosition() {
+    return columns.getInt(row, CoreLabelColumns.BEGIN_POSITION, -1);
+  }
+
+  @Override
+  public int endPosition() {
+    return columns.getInt(row, CoreLabelColumns.END_POSITION, -1);
+  }
+
+  /** Serialize as an ordinary CoreLabel, since the columns belong to the whole document. */
+  private Object writeReplace() {
+    return materialize();
+  }
+
+}
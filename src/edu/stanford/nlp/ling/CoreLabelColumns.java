@@ -0,0 +1,325 @@
+package edu.stanford.nlp.ling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.TypesafeMap;
+
+
+/**
+ * Column-oriented storage for the tokens of one document.
+ * The annotations that every token carries (word, value, original text, whitespace
+ * before and after, tag, NER, lemma, character and token offsets, indices, and
+ * the newline flag) are kept in one array per key, with the String values interned
+ * per document and the integer values kept unboxed.  Each token is exposed as a
+ * {@link ColumnarCoreLabel}, a {@link CoreLabel} which reads and writes its row of
+ * these columns, and keeps any other keys in the usual {@link edu.stanford.nlp.util.ArrayCoreMap}
+ * arrays.  This saves the per-token key and value arrays, the boxed Integers, and the
+ * many copies of the same tag and whitespace Strings that ordinary CoreLabels hold.
+ *
+ * <p>Rows are appended by a single thread while the document is tokenized.  After that,
+ * different threads may annotate different tokens concurrently (as the multithreaded
+ * {@code SentenceAnnotator}s do), but, as with ArrayCoreMap, not the same token.</p>
+ *
+ * <p>If the columns are given the text of the document, tokens can be added as spans of
+ * it with {@link #addSpan}.  The whitespace before and after such a token is then only
+ * taken from the text when something asks for it.</p>
+ */
+public class CoreLabelColumns {
+
+  // The keys stored in columns, by slot.  String slots come first, then int slots, then the newline flag.
+  static final int TEXT = 0;
+  static final int VALUE = 1;
+  static final int ORIGINAL_TEXT = 2;
+  static final int BEFORE = 3;
+  static final int AFTER = 4;
+  static final int TAG = 5;
+  static final int NER = 6;
+  static final int LEMMA = 7;
+  static final int NUM_STRING_SLOTS = 8;
+
+  static final int BEGIN_POSITION = 8;
+  static final int END_POSITION = 9;
+  static final int INDEX = 10;
+  static final int SENTENCE_INDEX = 11;
+  static final int TOKEN_BEGIN = 12;
+  static final int TOKEN_END = 13;
+  static final int NUM_INT_SLOTS = 6;
+
+  static final int IS_NEWLINE = 14;
+  static final int NUM_SLOTS = 15;
+
+  /** The key of each slot. */
+  static final Class<?>[] KEYS = {
+      CoreAnnotations.TextAnnotation.class,
+      CoreAnnotations.ValueAnnotation.class,
+      CoreAnnotations.OriginalTextAnnotation.class,
+      CoreAnnotations.BeforeAnnotation.class,
+      CoreAnnotations.AfterAnnotation.class,
+      CoreAnnotations.PartOfSpeechAnnotation.class,
+      CoreAnnotations.NamedEntityTagAnnotation.class,
+      CoreAnnotations.LemmaAnnotation.class,
+      CoreAnnotations.CharacterOffsetBeginAnnotation.class,
+      CoreAnnotations.CharacterOffsetEndAnnotation.class,
+      CoreAnnotations.IndexAnnotation.class,
+      CoreAnnotations.SentenceIndexAnnotation.class,
+      CoreAnnotations.TokenBeginAnnotation.class,
+      CoreAnnotations.TokenEndAnnotation.class,
+      CoreAnnotations.IsNewlineAnnotation.class,
+  };
+
+  /** Bit of a row's flags recording the value (rather than the presence) of the newline flag. */
+  private static final int NEWLINE_VALUE_BIT = 1 << NUM_SLOTS;
+
+  /** Bit of a row's flags recording that its whitespace before and after is yet to be taken from the text. */
+  private static final int LAZY_WHITESPACE_BIT = NEWLINE_VALUE_BIT << 1;
+
+  /** The bits of a row's flags which record which slots are present. */
+  static final int PRESENT_MASK = NEWLINE_VALUE_BIT - 1;
+
+  /** Stands for a null Integer in an int column. */
+  private static final int NULL_INT = Integer.MIN_VALUE;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private String[][] strings;
+  private int[][] ints;
+  /** Per row, which slots are present, plus the value of the newline flag. */
+  private int[] flags;
+  private int size; // = 0
+  /** The text of the document, which the offsets of spans point into; may be null. */
+  private CharSequence text;
+
+  /** The per-document String pool, so that each distinct tag, word, etc. is stored once. */
+  private final ConcurrentHashMap<String, String> pool = new ConcurrentHashMap<>();
+
+
+  public CoreLabelColumns() {
+    this(INITIAL_CAPACITY);
+  }
+
+  /**
+   * @param capacity The number of tokens to allocate space for.  The columns grow if necessary.
+   */
+  public CoreLabelColumns(int capacity) {
+    capacity = Math.max(capacity, 1);
+    strings = new String[NUM_STRING_SLOTS][capacity];
+    ints = new int[NUM_INT_SLOTS][capacity];
+    flags = new int[capacity];
+  }
+
+  /**
+   * Sets the text of the document, which must be in place before spans are added.
+   */
+  public void setText(CharSequence text) {
+    this.text = text;
+  }
+
+  /** The text of the document, or null if it hasn't been set. */
+  public CharSequence text() {
+    return text;
+  }
+
+  /**
+   * Returns the slot which stores the given key, or -1 if it isn't stored in a column.
+   */
+  static int slotOf(Class<?> key) {
+    // A chain of identity comparisons is quicker than hashing the key here
+    for (int slot = 0; slot < NUM_SLOTS; slot++) {
+      if (KEYS[slot] == key) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /** The number of tokens stored. */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Appends an empty token.
+   *
+   * @return The new token
+   */
+  public synchronized ColumnarCoreLabel add() {
+    if (size == flags.length) {
+      int capacity = size + (size >> 1) + 1;
+      for (int i = 0; i < NUM_STRING_SLOTS; i++) {
+        strings[i] = Arrays.copyOf(strings[i], capacity);
+      }
+      for (int i = 0; i < NUM_INT_SLOTS; i++) {
+        ints[i] = Arrays.copyOf(ints[i], capacity);
+      }
+      flags = Arrays.copyOf(flags, capacity);
+    }
+    return new ColumnarCoreLabel(this, size++);
+  }
+
+  /**
+   * Appends a token covering the characters [begin, end) of the text.  Its word and value
+   * are set to {@code word}, and it has the usual character offsets and original text.
+   * Its before and after annotations are the text between it and its neighbouring spans
+   * (or the ends of the text), which is only extracted when first asked for; so the tokens
+   * must be added in order, and the last one should be followed by the end of the text.
+   *
+   * @param word The token, as normalized by the tokenizer
+   * @param originalText The characters of the text it came from
+   * @param begin The offset of the first character of the token
+   * @param end The offset just after the last character of the token
+   * @return The new token
+   * @throws IllegalStateException If the text hasn't been set
+   */
+  public ColumnarCoreLabel addSpan(String word, String originalText, int begin, int end) {
+    if (text == null) {
+      throw new IllegalStateException("CoreLabelColumns: the text must be set before adding spans");
+    }
+    ColumnarCoreLabel token = add();
+    int row = token.row();
+    word = intern(word);
+    strings[TEXT][row] = word;
+    strings[VALUE][row] = word;
+    // most tokens are their original text, which saves interning it again
+    strings[ORIGINAL_TEXT][row] = word.equals(originalText) ? word : intern(originalText);
+    ints[BEGIN_POSITION - NUM_STRING_SLOTS][row] = begin;
+    ints[END_POSITION - NUM_STRING_SLOTS][row] = end;
+    flags[row] = (1 << TEXT) | (1 << VALUE) | (1 << ORIGINAL_TEXT) | (1 << BEFORE) | (1 << AFTER) |
+        (1 << BEGIN_POSITION) | (1 << END_POSITION) | LAZY_WHITESPACE_BIT;
+    return token;
+  }
+
+  /**
+   * Appends a token with the same contents as the given one.
+   *
+   * @param label The token to copy
+   * @return The new token
+   */
+  public ColumnarCoreLabel add(CoreMap label) {
+    ColumnarCoreLabel token = add();
+    for (Class<?> key : label.keySet()) {
+      @SuppressWarnings("unchecked")
+      Class<? extends TypesafeMap.Key<Object>> typedKey = (Class<? extends TypesafeMap.Key<Object>>) key;
+      token.set(typedKey, label.get(typedKey));
+    }
+    return token;
+  }
+
+  /**
+   * Copies a list of tokens into new storage.
+   *
+   * @param tokens The tokens of a document
+   * @return A list of equal tokens, stored in columns
+   */
+  public static List<CoreLabel> copyOf(List<? extends CoreMap> tokens) {
+    CoreLabelColumns columns = new CoreLabelColumns(tokens.size());
+    List<CoreLabel> copy = new ArrayList<>(tokens.size());
+    for (CoreMap token : tokens) {
+      copy.add(columns.add(token));
+    }
+    return copy;
+  }
+
+  private String intern(String s) {
+    if (s == null) {
+      return null;
+    }
+    String interned = pool.putIfAbsent(s, s);
+    return interned == null ? s : interned;
+  }
+
+  boolean has(int row, int slot) {
+    return (flags[row] & (1 << slot)) != 0;
+  }
+
+  int presentSlots(int row) {
+    return flags[row] & PRESENT_MASK;
+  }
+
+  Object get(int row, int slot) {
+    if ( ! has(row, slot)) {
+      return null;
+    }
+    if (slot < NUM_STRING_SLOTS) {
+      String value = strings[slot][row];
+      if (value == null && (slot == BEFORE || slot == AFTER) && (flags[row] & LAZY_WHITESPACE_BIT) != 0) {
+        value = whitespace(row, slot);
+        strings[slot][row] = value;
+      }
+      return value;
+    } else if (slot < IS_NEWLINE) {
+      int value = ints[slot - NUM_STRING_SLOTS][row];
+      return value == NULL_INT ? null : value;
+    } else {
+      return (flags[row] & NEWLINE_VALUE_BIT) != 0;
+    }
+  }
+
+  /**
+   * The text between a span and the span before it (for BEFORE) or after it (for AFTER).
+   * The span after the last one so far is taken to be the end of the text.
+   */
+  private String whitespace(int row, int slot) {
+    int begin;
+    int end;
+    if (slot == BEFORE) {
+      begin = row == 0 ? 0 : getInt(row - 1, END_POSITION, 0);
+      end = getInt(row, BEGIN_POSITION, 0);
+    } else {
+      begin = getInt(row, END_POSITION, 0);
+      end = row + 1 == size ? text.length() : getInt(row + 1, BEGIN_POSITION, text.length());
+    }
+    if (begin >= end) {
+      return "";
+    }
+    return intern(text.subSequence(begin, end).toString());
+  }
+
+  /** An int value without boxing it, or the default if it's absent. */
+  int getInt(int row, int slot, int defaultValue) {
+    if ( ! has(row, slot)) {
+      return defaultValue;
+    }
+    int value = ints[slot - NUM_STRING_SLOTS][row];
+    return value == NULL_INT ? defaultValue : value;
+  }
+
+  /**
+   * Stores a value, returning the previous one.
+   *
+   * @throws ClassCastException If the value does not have the key's type
+   */
+  Object set(int row, int slot, Object value) {
+    Object previous = get(row, slot);
+    if (slot < NUM_STRING_SLOTS) {
+      strings[slot][row] = intern((String) value);
+      flags[row] |= 1 << slot;
+    } else if (slot < IS_NEWLINE) {
+      ints[slot - NUM_STRING_SLOTS][row] = value == null ? NULL_INT : (Integer) value;
+      flags[row] |= 1 << slot;
+    } else {
+      flags[row] = Boolean.TRUE.equals(value) ?
+          flags[row] | NEWLINE_VALUE_BIT | (1 << slot) :
+          (flags[row] & ~NEWLINE_VALUE_BIT) | (1 << slot);
+    }
+    return previous;
+  }
+
+  /**
+   * Removes a value, returning the previous one.
+   */
+  Object remove(int row, int slot) {
+    Object previous = get(row, slot);
+    if (slot < NUM_STRING_SLOTS) {
+      strings[slot][row] = null;
+    } else if (slot == IS_NEWLINE) {
+      flags[row] &= ~NEWLINE_VALUE_BIT;
+    }
+    flags[row] &= ~(1 << slot);
+    return previous;
+  }
+
+}
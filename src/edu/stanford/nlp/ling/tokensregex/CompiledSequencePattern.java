@@ -0,0 +1,747 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.util.HasInterval;
+import edu.stanford.nlp.util.Interval;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Matches a {@link SequencePattern} by simulating its NFA without backtracking.
+ *
+ * <p>
+ * {@link SequenceMatcher} follows every branch of the NFA separately, keeping the state of each
+ * branch (repeat counts, matched groups) in its own branch state, and only prunes branches
+ * by splitting them once there are too many.  For patterns with many optional or repeated parts
+ * the number of branches can therefore grow exponentially with the number of tokens.
+ * Here the branches are kept as a list ordered by priority, as in Thompson's construction
+ * (or the "Pike VM"): a branch that reaches a state which a branch of higher priority has already
+ * reached at the same token (with the same repeat counts) can never give a better match,
+ * so it is dropped, and each token is looked at once per state.  Branches with a lower priority than
+ * a branch that has already matched are dropped as well.  Each distinct {@link NodePattern}
+ * is evaluated at most once per token, however many states of the NFA use it.
+ *
+ * <p>
+ * When the only group of the pattern is the whole match (group 0) and there are no values,
+ * the matched groups don't need to be tracked, and the lists of branches are cached as the states
+ * of a lazily built DFA.  A transition of the DFA is keyed on which of the node patterns needed
+ * by its state match the token, so once the DFA has warmed up matching a token costs one lookup.
+ *
+ * <p>
+ * The match found (and its groups) is the same as that found by
+ * {@link SequenceMatcher#findMatchStartBacktracking}.
+ * Back references, conjunctions and repeats of patterns that can match nothing are not supported:
+ * {@link #compile} returns null for patterns that use them, and they are matched
+ * by the {@link SequenceMatcher} as before.
+ *
+ * @param <T> Type of the elements in the sequence
+ */
+final class CompiledSequencePattern<T> {
+
+  // Kinds of states
+  private static final int PLAIN = 0;
+  private static final int MATCH = 1;
+  private static final int VALUE = 2;
+  private static final int NODE = 3;
+  private static final int MULTI_NODE = 4;
+  private static final int GROUP_START = 5;
+  private static final int GROUP_END = 6;
+  private static final int SEQ_START = 7;
+  private static final int SEQ_END = 8;
+  private static final int REPEAT = 9;
+
+  // Maximum number of node patterns for the DFA (one bit of the transition key each)
+  private static final int MAX_DFA_NODE_PATTERNS = 62;
+  private static final long HAS_TOKEN = 1L << 62;
+  private static final long AT_SEQ_END = 1L << 63;
+  // Maximum number of DFA states to cache - further states are still used, but not kept
+  private static final int MAX_DFA_STATES = 10000;
+
+  private final int root;
+  private final int totalGroups;
+  private final int[] kind;
+  private final int[][] next;
+  // Group id, node pattern index, multi node pattern index or repeat index of each state
+  private final int[] arg;
+  private final Object[] values;
+  private final List<NodePattern<T>> nodePatterns;
+  private final List<MultiNodePattern<T>> multiNodePatterns;
+  private final int[] repeatStart;
+  private final int[] repeatMin;
+  private final int[] repeatMax;
+  private final boolean[] repeatGreedy;
+  private final boolean hasValues;
+
+  // DFA states (null if the DFA is not used for this pattern)
+  private final Map<DfaState, DfaState> dfaStates;
+  // Start states of the DFA, when starting at the beginning of the sequence or not
+  private volatile DfaState dfaSequenceStart;
+  private volatile DfaState dfaStart;
+
+  private CompiledSequencePattern(int root, int totalGroups, int[] kind, int[][] next, int[] arg, Object[] values,
+                                  List<NodePattern<T>> nodePatterns, List<MultiNodePattern<T>> multiNodePatterns,
+                                  List<SequencePattern.RepeatState> repeats, int[] repeatStart) {
+    this.root = root;
+    this.totalGroups = totalGroups;
+    this.kind = kind;
+    this.next = next;
+    this.arg = arg;
+    this.values = values;
+    this.nodePatterns = nodePatterns;
+    this.multiNodePatterns = multiNodePatterns;
+    this.repeatStart = repeatStart;
+    repeatMin = new int[repeats.size()];
+    repeatMax = new int[repeats.size()];
+    repeatGreedy = new boolean[repeats.size()];
+    for (int i = 0; i < repeats.size(); i++) {
+      repeatMin[i] = repeats.get(i).minMatch;
+      repeatMax[i] = repeats.get(i).maxMatch;
+      repeatGreedy[i] = repeats.get(i).greedyMatch;
+    }
+    boolean hasCaptures = false;
+    boolean hasValues = false;
+    for (int s = 0; s < kind.length; s++) {
+      if ((kind[s] == GROUP_START || kind[s] == GROUP_END) && arg[s] > 0) {
+        hasCaptures = true;
+      } else if (kind[s] == VALUE) {
+        hasValues = true;
+      }
+    }
+    this.hasValues = hasValues;
+    boolean useDfa = !hasCaptures && !hasValues && multiNodePatterns.isEmpty()
+            && nodePatterns.size() <= MAX_DFA_NODE_PATTERNS;
+    dfaStates = useDfa ? new ConcurrentHashMap<>() : null;
+  }
+
+  /**
+   * Compiles the NFA of the given pattern.
+   *
+   * @return The compiled pattern, or null if the pattern uses features that are not supported
+   */
+  static <T> CompiledSequencePattern<T> compile(SequencePattern<T> pattern) {
+    // Number the states reachable from the root
+    Map<SequencePattern.State, Integer> ids = new IdentityHashMap<>();
+    List<SequencePattern.State> states = new ArrayList<>();
+    ids.put(pattern.root, 0);
+    states.add(pattern.root);
+    for (int i = 0; i < states.size(); i++) {
+      for (SequencePattern.State s : successors(states.get(i))) {
+        if ( ! ids.containsKey(s)) {
+          ids.put(s, states.size());
+          states.add(s);
+        }
+      }
+    }
+
+    int n = states.size();
+    int[] kind = new int[n];
+    int[][] next = new int[n][];
+    int[] arg = new int[n];
+    Object[] values = new Object[n];
+    Map<NodePattern<T>, Integer> nodePatternIds = new IdentityHashMap<>();
+    List<NodePattern<T>> nodePatterns = new ArrayList<>();
+    List<MultiNodePattern<T>> multiNodePatterns = new ArrayList<>();
+    List<SequencePattern.RepeatState> repeats = new ArrayList<>();
+    List<Integer> repeatStart = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      SequencePattern.State state = states.get(i);
+      if (state.hasSavedValue) {
+        return null;
+      }
+      Class<?> c = state.getClass();
+      if (c == SequencePattern.State.class) {
+        kind[i] = PLAIN;
+      } else if (c == SequencePattern.MatchState.class) {
+        kind[i] = MATCH;
+      } else if (c == SequencePattern.ValueState.class) {
+        kind[i] = VALUE;
+        values[i] = ((SequencePattern.ValueState) state).value;
+      } else if (c == SequencePattern.NodePatternState.class) {
+        kind[i] = NODE;
+        // The states' patterns are raw, but they are over the elements of this pattern's sequences
+        @SuppressWarnings("unchecked")
+        NodePattern<T> nodePattern = ((SequencePattern.NodePatternState) state).pattern;
+        Integer id = nodePatternIds.get(nodePattern);
+        if (id == null) {
+          id = nodePatterns.size();
+          nodePatternIds.put(nodePattern, id);
+          nodePatterns.add(nodePattern);
+        }
+        arg[i] = id;
+      } else if (c == SequencePattern.MultiNodePatternState.class) {
+        kind[i] = MULTI_NODE;
+        arg[i] = multiNodePatterns.size();
+        @SuppressWarnings("unchecked")
+        MultiNodePattern<T> multiNodePattern = ((SequencePattern.MultiNodePatternState) state).pattern;
+        multiNodePatterns.add(multiNodePattern);
+      } else if (c == SequencePattern.GroupStartState.class) {
+        kind[i] = GROUP_START;
+        arg[i] = ((SequencePattern.GroupStartState) state).captureGroupId;
+      } else if (c == SequencePattern.GroupEndState.class) {
+        kind[i] = GROUP_END;
+        arg[i] = ((SequencePattern.GroupEndState) state).captureGroupId;
+      } else if (c == SequencePattern.SeqStartState.class) {
+        kind[i] = SEQ_START;
+      } else if (c == SequencePattern.SeqEndState.class) {
+        kind[i] = SEQ_END;
+      } else if (c == SequencePattern.RepeatState.class) {
+        kind[i] = REPEAT;
+        SequencePattern.RepeatState repeat = (SequencePattern.RepeatState) state;
+        arg[i] = repeats.size();
+        repeats.add(repeat);
+        repeatStart.add(ids.get(repeat.repeatStart));
+      } else {
+        // Back references, conjunctions, or some other kind of state we don't know about
+        return null;
+      }
+      next[i] = new int[(state.next != null) ? state.next.size() : 0];
+      int j = 0;
+      if (state.next != null) {
+        for (SequencePattern.State s : state.next) {
+          next[i][j++] = ids.get(s);
+        }
+      }
+    }
+
+    int[] repeatStarts = new int[repeatStart.size()];
+    for (int i = 0; i < repeatStarts.length; i++) {
+      repeatStarts[i] = repeatStart.get(i);
+    }
+    // A cycle of states that don't consume any tokens is a repeat of something
+    // that can match nothing - SequenceMatcher handles these in its own way
+    int[] visited = new int[n];
+    for (int i = 0; i < n; i++) {
+      if (hasEmptyCycle(i, kind, next, arg, repeatStarts, visited)) {
+        return null;
+      }
+    }
+    return new CompiledSequencePattern<>(0, pattern.totalGroups, kind, next, arg, values,
+            nodePatterns, multiNodePatterns, repeats, repeatStarts);
+  }
+
+  static List<SequencePattern.State> successors(SequencePattern.State state) {
+    List<SequencePattern.State> successors = new ArrayList<>();
+    if (state.next != null) {
+      successors.addAll(state.next);
+    }
+    if (state instanceof SequencePattern.RepeatState) {
+      successors.add(((SequencePattern.RepeatState) state).repeatStart);
+    }
+    return successors;
+  }
+
+  // Depth first search for a cycle through states that don't consume tokens
+  // (visited is 0 for states not seen yet, 1 for states on the current path and 2 for states done)
+  private static boolean hasEmptyCycle(int s, int[] kind, int[][] next, int[] arg, int[] repeatStart, int[] visited) {
+    if (visited[s] != 0) {
+      return visited[s] == 1;
+    }
+    if (kind[s] == NODE || kind[s] == MULTI_NODE || kind[s] == MATCH) {
+      visited[s] = 2;
+      return false;
+    }
+    visited[s] = 1;
+    for (int t : next[s]) {
+      if (hasEmptyCycle(t, kind, next, arg, repeatStart, visited)) {
+        return true;
+      }
+    }
+    if (kind[s] == REPEAT && hasEmptyCycle(repeatStart[arg[s]], kind, next, arg, repeatStart, visited)) {
+      return true;
+    }
+    visited[s] = 2;
+    return false;
+  }
+
+  /**
+   * Looks for the best match starting at the given position.
+   *
+   * @param elements Sequence to match against
+   * @param start Position at which the match should start
+   * @param regionEnd End of the region of the sequence to match
+   * @param shared Results of the node patterns shared with other patterns (null if none)
+   * @return The matched groups, indexed by group id (null for groups that did not match),
+   *         or null if there is no match
+   */
+  BasicSequenceMatchResult.MatchedGroup[] findMatchStart(List<? extends T> elements, int start, int regionEnd,
+                                                         SharedNodePatterns.Matches<T> shared) {
+    if (start >= regionEnd) {
+      return null;
+    }
+    if (dfaStates != null) {
+      return findMatchStartDfa(elements, start, regionEnd, shared);
+    }
+    Step step = new Step(start, start < regionEnd, start == 0, start == elements.size());
+    add(step, root, new Branch(root, new int[repeatMin.length], multiNodeStart(), groupsStart(), valuesStart()), null);
+    List<Branch> branches = step.branches;
+    for (int i = start; i < regionEnd && isRunning(branches); i++) {
+      if (Thread.interrupted()) {
+        throw new RuntimeInterruptedException();
+      }
+      step = new Step(i + 1, i + 1 < regionEnd, false, i + 1 == elements.size());
+      consume(branches, elements, i, elements.get(i), new byte[nodePatterns.size()], shared, step);
+      branches = step.branches;
+    }
+    Branch match = getMatch(branches);
+    if (match == null) {
+      return null;
+    }
+    BasicSequenceMatchResult.MatchedGroup[] groups = new BasicSequenceMatchResult.MatchedGroup[totalGroups];
+    for (int g = 0; g < totalGroups; g++) {
+      if (match.groups[2*g] >= 0) {
+        groups[g] = new BasicSequenceMatchResult.MatchedGroup(match.groups[2*g], match.groups[2*g+1],
+                (match.values != null) ? match.values[g] : null);
+      }
+    }
+    return groups;
+  }
+
+  private BasicSequenceMatchResult.MatchedGroup[] findMatchStartDfa(List<? extends T> elements, int start, int regionEnd,
+                                                                    SharedNodePatterns.Matches<T> shared) {
+    DfaState state = getDfaStart(start == 0);
+    // The end of the match of the DFA state (the end of group 0)
+    int matchEnd = start;
+    for (int i = start; i < regionEnd && isRunning(state.branches); i++) {
+      if (Thread.interrupted()) {
+        throw new RuntimeInterruptedException();
+      }
+      T node = elements.get(i);
+      long key = 0;
+      if (node != null) {
+        for (int index : state.nodePatternIndices) {
+          if ((shared != null) ? shared.matches(nodePatterns.get(index), i, node) : nodePatterns.get(index).match(node)) {
+            key |= 1L << index;
+          }
+        }
+      }
+      if (i + 1 < regionEnd) {
+        key |= HAS_TOKEN;
+      }
+      if (i + 1 == elements.size()) {
+        key |= AT_SEQ_END;
+      }
+      DfaTransition transition = state.transitions.get(key);
+      if (transition == null) {
+        transition = getDfaTransition(state, key);
+      }
+      if (transition.newMatch) {
+        matchEnd = i + 1;
+      }
+      state = transition.target;
+    }
+    if (getMatch(state.branches) == null) {
+      return null;
+    }
+    BasicSequenceMatchResult.MatchedGroup[] groups = new BasicSequenceMatchResult.MatchedGroup[totalGroups];
+    groups[0] = new BasicSequenceMatchResult.MatchedGroup(start, matchEnd, null);
+    return groups;
+  }
+
+  // Whether the branches can still lead to a better match:
+  // once the branch with the highest priority has matched, we are done
+  private boolean isRunning(List<Branch> branches) {
+    return ! branches.isEmpty() && kind[branches.get(0).state] != MATCH;
+  }
+
+  private Branch getMatch(List<Branch> branches) {
+    // Branches after a match are always dropped, so the match is the last branch
+    if ( ! branches.isEmpty()) {
+      Branch last = branches.get(branches.size() - 1);
+      if (kind[last.state] == MATCH) {
+        return last;
+      }
+    }
+    return null;
+  }
+
+  private DfaState getDfaStart(boolean atSequenceStart) {
+    DfaState start = atSequenceStart ? dfaSequenceStart : dfaStart;
+    if (start == null) {
+      Step step = new Step(-1, true, atSequenceStart, false);
+      add(step, root, new Branch(root, new int[repeatMin.length], null, null, null), null);
+      start = internDfaState(new DfaState(step.branches));
+      if (atSequenceStart) {
+        dfaSequenceStart = start;
+      } else {
+        dfaStart = start;
+      }
+    }
+    return start;
+  }
+
+  private DfaTransition getDfaTransition(DfaState state, long key) {
+    byte[] nodeMatches = new byte[nodePatterns.size()];
+    for (int index : state.nodePatternIndices) {
+      nodeMatches[index] = ((key & (1L << index)) != 0) ? MATCHED : NOT_MATCHED;
+    }
+    Step step = new Step(-1, (key & HAS_TOKEN) != 0, false, (key & AT_SEQ_END) != 0);
+    consume(state.branches, null, -1, null, nodeMatches, null, step);
+    DfaTransition transition = new DfaTransition(internDfaState(new DfaState(step.branches)), step.newMatch);
+    if (dfaStates.size() < MAX_DFA_STATES) {
+      state.transitions.put(key, transition);
+    }
+    return transition;
+  }
+
+  private DfaState internDfaState(DfaState state) {
+    DfaState existing = dfaStates.get(state);
+    if (existing != null) {
+      return existing;
+    }
+    if (dfaStates.size() >= MAX_DFA_STATES) {
+      return state;
+    }
+    existing = dfaStates.putIfAbsent(state, state);
+    return (existing != null) ? existing : state;
+  }
+
+  private static final byte MATCHED = 1;
+  private static final byte NOT_MATCHED = 2;
+
+  private boolean nodeMatches(int index, int position, T node, byte[] nodeMatches, SharedNodePatterns.Matches<T> shared) {
+    if (nodeMatches[index] == 0) {
+      boolean matched = (shared != null) ? shared.matches(nodePatterns.get(index), position, node)
+              : node != null && nodePatterns.get(index).match(node);
+      nodeMatches[index] = matched ? MATCHED : NOT_MATCHED;
+    }
+    return nodeMatches[index] == MATCHED;
+  }
+
+  /**
+   * Moves the branches past the token at the given position.
+   *
+   * @param branches Branches waiting for the token, in order of priority
+   * @param elements Sequence being matched (only needed for multi node patterns)
+   * @param position Position of the token
+   * @param node The token
+   * @param nodeMatches Which node patterns match the token (0 if not known yet)
+   * @param shared Results of the node patterns shared with other patterns (null if none)
+   * @param step Step to add the new branches to
+   */
+  private void consume(List<Branch> branches, List<? extends T> elements, int position, T node,
+                       byte[] nodeMatches, SharedNodePatterns.Matches<T> shared, Step step) {
+    for (Branch branch : branches) {
+      if (step.done) {
+        break;
+      }
+      int s = branch.state;
+      switch (kind[s]) {
+        case MATCH:
+          // Matched branches stay matched
+          step.addBranch(branch);
+          break;
+        case NODE:
+          if (nodeMatches(arg[s], position, node, nodeMatches, shared)) {
+            addNext(step, s, branch);
+          }
+          break;
+        case MULTI_NODE: {
+          int m = arg[s];
+          int end = branch.multiNodeEnds[m];
+          if (end < 0) {
+            // Try all the ways the pattern can match here (longest first if greedy)
+            Collection<Interval<Integer>> matched = multiNodePatterns.get(m).match(elements, position);
+            if (matched != null) {
+              List<Interval<Integer>> sorted = new ArrayList<>(matched);
+              sorted.sort(multiNodePatterns.get(m).isGreedyMatch() ?
+                      HasInterval.LENGTH_GT_COMPARATOR : HasInterval.LENGTH_LT_COMPARATOR);
+              for (Interval<Integer> interval : sorted) {
+                Branch b = branch.withMultiNodeEnd(m, interval.getEnd());
+                if (interval.getEnd() - 1 <= position) {
+                  addNext(step, s, b);
+                } else {
+                  step.addBranch(b);
+                }
+              }
+            }
+          } else if (end - 1 <= position) {
+            addNext(step, s, branch);
+          } else {
+            // Keep going until the end of the matched interval
+            step.addBranch(branch);
+          }
+          break;
+        }
+        default:
+          throw new IllegalStateException("Unexpected state waiting for a token: " + kind[s]);
+      }
+    }
+  }
+
+  private void addNext(Step step, int s, Branch branch) {
+    for (int t : next[s]) {
+      add(step, t, branch, null);
+    }
+  }
+
+  /**
+   * Follows the branch through the states that don't consume tokens,
+   * adding it to the step at each state that does (or at the match state).
+   * The branches of the step are kept in order of priority, which is the order in which they are added.
+   *
+   * @param step Step being built
+   * @param s State to add
+   * @param branch Branch arriving at the state
+   * @param prevValue Value of the state the branch came from (only ValueStates have values)
+   */
+  private void add(Step step, int s, Branch branch, Object prevValue) {
+    if (step.done || ! step.visit(s, branch)) {
+      return;
+    }
+    switch (kind[s]) {
+      case MATCH:
+        step.branches.add(branch.at(s));
+        step.done = true;
+        step.newMatch = true;
+        break;
+      case NODE:
+      case MULTI_NODE:
+        step.branches.add(branch.at(s));
+        break;
+      case PLAIN:
+        addNext(step, s, branch);
+        break;
+      case VALUE:
+        for (int t : next[s]) {
+          add(step, t, branch, values[s]);
+        }
+        break;
+      case GROUP_START:
+        // Groups only start when there is a token to consume
+        if (step.hasToken) {
+          addNext(step, s, branch.withGroupStart(arg[s], step.position));
+        }
+        break;
+      case GROUP_END:
+        addNext(step, s, branch.withGroupEnd(arg[s], step.position, prevValue));
+        break;
+      case SEQ_START:
+        if (step.hasToken && step.atSequenceStart) {
+          addNext(step, s, branch);
+        }
+        break;
+      case SEQ_END:
+        if (step.atSequenceEnd) {
+          addNext(step, s, branch);
+        }
+        break;
+      case REPEAT: {
+        int r = arg[s];
+        int count = branch.counts[r];
+        boolean canRepeat = (repeatMax[r] < 0 || count < repeatMax[r]) && step.hasToken;
+        boolean canExit = count >= repeatMin[r];
+        if (canRepeat && repeatGreedy[r]) {
+          add(step, repeatStart[r], branch.withCount(r, repeatCount(r, count + 1)), null);
+        }
+        if (canExit) {
+          Branch exit = branch.withCount(r, 0);
+          for (int t : next[s]) {
+            add(step, t, exit, null);
+          }
+        }
+        if (canRepeat && ! repeatGreedy[r]) {
+          add(step, repeatStart[r], branch.withCount(r, repeatCount(r, count + 1)), null);
+        }
+        break;
+      }
+      default:
+        throw new IllegalStateException("Unknown state " + kind[s]);
+    }
+  }
+
+  // With no maximum, all counts from the minimum on behave the same, so keep them the same
+  // (otherwise branches that only differ in the count would never be merged)
+  private int repeatCount(int r, int count) {
+    return (repeatMax[r] < 0) ? Math.min(count, repeatMin[r]) : count;
+  }
+
+  private int[] multiNodeStart() {
+    int[] multiNodeEnds = new int[multiNodePatterns.size()];
+    Arrays.fill(multiNodeEnds, -1);
+    return multiNodeEnds;
+  }
+
+  private int[] groupsStart() {
+    int[] groups = new int[2*totalGroups];
+    Arrays.fill(groups, -1);
+    return groups;
+  }
+
+  private Object[] valuesStart() {
+    return hasValues ? new Object[totalGroups] : null;
+  }
+
+  /**
+   * The branches reached at one position of the sequence, in order of priority.
+   */
+  private final class Step {
+    // Position of the next token to consume
+    final int position;
+    final boolean hasToken;
+    final boolean atSequenceStart;
+    final boolean atSequenceEnd;
+    final List<Branch> branches = new ArrayList<>();
+    // States (with their repeat counts etc.) already reached by a branch with higher priority
+    final Set<Branch> visited = new HashSet<>();
+    // Whether a branch has matched: branches with lower priority can be dropped
+    boolean done;
+    // Whether the match was reached in this step (rather than matched before)
+    boolean newMatch;
+
+    Step(int position, boolean hasToken, boolean atSequenceStart, boolean atSequenceEnd) {
+      this.position = position;
+      this.hasToken = hasToken;
+      this.atSequenceStart = atSequenceStart;
+      this.atSequenceEnd = atSequenceEnd;
+    }
+
+    boolean visit(int s, Branch branch) {
+      return visited.add(branch.at(s));
+    }
+
+    void addBranch(Branch branch) {
+      if ( ! done && visit(branch.state, branch)) {
+        branches.add(branch);
+        if (branch.isMatch) {
+          done = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * A branch of the match.
+   * Two branches are equal if they are at the same state and will continue in the same way
+   * (same repeat counts, and same multi node pattern matches) - they can still have different groups.
+   */
+  private final class Branch {
+    final int state;
+    final boolean isMatch;
+    // How many times each repeat has been started
+    final int[] counts;
+    // End of the interval matched by each multi node pattern (-1 if none)
+    final int[] multiNodeEnds;
+    // Begin and end of each group (-1 if not set), null if groups are not tracked
+    final int[] groups;
+    final Object[] values;
+
+    Branch(int state, int[] counts, int[] multiNodeEnds, int[] groups, Object[] values) {
+      this.state = state;
+      this.isMatch = kind[state] == MATCH;
+      this.counts = counts;
+      this.multiNodeEnds = multiNodeEnds;
+      this.groups = groups;
+      this.values = values;
+    }
+
+    Branch at(int s) {
+      return (s == state) ? this : new Branch(s, counts, multiNodeEnds, groups, values);
+    }
+
+    Branch withCount(int r, int count) {
+      if (counts[r] == count) {
+        return this;
+      }
+      int[] newCounts = counts.clone();
+      newCounts[r] = count;
+      return new Branch(state, newCounts, multiNodeEnds, groups, values);
+    }
+
+    Branch withMultiNodeEnd(int m, int end) {
+      int[] newEnds = multiNodeEnds.clone();
+      newEnds[m] = end;
+      return new Branch(state, counts, newEnds, groups, values);
+    }
+
+    // Same as SequenceMatcher.BranchStates.setGroupStart
+    Branch withGroupStart(int g, int position) {
+      if (groups == null || g < 0) {
+        return this;
+      }
+      int[] newGroups = groups.clone();
+      newGroups[2*g] = position;
+      newGroups[2*g+1] = -1;
+      Object[] newValues = values;
+      if (values != null && values[g] != null) {
+        newValues = values.clone();
+        newValues[g] = null;
+      }
+      return new Branch(state, counts, multiNodeEnds, newGroups, newValues);
+    }
+
+    // Same as SequenceMatcher.BranchStates.setGroupEnd: a group is only ended once
+    Branch withGroupEnd(int g, int position, Object value) {
+      if (groups == null || g < 0 || groups[2*g] < 0 || groups[2*g+1] != -1) {
+        return this;
+      }
+      int[] newGroups = groups.clone();
+      newGroups[2*g+1] = position;
+      Object[] newValues = values;
+      if (values != null) {
+        newValues = values.clone();
+        newValues[g] = value;
+      }
+      return new Branch(state, counts, multiNodeEnds, newGroups, newValues);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if ( ! (o instanceof CompiledSequencePattern.Branch)) return false;
+      CompiledSequencePattern<?>.Branch branch = (CompiledSequencePattern<?>.Branch) o;
+      return state == branch.state && Arrays.equals(counts, branch.counts)
+              && Arrays.equals(multiNodeEnds, branch.multiNodeEnds);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * state + Arrays.hashCode(counts)) + Arrays.hashCode(multiNodeEnds);
+    }
+  }
+
+  /**
+   * A state of the DFA: the list of branches (without groups), in order of priority.
+   */
+  private final class DfaState {
+    final List<Branch> branches;
+    // Node patterns to evaluate to find the transition for a token
+    final int[] nodePatternIndices;
+    final Map<Long, DfaTransition> transitions = new ConcurrentHashMap<>();
+
+    DfaState(List<Branch> branches) {
+      this.branches = branches;
+      BitSet indices = new BitSet();
+      for (Branch branch : branches) {
+        if (kind[branch.state] == NODE) {
+          indices.set(arg[branch.state]);
+        }
+      }
+      nodePatternIndices = indices.stream().toArray();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if ( ! (o instanceof CompiledSequencePattern.DfaState)) return false;
+      return branches.equals(((CompiledSequencePattern<?>.DfaState) o).branches);
+    }
+
+    @Override
+    public int hashCode() {
+      return branches.hashCode();
+    }
+  }
+
+  private final class DfaTransition {
+    final DfaState target;
+    // Whether the match of the target state was reached by this transition (so it ends after the token)
+    final boolean newMatch;
+
+    DfaTransition(DfaState target, boolean newMatch) {
+      this.target = target;
+      this.newMatch = newMatch;
+    }
+  }
+
+}
@@ -21,6 +21,9 @@ public class ComplexNodePattern<M,K> extends NodePattern<M> {
   private final List<Pair<K, NodePattern>> annotationPatterns;
   private final BiFunction<M,K, Object> getter;
 
+  // Fixed to the value computed before isLiteral was made public, so that patterns serialized then still load
+  private static final long serialVersionUID = 3359673302502177636L;
+
 
   public ComplexNodePattern(BiFunction<M,K, Object> getter, List<Pair<K, NodePattern>> annotationPatterns) {
     this.annotationPatterns = annotationPatterns;
@@ -43,8 +46,13 @@ public class ComplexNodePattern<M,K> extends NodePattern<M> {
   // TODO: make this a pattern of non special characters: [,],?,.,\,^,$,(,),*,+,{,},| ... what else?
   private static final Pattern LITERAL_PATTERN = Pattern.compile("[^\\[\\]?.\\\\^$()*+{}|]*");
   //private static final Pattern LITERAL_PATTERN = Pattern.compile("[A-Za-z0-9_\\-']*");
+  /** Whether a string pattern has no regex syntax, and so only matches a string equal to it */
+  public static boolean isLiteral(String regex) {
+    return LITERAL_PATTERN.matcher(regex).matches();
+  }
+
   public static NodePattern<String> newStringRegexPattern(String regex, int flags) {
-    boolean isLiteral = ((flags & Pattern.LITERAL) != 0) || LITERAL_PATTERN.matcher(regex).matches();
+    boolean isLiteral = ((flags & Pattern.LITERAL) != 0) || isLiteral(regex);
     if (isLiteral) {
       boolean caseInsensitive = (flags & (Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE)) != 0;
       int stringMatchFlags = (caseInsensitive)? (CASE_INSENSITIVE | UNICODE_CASE):0;
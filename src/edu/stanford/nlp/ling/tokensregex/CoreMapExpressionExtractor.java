@@ -79,6 +79,15 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
     SequenceMatchRules.ExtractRule<List<? extends CoreMap>, T> compositeExtractRule;
     /** Filtering rule */
     Predicate<T> filterRule;
+    /**
+     * Whether the results of the node patterns of the token rules are shared while the basic rules are applied
+     * (each node pattern is then evaluated at most once per token, however many rules use it)
+     */
+    boolean shareNodeMatches = true;
+    /** Token patterns of the basic rules */
+    private final List<SequencePattern<CoreMap>> basicPatterns = new ArrayList<>();
+    /** Node patterns of the basic rules (built when first needed) */
+    private SharedNodePatterns<CoreMap> sharedNodePatterns;
 
     private static <I,O> SequenceMatchRules.ExtractRule<I,O> addRule(SequenceMatchRules.ExtractRule<I, O> origRule,
                                                                      SequenceMatchRules.ExtractRule<I, O> rule) {
@@ -100,6 +109,24 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
 
     private void addBasicRule(SequenceMatchRules.ExtractRule<CoreMap, T> rule) {
       basicExtractRule = addRule(basicExtractRule, rule);
+      if (rule instanceof SequenceMatchRules.AnnotationExtractRule
+              && ((SequenceMatchRules.AnnotationExtractRule) rule).hasTokensRegexPattern()) {
+        synchronized (this) {
+          basicPatterns.add((TokenSequencePattern) ((SequenceMatchRules.AnnotationExtractRule) rule).pattern);
+          sharedNodePatterns = null;
+        }
+      }
+    }
+
+    /** Returns the node patterns of the basic rules to share while applying them, or null if they are not shared. */
+    private synchronized SharedNodePatterns<CoreMap> getSharedNodePatterns() {
+      if ( ! shareNodeMatches || basicPatterns.isEmpty()) {
+        return null;
+      }
+      if (sharedNodePatterns == null) {
+        sharedNodePatterns = new SharedNodePatterns<>(basicPatterns);
+      }
+      return sharedNodePatterns;
     }
 
     private void addFilterRule(Predicate<T> rule) {
@@ -186,6 +213,10 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
           if (limitIters != null) {
             stage.limitIters = limitIters;
           }
+          Boolean shareNodeMatches = (Boolean) env.getDefaults().get("stage.shareNodeMatches");
+          if (shareNodeMatches != null) {
+            stage.shareNodeMatches = shareNodeMatches;
+          }
         }
         if (aer.active) {
           if (SequenceMatchRules.FILTER_RULE_TYPE.equals(aer.ruleType)) {
@@ -479,7 +510,18 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
         matchedExpressions.clear();
       }
       if (basicExtractRule != null) {
-        basicExtractRule.extract(annotation, matchedExpressions);
+        SharedNodePatterns<CoreMap> sharedNodePatterns = stage.getSharedNodePatterns();
+        List<? extends CoreMap> tokens = annotation.get(tokensAnnotationKey);
+        if (sharedNodePatterns != null && tokens != null) {
+          SharedNodePatterns.Matches<?> previous = sharedNodePatterns.begin(tokens);
+          try {
+            basicExtractRule.extract(annotation, matchedExpressions);
+          } finally {
+            SharedNodePatterns.end(previous);
+          }
+        } else {
+          basicExtractRule.extract(annotation, matchedExpressions);
+        }
         if (verbose && matchedExpressions != null) {
           log.info("extractExpressions() extracting with " + basicExtractRule + " from " + annotation + " gives " + matchedExpressions);
         }
@@ -77,6 +77,12 @@ public class Env {
    */
   public int defaultStringMatchFlags = 0;
 
+  /**
+   * Whether sequence patterns compiled with this environment are matched using their
+   * compiled NFA, without backtracking (see {@link SequencePattern#setCompiledMatching}).
+   */
+  public boolean compiledMatching = false;
+
   public Class sequenceMatchResultExtractor;
   public Class stringMatchResultExtractor;
 
@@ -281,6 +287,14 @@ public class Env {
     this.defaultStringMatchFlags = defaultStringMatchFlags;
   }
 
+  public boolean isCompiledMatching() {
+    return compiledMatching;
+  }
+
+  public void setCompiledMatching(boolean compiledMatching) {
+    this.compiledMatching = compiledMatching;
+  }
+
   private static final Pattern STRING_REGEX_VAR_NAME_PATTERN = Pattern.compile("\\$[A-Za-z0-9_]+");
   public void bindStringRegex(String var, String regex)
   {
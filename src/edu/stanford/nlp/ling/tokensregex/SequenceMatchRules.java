@@ -436,6 +436,7 @@ public class SequenceMatchRules {
                                      Expression action,
                                      Expression result) {
       TokenSequencePattern pattern = TokenSequencePattern.compile(expr);
+      pattern.setCompiledMatching(env.compiledMatching);
       updateExtractRule(r, env, pattern, action, result);
     }
 
@@ -502,6 +503,7 @@ public class SequenceMatchRules {
                                      Expression result)
     {
       TokenSequencePattern pattern = TokenSequencePattern.compile(expr);
+      pattern.setCompiledMatching(env.compiledMatching);
       updateExtractRule(r, env, pattern, action, result);
     }
 
@@ -977,7 +979,7 @@ public class SequenceMatchRules {
       }
       m.setMatchWithResult(matchWithResult);
       while (m.find()) {
-        out.add(extractor.apply(m));
+        out.add(applyExtractor(extractor, m));
         extracted = true;
       }
       // System.err.println("SequencePattern " + pattern + " of type " + pattern.getClass() + " matched on " + extracted);
@@ -990,7 +992,7 @@ public class SequenceMatchRules {
       SequenceMatcher<T> m = pattern.getMatcher(seq);
       m.setMatchWithResult(matchWithResult);
       if (m.matches()) {
-        return extractor.apply(m);
+        return applyExtractor(extractor, m);
       } else {
         return null;
       }
@@ -999,6 +1001,21 @@ public class SequenceMatchRules {
   } // end static class
 
 
+  // Applies the extractor to the match.  Apart from those making MatchedExpressions, extractors might change the
+  // elements that were matched, so they are run without the node pattern results shared by a stage
+  private static <T,O> O applyExtractor(Function<SequenceMatchResult<T>, O> extractor, SequenceMatchResult<T> match) {
+    if ((Object) extractor instanceof SequenceMatchedExpressionExtractor) {
+      return extractor.apply(match);
+    }
+    SharedNodePatterns.Matches<?> shared = SharedNodePatterns.suspend();
+    try {
+      return extractor.apply(match);
+    } finally {
+      SharedNodePatterns.resume(shared);
+    }
+  }
+
+
   public static class MultiSequencePatternExtractRule<T,O> implements ExtractRule< List<? extends T>, O>, Function<List<? extends T>, O> {
     MultiPatternMatcher<T> matcher;
     Function<SequenceMatchResult<T>, O> extractor;
@@ -1014,7 +1031,7 @@ public class SequenceMatchRules {
       boolean extracted = false;
       List<SequenceMatchResult<T>> matched = matcher.findNonOverlappingMaxScore(seq);
       for (SequenceMatchResult<T> m : matched) {
-        out.add(extractor.apply(m));
+        out.add(applyExtractor(extractor, m));
         extracted = true;
       }
       return extracted;
@@ -1025,7 +1042,7 @@ public class SequenceMatchRules {
       if (seq == null) return null;
       List<SequenceMatchResult<T>> matched = matcher.findNonOverlappingMaxScore(seq);
       if (matched.size() > 0) {
-        return extractor.apply(matched.get(0));
+        return applyExtractor(extractor, matched.get(0));
       } else {
         return null;
       }
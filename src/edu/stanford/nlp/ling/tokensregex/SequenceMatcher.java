@@ -88,6 +88,9 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
   // Branching limit for searching with back tracking. Higher value makes the search faster but uses more memory.
   int branchLimit = 32;
 
+  // Results of the node patterns shared with the other rules of a stage (null if none)
+  final SharedNodePatterns.Matches<T> sharedMatches;
+
   protected SequenceMatcher(SequencePattern<T> pattern, List<? extends T> elements)
   {
     this.pattern = pattern;
@@ -102,6 +105,7 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
     this.score = pattern.weight;
     this.varGroupBindings = pattern.varGroupBindings;
     matchedGroups = new MatchedGroup[pattern.totalGroups];
+    this.sharedMatches = SharedNodePatterns.current(elements);
   }
 
   public void setBranchLimit(int blimit){
@@ -348,10 +352,17 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
     boolean match = false;
     matched = false;
     matchingCompleted = false;
+    // Positions at which none of the node patterns the match has to start with match can be skipped
+    int[] firstSlots = (sharedMatches != null && ! matchWithResult) ? sharedMatches.getFirstSlots(pattern) : null;
     if (matchStart)  {
-      match = findMatchStart(start, false);
+      if (firstSlots == null || (start < regionEnd && sharedMatches.canStartAt(firstSlots, start))) {
+        match = findMatchStart(start, false);
+      }
     } else {
       for (int i = start; i < regionEnd; i++) {
+        if (firstSlots != null && ! sharedMatches.canStartAt(firstSlots, i)) {
+          continue;
+        }
         match = findMatchStart(i, false);
         if (match) {
           break;
@@ -467,6 +478,12 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
   protected boolean findMatchStart(int start, boolean matchAllTokens) {
     switch (findType) {
       case FIND_NONOVERLAPPING:
+        if ( ! matchAllTokens && ! matchWithResult) {
+          CompiledSequencePattern<T> compiledPattern = pattern.getCompiledPattern();
+          if (compiledPattern != null) {
+            return findMatchStartCompiled(compiledPattern, start);
+          }
+        }
         return findMatchStartBacktracking(start, matchAllTokens);
       case FIND_ALL:
         // TODO: Should use backtracking here too, need to keep track of todo stack
@@ -541,6 +558,17 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
     return false;
   }
 
+  // Same as findMatchStartBacktracking, but runs the compiled NFA of the pattern
+  private boolean findMatchStartCompiled(CompiledSequencePattern<T> compiledPattern, int start) {
+    MatchedGroup[] groups = compiledPattern.findMatchStart(elements, start, regionEnd, sharedMatches);
+    if (groups == null) {
+      return false;
+    }
+    clearMatched();
+    System.arraycopy(groups, 0, matchedGroups, 0, groups.length);
+    return true;
+  }
+
   /**
    * Checks if the pattern matches the entire sequence
    * @return true if the entire sequence is matched (false otherwise)
@@ -725,6 +753,14 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
     return elements.get(i);
   }
 
+  // Whether the node pattern matches the element at the given position
+  boolean nodeMatches(NodePattern<T> nodePattern, int position, T node) {
+    if (sharedMatches != null && ! matchWithResult) {
+      return sharedMatches.matches(nodePattern, position, node);
+    }
+    return node != null && nodePattern.match(node);
+  }
+
   /** Returns a non-null MatchedStates, which has a non-empty states list inside. */
   private MatchedStates<T> getStartStates()
   {
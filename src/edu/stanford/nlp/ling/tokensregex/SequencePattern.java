@@ -89,6 +89,10 @@ public class SequencePattern<T> implements Serializable {
   //  3. Inconsistent templating with T
   //  4. Update TokensSequenceParser to handle backref of other attributes (\9{attr1,attr2,...})
   //  5. Improve nested capture groups (in matchresult) for other node types such as conjunctions/disjunctions
+
+  // Fixed to the value computed before compiledMatching was added, so that patterns serialized then still load
+  private static final long serialVersionUID = 8137809304622025409L;
+
   private String patternStr;
   private PatternExpr patternExpr;
   private SequenceMatchAction<T> action;
@@ -104,6 +108,11 @@ public class SequencePattern<T> implements Serializable {
   // Weight associated with the pattern
   double weight = 0.0;
 
+  // Whether to match using the compiled NFA (see CompiledSequencePattern), when the pattern can be compiled
+  private boolean compiledMatching = false;
+  private transient volatile CompiledSequencePattern<T> compiledPattern;
+  private transient volatile boolean compiledPatternDone = false;
+
   protected SequencePattern(SequencePattern.PatternExpr nodeSequencePattern) {
     this(null, nodeSequencePattern);
   }
@@ -178,12 +187,44 @@ public class SequencePattern<T> implements Serializable {
     return totalGroups;
   }
 
+  public boolean isCompiledMatching() {
+    return compiledMatching;
+  }
+
+  /**
+   * Sets whether matchers of this pattern should find matches by running the compiled
+   * NFA of the pattern, which does not backtrack, rather than by exploring every branch
+   * of the NFA separately.  The matches found are the same, it is only a question of speed.
+   * Patterns that cannot be compiled (e.g. those with back references), matchers that keep
+   * the results of the node matches, and the {@link SequenceMatcher.FindType#FIND_ALL} search
+   * always use the default matching.
+   *
+   * @param compiledMatching Whether to use the compiled NFA
+   */
+  public void setCompiledMatching(boolean compiledMatching) {
+    this.compiledMatching = compiledMatching;
+  }
+
+  /** Returns the compiled NFA to match with, or null if the default matching should be used. */
+  CompiledSequencePattern<T> getCompiledPattern() {
+    if ( ! compiledMatching) {
+      return null;
+    }
+    if ( ! compiledPatternDone) {
+      compiledPattern = CompiledSequencePattern.compile(this);
+      compiledPatternDone = true;
+    }
+    return compiledPattern;
+  }
+
   // Compiles string (regex) to NFA for doing pattern simulation
   public static <T> SequencePattern<T> compile(Env env, String string)
   {
     try {
       Pair<PatternExpr, SequenceMatchAction<T>> p = env.parser.parseSequenceWithAction(env, string);
-      return new SequencePattern<>(string, p.first(), p.second());
+      SequencePattern<T> pattern = new SequencePattern<>(string, p.first(), p.second());
+      pattern.setCompiledMatching(env.compiledMatching);
+      return pattern;
     } catch (Exception ex) {
       throw new RuntimeException("Error compiling " + string + " using environment " + env);
     }
@@ -1303,7 +1344,7 @@ public class SequencePattern<T> implements Serializable {
   /**
    * Final accepting state.
    */
-  private static class MatchState extends State {
+  static class MatchState extends State {
     @Override
     protected <T> boolean match(int bid, SequenceMatcher.MatchedStates<T> matchedStates, boolean consume, State prevState) {
       // Always add this state back (effectively looping forever in this matching state)
@@ -1315,7 +1356,7 @@ public class SequencePattern<T> implements Serializable {
   /**
    * State with associated value.
    */
-  private static class ValueState extends State {
+  static class ValueState extends State {
     final Object value;
 
     private ValueState(Object value) {
@@ -1329,7 +1370,7 @@ public class SequencePattern<T> implements Serializable {
   /**
    * State for matching one element/node
    */
-  private static class NodePatternState extends State {
+  static class NodePatternState extends State {
     final NodePattern pattern;
 
     protected NodePatternState(NodePattern p) {
@@ -1356,7 +1397,9 @@ public class SequencePattern<T> implements Serializable {
             return false;
           }
         } else {
-          if (node != null && pattern.match(node)) {
+          @SuppressWarnings("unchecked")
+          NodePattern<T> nodePattern = pattern;
+          if (matchedStates.matcher.nodeMatches(nodePattern, matchedStates.curPosition, node)) {
             // If matched, need to add next states to the queue of states to be processed
             matchedStates.addStates(bid, next);
             return true;
@@ -1377,9 +1420,9 @@ public class SequencePattern<T> implements Serializable {
   /**
    * State for matching multiple elements/nodes.
    */
-  private static class MultiNodePatternState extends State {
+  static class MultiNodePatternState extends State {
 
-    private final MultiNodePattern pattern;
+    final MultiNodePattern pattern;
 
     protected MultiNodePatternState(MultiNodePattern p) {
       this.pattern = p;
@@ -1448,12 +1491,12 @@ public class SequencePattern<T> implements Serializable {
   /**
    * State that matches a pattern that can occur multiple times.
    */
-  private static class RepeatState extends State {
+  static class RepeatState extends State {
 
-    private final State repeatStart;
-    private final int minMatch;
-    private final int maxMatch;
-    private final boolean greedyMatch;
+    final State repeatStart;
+    final int minMatch;
+    final int maxMatch;
+    final boolean greedyMatch;
 
     public RepeatState(State start, int minMatch, int maxMatch, boolean greedyMatch)
     {
@@ -1621,7 +1664,7 @@ public class SequencePattern<T> implements Serializable {
    */
   static class GroupStartState extends State {
 
-    private final int captureGroupId;
+    final int captureGroupId;
 
     public GroupStartState(int captureGroupId, State startState)
     {
@@ -1650,7 +1693,7 @@ public class SequencePattern<T> implements Serializable {
    */
   static class GroupEndState extends State {
 
-    private final int captureGroupId;
+    final int captureGroupId;
 
     public GroupEndState(int captureGroupId)
     {
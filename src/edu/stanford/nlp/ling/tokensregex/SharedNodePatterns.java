@@ -0,0 +1,317 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.util.Pair;
+
+import java.util.*;
+
+/**
+ * The node patterns of a set of {@link SequencePattern}s (such as the token rules of a stage
+ * of a {@link CoreMapExpressionExtractor}), numbered so that whether they match each element
+ * of a sequence is worked out once and shared by all the patterns.
+ *
+ * <p>
+ * Node patterns which are known to match the same elements, like the {@code /[0-9]+/} or
+ * {@code [{ner:DATE}]} written in many rules, share a slot, and each slot is evaluated
+ * at most once per element.  For each pattern which always matches at least one element,
+ * the slots which can match its first element are also kept, so that the {@link SequenceMatcher}
+ * can skip the positions at which the pattern cannot start without running it: rules that start the
+ * same way share this work too.
+ *
+ * <p>
+ * The results for a sequence are kept in a {@link Matches}, which {@link #begin} makes current
+ * for the thread while the rules are applied.  {@link SequenceMatcher}s created over that same
+ * sequence (and not matching with results) then use it, and other matchers are not affected.
+ * Extractors which might change the elements are run between {@link #suspend} and {@link #resume},
+ * which drops the results worked out so far.
+ *
+ * @param <T> Type of the elements in the sequence
+ */
+final class SharedNodePatterns<T> {
+
+  private static final ThreadLocal<Matches<?>> current = new ThreadLocal<>();
+
+  private static final byte MATCHED = 1;
+  private static final byte NOT_MATCHED = 2;
+
+  /** Slot of each node pattern (by identity) */
+  private final Map<NodePattern<T>, Integer> slots = new IdentityHashMap<>();
+  /** Node pattern evaluated for each slot */
+  private final List<NodePattern<T>> slotPatterns = new ArrayList<>();
+  /** Slots which can match the first element of a match of each pattern (by identity) */
+  private final Map<SequencePattern<T>, int[]> firstSlots = new IdentityHashMap<>();
+
+  SharedNodePatterns(Collection<? extends SequencePattern<T>> patterns) {
+    Map<String, Integer> keySlots = new HashMap<>();
+    for (SequencePattern<T> pattern : patterns) {
+      if (firstSlots.containsKey(pattern)) {
+        continue;
+      }
+      // Give the node patterns of all states reachable from the root a slot
+      Set<SequencePattern.State> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+      Deque<SequencePattern.State> todo = new ArrayDeque<>();
+      seen.add(pattern.root);
+      todo.add(pattern.root);
+      while ( ! todo.isEmpty()) {
+        SequencePattern.State state = todo.remove();
+        if (state instanceof SequencePattern.NodePatternState) {
+          @SuppressWarnings("unchecked")
+          NodePattern<T> nodePattern = ((SequencePattern.NodePatternState) state).pattern;
+          addSlot(nodePattern, keySlots);
+        }
+        for (SequencePattern.State s : CompiledSequencePattern.successors(state)) {
+          if (seen.add(s)) {
+            todo.add(s);
+          }
+        }
+      }
+      firstSlots.put(pattern, getFirstSlots(pattern));
+    }
+  }
+
+  private void addSlot(NodePattern<T> nodePattern, Map<String, Integer> keySlots) {
+    if (slots.containsKey(nodePattern)) {
+      return;
+    }
+    String key = canonicalKey(nodePattern);
+    Integer slot = (key != null) ? keySlots.get(key) : null;
+    if (slot == null) {
+      slot = slotPatterns.size();
+      slotPatterns.add(nodePattern);
+      if (key != null) {
+        keySlots.put(key, slot);
+      }
+    }
+    slots.put(nodePattern, slot);
+  }
+
+  /**
+   * Returns the slots of the node patterns which can match the first element of a match of the pattern
+   * (some of them might not), or null if the match could be empty or start with something other than a node pattern.
+   */
+  private int[] getFirstSlots(SequencePattern<T> pattern) {
+    Set<Integer> first = new TreeSet<>();
+    Set<SequencePattern.State> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    Set<SequencePattern.State> leftRepeats = Collections.newSetFromMap(new IdentityHashMap<>());
+    Deque<SequencePattern.State> todo = new ArrayDeque<>();
+    seen.add(pattern.root);
+    todo.add(pattern.root);
+    while ( ! todo.isEmpty()) {
+      SequencePattern.State state = todo.remove();
+      Class<?> c = state.getClass();
+      List<SequencePattern.State> successors;
+      if (c == SequencePattern.NodePatternState.class) {
+        first.add(slots.get(((SequencePattern.NodePatternState) state).pattern));
+        continue;
+      } else if (c == SequencePattern.RepeatState.class && ((SequencePattern.RepeatState) state).minMatch > 0) {
+        // Has to go through the repeated pattern first
+        successors = Collections.singletonList(((SequencePattern.RepeatState) state).repeatStart);
+      } else if (c == SequencePattern.State.class || c == SequencePattern.ValueState.class
+              || c == SequencePattern.GroupStartState.class || c == SequencePattern.GroupEndState.class
+              || c == SequencePattern.SeqStartState.class || c == SequencePattern.SeqEndState.class
+              || c == SequencePattern.RepeatState.class) {
+        // Doesn't take up any elements: the match goes on to all the states that can come next
+        successors = CompiledSequencePattern.successors(state);
+      } else {
+        // Reached the end of the match without taking any elements,
+        // or a multiple node pattern, back reference, etc.
+        return null;
+      }
+      for (SequencePattern.State s : successors) {
+        if (seen.add(s)) {
+          todo.add(s);
+        } else if (s instanceof SequencePattern.RepeatState && s.next != null && leftRepeats.add(s)) {
+          // Back at a repeat without taking any elements: the repeated pattern can match nothing,
+          // so the match could leave the repeat as well
+          for (SequencePattern.State t : s.next) {
+            if (seen.add(t)) {
+              todo.add(t);
+            }
+          }
+        }
+      }
+    }
+    int[] res = new int[first.size()];
+    int i = 0;
+    for (int slot : first) {
+      res[i++] = slot;
+    }
+    return res;
+  }
+
+  /**
+   * Returns a key which is the same for node patterns that match the same elements,
+   * or null if it is not known what the node pattern matches (it then only shares its slot with itself).
+   */
+  static String canonicalKey(NodePattern<?> nodePattern) {
+    Class<?> c = nodePattern.getClass();
+    if (c == CoreMapNodePattern.class) {
+      StringBuilder sb = new StringBuilder("{");
+      // The annotation keys and patterns, which CoreMapNodePattern keeps as raw types
+      for (Pair<?, ?> p : ((CoreMapNodePattern) nodePattern).getAnnotationPatterns()) {
+        Class<?> annotation = (Class<?>) p.first;
+        NodePattern<?> annotationPattern = (NodePattern<?>) p.second;
+        String key = (annotation != null && annotationPattern != null) ? canonicalKey(annotationPattern) : null;
+        if (key == null) {
+          return null;
+        }
+        appendPart(sb, annotation.getName());
+        appendPart(sb, key);
+      }
+      return sb.toString();
+    } else if (c == ComplexNodePattern.StringAnnotationPattern.class) {
+      ComplexNodePattern.StringAnnotationPattern p = (ComplexNodePattern.StringAnnotationPattern) nodePattern;
+      return "S" + p.flags + ':' + p.target;
+    } else if (c == ComplexNodePattern.StringAnnotationRegexPattern.class) {
+      ComplexNodePattern.StringAnnotationRegexPattern p = (ComplexNodePattern.StringAnnotationRegexPattern) nodePattern;
+      return "R" + p.pattern.flags() + ':' + p.pattern.pattern();
+    } else if (c == ComplexNodePattern.StringInSetAnnotationPattern.class) {
+      ComplexNodePattern.StringInSetAnnotationPattern p = (ComplexNodePattern.StringInSetAnnotationPattern) nodePattern;
+      StringBuilder sb = new StringBuilder("I").append(p.flags).append(':');
+      for (String target : new TreeSet<>(p.targets)) {
+        appendPart(sb, target);
+      }
+      return sb.toString();
+    } else if (c == ComplexNodePattern.NumericAnnotationPattern.class) {
+      ComplexNodePattern.NumericAnnotationPattern p = (ComplexNodePattern.NumericAnnotationPattern) nodePattern;
+      return "N" + p.cmpType + ':' + p.value;
+    } else if (c == ComplexNodePattern.NilAnnotationPattern.class) {
+      return "0";
+    } else if (c == ComplexNodePattern.NotNilAnnotationPattern.class) {
+      return "1";
+    } else if (c == NodePattern.AnyNodePattern.class) {
+      return "*";
+    } else if (c == NodePattern.NegateNodePattern.class) {
+      String key = canonicalKey(((NodePattern.NegateNodePattern<?>) nodePattern).p);
+      return (key != null) ? "!" + key : null;
+    } else if (c == NodePattern.ConjNodePattern.class || c == NodePattern.DisjNodePattern.class) {
+      List<? extends NodePattern<?>> nodePatterns = (c == NodePattern.ConjNodePattern.class) ?
+              ((NodePattern.ConjNodePattern<?>) nodePattern).nodePatterns :
+              ((NodePattern.DisjNodePattern<?>) nodePattern).nodePatterns;
+      StringBuilder sb = new StringBuilder((c == NodePattern.ConjNodePattern.class) ? "&" : "|");
+      for (NodePattern<?> p : nodePatterns) {
+        String key = canonicalKey(p);
+        if (key == null) {
+          return null;
+        }
+        appendPart(sb, key);
+      }
+      return sb.toString();
+    } else {
+      return null;
+    }
+  }
+
+  // Appends the part with its length, so that different lists of parts always give different keys
+  private static void appendPart(StringBuilder sb, String part) {
+    sb.append(part.length()).append(':').append(part);
+  }
+
+  /**
+   * Makes new (empty) results for the given sequence current for this thread.
+   *
+   * @return The results which were current before, to give to {@link #end}
+   */
+  Matches<?> begin(List<? extends T> elements) {
+    Matches<?> previous = current.get();
+    current.set(new Matches<>(this, elements));
+    return previous;
+  }
+
+  /** Makes the results which were current before {@link #begin} current again. */
+  static void end(Matches<?> previous) {
+    if (previous != null) {
+      current.set(previous);
+    } else {
+      current.remove();
+    }
+  }
+
+  /**
+   * Stops using the current results (if any), until {@link #resume} is called.
+   *
+   * @return The current results, to give to {@link #resume}
+   */
+  static Matches<?> suspend() {
+    Matches<?> matches = current.get();
+    if (matches != null) {
+      current.remove();
+    }
+    return matches;
+  }
+
+  /** Goes back to using the results from before {@link #suspend}, dropping what was worked out so far. */
+  static void resume(Matches<?> matches) {
+    if (matches != null) {
+      matches.clear();
+      current.set(matches);
+    }
+  }
+
+  /** Returns the current results for this thread if they are for the given sequence, or null otherwise. */
+  @SuppressWarnings("unchecked")
+  static <T> Matches<T> current(List<? extends T> elements) {
+    Matches<?> matches = current.get();
+    return (matches != null && matches.elements == elements) ? (Matches<T>) matches : null;
+  }
+
+  /**
+   * Whether the node patterns match the elements of one sequence, worked out as they are needed.
+   *
+   * @param <T> Type of the elements in the sequence
+   */
+  static final class Matches<T> {
+
+    private final SharedNodePatterns<T> patterns;
+    private final List<? extends T> elements;
+    // For each element, whether each slot matches it (0 if not known yet)
+    private final byte[][] matched;
+
+    private Matches(SharedNodePatterns<T> patterns, List<? extends T> elements) {
+      this.patterns = patterns;
+      this.elements = elements;
+      this.matched = new byte[elements.size()][];
+    }
+
+    private void clear() {
+      Arrays.fill(matched, null);
+    }
+
+    /** Returns whether the node pattern matches the given element, which is at the given position. */
+    boolean matches(NodePattern<T> nodePattern, int position, T node) {
+      Integer slot = patterns.slots.get(nodePattern);
+      if (slot == null) {
+        return node != null && nodePattern.match(node);
+      }
+      return matches(slot, position);
+    }
+
+    private boolean matches(int slot, int position) {
+      byte[] row = matched[position];
+      if (row == null) {
+        row = matched[position] = new byte[patterns.slotPatterns.size()];
+      }
+      if (row[slot] == 0) {
+        T node = elements.get(position);
+        row[slot] = (node != null && patterns.slotPatterns.get(slot).match(node)) ? MATCHED : NOT_MATCHED;
+      }
+      return row[slot] == MATCHED;
+    }
+
+    /** Returns the slots which can match the first element of a match of the pattern (null if not known). */
+    int[] getFirstSlots(SequencePattern<T> pattern) {
+      return patterns.firstSlots.get(pattern);
+    }
+
+    /** Returns whether a match can start at the given position, given the slots from {@link #getFirstSlots}. */
+    boolean canStartAt(int[] firstSlots, int position) {
+      for (int slot : firstSlots) {
+        if (matches(slot, position)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+  }
+
+}
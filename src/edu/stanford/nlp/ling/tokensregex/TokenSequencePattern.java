@@ -186,7 +186,9 @@ public class TokenSequencePattern extends SequencePattern<CoreMap> {
 //      return new TokenSequencePattern(string, nodeSequencePattern);
       // TODO: Check token sequence parser?
       Pair<PatternExpr, SequenceMatchAction<CoreMap>> p = env.parser.parseSequenceWithAction(env, string);
-      return new TokenSequencePattern(string, p.first(), p.second());
+      TokenSequencePattern pattern = new TokenSequencePattern(string, p.first(), p.second());
+      pattern.setCompiledMatching(env.compiledMatching);
+      return pattern;
     } catch (Exception ex) {
       throw new RuntimeException("Error when parsing " + string, ex);
     }
@@ -222,7 +224,9 @@ public class TokenSequencePattern extends SequencePattern<CoreMap> {
         patterns.add(pattern);
       }
       SequencePattern.PatternExpr nodeSequencePattern = new SequencePattern.SequencePatternExpr(patterns);
-      return new TokenSequencePattern(StringUtils.join(strings), nodeSequencePattern);
+      TokenSequencePattern pattern = new TokenSequencePattern(StringUtils.join(strings), nodeSequencePattern);
+      pattern.setCompiledMatching(env.compiledMatching);
+      return pattern;
     } catch (Exception ex) {
       throw new RuntimeException(ex);
     }
@@ -0,0 +1,98 @@
+package edu.stanford.nlp.ling.tokensregex.matcher;
+
+import java.util.*;
+
+/**
+ * Finds every occurrence of the entries of a {@link TrieMap} in a sequence
+ * in a single pass, using the Aho-Corasick algorithm.
+ *
+ * Where {@link TrieMapMatcher#findAllMatches} walks the trie again from each
+ * position of the sequence, this matcher compiles the trie into an automaton
+ * with failure links once, and then reads each element of the sequence only once,
+ * so the time taken is linear in the length of the sequence (plus the number
+ * of matches) no matter how many entries there are.
+ *
+ * The automaton is a snapshot: later changes to the trie are not seen by it.
+ * Once built, it is immutable and can be shared between threads.
+ *
+ * @param <K> Key of the elements of the trie
+ * @param <V> The value
+ */
+public class AhoCorasickMatcher<K,V> {
+
+  private final State<K,V> root;
+
+  private static class State<K,V> {
+    final Map<K, State<K,V>> transitions = new HashMap<>();
+    /* Value of the entry ending at this state, if any */
+    final V value;
+    /* Length of the entry ending at this state */
+    final int depth;
+    /* State for the longest proper suffix of this state which is also a prefix of an entry */
+    State<K,V> failure;
+    /* Nearest state along the failure links which has a value */
+    State<K,V> output;
+
+    State(V value, int depth) {
+      this.value = value;
+      this.depth = depth;
+    }
+  }
+
+  public AhoCorasickMatcher(TrieMap<K,V> trie) {
+    root = new State<>(trie.value, 0);
+    // Copy the trie, breadth first, so that the failure link of each
+    // state is known by the time its children are reached
+    Deque<Map.Entry<TrieMap<K,V>, State<K,V>>> queue = new ArrayDeque<>();
+    queue.add(new AbstractMap.SimpleImmutableEntry<>(trie, root));
+    while ( ! queue.isEmpty()) {
+      Map.Entry<TrieMap<K,V>, State<K,V>> next = queue.remove();
+      TrieMap<K,V> node = next.getKey();
+      State<K,V> state = next.getValue();
+      if (node.children == null) {
+        continue;
+      }
+      for (Map.Entry<K, TrieMap<K,V>> child : node.children.entrySet()) {
+        K key = child.getKey();
+        State<K,V> childState = new State<>(child.getValue().value, state.depth + 1);
+        State<K,V> failure = state.failure;
+        while (failure != null && ! failure.transitions.containsKey(key)) {
+          failure = failure.failure;
+        }
+        childState.failure = (failure == null) ? root : failure.transitions.get(key);
+        childState.output = (childState.failure.value != null) ? childState.failure : childState.failure.output;
+        state.transitions.put(key, childState);
+        queue.add(new AbstractMap.SimpleImmutableEntry<>(child.getValue(), childState));
+      }
+    }
+  }
+
+  /**
+   * Given a sequence to search through (e.g. piece of text would be a sequence of words),
+   * finds all matching sub-sequences that matches entries in the trie.
+   * Null elements of the sequence are allowed, and never match.
+   *
+   * @param list Sequence to search through
+   * @return List of matches, sorted by end position and then longest first
+   */
+  public List<Match<K,V>> findAllMatches(List<K> list) {
+    List<Match<K,V>> matches = new ArrayList<>();
+    State<K,V> state = root;
+    for (int i = 0; i < list.size(); i++) {
+      K key = list.get(i);
+      State<K,V> next = state.transitions.get(key);
+      while (next == null && state != root) {
+        state = state.failure;
+        next = state.transitions.get(key);
+      }
+      state = (next == null) ? root : next;
+      int end = i + 1;
+      for (State<K,V> found = (state.value != null) ? state : state.output; found != null && found.depth > 0; found = found.output) {
+        int begin = end - found.depth;
+        matches.add(new Match<>(list.subList(begin, end), found.value, begin, end));
+      }
+    }
+    return matches;
+  }
+
+}
@@ -0,0 +1,232 @@
+package edu.stanford.nlp.math;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A read-only copy of a (possibly ragged) weight matrix {@code weights[feature][label]}, stored
+ * with less precision than doubles, for classifiers which only need their weights for inference.
+ * With {@link Precision#FLOAT} each weight takes 4 bytes, and with {@link Precision#INT8} it takes
+ * 1 byte: each weight is rounded to one of 255 evenly spaced values, with a separate scale for each
+ * column (that is, each label) among the rows of the same length.
+ * The quantization error of a weight is then at most half of its column's scale, i.e.,
+ * {@code maxAbs(column) / 254}.
+ *
+ * <p>Instances are made with {@link #compact(double[][], Precision)}.</p>
+ */
+public abstract class CompactWeights implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** How weights are stored. */
+  public enum Precision {
+    DOUBLE, FLOAT, INT8;
+
+    /**
+     * Parses a precision name, case-insensitively.  A null name means DOUBLE, which is what
+     * models serialized before there was a choice of precision use.
+     */
+    public static Precision fromString(String name) {
+      if (name == null) {
+        return DOUBLE;
+      }
+      try {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unknown weight precision " + name + "; should be one of double, float, int8");
+      }
+    }
+  }
+
+  CompactWeights() { }
+
+  /** Returns the weight in the given row and column. */
+  public abstract double get(int row, int col);
+
+  /** The number of rows (features). */
+  public abstract int numRows();
+
+  /** The length of a row. */
+  public abstract int rowLength(int row);
+
+  /** The precision the weights are stored in. */
+  public abstract Precision precision();
+
+  /** Copies the weights back into double arrays.  Any precision lost in compacting them stays lost. */
+  public double[][] toArray() {
+    double[][] weights = new double[numRows()][];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = new double[rowLength(i)];
+      for (int j = 0; j < weights[i].length; j++) {
+        weights[i][j] = get(i, j);
+      }
+    }
+    return weights;
+  }
+
+  /**
+   * Returns the largest absolute difference between these weights and the given ones,
+   * as a measure of how much compacting them changed them.
+   */
+  public double maxError(double[][] weights) {
+    double max = 0.0;
+    for (int i = 0; i < weights.length; i++) {
+      for (int j = 0; j < weights[i].length; j++) {
+        max = Math.max(max, Math.abs(weights[i][j] - get(i, j)));
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Makes a compact copy of the given weights.
+   *
+   * @param weights The weights, indexed by feature then label. Rows may have different lengths.
+   * @param precision How to store them. DOUBLE simply wraps the array.
+   */
+  public static CompactWeights compact(double[][] weights, Precision precision) {
+    switch (precision) {
+      case DOUBLE:
+        return new DoubleWeights(weights);
+      case FLOAT:
+        return new FloatWeights(weights);
+      case INT8:
+        return new Int8Weights(weights);
+      default:
+        throw new IllegalArgumentException("Unknown precision " + precision);
+    }
+  }
+
+
+  private static class DoubleWeights extends CompactWeights {
+
+    private static final long serialVersionUID = 1L;
+
+    private final double[][] weights;
+
+    DoubleWeights(double[][] weights) {
+      this.weights = weights;
+    }
+
+    @Override
+    public double get(int row, int col) {
+      return weights[row][col];
+    }
+
+    @Override
+    public int numRows() {
+      return weights.length;
+    }
+
+    @Override
+    public int rowLength(int row) {
+      return weights[row].length;
+    }
+
+    @Override
+    public Precision precision() {
+      return Precision.DOUBLE;
+    }
+
+  }
+
+
+  private static class FloatWeights extends CompactWeights {
+
+    private static final long serialVersionUID = 1L;
+
+    private final float[][] weights;
+
+    FloatWeights(double[][] weights) {
+      this.weights = new float[weights.length][];
+      for (int i = 0; i < weights.length; i++) {
+        this.weights[i] = new float[weights[i].length];
+        for (int j = 0; j < weights[i].length; j++) {
+          this.weights[i][j] = (float) weights[i][j];
+        }
+      }
+    }
+
+    @Override
+    public double get(int row, int col) {
+      return weights[row][col];
+    }
+
+    @Override
+    public int numRows() {
+      return weights.length;
+    }
+
+    @Override
+    public int rowLength(int row) {
+      return weights[row].length;
+    }
+
+    @Override
+    public Precision precision() {
+      return Precision.FLOAT;
+    }
+
+  }
+
+
+  private static class Int8Weights extends CompactWeights {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[][] weights;
+    /** The column scales of each row.  Rows of the same length share one array. */
+    private final float[][] scales;
+
+    Int8Weights(double[][] weights) {
+      // First find the largest magnitude in each column, for each row length
+      Map<Integer, float[]> scalesByLength = new HashMap<>();
+      for (double[] row : weights) {
+        float[] rowScales = scalesByLength.computeIfAbsent(row.length, k -> new float[k]);
+        for (int j = 0; j < row.length; j++) {
+          rowScales[j] = Math.max(rowScales[j], (float) Math.abs(row[j]));
+        }
+      }
+      for (float[] rowScales : scalesByLength.values()) {
+        for (int j = 0; j < rowScales.length; j++) {
+          rowScales[j] /= Byte.MAX_VALUE;
+        }
+      }
+
+      this.weights = new byte[weights.length][];
+      this.scales = new float[weights.length][];
+      for (int i = 0; i < weights.length; i++) {
+        float[] rowScales = scalesByLength.get(weights[i].length);
+        scales[i] = rowScales;
+        this.weights[i] = new byte[weights[i].length];
+        for (int j = 0; j < weights[i].length; j++) {
+          this.weights[i][j] = rowScales[j] == 0.0f ? 0 : (byte) Math.round(weights[i][j] / rowScales[j]);
+        }
+      }
+    }
+
+    @Override
+    public double get(int row, int col) {
+      return weights[row][col] * scales[row][col];
+    }
+
+    @Override
+    public int numRows() {
+      return weights.length;
+    }
+
+    @Override
+    public int rowLength(int row) {
+      return weights[row].length;
+    }
+
+    @Override
+    public Precision precision() {
+      return Precision.INT8;
+    }
+
+  }
+
+}
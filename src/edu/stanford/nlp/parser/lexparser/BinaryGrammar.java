@@ -32,6 +32,8 @@ public class BinaryGrammar implements Serializable, Iterable<BinaryRule>  {
   private transient BinaryRule[][] splitRulesWithLC;
   private transient BinaryRule[][] splitRulesWithRC;
   //  private transient BinaryRule[][] splitRulesWithParent = null;
+  private transient volatile PackedRules[] packedRulesWithLC;
+  private transient volatile PackedRules[] packedRulesWithRC;
   private transient Map<BinaryRule,BinaryRule> ruleMap;
   // for super speed! (maybe)
   private transient boolean[] synthetic;
@@ -73,6 +75,8 @@ public class BinaryGrammar implements Serializable, Iterable<BinaryRule>  {
 
     splitRulesWithLC = new BinaryRule[numStates][];
     splitRulesWithRC = new BinaryRule[numStates][];
+    packedRulesWithLC = null;
+    packedRulesWithRC = null;
     //    splitRulesWithParent = new BinaryRule[numStates][];
     // rules accessed by their "synthetic" child or left child if none
     for (int state = 0; state < numStates; state++) {
@@ -128,6 +132,65 @@ public class BinaryGrammar implements Serializable, Iterable<BinaryRule>  {
   //    return splitRulesWithParent[state];
   //  }
 
+  /**
+   * The split rules of one state, as parallel arrays rather than
+   * BinaryRule objects, so that the parser can walk them without
+   * chasing a pointer per rule.  {@code child[i]} is the other child
+   * of the i-th rule: the right child for rules indexed by left
+   * child, and vice versa.
+   */
+  static class PackedRules {
+    final int[] child;
+    final int[] parent;
+    final float[] score;
+
+    PackedRules(BinaryRule[] rules, boolean byLeftChild) {
+      child = new int[rules.length];
+      parent = new int[rules.length];
+      score = new float[rules.length];
+      for (int i = 0; i < rules.length; i++) {
+        child[i] = byLeftChild ? rules[i].rightChild : rules[i].leftChild;
+        parent[i] = rules[i].parent;
+        score[i] = rules[i].score;
+      }
+    }
+
+    int size() {
+      return child.length;
+    }
+  }
+
+  /**
+   * {@link #splitRulesWithLC} for every state, packed into parallel arrays.
+   * Built on first use, so that it sees the final rule scores.
+   */
+  PackedRules[] packedRulesWithLC() {
+    PackedRules[] packed = packedRulesWithLC;
+    if (packed == null) {
+      packed = packRules(splitRulesWithLC, true);
+      packedRulesWithLC = packed;
+    }
+    return packed;
+  }
+
+  /** As {@link #packedRulesWithLC}, for {@link #splitRulesWithRC} */
+  PackedRules[] packedRulesWithRC() {
+    PackedRules[] packed = packedRulesWithRC;
+    if (packed == null) {
+      packed = packRules(splitRulesWithRC, false);
+      packedRulesWithRC = packed;
+    }
+    return packed;
+  }
+
+  private static PackedRules[] packRules(BinaryRule[][] splitRules, boolean byLeftChild) {
+    PackedRules[] packed = new PackedRules[splitRules.length];
+    for (int state = 0; state < splitRules.length; state++) {
+      packed[state] = new PackedRules(splitRules[state], byLeftChild);
+    }
+    return packed;
+  }
+
   // the sensible version
 
   public double scoreRule(BinaryRule br) {
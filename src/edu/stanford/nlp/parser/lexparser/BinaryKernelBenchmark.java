@@ -0,0 +1,111 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.SentenceUtils;
+import edu.stanford.nlp.parser.common.ParserQuery;
+import edu.stanford.nlp.util.PropertiesUtils;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.logging.Redwood;
+
+/**
+ * Times the PCFG parser with the rule by rule binary loops and with the
+ * packed binary kernel (see {@link TestOptions#packedBinaryKernel}),
+ * and checks that the two find the same parses.
+ * <br>
+ * Options:
+ * <ul>
+ * <li> {@code -model}: the parser to load.  Defaults to the English PCFG.
+ *      Its dependency model, if any, is not used.
+ * <li> {@code -textFile}: sentences to parse, one tokenized sentence per line.
+ *      Defaults to a few sentences of WSJ length.
+ * <li> {@code -iterations}: the number of times to parse the sentences with
+ *      each kernel, after as many iterations of warmup.  Defaults to 5.
+ * </ul>
+ */
+public class BinaryKernelBenchmark {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(BinaryKernelBenchmark.class);
+
+  private static final String[] DEFAULT_SENTENCES = {
+    "Pierre Vinken , 61 years old , will join the board as a nonexecutive director Nov. 29 .",
+    "Mr. Vinken is chairman of Elsevier N.V. , the Dutch publishing group .",
+    "Some `` circuit breakers '' installed after the October 1987 crash failed their first test , traders say , unable to cool the selling panic in both stocks and futures .",
+    "The company said it expects the sale of its consumer products unit to be completed by the end of the year , subject to regulatory approval .",
+    "Analysts said the drop in third-quarter profit was larger than expected , and shares of the company fell sharply in heavy trading on the Big Board .",
+  };
+
+  private BinaryKernelBenchmark() {} // static main method only
+
+  private static long parseAll(LexicalizedParser parser, List<List<HasWord>> sentences, List<String> results) {
+    long start = System.nanoTime();
+    ParserQuery query = parser.parserQuery();
+    for (List<HasWord> sentence : sentences) {
+      query.parse(sentence);
+      if (results != null) {
+        results.add(query.getBestParse() + " " + query.getPCFGScore());
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  public static void main(String[] args) {
+    Properties props = StringUtils.argsToProperties(args);
+    String model = props.getProperty("model", LexicalizedParser.DEFAULT_PARSER_LOC);
+    String textFile = props.getProperty("textFile");
+    int iterations = PropertiesUtils.getInt(props, "iterations", 5);
+
+    LexicalizedParser parser = LexicalizedParser.loadModel(model);
+    parser.getOp().doDep = false;
+
+    List<List<HasWord>> sentences = new ArrayList<>();
+    Iterable<String> lines = (textFile == null) ? Arrays.asList(DEFAULT_SENTENCES) : IOUtils.readLines(textFile);
+    int words = 0;
+    for (String line : lines) {
+      line = line.trim();
+      if ( ! line.isEmpty()) {
+        List<HasWord> sentence = SentenceUtils.toWordList(line.split("\\s+"));
+        sentences.add(sentence);
+        words += sentence.size();
+      }
+    }
+    log.info("Parsing " + sentences.size() + " sentences of average length " + ((float) words / sentences.size()));
+
+    List<String> scalarResults = new ArrayList<>();
+    List<String> packedResults = new ArrayList<>();
+    long scalarTime = 0;
+    long packedTime = 0;
+    for (int i = 0; i < iterations * 2; i++) {
+      boolean timed = (i >= iterations);
+      // alternate the kernels, so that both see the same state of the JIT
+      parser.getOp().testOptions.packedBinaryKernel = false;
+      long time = parseAll(parser, sentences, i == 0 ? scalarResults : null);
+      if (timed) {
+        scalarTime += time;
+      }
+      parser.getOp().testOptions.packedBinaryKernel = true;
+      time = parseAll(parser, sentences, i == 0 ? packedResults : null);
+      if (timed) {
+        packedTime += time;
+      }
+    }
+
+    if ( ! scalarResults.equals(packedResults)) {
+      log.warn("The two kernels found different parses!");
+      for (int i = 0; i < scalarResults.size(); i++) {
+        if ( ! scalarResults.get(i).equals(packedResults.get(i))) {
+          log.warn("  " + scalarResults.get(i) + "\n  " + packedResults.get(i));
+        }
+      }
+    }
+    log.info(String.format("Scalar binary loops: %.1f ms per iteration", scalarTime / 1e6 / iterations));
+    log.info(String.format("Packed binary kernel: %.1f ms per iteration", packedTime / 1e6 / iterations));
+  }
+
+}
@@ -0,0 +1,162 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pool of the per-span rows of parser charts (the {@code float[numStates]}
+ * of {@code iScore[start][end]}, and so on), shared by all the parsers in the JVM.
+ *
+ * A chart for a sentence of length n has about n<sup>2</sup>/2 such rows, so a
+ * single long sentence used to leave every parser thread holding a very large chart,
+ * and every change in chart size made a lot of garbage.  Instead, parsers take their
+ * rows from here and give them back when their chart is resized, so that the rows a
+ * long sentence needed can be reused by whichever thread next needs them.
+ * The rows kept in the pool are capped at a total number of bytes; rows given back
+ * beyond that are left to the garbage collector.
+ *
+ * Rows taken from the arena are not cleared; parsers initialize their charts anyway.
+ */
+public class ChartArena {
+
+  /** The arena all the parsers share */
+  public static final ChartArena GLOBAL = new ChartArena(128L << 20);
+
+  private final Map<Integer, ArrayDeque<float[]>> floatRows = new HashMap<>();
+  private final Map<Integer, ArrayDeque<int[]>> intRows = new HashMap<>();
+
+  private long maxBytes;
+  private long bytes; // = 0
+
+  private long rowsReused; // = 0
+  private long rowsAllocated; // = 0
+
+  public ChartArena(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Take rows of the given length, reusing pooled rows where possible.
+   * The contents of the rows are arbitrary.
+   */
+  public float[][] takeFloatRows(int rowLength, int count) {
+    float[][] rows = new float[count][];
+    int reused = 0;
+    synchronized (this) {
+      ArrayDeque<float[]> pool = floatRows.get(rowLength);
+      while (pool != null && reused < count && ! pool.isEmpty()) {
+        rows[reused++] = pool.pop();
+      }
+      bytes -= (long) reused * rowBytes(rowLength);
+      rowsReused += reused;
+      rowsAllocated += count - reused;
+    }
+    for (int i = reused; i < count; ++i) {
+      rows[i] = new float[rowLength];
+    }
+    return rows;
+  }
+
+  /** As {@link #takeFloatRows}, for int rows */
+  public int[][] takeIntRows(int rowLength, int count) {
+    int[][] rows = new int[count][];
+    int reused = 0;
+    synchronized (this) {
+      ArrayDeque<int[]> pool = intRows.get(rowLength);
+      while (pool != null && reused < count && ! pool.isEmpty()) {
+        rows[reused++] = pool.pop();
+      }
+      bytes -= (long) reused * rowBytes(rowLength);
+      rowsReused += reused;
+      rowsAllocated += count - reused;
+    }
+    for (int i = reused; i < count; ++i) {
+      rows[i] = new int[rowLength];
+    }
+    return rows;
+  }
+
+  /**
+   * Give back the rows of a chart indexed [start][end], as created by the parsers
+   * (null rows are skipped).  The caller must not use them again.
+   */
+  public synchronized void giveFloatChart(float[][][] chart) {
+    if (chart == null) {
+      return;
+    }
+    for (float[][] startRows : chart) {
+      for (float[] row : startRows) {
+        if (row == null) {
+          continue;
+        }
+        long size = rowBytes(row.length);
+        if (bytes + size > maxBytes) {
+          return;
+        }
+        floatRows.computeIfAbsent(row.length, k -> new ArrayDeque<>()).push(row);
+        bytes += size;
+      }
+    }
+  }
+
+  /** As {@link #giveFloatChart}, for int charts */
+  public synchronized void giveIntChart(int[][][] chart) {
+    if (chart == null) {
+      return;
+    }
+    for (int[][] startRows : chart) {
+      for (int[] row : startRows) {
+        if (row == null) {
+          continue;
+        }
+        long size = rowBytes(row.length);
+        if (bytes + size > maxBytes) {
+          return;
+        }
+        intRows.computeIfAbsent(row.length, k -> new ArrayDeque<>()).push(row);
+        bytes += size;
+      }
+    }
+  }
+
+  /** The size of a float or int row: an array header and 4 bytes per element */
+  private static long rowBytes(int rowLength) {
+    return 16 + 4L * rowLength;
+  }
+
+  /** Set the most bytes of rows to keep pooled, dropping pooled rows if need be */
+  public synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    if (bytes > maxBytes) {
+      clear();
+    }
+  }
+
+  public synchronized long maxBytes() {
+    return maxBytes;
+  }
+
+  /** The bytes (approximately) of the rows now pooled */
+  public synchronized long bytes() {
+    return bytes;
+  }
+
+  /** The number of rows taken from the pool rather than allocated */
+  public synchronized long rowsReused() {
+    return rowsReused;
+  }
+
+  /** The number of rows which had to be allocated */
+  public synchronized long rowsAllocated() {
+    return rowsAllocated;
+  }
+
+  /** Drop all the pooled rows */
+  public synchronized void clear() {
+    floatRows.clear();
+    intRows.clear();
+    bytes = 0;
+  }
+
+}
@@ -0,0 +1,152 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.Map;
+
+import edu.stanford.nlp.trees.TreebankLanguagePack;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * Projects a PCFG onto a much smaller grammar over the basic categories
+ * of its states, for {@link CoarseToFinePCFGParser}.  Phrasal states are
+ * mapped to their basic category ({@code NP^S~NN} and {@code NP-TMP} both
+ * become {@code NP}, {@code @NP^S|DT} becomes {@code @NP}); tags are left
+ * alone, so that the coarse grammar can share the lexicon of the fine one.
+ *
+ * The probability of a coarse rule is the probability of the fine rules
+ * which project onto it, averaged over the fine parents, weighted by how
+ * often the fine grammar is expected to use each parent.  (Taking the best
+ * fine rule instead makes the coarse grammar useless for pruning: the many
+ * fine rules with probability one, such as those of binarized states, give
+ * coarse unary chains which cost nothing.)
+ */
+public class CoarseGrammarProjection implements GrammarProjection {
+
+  private final BinaryGrammar sourceBG;
+  private final UnaryGrammar sourceUG;
+
+  private final Index<String> targetIndex;
+  private final BinaryGrammar targetBG;
+  private final UnaryGrammar targetUG;
+
+  private final int[] projection;
+
+  /** How many times to propagate the expected counts of the states down the grammar */
+  private static final int EXPECTED_COUNT_ITERATIONS = 30;
+
+  public CoarseGrammarProjection(BinaryGrammar bg, UnaryGrammar ug, Index<String> stateIndex, Index<String> tagIndex, String goalStr, TreebankLanguagePack tlp) {
+    sourceBG = bg;
+    sourceUG = ug;
+
+    targetIndex = new HashIndex<>();
+    projection = new int[stateIndex.size()];
+    for (int state = 0; state < stateIndex.size(); state++) {
+      String label = stateIndex.get(state);
+      String coarse = label;
+      if ( ! tagIndex.contains(label)) {
+        coarse = tlp.basicCategory(label);
+        // don't let a phrasal state turn into a tag
+        if (coarse.isEmpty() || tagIndex.contains(coarse)) {
+          coarse = label;
+        }
+      }
+      projection[state] = targetIndex.addToIndex(coarse);
+    }
+
+    double[] weights = expectedCounts(bg, ug, stateIndex.size(), stateIndex.indexOf(goalStr));
+    double[] coarseWeights = new double[targetIndex.size()];
+    for (int state = 0; state < weights.length; state++) {
+      coarseWeights[projection[state]] += weights[state];
+    }
+
+    Map<BinaryRule, double[]> binaryRules = Generics.newHashMap();
+    for (BinaryRule rule : bg) {
+      BinaryRule coarse = new BinaryRule(projection[rule.parent], projection[rule.leftChild], projection[rule.rightChild]);
+      binaryRules.computeIfAbsent(coarse, k -> new double[1])[0] += weights[rule.parent] * Math.exp(rule.score);
+    }
+    targetBG = new BinaryGrammar(targetIndex);
+    for (Map.Entry<BinaryRule, double[]> entry : binaryRules.entrySet()) {
+      BinaryRule rule = entry.getKey();
+      rule.score = (float) Math.log(entry.getValue()[0] / coarseWeights[rule.parent]);
+      targetBG.addRule(rule);
+    }
+    targetBG.splitRules();
+
+    Map<UnaryRule, double[]> unaryRules = Generics.newHashMap();
+    for (UnaryRule rule : ug) {
+      UnaryRule coarse = new UnaryRule(projection[rule.parent], projection[rule.child]);
+      if (coarse.parent == coarse.child) {
+        continue;
+      }
+      unaryRules.computeIfAbsent(coarse, k -> new double[1])[0] += weights[rule.parent] * Math.exp(rule.score);
+    }
+    targetUG = new UnaryGrammar(targetIndex);
+    for (Map.Entry<UnaryRule, double[]> entry : unaryRules.entrySet()) {
+      UnaryRule rule = entry.getKey();
+      rule.score = (float) Math.log(entry.getValue()[0] / coarseWeights[rule.parent]);
+      targetUG.addRule(rule);
+    }
+    targetUG.purgeRules();
+  }
+
+  /**
+   * The number of times each state is expected to occur in a parse, found by
+   * pushing the counts down from the goal state through the rules a fixed
+   * number of times.  Every state gets a tiny count on top, so that states
+   * the propagation never reaches still count for something.
+   */
+  private static double[] expectedCounts(BinaryGrammar bg, UnaryGrammar ug, int numStates, int goal) {
+    double[] counts = new double[numStates];
+    for (int iteration = 0; iteration < EXPECTED_COUNT_ITERATIONS; iteration++) {
+      double[] next = new double[numStates];
+      if (goal >= 0) {
+        next[goal] = 1.0;
+      }
+      for (BinaryRule rule : bg) {
+        double count = counts[rule.parent] * Math.exp(rule.score);
+        next[rule.leftChild] += count;
+        next[rule.rightChild] += count;
+      }
+      for (UnaryRule rule : ug) {
+        next[rule.child] += counts[rule.parent] * Math.exp(rule.score);
+      }
+      counts = next;
+    }
+    for (int state = 0; state < numStates; state++) {
+      counts[state] += 1e-6;
+    }
+    return counts;
+  }
+
+  @Override
+  public int project(int state) {
+    return projection[state];
+  }
+
+  @Override
+  public UnaryGrammar sourceUG() {
+    return sourceUG;
+  }
+
+  @Override
+  public BinaryGrammar sourceBG() {
+    return sourceBG;
+  }
+
+  @Override
+  public UnaryGrammar targetUG() {
+    return targetUG;
+  }
+
+  @Override
+  public BinaryGrammar targetBG() {
+    return targetBG;
+  }
+
+  /** The states of the coarse grammar */
+  public Index<String> targetIndex() {
+    return targetIndex;
+  }
+
+}
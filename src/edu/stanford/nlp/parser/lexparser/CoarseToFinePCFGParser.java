@@ -0,0 +1,172 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.List;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+import edu.stanford.nlp.util.logging.Redwood;
+
+/**
+ * Coarse-to-fine PCFG parsing.  Each sentence is first parsed with a
+ * {@link CoarseGrammarProjection coarse projection} of the grammar,
+ * which has a small fraction of the states and so is quick to parse
+ * with.  The coarse inside and outside scores give, for every span and
+ * coarse state, the score of the best coarse parse using that state over
+ * that span (the max-marginal; this is the Viterbi analogue of a posterior,
+ * as the parsers here work with maxima rather than sums).
+ * The fine grammar is then run over the chart, skipping every cell in
+ * which no coarse state comes within {@code op.testOptions.coarseToFineThreshold}
+ * of the best coarse parse, and discarding the fine states built by the binary
+ * rules of a cell whose coarse projection does not.
+ *
+ * Unlike the {@link IterativeCKYPCFGParser}, this can lose the best parse,
+ * if it uses a state which the threshold prunes.  If the pruned chart has no
+ * parse at all, the sentence is parsed again without pruning.
+ */
+public class CoarseToFinePCFGParser extends ExhaustivePCFGParser {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(CoarseToFinePCFGParser.class);
+
+  private final CoarseGrammarProjection projection;
+  private final ExhaustivePCFGParser coarseParser;
+
+  /** Whether the current fine parse is being pruned */
+  private boolean pruning; // = false
+  /** Set while parse() is running, so that its recovery parse doesn't run the coarse parser again */
+  private boolean parsing; // = false
+  /** The lowest coarse max-marginal which survives pruning in the current sentence */
+  private float threshold;
+  /** The number of chart cells skipped in the last sentence */
+  private int prunedCells;
+  /** The number of fine states discarded from the chart in the last sentence */
+  private int prunedStates;
+
+  public CoarseToFinePCFGParser(BinaryGrammar bg, UnaryGrammar ug, Lexicon lex, Options op, Index<String> stateIndex, Index<String> wordIndex, Index<String> tagIndex, CoarseGrammarProjection projection) {
+    super(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
+    this.projection = projection;
+    this.coarseParser = new CoarsePCFGParser(projection.targetBG(), projection.targetUG(), lex, op, projection.targetIndex(), wordIndex, tagIndex);
+  }
+
+  /** The coarse parser computes outside scores even when the fine one doesn't */
+  private static class CoarsePCFGParser extends ExhaustivePCFGParser {
+    CoarsePCFGParser(BinaryGrammar bg, UnaryGrammar ug, Lexicon lex, Options op, Index<String> stateIndex, Index<String> wordIndex, Index<String> tagIndex) {
+      super(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
+    }
+
+    @Override
+    protected boolean computesOutsideScores() {
+      return true;
+    }
+  }
+
+  @Override
+  public boolean parse(List<? extends HasWord> sentence) {
+    if (parsing) {
+      // the recovery parse of the fine parser, which keeps the same pruning
+      return super.parse(sentence);
+    }
+    parsing = true;
+    prunedCells = 0;
+    prunedStates = 0;
+    try {
+      pruning = coarseParser.parse(sentence);
+      if (pruning) {
+        threshold = coarseParser.bestScore + op.testOptions.coarseToFineThreshold;
+      } else if (op.testOptions.verbose) {
+        log.info("Coarse grammar found no parse; parsing without pruning");
+      }
+      boolean succeeded = super.parse(sentence);
+      if ( ! succeeded && pruning) {
+        if (op.testOptions.verbose) {
+          log.info("Pruned chart has no parse; parsing again without pruning");
+        }
+        pruning = false;
+        this.sentence = null; // so that the parse starts again without flooded tags
+        succeeded = super.parse(sentence);
+      }
+      return succeeded;
+    } finally {
+      pruning = false;
+      parsing = false;
+    }
+  }
+
+  @Override
+  void doInsideScores() {
+    if ( ! pruning) {
+      super.doInsideScores();
+      return;
+    }
+    int cells = 0;
+    for (int diff = 2; diff <= length; diff++) {
+      if (Thread.interrupted()) {
+        throw new RuntimeInterruptedException();
+      }
+      // as in ExhaustivePCFGParser, the boundary symbol only combines with the whole sentence
+      for (int start = 0; start < ((diff == length) ? 1: length - diff); start++) {
+        int end = start + diff;
+        cells++;
+        if ( ! cellSurvives(start, end)) {
+          prunedCells++;
+          continue;
+        }
+        doInsideChartCell(diff, start);
+      }
+    }
+    if (op.testOptions.verbose) {
+      log.info("Coarse-to-fine pruning skipped " + prunedCells + " of " + cells + " chart cells");
+    }
+  }
+
+  /** Whether any coarse state over [start, end) has a max-marginal above the threshold */
+  private boolean cellSurvives(int start, int end) {
+    float[] coarseIScore = coarseParser.iScore[start][end];
+    float[] coarseOScore = coarseParser.oScore[start][end];
+    for (int state = 0; state < coarseIScore.length; state++) {
+      if (coarseIScore[state] + coarseOScore[state] >= threshold) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Removes the fine states built by binary rules over [start, end) whose
+   * coarse projection falls below the threshold.  They stay in the narrow
+   * and wide extents, which only ever need to be conservative.
+   * This is done before the unary rules of the cell, so that every state
+   * left in the chart can still be traced back to its children.
+   */
+  @Override
+  void pruneChartCell(int start, int end) {
+    if ( ! pruning) {
+      return;
+    }
+    float[] coarseIScore = coarseParser.iScore[start][end];
+    float[] coarseOScore = coarseParser.oScore[start][end];
+    float[] iScore_start_end = iScore[start][end];
+    for (int state = 0; state < numStates; state++) {
+      if (iScore_start_end[state] == Float.NEGATIVE_INFINITY) {
+        continue;
+      }
+      int coarse = projection.project(state);
+      if (coarseIScore[coarse] + coarseOScore[coarse] < threshold) {
+        iScore_start_end[state] = Float.NEGATIVE_INFINITY;
+        prunedStates++;
+      }
+    }
+  }
+
+  /** The number of chart cells which pruning skipped in the last sentence parsed. */
+  int prunedCells() {
+    return prunedCells;
+  }
+
+  /** The number of fine states which pruning discarded from the chart in the last sentence parsed. */
+  int prunedStates() {
+    return prunedStates;
+  }
+
+}
@@ -107,6 +107,10 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
   protected final int numStates;
   protected int arraySize = 0;
 
+  // scratch space for doPackedBinaryRules, indexed by split point
+  private float[] splitColumn;
+  private float[][] splitRows;
+
   /**
    * When you want to force the parser to parse a particular
    * subsequence into a particular state.  Parses will only be made
@@ -334,6 +338,14 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
   protected final boolean[] isTag; // this records whether grammar states (stateIndex) correspond to POS tags
 
 
+  /**
+   * Whether parse() goes on to compute the outside scores, which the
+   * factored parser needs.
+   */
+  protected boolean computesOutsideScores() {
+    return op.doDep && ! op.testOptions.useFastFactored;
+  }
+
   public boolean parse(List<? extends HasWord> sentence) {
     lr = null; // better nullPointer exception than silent error
     //System.out.println("is it a taggedword?" + (sentence.get(0) instanceof TaggedWord)); //debugging
@@ -350,6 +362,8 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
     length = sentence.size();
     if (length > arraySize) {
       considerCreatingArrays(length);
+    } else {
+      considerShrinkingArrays(length);
     }
     int goal = stateIndex.indexOf(goalStr);
     if (op.testOptions.verbose) {
@@ -425,7 +439,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
     for (int start = 0; start < length; start++) {
       for (int end = start + 1; end <= length; end++) {
         Arrays.fill(iScore[start][end], Float.NEGATIVE_INFINITY);
-        if (op.doDep && ! op.testOptions.useFastFactored) {
+        if (computesOutsideScores()) {
           Arrays.fill(oScore[start][end], Float.NEGATIVE_INFINITY);
         }
         if (op.testOptions.lengthNormalization) {
@@ -481,7 +495,7 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
       //log.info("Trying recovery parse...");
       return parse(sentence);
     }
-    if ( ! op.doDep || op.testOptions.useFastFactored) {
+    if ( ! computesOutsideScores()) {
       return succeeded;
     }
     if (op.testOptions.verbose) {
@@ -548,6 +562,8 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser  {
     length = lr.getNumNodes() - 1; //Subtract 1 since considerCreatingArrays will add the final interstice
     if (length > arraySize)
       considerCreatingArrays(length);
+    else
+      considerShrinkingArrays(length);
 
 
     int goal = stateIndex.indexOf(goalStr);
@@ -852,7 +868,7 @@ oScore[split][end][br.rightChild] = totR;
   } // end doInsideScores()
 
 
-  private void doInsideChartCell(final int diff, final int start) {
+  void doInsideChartCell(final int diff, final int start) {
     final boolean lengthNormalization = op.testOptions.lengthNormalization;
     if (spillGuts) {
       tick("Binaries for span " + diff + " start " + start + " ...");
@@ -878,6 +894,13 @@ oScore[split][end][br.rightChild] = totR;
     float[][] iScore_start = iScore[start];
     float[] iScore_start_end = iScore_start[end];
 
+    if (op.testOptions.packedBinaryKernel && constraints == null && ! lengthNormalization) {
+      doPackedBinaryRules(start, end);
+      pruneChartCell(start, end);
+      doInsideUnaryRules(start, end, constraints);
+      return;
+    }
+
     for (int leftState = 0; leftState < numStates; leftState++) {
       int narrowR = narrowRExtent_start[leftState];
       if (narrowR >= end) {  // can this left constituent leave space for a right constituent?
@@ -1135,10 +1158,212 @@ oScore[split][end][br.rightChild] = totR;
         } // end if foundBetter
       } // for rightRules
     } // for rightState
+    pruneChartCell(start, end);
     if (spillGuts) {
       tick("Unaries for span " + diff + "...");
     }
     // do unary rules -- one could promote this loop and put start inside
+    doInsideUnaryRules(start, end, constraints);
+  }
+
+  /**
+   * Called for each cell of the chart between its binary and its unary
+   * rules, so that a subclass can remove states from the cell before the
+   * unary rules build on them.  Does nothing here.
+   */
+  void pruneChartCell(int start, int end) {
+  }
+
+
+  /**
+   * The binary rules for one cell of the chart, without constraints or
+   * length normalization.  This finds exactly the scores the rule by rule
+   * loops in {@link #doInsideChartCell} do, in the same order, but is laid
+   * out to be cheaper for the JIT and the memory system:
+   * <ul>
+   * <li> The rules come from {@link BinaryGrammar.PackedRules}, parallel
+   *      arrays of child, parent and score, instead of BinaryRule objects.
+   * <li> The scores of the shared child over each split point are copied
+   *      into a dense array the first time a rule of that child needs them,
+   *      instead of being read from a different chart row for every rule.
+   * <li> The rows [split, end) of the cell are looked up once per cell.
+   * </ul>
+   * The loops over split points keep the test for an impossible child
+   * score.  Unrolled, branch free versions of them were tried, but they
+   * were slower: most split points are impossible, and the test saves
+   * loading the score of the other child from a scattered chart row.
+   */
+  private void doPackedBinaryRules(final int start, final int end) {
+    int[] narrowRExtent_start = narrowRExtent[start];
+    int[] wideRExtent_start = wideRExtent[start];
+    int[] narrowLExtent_end = narrowLExtent[end];
+    int[] wideLExtent_end = wideLExtent[end];
+    float[][] iScore_start = iScore[start];
+    float[] iScore_start_end = iScore_start[end];
+
+    if (splitColumn == null || splitColumn.length < end) {
+      splitColumn = new float[arraySize + 1];
+      splitRows = new float[arraySize + 1][];
+    }
+    final float[] column = splitColumn;
+    // splitRows[split] is the chart row [split, end]
+    final float[][] rows = splitRows;
+    for (int split = start + 1; split < end; split++) {
+      rows[split] = iScore[split][end];
+    }
+
+    BinaryGrammar.PackedRules[] packedWithLC = bg.packedRulesWithLC();
+    for (int leftState = 0; leftState < numStates; leftState++) {
+      int narrowR = narrowRExtent_start[leftState];
+      if (narrowR >= end) {  // can this left constituent leave space for a right constituent?
+        continue;
+      }
+      BinaryGrammar.PackedRules rules = packedWithLC[leftState];
+      int numRules = rules.size();
+      if (numRules == 0) {
+        continue;
+      }
+      int gatheredTo = narrowR - 1;
+      int[] rightChildren = rules.child;
+      int[] parents = rules.parent;
+      float[] scores = rules.score;
+      for (int r = 0; r < numRules; r++) {
+        int rightChild = rightChildren[r];
+        int narrowL = narrowLExtent_end[rightChild];
+        if (narrowL < narrowR) { // can this right constituent fit next to the left constituent?
+          continue;
+        }
+        int min2 = wideLExtent_end[rightChild];
+        int min = (narrowR > min2 ? narrowR : min2);
+        // reread for every rule: a rule may have just made leftState possible over this cell
+        int max1 = wideRExtent_start[leftState];
+        int max = (max1 < narrowL ? max1 : narrowL);
+        if (min > max) { // can this left constituent stretch far enough to reach the right constituent?
+          continue;
+        }
+        for (int split = gatheredTo + 1; split <= max; split++) {
+          column[split] = iScore_start[split][leftState];
+        }
+        if (max > gatheredTo) {
+          gatheredTo = max;
+        }
+        int parentState = parents[r];
+        float oldIScore = iScore_start_end[parentState];
+        float bestIScore = maxOverSplitsLeft(scores[r], column, rows, rightChild, min, max, oldIScore);
+        if (bestIScore > oldIScore) { // this way of making "parentState" is better than previous
+          iScore_start_end[parentState] = bestIScore;
+          if (oldIScore == Float.NEGATIVE_INFINITY) {
+            updateExtents(start, end, parentState, narrowRExtent_start, wideRExtent_start, narrowLExtent_end, wideLExtent_end);
+          }
+        }
+      }
+    }
+
+    BinaryGrammar.PackedRules[] packedWithRC = bg.packedRulesWithRC();
+    for (int rightState = 0; rightState < numStates; rightState++) {
+      int narrowL = narrowLExtent_end[rightState];
+      if (narrowL <= start) {
+        continue;
+      }
+      BinaryGrammar.PackedRules rules = packedWithRC[rightState];
+      int numRules = rules.size();
+      if (numRules == 0) {
+        continue;
+      }
+      int gatheredFrom = narrowL + 1;
+      int[] leftChildren = rules.child;
+      int[] parents = rules.parent;
+      float[] scores = rules.score;
+      for (int r = 0; r < numRules; r++) {
+        int leftChild = leftChildren[r];
+        int narrowR = narrowRExtent_start[leftChild];
+        if (narrowR > narrowL) {
+          continue;
+        }
+        int min2 = wideLExtent_end[rightState];
+        int min = (narrowR > min2 ? narrowR : min2);
+        int max1 = wideRExtent_start[leftChild];
+        int max = (max1 < narrowL ? max1 : narrowL);
+        if (min > max) {
+          continue;
+        }
+        for (int split = min; split < gatheredFrom; split++) {
+          column[split] = rows[split][rightState];
+        }
+        if (min < gatheredFrom) {
+          gatheredFrom = min;
+        }
+        int parentState = parents[r];
+        float oldIScore = iScore_start_end[parentState];
+        float bestIScore = maxOverSplitsRight(scores[r], iScore_start, leftChild, column, min, max, oldIScore);
+        if (bestIScore > oldIScore) { // this way of making "parentState" is better than previous
+          iScore_start_end[parentState] = bestIScore;
+          if (oldIScore == Float.NEGATIVE_INFINITY) {
+            updateExtents(start, end, parentState, narrowRExtent_start, wideRExtent_start, narrowLExtent_end, wideLExtent_end);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The best of {@code best} and {@code (pS + left[split]) + rows[split][rightChild]}
+   * for split from min to max inclusive.
+   */
+  private static float maxOverSplitsLeft(float pS, float[] left, float[][] rows, int rightChild,
+                                         int min, int max, float best) {
+    for (int split = min; split <= max; split++) {
+      float lS = left[split];
+      if (lS == Float.NEGATIVE_INFINITY) {
+        continue;
+      }
+      float tot = pS + lS + rows[split][rightChild];
+      best = (tot > best ? tot : best);
+    }
+    return best;
+  }
+
+  /**
+   * The best of {@code best} and {@code (pS + rows[split][leftChild]) + right[split]}
+   * for split from min to max inclusive.
+   */
+  private static float maxOverSplitsRight(float pS, float[][] rows, int leftChild, float[] right,
+                                          int min, int max, float best) {
+    for (int split = min; split <= max; split++) {
+      float rS = right[split];
+      if (rS == Float.NEGATIVE_INFINITY) {
+        continue;
+      }
+      float tot = pS + rows[split][leftChild] + rS;
+      best = (tot > best ? tot : best);
+    }
+    return best;
+  }
+
+  /** Records that parentState has just become possible over [start, end) */
+  private static void updateExtents(int start, int end, int parentState,
+                                    int[] narrowRExtent_start, int[] wideRExtent_start,
+                                    int[] narrowLExtent_end, int[] wideLExtent_end) {
+    if (start > narrowLExtent_end[parentState]) {
+      narrowLExtent_end[parentState] = wideLExtent_end[parentState] = start;
+    } else if (start < wideLExtent_end[parentState]) {
+      wideLExtent_end[parentState] = start;
+    }
+    if (end < narrowRExtent_start[parentState]) {
+      narrowRExtent_start[parentState] = wideRExtent_start[parentState] = end;
+    } else if (end > wideRExtent_start[parentState]) {
+      wideRExtent_start[parentState] = end;
+    }
+  }
+
+  private void doInsideUnaryRules(final int start, final int end, final List<ParserConstraint> constraints) {
+    final boolean lengthNormalization = op.testOptions.lengthNormalization;
+    int[] narrowRExtent_start = narrowRExtent[start];
+    int[] wideRExtent_start = wideRExtent[start];
+    int[] narrowLExtent_end = narrowLExtent[end];
+    int[] wideLExtent_end = wideLExtent[end];
+    float[] iScore_start_end = iScore[start][end];
+
     for (int state = 0; state < numStates; state++) {
       float iS = iScore_start_end[state];
       if (iS == Float.NEGATIVE_INFINITY) {
@@ -2206,6 +2431,39 @@ oScore[split][end][br.rightChild] = totR;
     }
   }
 
+  /**
+   * Charts which have grown for a long sentence are shrunk again
+   * when a sentence of less than half their size comes along, giving
+   * their rows back to the {@link ChartArena}, so that one long
+   * sentence does not keep every parser's charts large.
+   * Charts of up to this size are kept as they are.
+   */
+  private static final int MIN_SHRINK_SIZE = 48;
+
+  private void considerShrinkingArrays(int length) {
+    if (arraySize > MIN_SHRINK_SIZE && (length + 1) * 2 < arraySize) {
+      int newSize = Math.max(length + 1, MIN_SHRINK_SIZE);
+      createArrays(newSize);
+      arraySize = newSize;
+      if (op.testOptions.verbose) {
+        log.info("Shrank PCFG parser arrays to size " + arraySize);
+      }
+    }
+  }
+
+  /** The row for each span of a chart of the given size, taken from the {@link ChartArena} */
+  private float[][][] createChart(int length) {
+    float[][][] chart = new float[length][length + 1][];
+    float[][] rows = ChartArena.GLOBAL.takeFloatRows(numStates, length * (length + 1) / 2);
+    int row = 0;
+    for (int start = 0; start < length; start++) {
+      for (int end = start + 1; end <= length; end++) {
+        chart[start][end] = rows[row++];
+      }
+    }
+    return chart;
+  }
+
   protected void createArrays(int length) {
     // zero out some stuff first in case we recently ran out of memory and are reallocating
     clearArrays();
@@ -2214,28 +2472,18 @@ oScore[split][end][br.rightChild] = totR;
     // allocate just the parts of iScore and oScore used (end > start, etc.)
     // todo: with some modifications to doInsideScores, we wouldn't need to allocate iScore[i,length] for i != 0 and i != length
     //    System.out.println("initializing iScore arrays with length " + length + " and numStates " + numStates);
-    iScore = new float[length][length + 1][];
-    for (int start = 0; start < length; start++) {
-      for (int end = start + 1; end <= length; end++) {
-        iScore[start][end] = new float[numStates];
-      }
-    }
+    iScore = createChart(length);
     //    System.out.println("finished initializing iScore arrays");
-    if (op.doDep && !op.testOptions.useFastFactored) {
+    if (computesOutsideScores()) {
       //      System.out.println("initializing oScore arrays with length " + length + " and numStates " + numStates);
-      oScore = new float[length][length + 1][];
-      for (int start = 0; start < length; start++) {
-        for (int end = start + 1; end <= length; end++) {
-          oScore[start][end] = new float[numStates];
-        }
-      }
+      oScore = createChart(length);
       // System.out.println("finished initializing oScore arrays");
     }
     narrowRExtent = new int[length][numStates];
     wideRExtent = new int[length][numStates];
     narrowLExtent = new int[length + 1][numStates];
     wideLExtent = new int[length + 1][numStates];
-    if (op.doDep && !op.testOptions.useFastFactored) {
+    if (computesOutsideScores()) {
       iPossibleByL = new boolean[length][numStates];
       iPossibleByR = new boolean[length + 1][numStates];
       oPossibleByL = new boolean[length][numStates];
@@ -2245,17 +2493,24 @@ oScore[split][end][br.rightChild] = totR;
 
     if (op.testOptions.lengthNormalization) {
       wordsInSpan = new int[length][length + 1][];
+      int[][] rows = ChartArena.GLOBAL.takeIntRows(numStates, length * (length + 1) / 2);
+      int row = 0;
       for (int start = 0; start < length; start++) {
         for (int end = start + 1; end <= length; end++) {
-          wordsInSpan[start][end] = new int[numStates];
+          wordsInSpan[start][end] = rows[row++];
         }
       }
     }
     //    System.out.println("ExhaustivePCFGParser constructor finished.");
   }
 
+  /** Gives the chart rows back to the {@link ChartArena} and drops the other arrays */
   private void clearArrays() {
+    ChartArena.GLOBAL.giveFloatChart(iScore);
+    ChartArena.GLOBAL.giveFloatChart(oScore);
+    ChartArena.GLOBAL.giveIntChart(wordsInSpan);
     iScore = oScore = null;
+    wordsInSpan = null;
     iPossibleByL = iPossibleByR = oPossibleByL = oPossibleByR = null;
     oFilteredEnd = oFilteredStart = null;
     tags = null;
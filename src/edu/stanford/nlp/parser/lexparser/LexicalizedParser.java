@@ -102,9 +102,20 @@ public class LexicalizedParser extends ParserGrammar implements Serializable  {
 
   private Options op;
 
+  /** The coarse grammar for coarse-to-fine parsing; built when first needed */
+  private transient CoarseGrammarProjection coarseProjection; // = null
+
   @Override
   public Options getOp() { return op; }
 
+  /** The coarse projection of this parser's grammar used by {@link CoarseToFinePCFGParser} */
+  synchronized CoarseGrammarProjection coarseGrammarProjection() {
+    if (coarseProjection == null) {
+      coarseProjection = new CoarseGrammarProjection(bg, ug, stateIndex, tagIndex, op.langpack().startSymbol(), op.langpack());
+    }
+    return coarseProjection;
+  }
+
   public Reranker reranker; // = null;
 
   @Override
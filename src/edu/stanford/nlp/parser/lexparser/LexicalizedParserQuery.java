@@ -129,6 +129,8 @@ public class LexicalizedParserQuery implements ParserQuery  {
     if (op.doPCFG) {
       if (op.testOptions.iterativeCKY) {
         pparser = new IterativeCKYPCFGParser(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
+      } else if (op.testOptions.coarseToFine) {
+        pparser = new CoarseToFinePCFGParser(bg, ug, lex, op, stateIndex, wordIndex, tagIndex, parser.coarseGrammarProjection());
       } else {
         pparser = new ExhaustivePCFGParser(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
       }
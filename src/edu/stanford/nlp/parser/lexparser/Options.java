@@ -246,6 +246,21 @@ public class Options implements Serializable  {
     } else if (args[i].equalsIgnoreCase("-lengthNormalization")) {
       testOptions.lengthNormalization = true;
       i++;
+    } else if (args[i].equalsIgnoreCase("-packedBinaryKernel")) {
+      testOptions.packedBinaryKernel = true;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-noPackedBinaryKernel")) {
+      testOptions.packedBinaryKernel = false;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-coarseToFine")) {
+      testOptions.coarseToFine = true;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-noCoarseToFine")) {
+      testOptions.coarseToFine = false;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-coarseToFineThreshold") && (i + 1 < args.length)) {
+      testOptions.coarseToFineThreshold = Float.parseFloat(args[i + 1]);
+      i += 2;
     } else if (args[i].equalsIgnoreCase("-iterativeCKY")) {
       testOptions.iterativeCKY = true;
       i++;
@@ -211,6 +211,31 @@ public class TestOptions implements Serializable  {
    */
   public boolean lengthNormalization = false;
 
+  /**
+   * Score the binary rules of the PCFG parser with the kernel over packed
+   * rule arrays rather than the original rule by rule loops.  The two give
+   * identical results; which is faster depends on the grammar (the packed
+   * kernel does better when states have many rules), so this is off by
+   * default.  It is only used when there are no parser constraints and no
+   * length normalization.  Use option -packedBinaryKernel to set this to true.
+   */
+  public boolean packedBinaryKernel = false;
+
+  /**
+   * Parse each sentence with a coarse projection of the PCFG first, and
+   * prune the cells and states of the full PCFG chart whose coarse
+   * projection is not within {@link #coarseToFineThreshold} of the best
+   * coarse parse.  See {@link CoarseToFinePCFGParser}.
+   * Use option -coarseToFine to set this to true.
+   */
+  public boolean coarseToFine = false;
+
+  /**
+   * The pruning threshold for {@link #coarseToFine}, as a log probability
+   * relative to the score of the best coarse parse.  Closer to 0 prunes more.
+   */
+  public float coarseToFineThreshold = -10.0f;
+
   /**
    * Used when you want to generate sample parses instead of finding the best
    * parse.  (NOT YET USED.)
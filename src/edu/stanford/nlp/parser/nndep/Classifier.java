@@ -703,6 +703,83 @@ public class Classifier  {
     return matrixMultiply(W2, hidden);
   }
 
+  /**
+   * Number of hidden units handled together by {@link #computeScores(int[][], int)}.
+   * Their rows of W1 are reused for every example in the batch, and 8 doubles
+   * fill one cache line of each pre-computed row.
+   */
+  private static final int HIDDEN_BLOCK = 8;
+
+  /**
+   * Feed a batch of feature vectors forward through the network at once.
+   * The result for each example is exactly what {@link #computeScores(int[])}
+   * would give (the sums are accumulated in the same order), but each block of
+   * the hidden layer weights and the whole output layer are read once per
+   * batch rather than once per example.
+   *
+   * @param features Feature vectors; only the first {@code batchSize} are used
+   * @param batchSize The number of examples to score
+   * @return The values of the output layer for each example
+   */
+  double[][] computeScores(int[][] features, int batchSize) {
+    final int hiddenSize = config.hiddenSize;
+    final int numTokens = Config.numTokens;
+    final int embeddingSize = config.embeddingSize;
+
+    // Resolve the pre-computed rows once, rather than once per hidden block
+    final int[][] savedIds = new int[batchSize][];
+    for (int b = 0; b < batchSize; b++) {
+      int[] feature = features[b];
+      int[] ids = savedIds[b] = new int[feature.length];
+      for (int j = 0; j < feature.length; j++) {
+        Integer idInteger = preMap.get(feature[j] * numTokens + j);
+        ids[j] = idInteger == null ? -1 : idInteger;
+      }
+    }
+
+    final double[][] hidden = new double[batchSize][hiddenSize];
+    for (int start = 0; start < hiddenSize; start += HIDDEN_BLOCK) {
+      final int end = Math.min(start + HIDDEN_BLOCK, hiddenSize);
+      for (int b = 0; b < batchSize; b++) {
+        int[] feature = features[b];
+        int[] ids = savedIds[b];
+        double[] h = hidden[b];
+        int offset = 0;
+        for (int j = 0; j < feature.length; j++) {
+          if (ids[j] >= 0) {
+            double[] savedRow = saved[ids[j]];
+            for (int i = start; i < end; i++) {
+              h[i] += savedRow[i];
+            }
+          } else {
+            double[] embedding = E[feature[j]];
+            for (int i = start; i < end; i++) {
+              double[] w = W1[i];
+              double sum = h[i];
+              for (int k = 0; k < embeddingSize; k++) {
+                sum += w[offset + k] * embedding[k];
+              }
+              h[i] = sum;
+            }
+          }
+          offset += embeddingSize;
+        }
+      }
+    }
+
+    final double[][] scores = new double[batchSize][numLabels];
+    for (int b = 0; b < batchSize; b++) {
+      addCubeInPlace(hidden[b], b1);
+    }
+    for (int label = 0; label < numLabels; label++) {
+      double[] w = W2[label];
+      for (int b = 0; b < batchSize; b++) {
+        scores[b][label] = ArrayMath.dotProduct(w, hidden[b]);
+      }
+    }
+    return scores;
+  }
+
   // extracting these small methods makes things faster; hotspot likes them
 
   private static double[] matrixMultiply(double[][] matrix, double[] vector) {
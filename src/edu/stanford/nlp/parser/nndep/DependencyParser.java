@@ -935,30 +935,80 @@ public class DependencyParser  {
    * for general parsing purposes.
    */
   private DependencyTree predictInner(CoreMap sentence) {
-    int numTrans = system.numTransitions();
-
     Configuration c = system.initialConfiguration(sentence);
     while (!system.isTerminal(c)) {
       if (Thread.interrupted()) {  // Allow interrupting
         throw new RuntimeInterruptedException();
       }
       double[] scores = classifier.computeScores(getFeatureArray(c));
+      system.apply(c, bestTransition(c, scores));
+    }
+    return c.tree;
+  }
 
-      double optScore = Double.NEGATIVE_INFINITY;
-      String optTrans = null;
+  /**
+   * Determine the dependency parses of several sentences at once.
+   * The configurations of all the sentences are advanced in lockstep, so that each step
+   * scores all the unfinished sentences with one call to the classifier.
+   * The trees are the same as those {@link #predictInner(CoreMap)} would give.
+   */
+  private List<DependencyTree> predictInnerBatch(List<? extends CoreMap> sentences) {
+    List<Configuration> configurations = new ArrayList<>(sentences.size());
+    List<Configuration> active = new ArrayList<>(sentences.size());
+    for (CoreMap sentence : sentences) {
+      Configuration c = system.initialConfiguration(sentence);
+      configurations.add(c);
+      if (!system.isTerminal(c)) {
+        active.add(c);
+      }
+    }
 
-      for (int j = 0; j < numTrans; ++j) {
-        if (scores[j] > optScore) {
-          String tr = system.transitions.get(j);
-          if (system.canApply(c, tr)) {
-            optScore = scores[j];
-            optTrans = tr;
-          }
+    int[][] features = new int[active.size()][];
+    while (!active.isEmpty()) {
+      if (Thread.interrupted()) {  // Allow interrupting
+        throw new RuntimeInterruptedException();
+      }
+      int numActive = active.size();
+      for (int i = 0; i < numActive; ++i) {
+        features[i] = getFeatureArray(active.get(i));
+      }
+      double[][] scores = classifier.computeScores(features, numActive);
+
+      // apply the transitions, keeping the configurations which are not done yet
+      int stillActive = 0;
+      for (int i = 0; i < numActive; ++i) {
+        Configuration c = active.get(i);
+        system.apply(c, bestTransition(c, scores[i]));
+        if (!system.isTerminal(c)) {
+          active.set(stillActive++, c);
         }
       }
-      system.apply(c, optTrans);
+      active.subList(stillActive, numActive).clear();
     }
-    return c.tree;
+
+    List<DependencyTree> trees = new ArrayList<>(configurations.size());
+    for (Configuration c : configurations) {
+      trees.add(c.tree);
+    }
+    return trees;
+  }
+
+  /** The highest scoring transition which can be applied to the given configuration. */
+  private String bestTransition(Configuration c, double[] scores) {
+    int numTrans = system.numTransitions();
+    double optScore = Double.NEGATIVE_INFINITY;
+    String optTrans = null;
+
+    for (int j = 0; j < numTrans; ++j) {
+      if (scores[j] > optScore) {
+        String tr = system.transitions.get(j);
+        if (system.canApply(c, tr)) {
+          optScore = scores[j];
+          optTrans = tr;
+        }
+      }
+    }
+    return optTrans;
   }
 
   /**
@@ -973,12 +1023,38 @@ public class DependencyParser  {
       throw new IllegalStateException("Parser has not been  " +
           "loaded and initialized; first load a model.");
 
-    DependencyTree result = predictInner(sentence);
+    return toGrammaticalStructure(sentence, predictInner(sentence));
+  }
+
+  /**
+   * Determine the dependency parses of several sentences using the loaded model.
+   * This gives the same parses as calling {@link #predict(edu.stanford.nlp.util.CoreMap)}
+   * on each sentence, but is faster for many sentences, as the sentences are advanced
+   * in lockstep and the network scores all of them at each step together.
+   * Memory use grows with the number of sentences, so very large documents are
+   * best passed in chunks.
+   *
+   * @throws java.lang.IllegalStateException If parser has not yet been loaded and initialized
+   *         (see {@link #initialize(boolean)}
+   */
+  public List<GrammaticalStructure> predictBatch(List<? extends CoreMap> sentences) {
+    if (system == null)
+      throw new IllegalStateException("Parser has not been  " +
+          "loaded and initialized; first load a model.");
 
-    // The rest of this method is just busy-work to convert the
-    // package-local representation into a CoreNLP-standard
-    // GrammaticalStructure.
+    List<DependencyTree> results = predictInnerBatch(sentences);
+    List<GrammaticalStructure> structures = new ArrayList<>(results.size());
+    for (int i = 0; i < results.size(); i++) {
+      structures.add(toGrammaticalStructure(sentences.get(i), results.get(i)));
+    }
+    return structures;
+  }
 
+  /**
+   * Convert the package-local representation of a parse into a CoreNLP-standard
+   * GrammaticalStructure.
+   */
+  private GrammaticalStructure toGrammaticalStructure(CoreMap sentence, DependencyTree result) {
     List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
     List<TypedDependency> dependencies = new ArrayList<>();
 
@@ -1,7 +1,5 @@
 package edu.stanford.nlp.parser.shiftreduce;
 
-import java.util.List;
-
 /**
  * Combines multiple feature factories into one feature factory
  *
@@ -15,11 +13,10 @@ public class CombinationFeatureFactory extends FeatureFactory {
   }
 
   @Override
-  public List<String> featurize(State state, List<String> features) {
+  public void featurize(State state, FeatureBuilder features) {
     for (FeatureFactory factory : factories) {
       factory.featurize(state, features);
     }
-    return features;
   }
 
   private static final long serialVersionUID = 1;
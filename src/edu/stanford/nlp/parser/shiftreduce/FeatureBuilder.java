@@ -0,0 +1,162 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.List;
+
+/**
+ * Receives the features built by a {@link FeatureFactory}, one piece at a time.
+ * A feature is the concatenation of the pieces appended since the previous call to {@link #end()}.
+ *
+ * There are two kinds of builder.  {@link Strings} concatenates the
+ * pieces into String features, which is what training and the
+ * feature maps in serialized models use.  {@link Hashed} never
+ * builds the Strings at all; it hashes the characters of the pieces
+ * as they arrive, giving the same 64 bit hash as {@link #hash} of
+ * the String feature would.  This saves dozens of String allocations
+ * and String hash lookups per parser state, and since the hash only
+ * depends on the characters, the String features of an existing model
+ * can be converted to hashes when the model is loaded.
+ */
+public abstract class FeatureBuilder {
+
+  public abstract FeatureBuilder append(String piece);
+
+  public abstract FeatureBuilder append(char piece);
+
+  public abstract FeatureBuilder append(int piece);
+
+  /** Finish the current feature */
+  public abstract void end();
+
+  /** Convenience method: add a feature with only one piece */
+  public void add(String feature) {
+    append(feature).end();
+  }
+
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /**
+   * The 64 bit FNV-1a hash of the characters of a feature, which is
+   * what {@link Hashed} produces for the same feature.
+   */
+  public static long hash(String feature) {
+    long hash = FNV_OFFSET;
+    for (int i = 0; i < feature.length(); ++i) {
+      hash = (hash ^ feature.charAt(i)) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+
+  /** Builds String features and adds them to a list */
+  public static class Strings extends FeatureBuilder {
+    private final List<String> features;
+    private final StringBuilder current = new StringBuilder();
+
+    public Strings(List<String> features) {
+      this.features = features;
+    }
+
+    @Override
+    public FeatureBuilder append(String piece) {
+      current.append(piece);
+      return this;
+    }
+
+    @Override
+    public FeatureBuilder append(char piece) {
+      current.append(piece);
+      return this;
+    }
+
+    @Override
+    public FeatureBuilder append(int piece) {
+      current.append(piece);
+      return this;
+    }
+
+    @Override
+    public void end() {
+      features.add(current.toString());
+      current.setLength(0);
+    }
+  }
+
+
+  /**
+   * Hashes features as they are built, keeping only the hashes.
+   * Not threadsafe; each thread should use its own.
+   */
+  public static class Hashed extends FeatureBuilder {
+    private long[] features = new long[256];
+    private int size; // = 0
+    private long current = FNV_OFFSET;
+    private final char[] digits = new char[11];
+
+    @Override
+    public FeatureBuilder append(String piece) {
+      if (piece == null) {
+        piece = "null"; // as String concatenation would do
+      }
+      long hash = current;
+      for (int i = 0; i < piece.length(); ++i) {
+        hash = (hash ^ piece.charAt(i)) * FNV_PRIME;
+      }
+      current = hash;
+      return this;
+    }
+
+    @Override
+    public FeatureBuilder append(char piece) {
+      current = (current ^ piece) * FNV_PRIME;
+      return this;
+    }
+
+    @Override
+    public FeatureBuilder append(int piece) {
+      if (piece == Integer.MIN_VALUE) {
+        return append(Integer.toString(piece));
+      }
+      if (piece < 0) {
+        append('-');
+        piece = -piece;
+      }
+      int start = digits.length;
+      do {
+        digits[--start] = (char) ('0' + piece % 10);
+        piece /= 10;
+      } while (piece > 0);
+      for (int i = start; i < digits.length; ++i) {
+        append(digits[i]);
+      }
+      return this;
+    }
+
+    @Override
+    public void end() {
+      if (size == features.length) {
+        long[] newFeatures = new long[size * 2];
+        System.arraycopy(features, 0, newFeatures, 0, size);
+        features = newFeatures;
+      }
+      features[size++] = current;
+      current = FNV_OFFSET;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public long get(int i) {
+      return features[i];
+    }
+
+    /** Forget the features built so far, so this builder can be reused */
+    public void clear() {
+      size = 0;
+      current = FNV_OFFSET;
+    }
+  }
+
+}
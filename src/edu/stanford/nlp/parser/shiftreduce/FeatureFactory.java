@@ -14,7 +14,17 @@ public abstract class FeatureFactory implements Serializable {
     return featurize(state, Generics.<String>newArrayList(200));
   }
 
-  abstract public List<String> featurize(State state, List<String> features);
+  public List<String> featurize(State state, List<String> features) {
+    featurize(state, new FeatureBuilder.Strings(features));
+    return features;
+  }
+
+  /**
+   * Builds the features of the given state with the given builder.
+   * Use a {@link FeatureBuilder.Hashed} to get the features as
+   * hashes, without building any Strings.
+   */
+  abstract public void featurize(State state, FeatureBuilder features);
 
   enum Transition {
     LEFT, RIGHT, UNARY
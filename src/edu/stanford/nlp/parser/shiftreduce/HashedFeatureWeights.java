@@ -0,0 +1,74 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.Map;
+
+import edu.stanford.nlp.util.logging.Redwood;
+
+/**
+ * The feature weights of a {@link PerceptronModel}, keyed by the
+ * {@link FeatureBuilder#hash hashes} of the features instead of the
+ * feature Strings.  The hashes and weights are kept in parallel
+ * arrays with open addressing (linear probing), so a lookup is a few
+ * array reads with no allocation.
+ *
+ * The table is built once, from the String keyed map, and is not
+ * updated afterwards.  If two features happen to have the same
+ * hash, their weights are added together.
+ */
+class HashedFeatureWeights {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(HashedFeatureWeights.class);
+
+  private final long[] keys;
+  private final Weight[] weights;
+  private final int mask;
+
+  HashedFeatureWeights(Map<String, Weight> featureWeights) {
+    // keep the table at most half full
+    int capacity = Integer.highestOneBit(Math.max(2, featureWeights.size()) * 2 - 1) << 1;
+    keys = new long[capacity];
+    weights = new Weight[capacity];
+    mask = capacity - 1;
+
+    int collisions = 0;
+    for (Map.Entry<String, Weight> entry : featureWeights.entrySet()) {
+      long key = FeatureBuilder.hash(entry.getKey());
+      int slot = slot(key);
+      if (weights[slot] == null) {
+        keys[slot] = key;
+        weights[slot] = entry.getValue();
+      } else {
+        Weight combined = new Weight(weights[slot]);
+        combined.addScaled(entry.getValue(), 1.0f);
+        weights[slot] = combined;
+        ++collisions;
+      }
+    }
+    if (collisions > 0) {
+      log.warn("Found " + collisions + " features with the same hash as another feature; their weights were added");
+    }
+  }
+
+  /** The slot of the given key: either the one holding it, or the empty one where it would go */
+  private int slot(long key) {
+    int slot = mix(key) & mask;
+    while (weights[slot] != null && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private static int mix(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  /** The weight of the feature with the given hash, or null if the feature is unknown */
+  Weight get(long key) {
+    return weights[slot(key)];
+  }
+
+}
@@ -43,6 +43,14 @@ public class PerceptronModel extends BaseModel  {
   Map<String, Weight> featureWeights;
   final FeatureFactory featureFactory;
 
+  /**
+   * The featureWeights keyed by feature hash, for parsing.  Built
+   * from featureWeights the first time it is needed, which converts
+   * models saved with only the String features, and rebuilt whenever
+   * featureWeights changes.
+   */
+  private transient volatile HashedFeatureWeights hashedWeights;
+
   public PerceptronModel(ShiftReduceOptions op, Index<Transition> transitionIndex,
                          Set<String> knownStates, Set<String> rootStates, Set<String> rootOnlyStates) {
     super(op, transitionIndex, knownStates, rootStates, rootOnlyStates);
@@ -120,6 +128,7 @@ public class PerceptronModel extends BaseModel  {
         featureWeights.get(feature).addScaled(model.featureWeights.get(feature), 1.0f / numModels);
       }
     }
+    featureWeightsChanged();
   }
 
   /**
@@ -137,6 +146,7 @@ public class PerceptronModel extends BaseModel  {
         featureIt.remove();
       }
     }
+    featureWeightsChanged();
   }
 
   private void filterFeatures(Set<String> keep) {
@@ -146,6 +156,26 @@ public class PerceptronModel extends BaseModel  {
         featureIt.remove();
       }
     }
+    featureWeightsChanged();
+  }
+
+  /** Must be called after featureWeights is changed, so parsing doesn't use stale hashed weights */
+  private void featureWeightsChanged() {
+    hashedWeights = null;
+  }
+
+  private HashedFeatureWeights hashedWeights() {
+    HashedFeatureWeights weights = hashedWeights;
+    if (weights == null) {
+      synchronized (this) {
+        weights = hashedWeights;
+        if (weights == null) {
+          weights = new HashedFeatureWeights(featureWeights);
+          hashedWeights = weights;
+        }
+      }
+    }
+    return weights;
   }
 
 
@@ -205,8 +235,24 @@ public class PerceptronModel extends BaseModel  {
 
   @Override
   public Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
-    List<String> features = featureFactory.featurize(state);
-    return findHighestScoringTransitions(state, features, requireLegal, numTransitions, constraints);
+    if (op.testOptions().stringFeatures) {
+      List<String> features = featureFactory.featurize(state);
+      return findHighestScoringTransitions(state, features, requireLegal, numTransitions, constraints);
+    }
+
+    FeatureBuilder.Hashed features = new FeatureBuilder.Hashed();
+    featureFactory.featurize(state, features);
+    HashedFeatureWeights weights = hashedWeights();
+    float[] scores = new float[transitionIndex.size()];
+    for (int i = 0; i < features.size(); ++i) {
+      Weight weight = weights.get(features.get(i));
+      if (weight == null) {
+        // Features not in our index are ignored
+        continue;
+      }
+      weight.score(scores);
+    }
+    return findHighestScoringTransitions(state, scores, requireLegal, numTransitions, constraints);
   }
 
   private Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, List<String> features, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
@@ -219,7 +265,10 @@ public class PerceptronModel extends BaseModel  {
       }
       weight.score(scores);
     }
+    return findHighestScoringTransitions(state, scores, requireLegal, numTransitions, constraints);
+  }
 
+  private Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, float[] scores, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
     PriorityQueue<ScoredObject<Integer>> queue = new PriorityQueue<>(numTransitions + 1, ScoredComparator.ASCENDING_COMPARATOR);
     for (int i = 0; i < scores.length; ++i) {
       if (!requireLegal || transitionIndex.get(i).isLegal(state, constraints)) {
@@ -556,6 +605,7 @@ public class PerceptronModel extends BaseModel  {
           }
         }
         updates.clear();
+        featureWeightsChanged();
       }
       trainingTimer.done("Iteration " + iteration);
       log.info("While training, got " + numCorrect + " transitions correct and " + numWrong + " transitions wrong");
@@ -661,6 +711,7 @@ public class PerceptronModel extends BaseModel  {
       temp.saveModel(tempName);
       Set<String> features = featureWeights.keySet();
       featureWeights = Generics.newHashMap();
+      featureWeightsChanged();
       trainModel(serializedPath, tagger, random, binarizedTrees, transitionLists, devTreebank, nThreads, features);
     } else {
       trainModel(serializedPath, tagger, random, binarizedTrees, transitionLists, devTreebank, nThreads, null);
@@ -97,6 +97,30 @@ public class ShiftReduceOptions extends Options {
     } else if (args[i].equalsIgnoreCase("-recordDebinarized")) {
       testOptions().recordDebinarized = args[i + 1];
       i += 2;
+    } else if (args[i].equalsIgnoreCase("-stringFeatures")) {
+      testOptions().stringFeatures = true;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-nostringFeatures")) {
+      testOptions().stringFeatures = false;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-parallelBeam")) {
+      testOptions().parallelBeam = true;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-noparallelBeam")) {
+      testOptions().parallelBeam = false;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-mergeEquivalentStates")) {
+      testOptions().mergeEquivalentStates = true;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-nomergeEquivalentStates")) {
+      testOptions().mergeEquivalentStates = false;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-scoreEveryState")) {
+      testOptions().scoreEveryState = true;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-noscoreEveryState")) {
+      testOptions().scoreEveryState = false;
+      i++;
     } else if (args[i].equalsIgnoreCase("-decayLearningRate")) {
       trainOptions().decayLearningRate = Double.parseDouble(args[i + 1]);
       i += 2;
@@ -3,11 +3,15 @@ import edu.stanford.nlp.util.logging.Redwood;
 
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.stream.Collectors;
 
 import edu.stanford.nlp.ling.HasWord;
 import edu.stanford.nlp.ling.Label;
@@ -71,6 +75,9 @@ public class ShiftReduceParserQuery implements ParserQuery  {
 
   private boolean parseInternal() {
     final int maxBeamSize = Math.max(parser.op.testOptions().beamSize, 1);
+    final boolean parallel = parser.op.testOptions().parallelBeam && maxBeamSize > 1;
+    final boolean merge = parser.op.testOptions().mergeEquivalentStates;
+    final boolean scoreEveryState = parser.op.testOptions().scoreEveryState;
 
     success = true;
     unparsable = false;
@@ -87,22 +94,33 @@ public class ShiftReduceParserQuery implements ParserQuery  {
       PriorityQueue<State> oldBeam = beam;
       beam = new PriorityQueue<>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
       State bestState = null;
-      for (State state : oldBeam) {
+      // The state on the new beam for each set of equivalent states, when merging them
+      Map<EquivalentState, State> beamStates = merge ? new HashMap<>() : null;
+      List<State> states = new ArrayList<>(oldBeam);
+      List<Collection<ScoredObject<Integer>>> predictions = findHighestScoringTransitions(states, maxBeamSize, parallel, scoreEveryState);
+      for (int i = 0; i < states.size(); ++i) {
         if (Thread.interrupted()) {  // Allow interrupting the parser
           throw new RuntimeInterruptedException();
         }
-        Collection<ScoredObject<Integer>> predictedTransitions = parser.model.findHighestScoringTransitions(state, true, maxBeamSize, constraints);
+        State state = states.get(i);
+        Collection<ScoredObject<Integer>> predictedTransitions = predictions.get(i);
         // log.info("Examining state: " + state);
         for (ScoredObject<Integer> predictedTransition : predictedTransitions) {
           Transition transition = parser.model.transitionIndex.get(predictedTransition.object());
           State newState = transition.apply(state, predictedTransition.score());
           // log.info("  Transition: " + transition + " (" + predictedTransition.score() + ")");
+          if (merge && !replaceEquivalentState(beam, beamStates, newState)) {
+            continue;
+          }
           if (bestState == null || bestState.score() < newState.score()) {
             bestState = newState;
           }
           beam.add(newState);
           if (beam.size() > maxBeamSize) {
-            beam.poll();
+            State dropped = beam.poll();
+            if (merge) {
+              beamStates.remove(new EquivalentState(dropped), dropped);
+            }
           }
         }
       }
@@ -150,6 +168,102 @@ public class ShiftReduceParserQuery implements ParserQuery  {
     return success;
   }
 
+  /**
+   * A state, compared to others with {@link State#isEquivalent},
+   * to find the equivalent states with a hash map.
+   */
+  private static final class EquivalentState {
+    final State state;
+    final int hashCode;
+
+    EquivalentState(State state) {
+      this.state = state;
+      this.hashCode = state.equivalenceHashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) {
+        return true;
+      }
+      if (!(o instanceof EquivalentState)) {
+        return false;
+      }
+      EquivalentState other = (EquivalentState) o;
+      return hashCode == other.hashCode && state.isEquivalent(other.state);
+    }
+  }
+
+  /**
+   * Finds the highest scoring transitions from each of the given
+   * states.  Equivalent states (see {@link State#isEquivalent}) have
+   * the same features and legal transitions, so only one of them is
+   * scored, unless scoreEveryState is set.  If parallel is set, the
+   * states are scored on the common fork-join pool.
+   *
+   * @return The transitions for each state, in the same order as the states
+   */
+  private List<Collection<ScoredObject<Integer>>> findHighestScoringTransitions(List<State> states, int maxBeamSize,
+                                                                                 boolean parallel, boolean scoreEveryState) {
+    List<State> distinctStates = new ArrayList<>(states.size());
+    int[] distinctIndex = new int[states.size()];
+    Map<EquivalentState, Integer> distinctIndices = Generics.newHashMap(states.size());
+    for (int i = 0; i < states.size(); ++i) {
+      State state = states.get(i);
+      Integer index = scoreEveryState ? null : distinctIndices.putIfAbsent(new EquivalentState(state), distinctStates.size());
+      if (index == null) {
+        index = distinctStates.size();
+        distinctStates.add(state);
+      }
+      distinctIndex[i] = index;
+    }
+
+    List<Collection<ScoredObject<Integer>>> distinctPredictions;
+    if (parallel && distinctStates.size() > 1) {
+      distinctPredictions = distinctStates.parallelStream()
+        .map(state -> parser.model.findHighestScoringTransitions(state, true, maxBeamSize, constraints))
+        .collect(Collectors.toList());
+    } else {
+      distinctPredictions = new ArrayList<>(distinctStates.size());
+      for (State state : distinctStates) {
+        distinctPredictions.add(parser.model.findHighestScoringTransitions(state, true, maxBeamSize, constraints));
+      }
+    }
+
+    List<Collection<ScoredObject<Integer>>> predictions = new ArrayList<>(states.size());
+    for (int i = 0; i < states.size(); ++i) {
+      predictions.add(distinctPredictions.get(distinctIndex[i]));
+    }
+    return predictions;
+  }
+
+  /**
+   * If the beam has a state equivalent to the new state, keeps only
+   * the better of the two.  Equivalent states have the same futures,
+   * so the worse one can never lead to the best parse.
+   *
+   * @param beamStates The state on the beam for each set of equivalent states,
+   *                   which is updated to the new state if it is to be added
+   * @return true if the new state should be added to the beam, false if it should be dropped
+   */
+  private static boolean replaceEquivalentState(PriorityQueue<State> beam, Map<EquivalentState, State> beamStates, State newState) {
+    EquivalentState key = new EquivalentState(newState);
+    State state = beamStates.get(key);
+    if (state != null) {
+      if (state.score() >= newState.score()) {
+        return false;
+      }
+      beam.remove(state);
+    }
+    beamStates.put(key, newState);
+    return true;
+  }
+
   /**
    * TODO: if we add anything interesting to report, we should report it here
    */
@@ -8,4 +8,36 @@ public class ShiftReduceTestOptions extends TestOptions {
   public String recordDebinarized = null;
 
   public int beamSize = 0;
+
+  /**
+   * Look up the features as Strings when parsing, as in training,
+   * rather than as hashes.  Slower; only useful for checking that the
+   * two agree.  (This is a negative option so that models saved
+   * before it existed get the default.)
+   */
+  public boolean stringFeatures = false;
+
+  /**
+   * Score the states of the beam in parallel, on the common
+   * fork-join pool.  Lowers the latency of long sentences with a
+   * large beam, but takes threads from other parses.
+   */
+  public boolean parallelBeam = false;
+
+  /**
+   * Keep only the best of the states on the beam which are
+   * equivalent (see {@link State#isEquivalent}), making room on the
+   * beam for others.  This can change the result, although not by
+   * dropping a better parse from the same equivalent states.
+   */
+  public boolean mergeEquivalentStates = false;
+
+  /**
+   * Score every state on the beam, rather than one of each set of
+   * equivalent states.  Slower; only useful for checking that the
+   * two agree.
+   */
+  public boolean scoreEveryState = false;
+
+  private static final long serialVersionUID = 8510025869993799309L;
 }
@@ -2,10 +2,14 @@ package edu.stanford.nlp.parser.shiftreduce;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.TreeMap;
 import java.util.regex.Pattern;
 
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.Label;
 import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.Scored;
 import edu.stanford.nlp.util.TreeShapedStack;
@@ -255,5 +259,79 @@ public class State implements Scored {
   public boolean areTransitionsEqual(State other) {
     return transitions.equals(other.transitions);
   }
+
+  /**
+   * Whether or not the two states have the same stack, queue position,
+   * and finished flag.  The trees on the stacks must have the same
+   * labels and shape, and each of their nodes the same head word and
+   * head tag (as the same tokens), since the features read those: a
+   * LEFT and a RIGHT binary transition build trees which are otherwise
+   * the same.  For states over the same sentence, these determine the
+   * features and the legal transitions, so equivalent states are
+   * scored the same and have the same futures; only their scores so
+   * far may differ.
+   */
+  public boolean isEquivalent(State other) {
+    if (tokenPosition != other.tokenPosition || finished != other.finished || stack.size() != other.stack.size()) {
+      return false;
+    }
+    TreeShapedStack<Tree> mine = stack;
+    TreeShapedStack<Tree> theirs = other.stack;
+    // The stacks usually share their bottom parts, which needn't be compared
+    while (mine != theirs && mine.size() > 0) {
+      if (!isEquivalentTree(mine.peek(), theirs.peek())) {
+        return false;
+      }
+      mine = mine.pop();
+      theirs = theirs.pop();
+    }
+    return true;
+  }
+
+  private static boolean isEquivalentTree(Tree t1, Tree t2) {
+    if (t1 == t2) {
+      return true;
+    }
+    if (!Objects.equals(t1.value(), t2.value())) {
+      return false;
+    }
+    Label l1 = t1.label();
+    Label l2 = t2.label();
+    if (l1 instanceof CoreLabel && l2 instanceof CoreLabel) {
+      CoreLabel c1 = (CoreLabel) l1;
+      CoreLabel c2 = (CoreLabel) l2;
+      if (c1.get(TreeCoreAnnotations.HeadWordLabelAnnotation.class) != c2.get(TreeCoreAnnotations.HeadWordLabelAnnotation.class) ||
+          c1.get(TreeCoreAnnotations.HeadTagLabelAnnotation.class) != c2.get(TreeCoreAnnotations.HeadTagLabelAnnotation.class)) {
+        return false;
+      }
+    } else if (l1 instanceof CoreLabel || l2 instanceof CoreLabel) {
+      return false;
+    }
+    Tree[] kids1 = t1.children();
+    Tree[] kids2 = t2.children();
+    if (kids1.length != kids2.length) {
+      return false;
+    }
+    for (int i = 0; i < kids1.length; ++i) {
+      if (!isEquivalentTree(kids1[i], kids2[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A hash code consistent with {@link #isEquivalent}.  Cheap, as it
+   * only looks at the top of the stack and its heads.
+   */
+  public int equivalenceHashCode() {
+    int hash = (stack.hashCode() * 31 + tokenPosition) * 2 + (finished ? 1 : 0);
+    if (stack.size() > 0 && stack.peek().label() instanceof CoreLabel) {
+      CoreLabel top = (CoreLabel) stack.peek().label();
+      hash = hash * 31 + System.identityHashCode(top.get(TreeCoreAnnotations.HeadWordLabelAnnotation.class));
+      hash = hash * 31 + System.identityHashCode(top.get(TreeCoreAnnotations.HeadTagLabelAnnotation.class));
+    }
+    return hash;
+  }
 }
 
@@ -0,0 +1,274 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.logging.Redwood;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Collects documents submitted concurrently for the same pipeline into small batches,
+ * each of which is annotated by a single task on an executor, so that many small requests
+ * don't each pay for a task, a pipeline lookup, and a thread hand-off.
+ * The task hands the whole batch to {@link AnnotationPipeline#annotate(Iterable, int, java.util.function.Consumer)},
+ * on {@code threadsPerBatch} threads.
+ * This is how the {@link StanfordCoreNLPServer} annotates in its asynchronous mode.
+ *
+ * <p>A batch is started once it has {@code maxBatchSize} documents or {@code maxBatchChars}
+ * characters of text, or {@code maxWaitMillis} after its first document arrived, whichever comes
+ * first.  So a document larger than {@code maxBatchChars} goes in a batch of its own, right away.
+ * Documents are keyed by a string (e.g., the signature of the properties the pipeline was made
+ * with); only documents with the same key are batched together.</p>
+ *
+ * <p>Submitting never blocks.  Each document's callback is called once, from an executor thread,
+ * with either the annotated document or the exception annotating it threw.  A document whose
+ * {@code cancelled} check returns true by the time its batch runs is skipped, and its callback
+ * is not called.  Once no document of a running batch is still waited for (each has either been
+ * answered or cancelled), the batch's task can be interrupted through the handle {@code submit} returns.</p>
+ */
+public class AnnotationBatcher {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(AnnotationBatcher.class);
+
+  private final ExecutorService executor;
+  private final ScheduledExecutorService timer;
+  private final int threadsPerBatch;
+  private final int maxBatchSize;
+  private final int maxBatchChars;
+  private final long maxWaitMillis;
+
+  /** The batches still collecting documents, by key.  Guarded by this. */
+  private final Map<String, Batch> open = new HashMap<>();
+
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong documents = new AtomicLong();
+  private final AtomicLong pending = new AtomicLong();
+
+
+  /**
+   * Create a new batcher.
+   *
+   * @param executor Runs the batches
+   * @param timer Starts batches which have waited long enough
+   * @param maxBatchSize The largest number of documents in a batch
+   * @param maxBatchChars The number of characters of text at which a batch is started
+   * @param maxWaitMillis The longest a document waits for others to join its batch
+   */
+  public AnnotationBatcher(ExecutorService executor, ScheduledExecutorService timer,
+                           int maxBatchSize, int maxBatchChars, long maxWaitMillis) {
+    this(executor, timer, 1, maxBatchSize, maxBatchChars, maxWaitMillis);
+  }
+
+  /**
+   * Create a new batcher.
+   *
+   * @param executor Runs the batches
+   * @param timer Starts batches which have waited long enough
+   * @param threadsPerBatch The number of threads each batch is annotated on
+   * @param maxBatchSize The largest number of documents in a batch
+   * @param maxBatchChars The number of characters of text at which a batch is started
+   * @param maxWaitMillis The longest a document waits for others to join its batch
+   */
+  public AnnotationBatcher(ExecutorService executor, ScheduledExecutorService timer, int threadsPerBatch,
+                           int maxBatchSize, int maxBatchChars, long maxWaitMillis) {
+    this.executor = executor;
+    this.timer = timer;
+    this.threadsPerBatch = Math.max(1, threadsPerBatch);
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.maxBatchChars = maxBatchChars;
+    this.maxWaitMillis = maxWaitMillis;
+  }
+
+
+  private static class Request {
+    final Annotation annotation;
+    final BooleanSupplier cancelled;
+    final BiConsumer<Annotation, Throwable> callback;
+    final long submitted = System.nanoTime();
+    volatile boolean answered; // = false
+
+    Request(Annotation annotation, BooleanSupplier cancelled, BiConsumer<Annotation, Throwable> callback) {
+      this.annotation = annotation;
+      this.cancelled = cancelled;
+      this.callback = callback;
+    }
+  }
+
+
+  private static class Batch {
+    final String key;
+    final AnnotationPipeline pipeline;
+    final List<Request> requests = new ArrayList<>();
+    int chars; // = 0
+    ScheduledFuture<?> flush;
+    /** The task annotating the batch, once it is started.  Guarded by this batch. */
+    Future<?> running;
+
+    Batch(String key, AnnotationPipeline pipeline) {
+      this.key = key;
+      this.pipeline = pipeline;
+    }
+  }
+
+
+  /**
+   * Queue a document for annotation.
+   *
+   * @param key Documents are only batched with others of the same key
+   * @param pipeline The pipeline to annotate with.  If a batch is already open for the key,
+   *                 the document is annotated with that batch's pipeline instead.
+   * @param annotation The document
+   * @param cancelled Checked just before annotating the document; if it is true, the document is skipped
+   * @param callback Called with the document and null once it is annotated, or with the exception thrown
+   * @return Run this to stop waiting for the document, once its {@code cancelled} check is true: if no other
+   *         document of its batch is waited for either, the batch's task is interrupted
+   */
+  public Runnable submit(String key, AnnotationPipeline pipeline, Annotation annotation,
+                         BooleanSupplier cancelled, BiConsumer<Annotation, Throwable> callback) {
+    String text = annotation.get(CoreAnnotations.TextAnnotation.class);
+    Batch ready = null;
+    Batch batch;
+    pending.incrementAndGet();
+    synchronized (this) {
+      batch = open.get(key);
+      if (batch == null) {
+        batch = new Batch(key, pipeline);
+        open.put(key, batch);
+      }
+      batch.requests.add(new Request(annotation, cancelled, callback));
+      batch.chars += text == null ? 0 : text.length();
+      if (batch.requests.size() >= maxBatchSize || batch.chars >= maxBatchChars || maxWaitMillis <= 0) {
+        open.remove(key);
+        if (batch.flush != null) {
+          batch.flush.cancel(false);
+        }
+        ready = batch;
+      } else if (batch.flush == null) {
+        Batch toFlush = batch;
+        batch.flush = timer.schedule(() -> flush(toFlush), maxWaitMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+    if (ready != null) {
+      start(ready);
+    }
+    Batch submitted = batch;
+    return () -> cancel(submitted);
+  }
+
+  /** Interrupt a running batch if none of its documents is waited for any more. */
+  private static void cancel(Batch batch) {
+    synchronized (batch) {
+      if (batch.running == null) {
+        return;  // not started yet, and its cancelled documents will be skipped
+      }
+      for (Request request : batch.requests) {
+        if ( ! request.answered && ! request.cancelled.getAsBoolean()) {
+          return;
+        }
+      }
+      batch.running.cancel(true);
+    }
+  }
+
+  /** Start a batch which has waited long enough, unless it was already started. */
+  private void flush(Batch batch) {
+    synchronized (this) {
+      if (open.get(batch.key) != batch) {
+        return;
+      }
+      open.remove(batch.key);
+    }
+    start(batch);
+  }
+
+  private void start(Batch batch) {
+    try {
+      synchronized (batch) {
+        batch.running = executor.submit(() -> run(batch));
+      }
+    } catch (RejectedExecutionException e) {
+      for (Request request : batch.requests) {
+        pending.decrementAndGet();
+        request.callback.accept(request.annotation, e);
+      }
+    }
+  }
+
+  private void run(Batch batch) {
+    batches.incrementAndGet();
+    List<Request> live = new ArrayList<>();
+    List<Annotation> annotations = new ArrayList<>();
+    Map<Annotation, Request> byAnnotation = new IdentityHashMap<>();
+    for (Request request : batch.requests) {
+      pending.decrementAndGet();
+      if (request.cancelled.getAsBoolean()) {
+        continue;
+      }
+      PipelineMetrics.GLOBAL.queueWait().record(System.nanoTime() - request.submitted);
+      documents.incrementAndGet();
+      live.add(request);
+      annotations.add(request.annotation);
+      byAnnotation.put(request.annotation, request);
+    }
+    if (live.isEmpty()) {
+      return;
+    }
+    try {
+      // A staged pipeline doesn't throw for a failed document, but records the exception on it
+      batch.pipeline.annotate(annotations, threadsPerBatch,
+          ann -> answer(byAnnotation.get(ann), ann.get(CoreAnnotations.ExceptionAnnotation.class)));
+    } catch (Throwable t) {
+      // The documents left unanswered are annotated one at a time below, to find out which one failed
+    }
+    for (Request request : live) {
+      if (request.answered || request.cancelled.getAsBoolean()) {
+        continue;
+      }
+      Throwable error = null;
+      try {
+        batch.pipeline.annotate(request.annotation);
+      } catch (Throwable t) {
+        error = t;
+      }
+      answer(request, error);
+    }
+  }
+
+  private static void answer(Request request, Throwable error) {
+    request.answered = true;
+    try {
+      request.callback.accept(request.annotation, error);
+    } catch (RuntimeException e) {
+      log.warn("Error in annotation callback: " + e);
+    }
+  }
+
+  /** The number of documents submitted but not yet taken up by their batch. */
+  public long pending() {
+    return pending.get();
+  }
+
+  /** The number of batches run so far. */
+  public long batchesRun() {
+    return batches.get();
+  }
+
+  /** The number of documents annotated so far (including ones which failed). */
+  public long documentsRun() {
+    return documents.get();
+  }
+
+}
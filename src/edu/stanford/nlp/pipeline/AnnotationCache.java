@@ -0,0 +1,244 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.util.logging.Redwood;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A content-addressed cache of annotated documents, so that a server (or anything else)
+ * which is asked to annotate the same text with the same properties again can skip the annotation.
+ * Documents are keyed by a hash of their text and of the signature of the properties used to annotate
+ * them (see {@link #key(String, String)}), and are stored as serialized protocol buffers.
+ *
+ * <p>The cache keeps at most {@code maxBytes} of serialized documents in memory, evicting the least
+ * recently used ones.  If it is given a directory, every document put in the cache is also written
+ * there, and documents not in memory are looked for there, so that the cache outlives the process.
+ * The directory is never pruned.</p>
+ *
+ * <p>Only documents which serialize without loss are cached; see
+ * {@link ProtobufAnnotationSerializer#enforceLosslessSerialization}.</p>
+ */
+public class AnnotationCache {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(AnnotationCache.class);
+
+  private final ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer(true);
+
+  private final long maxBytes;
+  private final File directory;
+
+  /** The cached documents, least recently used first.  Guarded by this. */
+  private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+  /** The total size of the cached documents in memory.  Guarded by this. */
+  private long bytes; // = 0
+
+  private long hits; // = 0
+  private long diskHits; // = 0
+  private long misses; // = 0
+  private long puts; // = 0
+  private long uncacheable; // = 0
+  private long evictions; // = 0
+
+
+  /**
+   * Create a new cache.
+   *
+   * @param maxBytes The most bytes of serialized documents to keep in memory
+   * @param directory If not null, the directory to persist documents in.  It is created if need be.
+   */
+  public AnnotationCache(long maxBytes, File directory) {
+    this.maxBytes = maxBytes;
+    this.directory = directory;
+    if (directory != null && ! directory.isDirectory() && ! directory.mkdirs()) {
+      throw new RuntimeIOException("Could not create annotation cache directory " + directory);
+    }
+  }
+
+  /**
+   * The key of a document: a hash of its text and of the signature of the properties it is annotated with.
+   * The signature should cover everything which may change the annotation, such as the annotators,
+   * their properties, and the document date.
+   */
+  public static String key(String text, String signature) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(signature.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(text.getBytes(StandardCharsets.UTF_8));
+      StringBuilder key = new StringBuilder();
+      for (byte b : digest.digest()) {
+        key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return key.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);  // every JVM has SHA-256
+    }
+  }
+
+  /**
+   * Look up a document.
+   *
+   * @param key The document's {@link #key(String, String) key}
+   * @return A fresh copy of the annotated document, or null if it is not cached
+   */
+  public Annotation get(String key) {
+    byte[] serialized;
+    synchronized (this) {
+      serialized = entries.get(key);
+      if (serialized != null) {
+        hits += 1;
+      }
+    }
+    if (serialized == null && directory != null) {
+      File file = file(key);
+      if (file.exists()) {
+        try {
+          serialized = Files.readAllBytes(file.toPath());
+          synchronized (this) {
+            diskHits += 1;
+            store(key, serialized);
+          }
+        } catch (IOException e) {
+          log.warn("Could not read cached document " + file + ": " + e);
+        }
+      }
+    }
+    if (serialized == null) {
+      synchronized (this) {
+        misses += 1;
+      }
+      return null;
+    }
+    try {
+      return serializer.fromProto(CoreNLPProtos.Document.parseFrom(serialized));
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /**
+   * Cache an annotated document.
+   *
+   * @param key The document's {@link #key(String, String) key}
+   * @param annotation The annotated document
+   * @return false if the document could not be cached, because it would not serialize without loss
+   */
+  public boolean put(String key, Annotation annotation) {
+    byte[] serialized;
+    try {
+      serialized = serializer.toProto(annotation).toByteArray();
+    } catch (ProtobufAnnotationSerializer.LossySerializationException e) {
+      synchronized (this) {
+        uncacheable += 1;
+      }
+      return false;
+    }
+    synchronized (this) {
+      puts += 1;
+      store(key, serialized);
+    }
+    if (directory != null) {
+      File file = file(key);
+      try {
+        File tmp = File.createTempFile(key, ".tmp", directory);
+        Files.write(tmp.toPath(), serialized);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        log.warn("Could not write cached document " + file + ": " + e);
+      }
+    }
+    return true;
+  }
+
+  /** Put a serialized document in memory, evicting others if needed.  Must hold the lock. */
+  private void store(String key, byte[] serialized) {
+    if (serialized.length > maxBytes) {
+      return;
+    }
+    byte[] previous = entries.put(key, serialized);
+    bytes += serialized.length - (previous == null ? 0 : previous.length);
+    for (Iterator<Map.Entry<String, byte[]>> iter = entries.entrySet().iterator(); iter.hasNext() && bytes > maxBytes; ) {
+      Map.Entry<String, byte[]> entry = iter.next();
+      iter.remove();
+      bytes -= entry.getValue().length;
+      evictions += 1;
+    }
+  }
+
+  private File file(String key) {
+    return new File(directory, key + ".pb");
+  }
+
+  /** Drop all the documents in memory (but not on disk). */
+  public synchronized void clear() {
+    entries.clear();
+    bytes = 0;
+  }
+
+  /** The number of documents in memory. */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** The total size of the serialized documents in memory. */
+  public synchronized long bytes() {
+    return bytes;
+  }
+
+  /** The number of lookups found in memory. */
+  public synchronized long hits() {
+    return hits;
+  }
+
+  /** The number of lookups found on disk, but not in memory. */
+  public synchronized long diskHits() {
+    return diskHits;
+  }
+
+  /** The number of lookups not found. */
+  public synchronized long misses() {
+    return misses;
+  }
+
+  /** The number of documents cached. */
+  public synchronized long puts() {
+    return puts;
+  }
+
+  /** The number of documents which could not be cached, since they would not serialize without loss. */
+  public synchronized long uncacheable() {
+    return uncacheable;
+  }
+
+  /** The number of documents evicted from memory. */
+  public synchronized long evictions() {
+    return evictions;
+  }
+
+  /** Write the statistics of this cache to a JSON writer. */
+  public synchronized void writeStats(JSONOutputter.Writer writer) {
+    writer.set("entries", entries.size());
+    writer.set("bytes", bytes);
+    writer.set("maxBytes", maxBytes);
+    writer.set("hits", hits);
+    writer.set("diskHits", diskHits);
+    writer.set("misses", misses);
+    writer.set("puts", puts);
+    writer.set("uncacheable", uncacheable);
+    writer.set("evictions", evictions);
+    long lookups = hits + diskHits + misses;
+    writer.set("hitRate", lookups == 0 ? 0.0 : ((double) (hits + diskHits)) / lookups);
+  }
+
+}
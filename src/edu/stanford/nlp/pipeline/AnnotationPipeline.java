@@ -8,7 +8,9 @@ import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.util.logging.Redwood;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 
@@ -34,8 +36,17 @@ public class AnnotationPipeline implements Annotator {
   private final List<Annotator> annotators;
   private List<MutableLong> accumulatedTime;
 
+  /** The latency histogram of each annotator, from {@link PipelineMetrics#GLOBAL}. */
+  private final List<LatencyHistogram> annotatorLatencies = new ArrayList<>();
+
+  /** The staged run in progress, if any, so that its queue depths can be inspected. */
+  private volatile StagedAnnotationPipeline stagedRun;
+
   public AnnotationPipeline(List<Annotator> annotators) {
     this.annotators = annotators;
+    for (Annotator annotator : annotators) {
+      annotatorLatencies.add(PipelineMetrics.GLOBAL.annotatorLatency(annotator.getClass().getSimpleName()));
+    }
     if (TIME) {
       int num = annotators.size();
       accumulatedTime = new ArrayList<>(num);
@@ -51,11 +62,27 @@ public class AnnotationPipeline implements Annotator {
 
   public void addAnnotator(Annotator annotator) {
     annotators.add(annotator);
+    annotatorLatencies.add(PipelineMetrics.GLOBAL.annotatorLatency(annotator.getClass().getSimpleName()));
     if (TIME) {
       accumulatedTime.add(new MutableLong());
     }
   }
 
+  /**
+   * Give the annotators names, under which their latencies are recorded in the {@link PipelineMetrics}.
+   * By default, an annotator's name is its class name.
+   *
+   * @param names One name for each annotator, in order
+   */
+  protected void nameAnnotators(List<String> names) {
+    if (names.size() != annotators.size()) {
+      throw new IllegalArgumentException("Got " + names.size() + " names for " + annotators.size() + " annotators");
+    }
+    for (int i = 0; i < names.size(); ++i) {
+      annotatorLatencies.set(i, PipelineMetrics.GLOBAL.annotatorLatency(names.get(i)));
+    }
+  }
+
   /**
    * Run the pipeline on an input annotation.
    * The annotation is modified in place.
@@ -66,18 +93,19 @@ public class AnnotationPipeline implements Annotator {
   public void annotate(Annotation annotation) {
     Iterator<MutableLong> it = accumulatedTime.iterator();
     Timing t = new Timing();
-    for (Annotator annotator : annotators) {
+    for (int i = 0; i < annotators.size(); i++) {
       if (Thread.interrupted()) {  // Allow interrupting
         throw new RuntimeInterruptedException();
       }
       if (TIME) {
         t.start();
       }
-      annotator.annotate(annotation);
+      annotators.get(i).annotate(annotation);
       if (TIME) {
-        long elapsed = t.stop();
+        long nanos = t.reportNano();
+        annotatorLatencies.get(i).record(nanos);
         MutableLong m = it.next();
-        m.incValue(elapsed);
+        m.incValue(nanos / 1000000);
       }
     }
   }
@@ -122,6 +150,8 @@ public class AnnotationPipeline implements Annotator {
    * @param numThreads The number of threads to run on
    * @param callback A function to be called when an annotation finishes.
    *                 The return value of the callback is ignored.
+   * @throws RuntimeException The first exception annotating a document (or calling back with it) threw.
+   *                          On more than one thread, the other documents are annotated first.
    */
   public void annotate(final Iterable<Annotation> annotations, int numThreads, final Consumer<Annotation> callback){
     // case: single thread (no point in spawning threads)
@@ -130,7 +160,10 @@ public class AnnotationPipeline implements Annotator {
         annotate(ann);
         callback.accept(ann);
       }
+      return;
     }
+    // (an exception can't be let out of a thread, which would end the program)
+    final AtomicReference<RuntimeException> failure = new AtomicReference<>();
     // Java's equivalent to ".map{ lambda(annotation) => annotate(annotation) }
     Iterable<Runnable> threads = () -> {
       final Iterator<Annotation> iter = annotations.iterator();
@@ -149,12 +182,17 @@ public class AnnotationPipeline implements Annotator {
             //(logging)
             String beginningOfDocument = input.toString().substring(0,Math.min(50,input.toString().length()));
             Redwood.startTrack("Annotating \"" + beginningOfDocument + "...\"");
-            //(annotate)
-            annotate(input);
-            //(callback)
-            callback.accept(input);
-            //(logging again)
-            Redwood.endTrack("Annotating \"" + beginningOfDocument + "...\"");
+            try {
+              //(annotate)
+              annotate(input);
+              //(callback)
+              callback.accept(input);
+            } catch (RuntimeException e) {
+              failure.compareAndSet(null, e);
+            } finally {
+              //(logging again)
+              Redwood.endTrack("Annotating \"" + beginningOfDocument + "...\"");
+            }
           };
         }
         @Override
@@ -165,6 +203,67 @@ public class AnnotationPipeline implements Annotator {
     };
     // Thread
     Redwood.Util.threadAndRun(this.getClass().getSimpleName(), threads, numThreads );
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+  }
+
+  /**
+   * Annotate a collection of input annotations as an assembly line: every annotator
+   * gets its own bounded queue and its own worker threads, and a document moves on to
+   * the next annotator as soon as the current one is done with it.  This keeps all
+   * the cores busy even when a few documents are much larger than the rest, which
+   * the document-parallel {@link #annotate(Iterable, int, Consumer)} does not.
+   *
+   * @param annotations The input annotations to process
+   * @param stageThreads The number of threads to run each annotator on, in pipeline order
+   * @param queueCapacity The number of documents allowed to wait in front of each annotator
+   * @param callback A function to be called when an annotation finishes.
+   *                 It is called from the worker threads, and so must be thread safe.
+   * @see StagedAnnotationPipeline
+   */
+  public void annotateStaged(final Iterable<Annotation> annotations, int[] stageThreads, int queueCapacity,
+                             final Consumer<Annotation> callback) {
+    StagedAnnotationPipeline run = new StagedAnnotationPipeline(annotators, stageThreads, queueCapacity,
+        TIME ? accumulatedTime : null, TIME ? annotatorLatencies : null);
+    stagedRun = run;
+    try {
+      run.run(annotations, callback);
+    } finally {
+      stagedRun = null;
+    }
+  }
+
+  /**
+   * Annotate text read incrementally from a reader, in bounded memory, handing the result
+   * to the callback as a series of windows of consecutive sentences.
+   * The sentences are the same as if the whole text were annotated at once, but document-level
+   * annotators (such as coref) only see one window at a time.
+   *
+   * @param input The text to annotate.  It is not closed.
+   * @param windowSentences The minimum number of sentences in each window (but the last).
+   *                        Use 1 if all the annotators work on single sentences.
+   * @param chunkChars The number of characters to read at a time
+   * @param callback Called with each annotated window, in order
+   * @return The number of sentences annotated
+   * @throws IOException If reading the input fails
+   * @see StreamingAnnotationPipeline
+   */
+  public long annotateStream(Reader input, int windowSentences, int chunkChars,
+                             final Consumer<Annotation> callback) throws IOException {
+    return new StreamingAnnotationPipeline(annotators, windowSentences, chunkChars,
+        TIME ? accumulatedTime : null, TIME ? annotatorLatencies : null).run(input, callback);
+  }
+
+  /**
+   * The number of documents currently waiting in front of each annotator, if a
+   * {@link #annotateStaged(Iterable, int[], int, Consumer) staged} annotation is running.
+   *
+   * @return One queue depth per annotator, in pipeline order.  All zero if nothing is running.
+   */
+  public int[] stageQueueDepths() {
+    StagedAnnotationPipeline run = stagedRun;
+    return run == null ? new int[annotators.size()] : run.queueDepths();
   }
 
   /** Return the total pipeline annotation time in milliseconds.
@@ -152,6 +152,27 @@ public class AnnotatorPool  {
     }
   }
 
+  /**
+   * Retrieve an Annotator from the pool, as {@link #get(String)} does, for use by the given holder
+   * (typically a pipeline).  If the annotator comes from an {@link AnnotatorRegistry}, the registry
+   * will not evict it while the holder is alive.
+   *
+   * @param name The annotator to retrieve from the pool
+   * @param holder The object which will use the annotator
+   * @return The annotator
+   * @throws IllegalArgumentException If the annotator cannot be created
+   */
+  public synchronized Annotator get(String name, Object holder) {
+    CachedAnnotator factory =  this.cachedAnnotators.get(name);
+    if (factory == null) {
+      throw new IllegalArgumentException("No annotator named " + name);
+    } else if (factory.annotator instanceof AnnotatorRegistry.Entry) {
+      return ((AnnotatorRegistry.Entry) factory.annotator).get(holder);
+    } else {
+      return factory.annotator.get();
+    }
+  }
+
 
   /**
    * A global singleton annotator pool, so that we can cache globally on a JVM instance.
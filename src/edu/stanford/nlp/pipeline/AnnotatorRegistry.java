@@ -0,0 +1,397 @@
+package edu.stanford.nlp.pipeline;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import edu.stanford.nlp.util.Lazy;
+import edu.stanford.nlp.util.logging.Redwood;
+
+
+/**
+ * A registry of the annotators (and so of the models they hold) loaded in this JVM,
+ * keyed by annotator name and the signature of the properties which configure it,
+ * so that all the {@link StanfordCoreNLP} pipelines and {@link AnnotatorPool}s
+ * share one copy of each.
+ *
+ * <p>Unlike a cache of soft references, the registry decides explicitly when an annotator
+ * is dropped, so that a model is never reloaded just because the garbage collector wanted memory:
+ * <ul>
+ *   <li>An annotator is in use while any live pipeline holds it (a reference count of pipelines,
+ *       kept with weak references so that a pipeline which is garbage collected stops counting),
+ *       and is never evicted while in use.</li>
+ *   <li>An annotator can be pinned, e.g., after preloading it, so that it is never evicted.</li>
+ *   <li>If the estimated size of the loaded annotators exceeds a byte budget (by default
+ *       there is none), the least recently used annotators which are neither in use nor pinned
+ *       are evicted until it doesn't.</li>
+ * </ul>
+ * The registry counts loads, reloads, evictions, and load times for each annotator; see {@link #stats()}.
+ *
+ * <p>The size of an annotator is estimated from the growth of the heap while loading it,
+ * unless a size estimator is given.  This is only approximate if several annotators load
+ * at once.</p>
+ */
+public class AnnotatorRegistry {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(AnnotatorRegistry.class);
+
+  /** The entries, by signature.  This may be shared with other code, which may also add other kinds of Lazy to it. */
+  private final Map<StanfordCoreNLP.AnnotatorSignature, Lazy<Annotator>> entries;
+
+  /** The loaded entries, least recently used first.  Guarded by this. */
+  private final LinkedHashMap<Entry, Boolean> loaded = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** The estimated total size of the loaded annotators.  Guarded by this. */
+  private long loadedBytes; // = 0
+
+  private volatile long maxBytes = Long.MAX_VALUE;
+
+  /** If not null, estimates the size of an annotator, instead of measuring the heap. */
+  private final ToLongFunction<Annotator> sizeEstimator;
+
+
+  /**
+   * Create a registry keeping its entries in the given map.
+   */
+  public AnnotatorRegistry(Map<StanfordCoreNLP.AnnotatorSignature, Lazy<Annotator>> entries) {
+    this(entries, null);
+  }
+
+  /**
+   * Create a registry keeping its entries in the given map, and estimating the size of annotators
+   * with the given function.
+   */
+  public AnnotatorRegistry(Map<StanfordCoreNLP.AnnotatorSignature, Lazy<Annotator>> entries,
+                           ToLongFunction<Annotator> sizeEstimator) {
+    this.entries = entries;
+    this.sizeEstimator = sizeEstimator;
+  }
+
+
+  /**
+   * A registered annotator, which is loaded when first asked for.
+   * It is a {@link Lazy}, so it can be given to an {@link AnnotatorPool}.
+   */
+  public final class Entry extends Lazy<Annotator> {
+
+    private final StanfordCoreNLP.AnnotatorSignature signature;
+    private final Supplier<Annotator> factory;
+    private volatile Annotator annotator;
+
+    // The rest is guarded by the registry
+    private final List<WeakReference<Object>> holders = new ArrayList<>();
+    private boolean pinned;
+    private long bytes;
+    private int loads;
+    private int evictions;
+    private long requests;
+    private long totalLoadMillis;
+    private long lastLoadMillis;
+
+    private Entry(StanfordCoreNLP.AnnotatorSignature signature, Supplier<Annotator> factory) {
+      this.signature = signature;
+      this.factory = factory;
+    }
+
+    public StanfordCoreNLP.AnnotatorSignature signature() {
+      return signature;
+    }
+
+    /** Returns the annotator, loading it if it isn't loaded. */
+    @Override
+    public Annotator get() {
+      return load(this, null);
+    }
+
+    /**
+     * Returns the annotator, loading it if it isn't loaded, and counts the holder
+     * as using it for as long as the holder is alive or until it is released.
+     */
+    public Annotator get(Object holder) {
+      return load(this, holder);
+    }
+
+    @Override
+    protected Annotator compute() {
+      return factory.get();
+    }
+
+    /** The registry may drop the annotator, so it is a cache. */
+    @Override
+    public boolean isCache() {
+      return true;
+    }
+
+    @Override
+    public Annotator getIfDefined() {
+      return annotator;
+    }
+
+    /** True only if the annotator has never been loaded, so that entries with statistics are kept. */
+    @Override
+    public boolean isGarbageCollected() {
+      synchronized (AnnotatorRegistry.this) {
+        return annotator == null && loads == 0;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "AnnotatorRegistry.Entry{" + signature.name + '}';
+    }
+
+  } // end class Entry
+
+
+  /**
+   * Statistics about one registered annotator, at the time {@link #stats()} was called.
+   */
+  public static class Stats {
+    public final String name;
+    public final String signature;
+    public final boolean loaded;
+    public final boolean pinned;
+    /** How many live pipelines are using the annotator. */
+    public final int holders;
+    /** The estimated size of the annotator, from its last load. */
+    public final long bytes;
+    public final int loads;
+    public final int evictions;
+    /** How many times the annotator was asked for. */
+    public final long requests;
+    public final long totalLoadMillis;
+    public final long lastLoadMillis;
+
+    private Stats(Entry entry, int holders) {
+      this.name = entry.signature.name;
+      this.signature = entry.signature.signature;
+      this.loaded = entry.annotator != null;
+      this.pinned = entry.pinned;
+      this.holders = holders;
+      this.bytes = entry.bytes;
+      this.loads = entry.loads;
+      this.evictions = entry.evictions;
+      this.requests = entry.requests;
+      this.totalLoadMillis = entry.totalLoadMillis;
+      this.lastLoadMillis = entry.lastLoadMillis;
+    }
+
+    /** Loads after the first one, each of which some request had to wait for. */
+    public int reloads() {
+      return Math.max(0, loads - 1);
+    }
+
+    @Override
+    public String toString() {
+      return name + ": " + (loaded ? "loaded" : "not loaded") + (pinned ? ", pinned" : "") +
+          ", " + holders + " pipelines, ~" + (bytes >> 20) + "MB, " + loads + " loads (" +
+          totalLoadMillis + " ms), " + evictions + " evictions, " + requests + " requests";
+    }
+  } // end static class Stats
+
+
+  /**
+   * Register an annotator, unless one with the same signature is already registered.
+   *
+   * @param signature The name and property signature of the annotator
+   * @param factory Makes the annotator, when it is first needed (and again if it is evicted)
+   * @return The registered annotator (as a Lazy, as it may not be loaded yet)
+   */
+  public Lazy<Annotator> register(StanfordCoreNLP.AnnotatorSignature signature, Supplier<Annotator> factory) {
+    return entries.computeIfAbsent(signature, sig -> new Entry(sig, factory));
+  }
+
+  private Annotator load(Entry entry, Object holder) {
+    Annotator annotator;
+    // Only one thread loads a given annotator, but different annotators may load concurrently
+    synchronized (entry) {
+      annotator = entry.annotator;
+      if (annotator == null) {
+        long usedBefore = usedMemory();
+        long start = System.currentTimeMillis();
+        annotator = entry.compute();
+        long millis = System.currentTimeMillis() - start;
+        long bytes = sizeEstimator != null ? sizeEstimator.applyAsLong(annotator) : Math.max(0, usedMemory() - usedBefore);
+        synchronized (this) {
+          entry.loads++;
+          entry.totalLoadMillis += millis;
+          entry.lastLoadMillis = millis;
+          entry.bytes = bytes;
+          entry.annotator = annotator;
+          loaded.put(entry, Boolean.TRUE);
+          loadedBytes += bytes;
+        }
+        if (entry.loads > 1) {
+          log.info("Reloaded annotator " + entry.signature.name + " in " + millis + " ms (load " + entry.loads + ')');
+        }
+      }
+    }
+    synchronized (this) {
+      entry.requests++;
+      if (holder != null && ! isHeldBy(entry, holder)) {
+        entry.holders.add(new WeakReference<>(holder));
+      }
+      loaded.get(entry); // mark as recently used
+      evictOverBudget(entry);
+    }
+    return annotator;
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static boolean isHeldBy(Entry entry, Object holder) {
+    for (WeakReference<Object> ref : entry.holders) {
+      if (ref.get() == holder) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** The number of live holders of an entry, forgetting any which were garbage collected. Must hold the lock. */
+  private static int liveHolders(Entry entry) {
+    entry.holders.removeIf(ref -> ref.get() == null);
+    return entry.holders.size();
+  }
+
+  /** Evicts unused, unpinned annotators, least recently used first, until within the budget. Must hold the lock. */
+  private void evictOverBudget(Entry keep) {
+    if (loadedBytes <= maxBytes) {
+      return;
+    }
+    for (Iterator<Entry> iter = loaded.keySet().iterator(); iter.hasNext() && loadedBytes > maxBytes; ) {
+      Entry entry = iter.next();
+      if (entry != keep && ! entry.pinned && liveHolders(entry) == 0) {
+        iter.remove();
+        unload(entry);
+        log.info("Evicted annotator " + entry.signature.name + " (~" + (entry.bytes >> 20) + "MB) to stay within " + (maxBytes >> 20) + "MB");
+      }
+    }
+  }
+
+  /** Drops a loaded annotator, which has been removed from the loaded map. Must hold the lock. */
+  private void unload(Entry entry) {
+    Annotator annotator = entry.annotator;
+    entry.annotator = null;
+    entry.evictions++;
+    loadedBytes -= entry.bytes;
+    if (annotator != null) {
+      annotator.unmount();
+    }
+  }
+
+  /**
+   * Stops counting the holder as using any annotator.
+   */
+  public synchronized void release(Object holder) {
+    for (Entry entry : loaded.keySet()) {
+      entry.holders.removeIf(ref -> ref.get() == null || ref.get() == holder);
+    }
+    evictOverBudget(null);
+  }
+
+  /**
+   * Pins a registered annotator, so that it is never evicted.
+   *
+   * @return false if there is no such annotator
+   */
+  public synchronized boolean pin(StanfordCoreNLP.AnnotatorSignature signature) {
+    Lazy<Annotator> lazy = entries.get(signature);
+    if (lazy instanceof Entry) {
+      ((Entry) lazy).pinned = true;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Unpins a registered annotator, so that it may be evicted again when not in use.
+   *
+   * @return false if there is no such annotator
+   */
+  public synchronized boolean unpin(StanfordCoreNLP.AnnotatorSignature signature) {
+    Lazy<Annotator> lazy = entries.get(signature);
+    if (lazy instanceof Entry) {
+      ((Entry) lazy).pinned = false;
+      evictOverBudget(null);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Sets the budget for the estimated total size of the loaded annotators,
+   * evicting annotators if it is exceeded.
+   * Annotators which are in use or pinned are never evicted, so the budget may still be exceeded.
+   *
+   * @param maxBytes The budget. Long.MAX_VALUE (the default) means there is no budget.
+   */
+  public synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    evictOverBudget(null);
+  }
+
+  public long maxBytes() {
+    return maxBytes;
+  }
+
+  /** The estimated total size of the loaded annotators. */
+  public synchronized long loadedBytes() {
+    return loadedBytes;
+  }
+
+  /**
+   * Evicts all the annotators which are neither in use nor pinned.
+   *
+   * @return How many annotators were evicted
+   */
+  public synchronized int evictUnused() {
+    int evicted = 0;
+    for (Iterator<Entry> iter = loaded.keySet().iterator(); iter.hasNext(); ) {
+      Entry entry = iter.next();
+      if ( ! entry.pinned && liveHolders(entry) == 0) {
+        iter.remove();
+        unload(entry);
+        evicted++;
+      }
+    }
+    return evicted;
+  }
+
+  /**
+   * Drops all the annotators, in use or not, and forgets all registrations.
+   * Annotators in use stay usable by the pipelines which hold them; only unused ones are unmounted.
+   */
+  public synchronized void clear() {
+    for (Entry entry : loaded.keySet()) {
+      if (liveHolders(entry) == 0) {
+        unload(entry);
+      } else {
+        entry.annotator = null;
+      }
+    }
+    loaded.clear();
+    loadedBytes = 0;
+    entries.clear();
+  }
+
+  /**
+   * Statistics for each registered annotator.
+   */
+  public synchronized List<Stats> stats() {
+    List<Stats> stats = new ArrayList<>();
+    for (Lazy<Annotator> lazy : entries.values()) {
+      if (lazy instanceof Entry) {
+        Entry entry = (Entry) lazy;
+        stats.add(new Stats(entry, liveHolders(entry)));
+      }
+    }
+    return stats;
+  }
+
+}
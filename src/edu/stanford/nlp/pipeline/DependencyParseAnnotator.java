@@ -43,6 +43,20 @@ public class DependencyParseAnnotator extends SentenceAnnotator  {
    */
   private static final long DEFAULT_MAXTIME = -1;
 
+  /**
+   * Documents with at least this many sentences are parsed in batches
+   * (see {@link DependencyParser#predictBatch(List)}), when running single threaded
+   * without a timeout.  A value of 0 or less turns batching off.
+   */
+  private final int batchMinSentences;
+  private static final int DEFAULT_BATCH_MIN_SENTENCES = 8;
+
+  /**
+   * The number of sentences parsed together in one batch.
+   */
+  private final int batchSize;
+  private static final int DEFAULT_BATCH_SIZE = 64;
+
   /**
    * If true, include the extra arcs in the dependency representation.
    */
@@ -59,6 +73,8 @@ public class DependencyParseAnnotator extends SentenceAnnotator  {
     nThreads = PropertiesUtils.getInt(properties, "testThreads", DEFAULT_NTHREADS);
     maxTime = PropertiesUtils.getLong(properties, "sentenceTimeout", DEFAULT_MAXTIME);
     extraDependencies = MetaClass.cast(properties.getProperty("extradependencies", "NONE"), GrammaticalStructure.Extras.class);
+    batchMinSentences = PropertiesUtils.getInt(properties, "parseBatchMinSentences", DEFAULT_BATCH_MIN_SENTENCES);
+    batchSize = Math.max(1, PropertiesUtils.getInt(properties, "parseBatchSize", DEFAULT_BATCH_SIZE));
   }
 
   @Override
@@ -71,10 +87,35 @@ public class DependencyParseAnnotator extends SentenceAnnotator  {
     return maxTime;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * Documents with many sentences are parsed in batches, unless multiple
+   * threads or a sentence timeout have been asked for.
+   */
+  @Override
+  public void annotate(Annotation annotation) {
+    List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    if (sentences == null || nThreads != 1 || maxTime > 0 ||
+        batchMinSentences <= 0 || sentences.size() < batchMinSentences) {
+      super.annotate(annotation);
+      return;
+    }
+    for (int start = 0; start < sentences.size(); start += batchSize) {
+      List<CoreMap> batch = sentences.subList(start, Math.min(start + batchSize, sentences.size()));
+      List<GrammaticalStructure> parses = parser.predictBatch(batch);
+      for (int i = 0; i < batch.size(); i++) {
+        setDependencies(batch.get(i), parses.get(i));
+      }
+    }
+  }
+
   @Override
   protected void doOneSentence(Annotation annotation, CoreMap sentence) {
-    GrammaticalStructure gs = parser.predict(sentence);
+    setDependencies(sentence, parser.predict(sentence));
+  }
 
+  private void setDependencies(CoreMap sentence, GrammaticalStructure gs) {
     SemanticGraph deps = SemanticGraphFactory.makeFromTree(gs, Mode.COLLAPSED, extraDependencies, null),
                   uncollapsedDeps = SemanticGraphFactory.makeFromTree(gs, Mode.BASIC, extraDependencies, null),
                   ccDeps = SemanticGraphFactory.makeFromTree(gs, Mode.CCPROCESSED, extraDependencies, null),
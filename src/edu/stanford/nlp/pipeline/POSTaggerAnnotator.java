@@ -27,6 +27,12 @@ public class POSTaggerAnnotator implements Annotator  {
 
   private final boolean reuseTags;
 
+  /**
+   * How many sentences each thread tags at once.  The sentences of a batch share
+   * the tagger's working state (see {@link MaxentTagger#tagSentences}).
+   */
+  private static final int BATCH_SIZE = 32;
+
   /** Create a tagger annotator using the default English tagger from the models jar
    *  (and non-verbose initialization).
    */
@@ -93,14 +99,13 @@ public class POSTaggerAnnotator implements Annotator  {
   public void annotate(Annotation annotation) {
     // turn the annotation into a sentence
     if (annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
+      List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
       if (nThreads == 1) {
-        for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-          doOneSentence(sentence);
-        }
+        doSentences(sentences);
       } else {
-        MulticoreWrapper<CoreMap, CoreMap> wrapper = new MulticoreWrapper<>(nThreads, new POSTaggerProcessor());
-        for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-          wrapper.put(sentence);
+        MulticoreWrapper<List<CoreMap>, List<CoreMap>> wrapper = new MulticoreWrapper<>(nThreads, new POSTaggerProcessor());
+        for (int start = 0; start < sentences.size(); start += BATCH_SIZE) {
+          wrapper.put(sentences.subList(start, Math.min(start + BATCH_SIZE, sentences.size())));
           while (wrapper.peek()) {
             wrapper.poll();
           }
@@ -115,18 +120,57 @@ public class POSTaggerAnnotator implements Annotator  {
     }
   }
 
-  private class POSTaggerProcessor implements ThreadsafeProcessor<CoreMap, CoreMap> {
+  private class POSTaggerProcessor implements ThreadsafeProcessor<List<CoreMap>, List<CoreMap>> {
     @Override
-    public CoreMap process(CoreMap sentence) {
-      return doOneSentence(sentence);
+    public List<CoreMap> process(List<CoreMap> sentences) {
+      doSentences(sentences);
+      return sentences;
     }
 
     @Override
-    public ThreadsafeProcessor<CoreMap, CoreMap> newInstance() {
+    public ThreadsafeProcessor<List<CoreMap>, List<CoreMap>> newInstance() {
       return this;
     }
   }
 
+  /**
+   * Tags the given sentences together, going back to tagging them one by one
+   * if that runs out of memory, so that only the sentence to blame is skipped.
+   */
+  private void doSentences(List<CoreMap> sentences) {
+    List<List<CoreLabel>> batch = new ArrayList<>(sentences.size());
+    for (CoreMap sentence : sentences) {
+      List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+      if (tokens.size() <= maxSentenceLength) {
+        batch.add(tokens);
+      }
+    }
+    List<List<TaggedWord>> tagged;
+    try {
+      tagged = pos.tagSentences(batch, this.reuseTags);
+    } catch (OutOfMemoryError e) {
+      for (CoreMap sentence : sentences) {
+        doOneSentence(sentence);
+      }
+      return;
+    }
+
+    Iterator<List<TaggedWord>> taggedIterator = tagged.iterator();
+    for (CoreMap sentence : sentences) {
+      List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+      if (tokens.size() <= maxSentenceLength) {
+        List<TaggedWord> taggedWords = taggedIterator.next();
+        for (int i = 0, sz = tokens.size(); i < sz; i++) {
+          tokens.get(i).set(CoreAnnotations.PartOfSpeechAnnotation.class, taggedWords.get(i).tag());
+        }
+      } else {
+        for (CoreLabel token : tokens) {
+          token.set(CoreAnnotations.PartOfSpeechAnnotation.class, "X");
+        }
+      }
+    }
+  }
+
   private CoreMap doOneSentence(CoreMap sentence) {
     List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
     List<TaggedWord> tagged = null;
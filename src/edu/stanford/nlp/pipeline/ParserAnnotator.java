@@ -118,6 +118,7 @@ public class ParserAnnotator extends SentenceAnnotator  {
     this.VERBOSE = PropertiesUtils.getBool(props, annotatorName + ".debug", false);
 
     String[] flags = convertFlagsToArray(props.getProperty(annotatorName + ".flags"));
+    flags = addCoarseToFineFlags(annotatorName, props, flags);
     this.parser = loadModel(model, VERBOSE, flags);
     this.maxSentenceLength = PropertiesUtils.getInt(props, annotatorName + ".maxlen", -1);
 
@@ -174,6 +175,10 @@ public class ParserAnnotator extends SentenceAnnotator  {
             props.getProperty(annotatorName + ".flags", ""));
     os.append(annotatorName + ".maxlen:" +
             props.getProperty(annotatorName + ".maxlen", "-1"));
+    os.append(annotatorName + ".coarseToFine:" +
+            props.getProperty(annotatorName + ".coarseToFine", "false"));
+    os.append(annotatorName + ".coarseToFineThreshold:" +
+            props.getProperty(annotatorName + ".coarseToFineThreshold", ""));
     os.append(annotatorName + ".treemap:" +
             props.getProperty(annotatorName + ".treemap", ""));
     os.append(annotatorName + ".maxtime:" +
@@ -197,6 +202,26 @@ public class ParserAnnotator extends SentenceAnnotator  {
     return os.toString();
   }
 
+  /**
+   * The coarse-to-fine pruning of the PCFG parser can be turned on with
+   * {@code parse.coarseToFine}, and its threshold (a log probability
+   * relative to the best coarse parse, such as -10) set with
+   * {@code parse.coarseToFineThreshold}, rather than through {@code parse.flags}.
+   * These only apply to the LexicalizedParser.
+   */
+  private static String[] addCoarseToFineFlags(String annotatorName, Properties props, String[] flags) {
+    List<String> allFlags = new ArrayList<>(Arrays.asList(flags));
+    if (PropertiesUtils.getBool(props, annotatorName + ".coarseToFine", false)) {
+      allFlags.add("-coarseToFine");
+    }
+    String threshold = props.getProperty(annotatorName + ".coarseToFineThreshold");
+    if (threshold != null) {
+      allFlags.add("-coarseToFineThreshold");
+      allFlags.add(threshold.trim());
+    }
+    return allFlags.toArray(new String[allFlags.size()]);
+  }
+
   private static String[] convertFlagsToArray(String parserFlags) {
     if (parserFlags == null || parserFlags.trim().isEmpty()) {
       return StringUtils.EMPTY_STRING_ARRAY;
@@ -0,0 +1,222 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.LatencyHistogram;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Performance metrics for CoreNLP pipelines: a latency histogram for every annotator (by name)
+ * and for whole documents, counts of the documents, sentences, and tokens annotated,
+ * the time requests wait in queues before being annotated, and (from the
+ * {@link StanfordCoreNLP#ANNOTATOR_REGISTRY}) annotator load times, along with heap usage.
+ *
+ * <p>Pipelines record into {@link #GLOBAL}.  Recording is lock-free, so it costs little even
+ * on the hot path.  The metrics can be read through the methods here, or all at once in the
+ * Prometheus text format with {@link #toPrometheus()}; the {@link StanfordCoreNLPServer}
+ * serves the latter at {@code /metrics}.</p>
+ */
+public class PipelineMetrics {
+
+  /** The metrics every pipeline records into. */
+  public static final PipelineMetrics GLOBAL = new PipelineMetrics();
+
+  /** The quantiles reported for each histogram. */
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+  private final ConcurrentMap<String, LatencyHistogram> annotatorLatencies = new ConcurrentHashMap<>();
+  private final LatencyHistogram documentLatency = new LatencyHistogram();
+  private final LatencyHistogram queueWait = new LatencyHistogram();
+  private final LongAdder documents = new LongAdder();
+  private final LongAdder sentences = new LongAdder();
+  private final LongAdder tokens = new LongAdder();
+  private volatile long startNanos = System.nanoTime();
+
+
+  /**
+   * The latency histogram of the annotators with the given name, which every pipeline shares.
+   */
+  public LatencyHistogram annotatorLatency(String annotator) {
+    return annotatorLatencies.computeIfAbsent(annotator, k -> new LatencyHistogram());
+  }
+
+  /** The latency histograms of all the annotators, by name. */
+  public Map<String, LatencyHistogram> annotatorLatencies() {
+    return new TreeMap<>(annotatorLatencies);
+  }
+
+  /** The latency histogram of whole documents. */
+  public LatencyHistogram documentLatency() {
+    return documentLatency;
+  }
+
+  /** How long documents waited to be annotated, e.g., in the server's queues. */
+  public LatencyHistogram queueWait() {
+    return queueWait;
+  }
+
+  /**
+   * Record that a document has been annotated.
+   *
+   * @param annotation The annotated document, whose sentences and tokens are counted
+   * @param nanos How long annotating it took
+   */
+  public void recordDocument(Annotation annotation, long nanos) {
+    documentLatency.record(nanos);
+    countDocument(annotation);
+  }
+
+  /**
+   * Record that a document has been annotated, when how long it took is not known
+   * (e.g., because its annotators ran on different threads).
+   *
+   * @param annotation The annotated document, whose sentences and tokens are counted
+   */
+  public void countDocument(Annotation annotation) {
+    documents.increment();
+    List<CoreLabel> docTokens = annotation.get(CoreAnnotations.TokensAnnotation.class);
+    if (docTokens != null) {
+      tokens.add(docTokens.size());
+    }
+    List<CoreMap> docSentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    if (docSentences != null) {
+      sentences.add(docSentences.size());
+    }
+  }
+
+  public long documents() {
+    return documents.sum();
+  }
+
+  public long sentences() {
+    return sentences.sum();
+  }
+
+  public long tokens() {
+    return tokens.sum();
+  }
+
+  /** The seconds since these metrics were created or reset. */
+  public double uptimeSeconds() {
+    return (System.nanoTime() - startNanos) / 1e9;
+  }
+
+  /** The average number of tokens annotated per second, since these metrics were created or reset. */
+  public double tokensPerSecond() {
+    return tokens() / Math.max(1e-9, uptimeSeconds());
+  }
+
+  /** The average number of sentences annotated per second, since these metrics were created or reset. */
+  public double sentencesPerSecond() {
+    return sentences() / Math.max(1e-9, uptimeSeconds());
+  }
+
+  /** Forget everything recorded so far. */
+  public void reset() {
+    annotatorLatencies.values().forEach(LatencyHistogram::reset);
+    documentLatency.reset();
+    queueWait.reset();
+    documents.reset();
+    sentences.reset();
+    tokens.reset();
+    startNanos = System.nanoTime();
+  }
+
+  /**
+   * All the metrics, in the Prometheus text exposition format.
+   * Histograms are reported as summaries, in seconds.
+   */
+  public String toPrometheus() {
+    StringBuilder out = new StringBuilder();
+    header(out, "corenlp_annotator_seconds", "summary", "Time spent in each annotator, per document");
+    for (Map.Entry<String, LatencyHistogram> entry : annotatorLatencies().entrySet()) {
+      if (entry.getValue().count() == 0) {
+        continue;  // e.g., a default name an annotator was never run under
+      }
+      summary(out, "corenlp_annotator_seconds", "annotator=\"" + escape(entry.getKey()) + '"', entry.getValue());
+    }
+    header(out, "corenlp_document_seconds", "summary", "Time spent annotating each document");
+    summary(out, "corenlp_document_seconds", null, documentLatency);
+    header(out, "corenlp_queue_wait_seconds", "summary", "Time documents waited in a queue before being annotated");
+    summary(out, "corenlp_queue_wait_seconds", null, queueWait);
+
+    header(out, "corenlp_documents_total", "counter", "Documents annotated");
+    sample(out, "corenlp_documents_total", null, documents());
+    header(out, "corenlp_sentences_total", "counter", "Sentences annotated");
+    sample(out, "corenlp_sentences_total", null, sentences());
+    header(out, "corenlp_tokens_total", "counter", "Tokens annotated");
+    sample(out, "corenlp_tokens_total", null, tokens());
+    header(out, "corenlp_tokens_per_second", "gauge", "Tokens annotated per second, on average since startup");
+    sample(out, "corenlp_tokens_per_second", null, tokensPerSecond());
+    header(out, "corenlp_sentences_per_second", "gauge", "Sentences annotated per second, on average since startup");
+    sample(out, "corenlp_sentences_per_second", null, sentencesPerSecond());
+
+    List<AnnotatorRegistry.Stats> registryStats = StanfordCoreNLP.ANNOTATOR_REGISTRY.stats();
+    registryStats.removeIf(stats -> stats.loads == 0);
+    header(out, "corenlp_annotator_loads_total", "counter", "Times each annotator (and its models) was loaded");
+    for (AnnotatorRegistry.Stats stats : registryStats) {
+      sample(out, "corenlp_annotator_loads_total", registryLabels(stats), stats.loads);
+    }
+    header(out, "corenlp_annotator_load_seconds_total", "counter", "Time spent loading each annotator");
+    for (AnnotatorRegistry.Stats stats : registryStats) {
+      sample(out, "corenlp_annotator_load_seconds_total", registryLabels(stats), stats.totalLoadMillis / 1000.0);
+    }
+    header(out, "corenlp_annotator_loaded_bytes", "gauge", "Estimated size of each loaded annotator");
+    for (AnnotatorRegistry.Stats stats : registryStats) {
+      sample(out, "corenlp_annotator_loaded_bytes", registryLabels(stats), stats.loaded ? stats.bytes : 0);
+    }
+
+    Runtime runtime = Runtime.getRuntime();
+    header(out, "corenlp_heap_used_bytes", "gauge", "Heap in use");
+    sample(out, "corenlp_heap_used_bytes", null, runtime.totalMemory() - runtime.freeMemory());
+    header(out, "corenlp_heap_committed_bytes", "gauge", "Heap reserved by the JVM");
+    sample(out, "corenlp_heap_committed_bytes", null, runtime.totalMemory());
+    header(out, "corenlp_heap_max_bytes", "gauge", "Largest heap the JVM may use");
+    sample(out, "corenlp_heap_max_bytes", null, runtime.maxMemory());
+    return out.toString();
+  }
+
+  private static String registryLabels(AnnotatorRegistry.Stats stats) {
+    return "annotator=\"" + escape(stats.name) + "\",signature=\"" + Integer.toHexString(stats.signature.hashCode()) + '"';
+  }
+
+  private static void header(StringBuilder out, String name, String type, String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void summary(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+    String prefix = labels == null ? "" : labels + ',';
+    for (double quantile : QUANTILES) {
+      sample(out, name, prefix + "quantile=\"" + quantile + '"', histogram.percentileNanos(quantile) / 1e9);
+    }
+    sample(out, name + "_sum", labels, histogram.sumNanos() / 1e9);
+    sample(out, name + "_count", labels, histogram.count());
+  }
+
+  private static void sample(StringBuilder out, String name, String labels, double value) {
+    out.append(name);
+    if (labels != null) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ');
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      out.append((long) value);
+    } else {
+      out.append(value);
+    }
+    out.append('\n');
+  }
+
+  private static String escape(String label) {
+    return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+}
@@ -0,0 +1,236 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.LatencyHistogram;
+import edu.stanford.nlp.util.MutableLong;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+import edu.stanford.nlp.util.logging.Redwood;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs a sequence of {@link Annotator}s over a stream of documents as an assembly line.
+ * Every annotator is a stage with its own bounded input queue and its own pool of
+ * worker threads.  A document leaves a stage as soon as that stage's annotator is done
+ * with it, so a large document only ties up the stage it is currently in, rather than
+ * one thread for the whole pipeline.  Since the queues are bounded, a slow stage
+ * blocks the stages (and ultimately the caller) feeding it: this is the back-pressure
+ * that keeps the number of in-flight documents bounded.
+ *
+ * <p>Documents are not guaranteed to come out in the order they were put in.
+ * If an annotator throws, the exception is stored in the document under
+ * {@link CoreAnnotations.ExceptionAnnotation}, the remaining stages are skipped for that
+ * document, and it is handed to the callback like any other document.</p>
+ *
+ * <p>Instances are single use: construct one, call {@link #run(Iterable, Consumer)} once.
+ * {@link #queueDepths()} may be called from any thread while it runs.</p>
+ *
+ * @see AnnotationPipeline#annotateStaged(Iterable, int[], int, Consumer)
+ */
+public class StagedAnnotationPipeline {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(StagedAnnotationPipeline.class);
+
+  /** Marks the end of the input on a stage's queue. One is enqueued per worker. */
+  private static final Annotation END_OF_INPUT = new Annotation("");
+
+  private final List<Annotator> annotators;
+  private final int[] stageThreads;
+  private final List<BlockingQueue<Annotation>> queues;
+  private final List<MutableLong> accumulatedTime;
+  private final List<LatencyHistogram> latencies;
+  /** The first exception thrown by a worker (other than by an annotator), to be rethrown by run() */
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  /**
+   * Create a new staged pipeline.
+   *
+   * @param annotators The annotators to run, in order.
+   * @param stageThreads The number of worker threads for each annotator.
+   * @param queueCapacity The maximum number of documents waiting in front of any one stage.
+   * @param accumulatedTime If not null, the elapsed time of every annotator is added to the
+   *                        corresponding entry of this list.
+   */
+  public StagedAnnotationPipeline(List<Annotator> annotators, int[] stageThreads, int queueCapacity,
+                                  List<MutableLong> accumulatedTime) {
+    this(annotators, stageThreads, queueCapacity, accumulatedTime, null);
+  }
+
+  /**
+   * Create a new staged pipeline, which also records the latency of every annotator.
+   *
+   * @param annotators The annotators to run, in order.
+   * @param stageThreads The number of worker threads for each annotator.
+   * @param queueCapacity The maximum number of documents waiting in front of any one stage.
+   * @param accumulatedTime If not null, the elapsed time of every annotator is added to the
+   *                        corresponding entry of this list.
+   * @param latencies If not null, the elapsed time of every annotator on every document is
+   *                  recorded in the corresponding entry of this list.
+   */
+  public StagedAnnotationPipeline(List<Annotator> annotators, int[] stageThreads, int queueCapacity,
+                                  List<MutableLong> accumulatedTime, List<LatencyHistogram> latencies) {
+    if (stageThreads.length != annotators.size()) {
+      throw new IllegalArgumentException("Got " + stageThreads.length + " stage sizes for " + annotators.size() + " annotators");
+    }
+    if (queueCapacity < 1) {
+      throw new IllegalArgumentException("Stage queue capacity must be positive: " + queueCapacity);
+    }
+    this.annotators = new ArrayList<>(annotators);
+    this.stageThreads = new int[stageThreads.length];
+    this.queues = new ArrayList<>(annotators.size());
+    for (int i = 0; i < stageThreads.length; ++i) {
+      this.stageThreads[i] = Math.max(1, stageThreads[i]);
+      // the end-of-input markers must always fit, so that shutdown cannot deadlock
+      this.queues.add(new ArrayBlockingQueue<>(queueCapacity + this.stageThreads[i]));
+    }
+    this.accumulatedTime = accumulatedTime;
+    this.latencies = latencies;
+  }
+
+  /**
+   * The number of documents currently waiting in front of each stage.
+   *
+   * @return An array with one entry per annotator, in pipeline order.
+   */
+  public int[] queueDepths() {
+    int[] depths = new int[queues.size()];
+    for (int i = 0; i < depths.length; ++i) {
+      depths[i] = queues.get(i).size();
+    }
+    return depths;
+  }
+
+  /**
+   * Push every annotation through the stages, and block until all of them are done.
+   *
+   * @param annotations The documents to annotate.
+   * @param callback Called once for each document after its last stage, from a worker thread.
+   *                 If it throws, the remaining documents are dropped, and the exception
+   *                 is rethrown once all the workers have stopped.
+   */
+  public void run(Iterable<Annotation> annotations, Consumer<Annotation> callback) {
+    if (annotators.isEmpty()) {
+      annotations.forEach(callback);
+      return;
+    }
+    List<Thread> workers = new ArrayList<>();
+    for (int stage = 0; stage < annotators.size(); ++stage) {
+      AtomicInteger live = new AtomicInteger(stageThreads[stage]);
+      for (int t = 0; t < stageThreads[stage]; ++t) {
+        Thread worker = new Thread(stageWorker(stage, live, callback),
+            "stage-" + stage + '-' + annotators.get(stage).getClass().getSimpleName() + '-' + t);
+        worker.setDaemon(true);
+        workers.add(worker);
+        worker.start();
+      }
+    }
+
+    try {
+      try {
+        for (Annotation annotation : annotations) {
+          if (failure.get() != null) {
+            break;
+          }
+          queues.get(0).put(annotation);
+        }
+      } finally {
+        endOfInput(0);
+      }
+      for (Thread worker : workers) {
+        worker.join();
+      }
+    } catch (InterruptedException e) {
+      workers.forEach(Thread::interrupt);
+      throw new RuntimeInterruptedException(e);
+    }
+    Throwable t = failure.get();
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
+    } else if (t != null) {
+      throw new RuntimeException(t);
+    }
+  }
+
+  /** Tell every worker of the given stage that there is nothing more to come. */
+  private void endOfInput(int stage) throws InterruptedException {
+    for (int t = 0; t < stageThreads[stage]; ++t) {
+      queues.get(stage).put(END_OF_INPUT);
+    }
+  }
+
+  private Runnable stageWorker(int stage, AtomicInteger live, Consumer<Annotation> callback) {
+    Annotator annotator = annotators.get(stage);
+    BlockingQueue<Annotation> in = queues.get(stage);
+    BlockingQueue<Annotation> out = stage + 1 < queues.size() ? queues.get(stage + 1) : null;
+    MutableLong time = accumulatedTime == null ? null : accumulatedTime.get(stage);
+    LatencyHistogram latency = latencies == null ? null : latencies.get(stage);
+    return () -> {
+      boolean interrupted = false;
+      try {
+        for (Annotation annotation = in.take(); annotation != END_OF_INPUT; annotation = in.take()) {
+          if (failure.get() != null) {
+            // keep taking documents, so that the earlier stages don't block, but drop them
+            continue;
+          }
+          if ( ! annotation.containsKey(CoreAnnotations.ExceptionAnnotation.class)) {
+            long start = System.nanoTime();
+            try {
+              annotator.annotate(annotation);
+            } catch (RuntimeInterruptedException e) {
+              throw e;
+            } catch (Throwable t) {
+              log.warn("Annotator " + annotator.getClass().getSimpleName() + " failed: " + t);
+              annotation.set(CoreAnnotations.ExceptionAnnotation.class, t);
+            }
+            long elapsed = System.nanoTime() - start;
+            if (latency != null) {
+              latency.record(elapsed);
+            }
+            if (time != null) {
+              synchronized (time) {
+                time.incValue(elapsed / 1000000);
+              }
+            }
+          }
+          if (out != null) {
+            out.put(annotation);
+          } else {
+            try {
+              callback.accept(annotation);
+            } catch (RuntimeInterruptedException e) {
+              throw e;
+            } catch (Throwable t) {
+              failure.compareAndSet(null, t);
+            }
+          }
+        }
+      } catch (InterruptedException e) {
+        interrupted = true;
+        failure.compareAndSet(null, new RuntimeInterruptedException(e));
+      } catch (Throwable t) {
+        interrupted = t instanceof RuntimeInterruptedException;
+        failure.compareAndSet(null, t);
+      } finally {
+        // the last worker of a stage to finish closes the next stage
+        // (unless the run was interrupted, in which case all the workers are)
+        if (live.decrementAndGet() == 0 && out != null && ! interrupted) {
+          try {
+            endOfInput(stage + 1);
+          } catch (InterruptedException e) {
+            failure.compareAndSet(null, new RuntimeInterruptedException(e));
+          }
+        }
+      }
+    };
+  }
+
+}
@@ -127,10 +127,21 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
 
 
   /**
-   * A global cache of annotators, so we don't have to re-create one if there's enough memory floating around.
+   * A global cache of annotators, so we don't have to re-create one for each pipeline.
+   * Its entries are managed by {@link #ANNOTATOR_REGISTRY}.
    */
   public static final Map<AnnotatorSignature, Lazy<Annotator>> GLOBAL_ANNOTATOR_CACHE = new ConcurrentHashMap<>();
 
+  /**
+   * The registry which decides when the annotators in {@link #GLOBAL_ANNOTATOR_CACHE} are loaded and dropped.
+   */
+  public static final AnnotatorRegistry ANNOTATOR_REGISTRY = new AnnotatorRegistry(GLOBAL_ANNOTATOR_CACHE);
+
+  /** Annotators which look at more than one sentence at a time, and so need larger windows when annotating a stream. */
+  private static final List<String> DOCUMENT_LEVEL_ANNOTATORS = Arrays.asList(
+      STANFORD_DETERMINISTIC_COREF, STANFORD_COREF, STANFORD_COREF_MENTION, STANFORD_QUOTE, STANFORD_QUOTE_ATTRIBUTION,
+      STANFORD_KBP);
+
 
 
   // other constants
@@ -160,6 +171,18 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
 
   private Semaphore availableProcessors;
 
+  /** If not null, the number of threads for each annotator when annotating collections as a staged pipeline. */
+  private int[] stageThreads;
+
+  /** The number of documents allowed to wait in front of each annotator in a staged pipeline. */
+  private int stageQueueSize;
+
+  /** The minimum number of sentences in each window when annotating a stream. */
+  private int streamWindowSentences;
+
+  /** The number of characters read at a time when annotating a stream. */
+  private int streamChunkSize;
+
   /** The annotator pool we should be using to get annotators. */
   public final AnnotatorPool pool;
 
@@ -486,13 +509,14 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
     // now construct the annotators from the given properties in the given order
     List<String> annoNames = Arrays.asList(getRequiredProperty(props, "annotators").split("[, \t]+"));
     Set<String> alreadyAddedAnnoNames = Generics.newHashSet();
+    List<String> stageNames = new ArrayList<>();
     Set<Class<? extends CoreAnnotation>> requirementsSatisfied = Generics.newHashSet();
     for (String name : annoNames) {
       name = name.trim();
       if (name.isEmpty()) { continue; }
       logger.info("Adding annotator " + name);
 
-      Annotator an = pool.get(name);
+      Annotator an = pool.get(name, this);
       this.addAnnotator(an);
 
       if (enforceRequirements) {
@@ -511,8 +535,30 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
 
 
       alreadyAddedAnnoNames.add(name);
+      stageNames.add(name);
+    }
+
+    // Record each annotator's latency under its name
+    nameAnnotators(stageNames);
+
+    // Set up the staged (assembly line) mode for annotating collections of documents
+    if (PropertiesUtils.getBool(props, "staged", false)) {
+      int defaultStageThreads = PropertiesUtils.getInt(props, "staged.threads", PropertiesUtils.getInt(props, "threads", 1));
+      this.stageThreads = new int[stageNames.size()];
+      for (int i = 0; i < stageThreads.length; ++i) {
+        stageThreads[i] = PropertiesUtils.getInt(props, "staged.threads." + stageNames.get(i), defaultStageThreads);
+      }
+      this.stageQueueSize = PropertiesUtils.getInt(props, "staged.queueSize", 2 * defaultStageThreads);
     }
 
+    // Set up streaming annotation. Document-level annotators need windows of several sentences
+    boolean documentLevel = false;
+    for (String name : DOCUMENT_LEVEL_ANNOTATORS) {
+      documentLevel |= alreadyAddedAnnoNames.contains(name);
+    }
+    this.streamWindowSentences = PropertiesUtils.getInt(props, "stream.windowSentences", documentLevel ? 100 : 1);
+    this.streamChunkSize = PropertiesUtils.getInt(props, "stream.chunkSize", 8192);
+
     // Sanity check
     if (! alreadyAddedAnnoNames.contains(STANFORD_SSPLIT)) {
       System.setProperty(NEWLINE_SPLITTER_PROPERTY, "false");
@@ -526,7 +572,26 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
    */
   public static synchronized void clearAnnotatorPool() {
     logger.warn("Clearing CoreNLP annotation pool; this should be unnecessary in production");
-    GLOBAL_ANNOTATOR_CACHE.clear();
+    ANNOTATOR_REGISTRY.clear();
+  }
+
+  /**
+   * Loads the annotators of the given properties' pipeline ahead of time, so that the first
+   * pipeline which uses them doesn't have to wait for them.
+   *
+   * @param props The properties, including the annotators to load
+   * @param pin If true, the annotators are never evicted from the {@link #ANNOTATOR_REGISTRY}
+   */
+  public static void preloadAnnotators(Properties props, boolean pin) {
+    StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
+    if (pin) {
+      for (String name : pipeline.properties.getProperty("annotators", "").split("[, \t]+")) {
+        if ( ! name.isEmpty()) {
+          ANNOTATOR_REGISTRY.pin(new AnnotatorSignature(name, PropertiesUtils.getSignature(name, pipeline.properties)));
+        }
+      }
+    }
+    ANNOTATOR_REGISTRY.release(pipeline);
   }
 
 
@@ -579,7 +644,7 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
     AnnotatorPool pool = AnnotatorPool.SINGLETON;
     for (Map.Entry<String, BiFunction<Properties, AnnotatorImplementations, Annotator>> entry : getNamedAnnotators().entrySet()) {
       AnnotatorSignature key = new AnnotatorSignature(entry.getKey(), PropertiesUtils.getSignature(entry.getKey(), inputProps));
-      pool.register(entry.getKey(), inputProps, GLOBAL_ANNOTATOR_CACHE.computeIfAbsent(key, (sig) -> Lazy.cache(() -> entry.getValue().apply(inputProps, annotatorImplementation))));
+      pool.register(entry.getKey(), inputProps, ANNOTATOR_REGISTRY.register(key, () -> entry.getValue().apply(inputProps, annotatorImplementation)));
     }
     registerCustomAnnotators(pool, annotatorImplementation, inputProps);
     return pool;
@@ -603,7 +668,7 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
         final String customClassName = inputProps.getProperty(property);
         logger.info("Registering annotator " + customName + " with class " + customClassName);
         AnnotatorSignature key = new AnnotatorSignature(customName, PropertiesUtils.getSignature(customName, inputProps));
-        pool.register(customName, inputProps, GLOBAL_ANNOTATOR_CACHE.computeIfAbsent(key, (sig) -> Lazy.cache(() -> annotatorImplementation.custom(inputProps, property))));
+        pool.register(customName, inputProps, ANNOTATOR_REGISTRY.register(key, () -> annotatorImplementation.custom(inputProps, property)));
       }
     }
   }
@@ -622,7 +687,7 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
     AnnotatorPool pool = new AnnotatorPool();
     for (Map.Entry<String, BiFunction<Properties, AnnotatorImplementations, Annotator>> entry : getNamedAnnotators().entrySet()) {
       AnnotatorSignature key = new AnnotatorSignature(entry.getKey(), PropertiesUtils.getSignature(entry.getKey(), inputProps));
-      pool.register(entry.getKey(), inputProps, GLOBAL_ANNOTATOR_CACHE.computeIfAbsent(key, (sig) -> Lazy.cache(() -> entry.getValue().apply(inputProps, annotatorImplementation))));
+      pool.register(entry.getKey(), inputProps, ANNOTATOR_REGISTRY.register(key, () -> entry.getValue().apply(inputProps, annotatorImplementation)));
     }
     registerCustomAnnotators(pool, annotatorImplementation, inputProps);
     return pool;
@@ -657,7 +722,9 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
   /** {@inheritDoc} */
   @Override
   public void annotate(Annotation annotation) {
+    long start = System.nanoTime();
     super.annotate(annotation);
+    PipelineMetrics.GLOBAL.recordDocument(annotation, System.nanoTime() - start);
     List<CoreLabel> words = annotation.get(CoreAnnotations.TokensAnnotation.class);
     if (words != null) {
       numWords += words.size();
@@ -689,6 +756,71 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
 
 
 
+  /**
+   * {@inheritDoc}
+   *
+   * If the {@code staged} property is set, the annotators are run as an assembly line
+   * instead: see {@link AnnotationPipeline#annotateStaged(Iterable, int[], int, Consumer)}.
+   * The stage sizes then come from {@code staged.threads.[annotator]}, defaulting to
+   * {@code staged.threads} (itself defaulting to {@code threads}), and the per-stage queue
+   * size from {@code staged.queueSize}; {@code numThreads} is ignored.
+   */
+  @Override
+  public void annotate(final Iterable<Annotation> annotations, int numThreads, final Consumer<Annotation> callback) {
+    if (stageThreads == null) {
+      super.annotate(annotations, numThreads, callback);
+    } else {
+      annotateStaged(annotations, stageThreads, stageQueueSize, ann -> {
+        PipelineMetrics.GLOBAL.countDocument(ann);
+        List<CoreLabel> words = ann.get(CoreAnnotations.TokensAnnotation.class);
+        if (words != null) {
+          synchronized (this) {
+            numWords += words.size();
+          }
+        }
+        callback.accept(ann);
+      });
+    }
+  }
+
+
+  /**
+   * Annotate text read incrementally from a reader, in bounded memory.
+   * The windows of sentences handed to the callback have at least {@code stream.windowSentences}
+   * sentences (by default 1, or 100 if there is a document-level annotator such as coref or quote),
+   * and the text is read {@code stream.chunkSize} characters at a time.
+   *
+   * @param input The text to annotate.  It is not closed.
+   * @param callback Called with each annotated window of sentences, in order
+   * @return The number of sentences annotated
+   * @throws IOException If reading the input fails
+   * @see StreamingAnnotationPipeline
+   */
+  public long annotateStream(Reader input, final Consumer<Annotation> callback) throws IOException {
+    return annotateStream(input, streamWindowSentences, streamChunkSize, window -> {
+      List<CoreLabel> words = window.get(CoreAnnotations.TokensAnnotation.class);
+      if (words != null) {
+        numWords += words.size();
+      }
+      callback.accept(window);
+    });
+  }
+
+  /**
+   * Annotate text read incrementally from a reader, as {@link #annotateStream(Reader, Consumer)} does,
+   * handing each sentence to the callback.
+   *
+   * @param input The text to annotate.  It is not closed.
+   * @param callback Called with each annotated sentence, in order.  The sentence's document is
+   *                 the window it was annotated in.
+   * @return The number of sentences annotated
+   * @throws IOException If reading the input fails
+   */
+  public long annotateSentenceStream(Reader input, final Consumer<CoreSentence> callback) throws IOException {
+    return annotateStream(input, window -> new CoreDocument(window).sentences().forEach(callback));
+  }
+
+
   /**
    * Determines whether the parser annotator should default to
    * producing binary trees.  Currently there is only one condition
@@ -816,6 +948,8 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
       os.println("(In general, you shouldn't need to set this flags)");
       os.println("\tparse.flags - extra flags to the parser (default: -retainTmpSubcategories)");
       os.println("\tparse.debug - set to true to make the parser slightly more verbose");
+      os.println("\tparse.coarseToFine - set to true to prune the PCFG chart with a coarse grammar first");
+      os.println("\tparse.coarseToFineThreshold - how far below the best coarse parse to prune (default: -10)");
       os.println();
       os.println("Charniak and Johnson parser-specific options:");
       os.println("\tparse.executable - path to the parseIt binary or parse.sh script");
@@ -904,6 +1038,9 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
     os.println("\t\"replaceExtension\" - flag to chop off the last extension before adding outputExtension to file");
     os.println("\t\"noClobber\" - don't automatically override (clobber) output files that already exist");
 		os.println("\t\"threads\" - multithread on this number of threads");
+    os.println("\t\"staged\" - when annotating many documents, run each annotator as its own stage with its own threads");
+    os.println("\t\"staged.threads\" - default number of threads per stage (\"staged.threads.[annotator]\" sets one stage)");
+    os.println("\t\"staged.queueSize\" - number of documents allowed to wait in front of each stage");
     os.println();
     os.println("If none of the above are present, run the pipeline in an interactive shell (default properties will be loaded from the classpath).");
     os.println("The shell accepts input from stdin and displays the output at stdout.");
@@ -1284,7 +1421,7 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
               if ((totalProcessed.intValue() + totalErrorAnnotating.intValue()) == files.size()) {
                 // clear pool if necessary
                 if (clearPool)
-                  GLOBAL_ANNOTATOR_CACHE.clear();
+                  ANNOTATOR_REGISTRY.clear();
                 // print out timing info
                 if (TIME && pipeline.isPresent() && tim.isPresent())
                   logTimingInfo(pipeline.get(), tim.get());
@@ -1300,7 +1437,7 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
               if ((totalProcessed.intValue() + totalErrorAnnotating.intValue()) == files.size()) {
                 // clear pool if necessary
                 if (clearPool)
-                  GLOBAL_ANNOTATOR_CACHE.clear();
+                  ANNOTATOR_REGISTRY.clear();
                 // print out timing info
                 if (TIME && pipeline.isPresent() && tim.isPresent())
                   logTimingInfo(pipeline.get(), tim.get());
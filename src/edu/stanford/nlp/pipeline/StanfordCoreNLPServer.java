@@ -11,7 +11,8 @@ import edu.stanford.nlp.ling.tokensregex.SequenceMatchResult;
 import edu.stanford.nlp.ling.tokensregex.TokenSequenceMatcher;
 import edu.stanford.nlp.ling.tokensregex.TokenSequencePattern;
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
-import edu.stanford.nlp.semgraph.semgrex.SemgrexMatcher;
+import edu.stanford.nlp.semgraph.semgrex.SemgrexBatchMatcher;
+import edu.stanford.nlp.semgraph.semgrex.SemgrexMatch;
 import edu.stanford.nlp.semgraph.semgrex.SemgrexPattern;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.tregex.TregexPattern;
@@ -32,6 +33,8 @@ import java.security.cert.CertificateException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -75,6 +78,8 @@ public class StanfordCoreNLPServer implements Runnable {
   protected static String defaultAnnotators = "tokenize,ssplit,pos,lemma,ner,parse,depparse,coref,natlog,openie,kbp";
   @ArgumentParser.Option(name="preload", gloss="Cache the following annotators on startup")
   protected static String preloadedAnnotators = "";
+  @ArgumentParser.Option(name="annotatorCacheMegabytes", gloss="The approximate memory budget, in megabytes, for cached annotators which are neither preloaded nor in use (non-positive means no limit)")
+  protected static int annotatorCacheMegabytes = -1;
   @ArgumentParser.Option(name="serverProperties", gloss="Default properties file for server's StanfordCoreNLP instance")
   protected static String serverPropertiesPath = null;
   @ArgumentParser.Option(name="maxCharLength", gloss="Max length string that will be processed (non-positive means no limit)")
@@ -83,6 +88,22 @@ public class StanfordCoreNLPServer implements Runnable {
   protected static String blacklist = null;
   @ArgumentParser.Option(name="stanford", gloss="If true, do special options (blacklist, timeout modifications) for public Stanford server")
   protected boolean stanford = false;
+  @ArgumentParser.Option(name="async", gloss="If true, annotation requests don't hold a server thread while they are annotated, and concurrent small requests with the same properties are annotated in batches")
+  protected boolean async = false;
+  @ArgumentParser.Option(name="batchSize", gloss="In async mode, the largest number of requests annotated as one batch")
+  protected int batchSize = 16;
+  @ArgumentParser.Option(name="batchChars", gloss="In async mode, a batch is started as soon as it has this many characters of text")
+  protected int batchChars = 4096;
+  @ArgumentParser.Option(name="batchWaitMillis", gloss="In async mode, the longest a request waits for others to join its batch")
+  protected int batchWaitMillis = 5;
+  @ArgumentParser.Option(name="batchThreads", gloss="In async mode, the number of threads each batch is annotated on (with the staged property, the pipeline's stage threads are used instead)")
+  protected int batchThreads = 1;
+  @ArgumentParser.Option(name="resultCacheMegabytes", gloss="If positive, cache up to this many megabytes of annotated documents, so that repeated requests are not annotated again")
+  protected int resultCacheMegabytes = 0;
+  @ArgumentParser.Option(name="resultCacheDir", gloss="If set (and the result cache is enabled), also keep cached documents in this directory, so they outlive the server")
+  protected String resultCacheDir = null;
+  @ArgumentParser.Option(name="maxPendingRequests", gloss="The maximum number of requests each endpoint handles or queues at once; more are refused with status 429 (non-positive means no limit)")
+  protected int maxPendingRequests = -1;
 
 
 
@@ -107,6 +128,19 @@ public class StanfordCoreNLPServer implements Runnable {
   private final ExecutorService corenlpExecutor;
 
 
+  /**
+   * In async mode, collects annotation requests into batches for the {@link #corenlpExecutor},
+   * and times them out.
+   */
+  private AnnotationBatcher batcher;
+  private ScheduledExecutorService timer;
+
+  /** If not null, the annotated documents of recent requests, to answer repeated requests from. */
+  private AnnotationCache resultCache;
+
+  /** The HTTP status for refusing a request because the server is overloaded. */
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
   /**
    * A list of blacklisted subnets -- these cannot call the server.
    */
@@ -330,6 +364,19 @@ public class StanfordCoreNLPServer implements Runnable {
   }
 
 
+  /**
+   * The signature of the properties a pipeline is made with: requests with the same key
+   * can share a pipeline.
+   */
+  private static String pipelineKey(Properties props) {
+    StringBuilder sb = new StringBuilder();
+    props.stringPropertyNames().stream().filter(key -> !key.equalsIgnoreCase("date")).forEach(key -> {
+      String pvalue = props.getProperty(key);
+      sb.append(key).append(':').append(pvalue).append(';');
+    });
+    return sb.toString();
+  }
+
   /**
    * Create (or retrieve) a StanfordCoreNLP object corresponding to these properties.
    *
@@ -339,12 +386,7 @@ public class StanfordCoreNLPServer implements Runnable {
   private StanfordCoreNLP mkStanfordCoreNLP(Properties props) {
     StanfordCoreNLP impl;
 
-    StringBuilder sb = new StringBuilder();
-    props.stringPropertyNames().stream().filter(key -> !key.equalsIgnoreCase("date")).forEach(key -> {
-      String pvalue = props.getProperty(key);
-      sb.append(key).append(':').append(pvalue).append(';');
-    });
-    String cacheKey = sb.toString();
+    String cacheKey = pipelineKey(props);
 
     synchronized (this) {
       Pair<String, StanfordCoreNLP> lastPipeline = this.lastPipeline.get();
@@ -500,6 +542,23 @@ public class StanfordCoreNLPServer implements Runnable {
     httpExchange.close();
   }
 
+  /**
+   * A helper function to refuse a request because the server is overloaded.
+   *
+   * @param httpExchange The exchange to send the error over.
+   *
+   * @throws IOException Thrown if the HttpExchange cannot communicate the error.
+   */
+  private static void respondTooManyRequests(HttpExchange httpExchange) throws IOException {
+    httpExchange.getRequestBody().close();
+    httpExchange.getResponseHeaders().add("Content-type", "text/plain");
+    httpExchange.getResponseHeaders().add("Retry-After", "1");
+    byte[] content = "Server is overloaded; try again later".getBytes("utf-8");
+    httpExchange.sendResponseHeaders(HTTP_TOO_MANY_REQUESTS, content.length);
+    httpExchange.getResponseBody().write(content);
+    httpExchange.close();
+  }
+
   private static void setHttpExchangeResponseHeaders(HttpExchange httpExchange) {
     // Set common response headers
     httpExchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
@@ -702,6 +761,54 @@ public class StanfordCoreNLPServer implements Runnable {
     }
   } // end static class ShutdownHandler
 
+  /**
+   * Serves the {@link PipelineMetrics}, in the Prometheus text format.
+   */
+  protected static class MetricsHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      byte[] response = PipelineMetrics.GLOBAL.toPrometheus().getBytes("utf-8");
+      httpExchange.getResponseHeaders().add("Content-type", "text/plain; version=0.0.4; charset=utf-8");
+      httpExchange.sendResponseHeaders(HTTP_OK, response.length);
+      httpExchange.getResponseBody().write(response);
+      httpExchange.close();
+    }
+  } // end static class MetricsHandler
+
+  /**
+   * Reports statistics about the server: its result cache, annotators, and (in async mode) batches.
+   */
+  protected class StatsHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      String response = JSONOutputter.JSONWriter.objectToJSON(writer -> {
+        if (resultCache != null) {
+          writer.set("resultCache", (Consumer<JSONOutputter.Writer>) resultCache::writeStats);
+        }
+        if (batcher != null) {
+          writer.set("batches", (Consumer<JSONOutputter.Writer>) batchWriter -> {
+            batchWriter.set("pending", batcher.pending());
+            batchWriter.set("batches", batcher.batchesRun());
+            batchWriter.set("documents", batcher.documentsRun());
+          });
+        }
+        writer.set("annotators", StanfordCoreNLP.ANNOTATOR_REGISTRY.stats().stream()
+            .filter(stats -> stats.loads > 0 || stats.pinned).map(stats ->
+            (Consumer<JSONOutputter.Writer>) annotatorWriter -> {
+              annotatorWriter.set("name", stats.name);
+              annotatorWriter.set("loaded", stats.loaded);
+              annotatorWriter.set("pinned", stats.pinned);
+              annotatorWriter.set("bytes", stats.bytes);
+              annotatorWriter.set("loads", stats.loads);
+              annotatorWriter.set("evictions", stats.evictions);
+              annotatorWriter.set("requests", stats.requests);
+              annotatorWriter.set("loadMillis", stats.totalLoadMillis);
+            }).collect(Collectors.toList()));
+      });
+      sendAndGetResponse(httpExchange, response.getBytes("utf-8"));
+    }
+  } // end class StatsHandler
+
   /**
    * Serve a file from the filesystem or classpath
    */
@@ -730,6 +837,90 @@ public class StanfordCoreNLPServer implements Runnable {
   } // end static class FileHandler
 
 
+  /**
+   * Limits the number of requests an endpoint handles at once, refusing the rest with
+   * status 429 (Too Many Requests) rather than letting them queue up until they time out.
+   * A handler which finishes a request after returning from {@link HttpHandler#handle(HttpExchange)}
+   * takes over the request's permit with {@link #detach(HttpExchange)}, and releases it when done.
+   */
+  protected static class AdmissionControlHandler implements HttpHandler {
+
+    private static final String PERMIT = AdmissionControlHandler.class.getName() + ".permit";
+
+    private final HttpHandler handler;
+    private final String endpoint;
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * @param handler The endpoint's handler
+     * @param endpoint The name of the endpoint, for logging
+     * @param maxPending The most requests to handle at once
+     */
+    public AdmissionControlHandler(HttpHandler handler, String endpoint, int maxPending) {
+      this.handler = handler;
+      this.endpoint = endpoint;
+      this.maxPending = maxPending;
+    }
+
+    /** A request's claim on one of the pending slots, released exactly once. */
+    private static class Permit {
+      private final AtomicInteger pending;
+      private final AtomicBoolean released = new AtomicBoolean(false);
+      private volatile boolean detached; // = false
+
+      private Permit(AtomicInteger pending) {
+        this.pending = pending;
+      }
+
+      private void release() {
+        if (released.compareAndSet(false, true)) {
+          pending.decrementAndGet();
+        }
+      }
+    }
+
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      if (pending.incrementAndGet() > maxPending) {
+        pending.decrementAndGet();
+        warn("Refusing request to " + endpoint + " from " + httpExchange.getRemoteAddress() + ": " + maxPending + " requests pending");
+        respondTooManyRequests(httpExchange);
+        return;
+      }
+      Permit permit = new Permit(pending);
+      httpExchange.setAttribute(PERMIT, permit);
+      try {
+        handler.handle(httpExchange);
+      } finally {
+        if ( ! permit.detached) {
+          permit.release();
+        }
+      }
+    }
+
+    /** The number of requests being handled. */
+    public int pending() {
+      return pending.get();
+    }
+
+    /**
+     * Takes over the permit of a request, so that it is not released when the handler returns.
+     *
+     * @return Releases the permit.  Does nothing if the request was not admission controlled.
+     */
+    public static Runnable detach(HttpExchange httpExchange) {
+      Object permit = httpExchange.getAttribute(PERMIT);
+      if (permit instanceof Permit) {
+        ((Permit) permit).detached = true;
+        return ((Permit) permit)::release;
+      }
+      return () -> {};
+    }
+
+  } // end static class AdmissionControlHandler
+
+
   /**
    * The main handler for taking an annotation request, and annotating it.
    */
@@ -845,46 +1036,44 @@ public class StanfordCoreNLPServer implements Runnable {
         return;
       }
 
+      // Answer repeated requests from the cache
+      String resultKey = null;
+      if (resultCache != null && "text".equalsIgnoreCase(props.getProperty("inputFormat", "text"))) {
+        resultKey = AnnotationCache.key(ann.get(CoreAnnotations.TextAnnotation.class),
+            pipelineKey(props) + "date:" + props.getProperty("date", ""));
+        try {
+          Annotation cached = resultCache.get(resultKey);
+          if (cached != null) {
+            respondAnnotated(httpExchange, props, of, mkStanfordCoreNLP(props), cached, null);
+            return;
+          }
+        } catch (Exception e) {
+          warn("Could not answer from the result cache: " + e);
+        }
+      }
+
+      if (batcher != null) {
+        annotateAsync(httpExchange, props, of, ann, resultKey);
+        return;
+      }
+
       Future<Annotation> completedAnnotationFuture = null;
       try {
         // Annotate
         StanfordCoreNLP pipeline = mkStanfordCoreNLP(props);
+        long submitted = System.nanoTime();
         completedAnnotationFuture = corenlpExecutor.submit(() -> {
+          PipelineMetrics.GLOBAL.queueWait().record(System.nanoTime() - submitted);
           pipeline.annotate(ann);
           return ann;
         });
         Annotation completedAnnotation;
-        int timeoutMilliseconds;
-        try {
-          timeoutMilliseconds = Integer.parseInt(props.getProperty("timeout",
-                                                 Integer.toString(StanfordCoreNLPServer.this.timeoutMilliseconds)));
-          timeoutMilliseconds = maybeAlterStanfordTimeout(httpExchange, timeoutMilliseconds);
-
-        } catch (NumberFormatException e) {
-          timeoutMilliseconds = StanfordCoreNLPServer.this.timeoutMilliseconds;
-        }
+        int timeoutMilliseconds = getTimeout(httpExchange, props);
         completedAnnotation = completedAnnotationFuture.get(timeoutMilliseconds, TimeUnit.MILLISECONDS);
         completedAnnotationFuture = null;  // No longer any need for the future
 
         // Get output
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        AnnotationOutputter.Options options = AnnotationOutputter.getOptions(pipeline);
-        StanfordCoreNLP.createOutputter(props, options).accept(completedAnnotation, os);
-        os.close();
-        byte[] response = os.toByteArray();
-
-        String contentType = getContentType(props, of);
-        if (contentType.equals("application/json") || contentType.startsWith("text/")) {
-          contentType += ";charset=" + options.encoding;
-        }
-        httpExchange.getResponseHeaders().add("Content-type", contentType);
-        httpExchange.getResponseHeaders().add("Content-length", Integer.toString(response.length));
-        httpExchange.sendResponseHeaders(HTTP_OK, response.length);
-        httpExchange.getResponseBody().write(response);
-        httpExchange.close();
-        if (completedAnnotation != null && ! StringUtils.isNullOrEmpty(props.getProperty("annotators"))) {
-          callback.accept(new FinishedRequest(props, completedAnnotation));
-        }
+        respondAnnotated(httpExchange, props, of, pipeline, completedAnnotation, resultKey);
       } catch (TimeoutException e) {
         // Print the stack trace for debugging
         e.printStackTrace();
@@ -908,6 +1097,109 @@ public class StanfordCoreNLPServer implements Runnable {
       }
     }
 
+    /**
+     * Annotate a document in async mode: queue it to be annotated in a batch, and respond
+     * from the batch's thread when it is done (or from the timer, if it takes too long).
+     */
+    private void annotateAsync(HttpExchange httpExchange, Properties props, StanfordCoreNLP.OutputFormat of,
+                               Annotation ann, String resultKey) throws IOException {
+      Runnable release = AdmissionControlHandler.detach(httpExchange);
+      AtomicBoolean responded = new AtomicBoolean(false);
+      AtomicBoolean timedOut = new AtomicBoolean(false);
+      // Stops the running batch, as the sync path cancels its future, if nothing else in it is still wanted
+      AtomicReference<Runnable> cancel = new AtomicReference<>();
+      try {
+        StanfordCoreNLP pipeline = mkStanfordCoreNLP(props);
+        ScheduledFuture<?> timeout = timer.schedule(() -> {
+          if (responded.compareAndSet(false, true)) {
+            timedOut.set(true);
+            try {
+              respondError("CoreNLP request timed out. Your document may be too long.", httpExchange);
+            } catch (IOException e) {
+              warn(e);
+            } finally {
+              release.run();
+              Runnable cancelBatch = cancel.get();
+              if (cancelBatch != null) {
+                cancelBatch.run();
+              }
+            }
+          }
+        }, getTimeout(httpExchange, props), TimeUnit.MILLISECONDS);
+        cancel.set(batcher.submit(pipelineKey(props), pipeline, ann, responded::get, (completedAnnotation, error) -> {
+          if ( ! responded.compareAndSet(false, true)) {
+            return;  // timed out
+          }
+          timeout.cancel(false);
+          try {
+            if (error == null) {
+              respondAnnotated(httpExchange, props, of, pipeline, completedAnnotation, resultKey);
+            } else {
+              error.printStackTrace();
+              respondError(error.getClass().getName() + ": " + error.getMessage(), httpExchange);
+            }
+          } catch (Exception e) {
+            e.printStackTrace();
+            try {
+              respondError(e.getClass().getName() + ": " + e.getMessage(), httpExchange);
+            } catch (IOException ignored) { }
+          } finally {
+            release.run();
+          }
+        }));
+        if (timedOut.get()) {
+          cancel.get().run();  // timed out before the batch could be told
+        }
+      } catch (Exception e) {
+        e.printStackTrace();
+        if (responded.compareAndSet(false, true)) {
+          release.run();
+          respondError(e.getClass().getName() + ": " + e.getMessage(), httpExchange);
+        }
+      }
+    }
+
+    /**
+     * Write an annotated document to the client, in the requested output format,
+     * and then put it in the result cache if it has a key.
+     */
+    private void respondAnnotated(HttpExchange httpExchange, Properties props, StanfordCoreNLP.OutputFormat of,
+                                  StanfordCoreNLP pipeline, Annotation completedAnnotation,
+                                  String resultKey) throws IOException {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      AnnotationOutputter.Options options = AnnotationOutputter.getOptions(pipeline);
+      StanfordCoreNLP.createOutputter(props, options).accept(completedAnnotation, os);
+      os.close();
+      byte[] response = os.toByteArray();
+
+      String contentType = getContentType(props, of);
+      if (contentType.equals("application/json") || contentType.startsWith("text/")) {
+        contentType += ";charset=" + options.encoding;
+      }
+      httpExchange.getResponseHeaders().add("Content-type", contentType);
+      httpExchange.getResponseHeaders().add("Content-length", Integer.toString(response.length));
+      httpExchange.sendResponseHeaders(HTTP_OK, response.length);
+      httpExchange.getResponseBody().write(response);
+      httpExchange.close();
+      if (resultKey != null) {
+        resultCache.put(resultKey, completedAnnotation);
+      }
+      if (completedAnnotation != null && ! StringUtils.isNullOrEmpty(props.getProperty("annotators"))) {
+        callback.accept(new FinishedRequest(props, completedAnnotation));
+      }
+    }
+
+    /** The timeout for annotating a request: the request's timeout property, or the server's default. */
+    private int getTimeout(HttpExchange httpExchange, Properties props) {
+      try {
+        int timeoutMilliseconds = Integer.parseInt(props.getProperty("timeout",
+            Integer.toString(StanfordCoreNLPServer.this.timeoutMilliseconds)));
+        return maybeAlterStanfordTimeout(httpExchange, timeoutMilliseconds);
+      } catch (NumberFormatException e) {
+        return StanfordCoreNLPServer.this.timeoutMilliseconds;
+      }
+    }
+
     private int maybeAlterStanfordTimeout(HttpExchange httpExchange, int timeoutMilliseconds) {
       if ( ! stanford) {
         return timeoutMilliseconds;
@@ -1123,6 +1415,7 @@ public class StanfordCoreNLPServer implements Runnable {
           final boolean unique = uniqueStr.trim().isEmpty() || "true".equalsIgnoreCase(uniqueStr.toLowerCase());
           // (create the matcher)
           final SemgrexPattern regex = SemgrexPattern.compile(pattern);
+          final SemgrexBatchMatcher batchMatcher = new SemgrexBatchMatcher(Collections.singletonList(regex));
 
           // Run Semgrex
           return Pair.makePair(JSONOutputter.JSONWriter.objectToJSON((docWriter) -> {
@@ -1134,18 +1427,24 @@ public class StanfordCoreNLPServer implements Runnable {
             } else {
               // Case: find matches
               docWriter.set("sentences", doc.get(CoreAnnotations.SentencesAnnotation.class).stream().map(sentence -> (Consumer<JSONOutputter.Writer>) (JSONOutputter.Writer sentWriter) -> {
-                SemgrexMatcher matcher = regex.matcher(sentence.get(SemanticGraphCoreAnnotations.EnhancedPlusPlusDependenciesAnnotation.class));
+                List<SemgrexMatch> matches = batchMatcher.findAll(
+                    sentence.get(SemanticGraphCoreAnnotations.EnhancedPlusPlusDependenciesAnnotation.class)).get(0);
                 int i = 0;
-                // Case: find either next node or next unique node
-                while (unique ? matcher.findNextMatchingNode() : matcher.find()) {
+                IndexedWord lastMatchingNode = null;
+                for (SemgrexMatch m : matches) {
+                  // Case: either every match, or only the next match at a new node
+                  if (unique && m.getMatch() == lastMatchingNode) {
+                    continue;
+                  }
+                  lastMatchingNode = m.getMatch();
                   sentWriter.set(Integer.toString(i), (Consumer<JSONOutputter.Writer>) (JSONOutputter.Writer matchWriter) -> {
-                    IndexedWord match = matcher.getMatch();
+                    IndexedWord match = m.getMatch();
                     matchWriter.set("text", match.word());
                     matchWriter.set("begin", match.index() - 1);
                     matchWriter.set("end", match.index());
-                    for (String capture : matcher.getNodeNames()) {
+                    for (String capture : m.getNodeNames()) {
                       matchWriter.set("$" + capture, (Consumer<JSONOutputter.Writer>) groupWriter -> {
-                        IndexedWord node = matcher.getNode(capture);
+                        IndexedWord node = m.getNode(capture);
                         groupWriter.set("text", node.word());
                         groupWriter.set("begin", node.index() - 1);
                         groupWriter.set("end", node.index());
@@ -1406,6 +1705,16 @@ public class StanfordCoreNLPServer implements Runnable {
   }
 
 
+  /**
+   * Wrap an endpoint's handler in admission control, if the server limits the number of pending requests.
+   */
+  private HttpHandler limit(String endpoint, HttpHandler handler) {
+    if (maxPendingRequests > 0) {
+      return new AdmissionControlHandler(handler, endpoint, maxPendingRequests);
+    }
+    return handler;
+  }
+
   /**
    * Run the server.
    * This method registers the handlers, and initializes the HTTP server.
@@ -1422,13 +1731,30 @@ public class StanfordCoreNLPServer implements Runnable {
       } else {
         server = HttpServer.create(new InetSocketAddress(serverPort), 0); // 0 is the default 'backlog'
       }
-      withAuth(server.createContext("/", new CoreNLPHandler(defaultProps, authenticator, callback, homepage)), basicAuth);
-      withAuth(server.createContext("/tokensregex", new TokensRegexHandler(authenticator, callback)), basicAuth);
-      withAuth(server.createContext("/semgrex", new SemgrexHandler(authenticator, callback)), basicAuth);
-      withAuth(server.createContext("/tregex", new TregexHandler(authenticator, callback)), basicAuth);
+      if (async) {
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+          Thread thread = new Thread(r, "corenlp-server-timer");
+          thread.setDaemon(true);
+          return thread;
+        });
+        batcher = new AnnotationBatcher(corenlpExecutor, timer, batchThreads, batchSize, batchChars, batchWaitMillis);
+        log("Annotating asynchronously, in batches of up to " + batchSize + " requests");
+      }
+      withAuth(server.createContext("/", limit("/", new CoreNLPHandler(defaultProps, authenticator, callback, homepage))), basicAuth);
+      withAuth(server.createContext("/tokensregex", limit("/tokensregex", new TokensRegexHandler(authenticator, callback))), basicAuth);
+      withAuth(server.createContext("/semgrex", limit("/semgrex", new SemgrexHandler(authenticator, callback))), basicAuth);
+      withAuth(server.createContext("/tregex", limit("/tregex", new TregexHandler(authenticator, callback))), basicAuth);
       withAuth(server.createContext("/corenlp-brat.js", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-brat.js", "application/javascript")), basicAuth);
       withAuth(server.createContext("/corenlp-brat.cs", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-brat.css", "text/css")), basicAuth);
       withAuth(server.createContext("/corenlp-parseviewer.js", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-parseviewer.js", "application/javascript")), basicAuth);
+      if (resultCacheMegabytes > 0) {
+        resultCache = new AnnotationCache(resultCacheMegabytes * 1024L * 1024L,
+            resultCacheDir == null ? null : new File(resultCacheDir));
+        log("Caching up to " + resultCacheMegabytes + "MB of annotated documents" +
+            (resultCacheDir == null ? "" : " (persisted in " + resultCacheDir + ')'));
+      }
+      withAuth(server.createContext("/stats", new StatsHandler()), basicAuth);
+      withAuth(server.createContext("/metrics", new MetricsHandler()), basicAuth);
       withAuth(server.createContext("/ping", new PingHandler()), Optional.empty());
       withAuth(server.createContext("/shutdown", new ShutdownHandler()), basicAuth);
       if (this.serverPort == this.statusPort) {
@@ -1488,13 +1814,18 @@ public class StanfordCoreNLPServer implements Runnable {
       throw new RuntimeIOException(e);
     }
 
+    // Bound the memory used by cached models
+    if (StanfordCoreNLPServer.annotatorCacheMegabytes > 0) {
+      StanfordCoreNLP.ANNOTATOR_REGISTRY.setMaxBytes(StanfordCoreNLPServer.annotatorCacheMegabytes * 1024L * 1024L);
+    }
+
     // Pre-load the models
     if (StanfordCoreNLPServer.preloadedAnnotators != null && ! StanfordCoreNLPServer.preloadedAnnotators.trim().isEmpty()) {
       Properties props = new Properties();
       server.defaultProps.forEach((key1, value) -> props.setProperty(key1.toString(), value.toString()));
       props.setProperty("annotators", StanfordCoreNLPServer.preloadedAnnotators);
       try {
-        new StanfordCoreNLP(props);
+        StanfordCoreNLP.preloadAnnotators(props, true);
       } catch (Throwable ignored) {
         err("Could not pre-load annotators in server; encountered exception:");
         ignored.printStackTrace();
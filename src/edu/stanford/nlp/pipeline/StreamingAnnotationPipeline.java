@@ -0,0 +1,192 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.LatencyHistogram;
+import edu.stanford.nlp.util.MutableLong;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Runs a sequence of {@link Annotator}s over text read incrementally from a {@link Reader},
+ * so that input of any size can be annotated in bounded memory.
+ *
+ * <p>The text is tokenized and sentence split as it arrives, by the annotators up to and including
+ * the one which provides {@link CoreAnnotations.SentencesAnnotation} (normally {@code ssplit}).
+ * The last sentence found in the text read so far may continue in text not yet read, so it is held
+ * back and split again once more text is available; all the sentences before it are complete.
+ * Complete sentences are grouped into windows, each of which is an {@link Annotation} of its own
+ * that goes through the rest of the annotators and is then handed to the callback.
+ * Since every sentence is split with all of its text and the text that follows it,
+ * the sentences (and so the output of sentence-level annotators) are the same as when
+ * the whole text is annotated at once.</p>
+ *
+ * <p>Document-level annotators such as coref or quote see one window at a time, so a window
+ * should hold enough sentences for them: each window holds at least {@code windowSentences}
+ * sentences, except the last one.  With a window size of 1, each sentence is emitted as soon as the
+ * text after it shows that it is complete.</p>
+ *
+ * <p>In each window annotation, character offsets (of tokens, sentences, and whatever else
+ * the annotators add) are relative to the window's own text.  The window's position in the input
+ * is stored in its {@link CoreAnnotations.CharacterOffsetBeginAnnotation} and
+ * {@link CoreAnnotations.CharacterOffsetEndAnnotation}, and the index of its first sentence
+ * among all the sentences of the input in its {@link CoreAnnotations.SentenceIndexAnnotation}.
+ * As these are ints, the input can be at most {@code Integer.MAX_VALUE} characters long;
+ * longer input fails with an IllegalStateException once it reaches that point.</p>
+ *
+ * @see AnnotationPipeline#annotateStream(Reader, int, int, Consumer)
+ */
+public class StreamingAnnotationPipeline {
+
+  /** The annotators which tokenize and sentence split. */
+  private final List<Annotator> splitters;
+  /** The annotators which run on each window. */
+  private final List<Annotator> annotators;
+  private final int windowSentences;
+  private final int chunkChars;
+  /** If a single sentence grows this long, it is taken to be complete. */
+  private final int maxBufferChars;
+  private final List<MutableLong> accumulatedTime;
+  private final List<LatencyHistogram> latencies;
+
+  /**
+   * Create a new streaming pipeline.
+   *
+   * @param annotators The annotators to run, in order.  One of them must provide sentences.
+   * @param windowSentences The minimum number of sentences in a window (except the last one)
+   * @param chunkChars How many characters to read at a time
+   * @param accumulatedTime If not null, the elapsed time of every annotator is added to the
+   *                        corresponding entry of this list.
+   * @param latencies If not null, the elapsed time of every annotator on every chunk or window is
+   *                  recorded in the corresponding entry of this list.
+   */
+  public StreamingAnnotationPipeline(List<Annotator> annotators, int windowSentences, int chunkChars,
+                                     List<MutableLong> accumulatedTime, List<LatencyHistogram> latencies) {
+    int split = -1;
+    for (int i = 0; i < annotators.size(); ++i) {
+      if (annotators.get(i).requirementsSatisfied().contains(CoreAnnotations.SentencesAnnotation.class)) {
+        split = i;
+      }
+    }
+    if (split < 0) {
+      throw new IllegalArgumentException("Streaming annotation needs an annotator which splits sentences (e.g., ssplit)");
+    }
+    if (chunkChars < 1) {
+      throw new IllegalArgumentException("Stream chunk size must be positive: " + chunkChars);
+    }
+    this.splitters = new ArrayList<>(annotators.subList(0, split + 1));
+    this.annotators = new ArrayList<>(annotators.subList(split + 1, annotators.size()));
+    this.windowSentences = Math.max(1, windowSentences);
+    this.chunkChars = chunkChars;
+    this.maxBufferChars = Math.max(chunkChars, 1 << 20);
+    this.accumulatedTime = accumulatedTime;
+    this.latencies = latencies;
+  }
+
+  /**
+   * Read all of the input, annotating it a window at a time.
+   * The reader is not closed.
+   *
+   * @param input The text to annotate
+   * @param callback Called with each annotated window, in order, from the calling thread.
+   * @return The number of sentences annotated
+   * @throws IOException If reading the input fails
+   */
+  public long run(Reader input, Consumer<Annotation> callback) throws IOException {
+    StringBuilder buffer = new StringBuilder();
+    char[] chunk = new char[chunkChars];
+    long bufferOffset = 0;  // the position of the buffer in the input
+    long sentenceCount = 0;
+    int splitLength = 0;  // the length of the buffer when it was last split
+    // Without document-level annotators, split as soon as there is more text,
+    // otherwise only when there might be enough for a window
+    int baseGrowth = windowSentences == 1 ? 1 : chunkChars;
+    // Each split which doesn't give a window doubles the text needed before the next one,
+    // so that a long sentence isn't split again for every chunk, which would take quadratic time
+    int minGrowth = baseGrowth;
+    boolean done = false;
+    while ( ! done) {
+      int read = input.read(chunk);
+      if (read < 0) {
+        done = true;
+      } else {
+        buffer.append(chunk, 0, read);
+      }
+      boolean force = done || buffer.length() >= maxBufferChars;
+      if ( ! force && buffer.length() - splitLength < minGrowth) {
+        continue;
+      }
+
+      Annotation doc = new Annotation(buffer.toString());
+      annotate(splitters, 0, doc);
+      splitLength = buffer.length();
+      List<CoreMap> sentences = doc.get(CoreAnnotations.SentencesAnnotation.class);
+      int complete = done ? sentences.size() : sentences.size() - 1;
+      if (force && complete <= 0) {
+        complete = sentences.size();
+      }
+      if (complete <= 0 || ( ! force && complete < windowSentences)) {
+        minGrowth = (int) Math.min(2L * minGrowth, maxBufferChars);
+        continue;
+      }
+      minGrowth = baseGrowth;
+
+      int end = complete < sentences.size() ?
+          sentences.get(complete).get(CoreAnnotations.CharacterOffsetBeginAnnotation.class) : buffer.length();
+      if (bufferOffset + end > Integer.MAX_VALUE || sentenceCount + complete > Integer.MAX_VALUE) {
+        throw new IllegalStateException("Streamed input is too long: character offsets and sentence indices past " +
+            Integer.MAX_VALUE + " can't be stored");
+      }
+      Annotation window = window(doc, sentences.subList(0, complete), end);
+      window.set(CoreAnnotations.CharacterOffsetBeginAnnotation.class, (int) bufferOffset);
+      window.set(CoreAnnotations.CharacterOffsetEndAnnotation.class, (int) (bufferOffset + end));
+      window.set(CoreAnnotations.SentenceIndexAnnotation.class, (int) sentenceCount);
+      annotate(annotators, splitters.size(), window);
+      callback.accept(window);
+
+      sentenceCount += complete;
+      bufferOffset += end;
+      buffer.delete(0, end);
+      splitLength = buffer.length();
+    }
+    return sentenceCount;
+  }
+
+  /** The first complete sentences of a split document, as a document of their own. */
+  private static Annotation window(Annotation doc, List<CoreMap> sentences, int end) {
+    if (end == doc.get(CoreAnnotations.TextAnnotation.class).length()) {
+      return doc;
+    }
+    Annotation window = new Annotation(doc);
+    window.set(CoreAnnotations.TextAnnotation.class, doc.get(CoreAnnotations.TextAnnotation.class).substring(0, end));
+    int numTokens = sentences.get(sentences.size() - 1).get(CoreAnnotations.TokenEndAnnotation.class);
+    List<CoreLabel> tokens = doc.get(CoreAnnotations.TokensAnnotation.class);
+    window.set(CoreAnnotations.TokensAnnotation.class, new ArrayList<>(tokens.subList(0, numTokens)));
+    window.set(CoreAnnotations.SentencesAnnotation.class, new ArrayList<>(sentences));
+    return window;
+  }
+
+  private void annotate(List<Annotator> annotators, int firstTimer, Annotation annotation) {
+    for (int i = 0; i < annotators.size(); ++i) {
+      if (Thread.interrupted()) {  // Allow interrupting
+        throw new RuntimeInterruptedException();
+      }
+      long start = System.nanoTime();
+      annotators.get(i).annotate(annotation);
+      long elapsed = System.nanoTime() - start;
+      if (latencies != null) {
+        latencies.get(firstTimer + i).record(elapsed);
+      }
+      if (accumulatedTime != null) {
+        accumulatedTime.get(firstTimer + i).incValue(elapsed / 1000000);
+      }
+    }
+  }
+
+}
@@ -7,11 +7,14 @@ import java.util.*;
 import edu.stanford.nlp.ling.CoreAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.CoreLabelColumns;
 import edu.stanford.nlp.process.*;
 import edu.stanford.nlp.international.spanish.process.SpanishTokenizer;
 import edu.stanford.nlp.international.french.process.FrenchTokenizer;
 import edu.stanford.nlp.util.Generics;
 import edu.stanford.nlp.util.PropertiesUtils;
+import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
+import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 import edu.stanford.nlp.util.logging.Redwood;
 
 
@@ -123,8 +126,37 @@ public class TokenizerAnnotator implements Annotator  {
 
   public static final String EOL_PROPERTY = "tokenize.keepeol";
 
+  /**
+   * Store the tokens of each document in a {@link CoreLabelColumns} rather than as separate CoreLabels.
+   * With the PTBTokenizer, the tokens are then spans of the document text, whose before and after
+   * whitespace is only extracted if a later annotator asks for it.
+   */
+  public static final String COLUMNAR_TOKENS_PROPERTY = "tokenize.columnarTokens";
+
+  /**
+   * The number of threads with which to tokenize long documents.  The text is cut into chunks at
+   * paragraph breaks, which are tokenized in parallel and joined up again.  Only the PTBTokenizer
+   * does this.  The default is 1, so that documents are only cut up when this is set; the global
+   * {@code nthreads} isn't used, as it already annotates documents in parallel.
+   */
+  public static final String NTHREADS_PROPERTY = "tokenize.nthreads";
+
+  /** The smallest chunk of text worth tokenizing on its own thread. */
+  public static final String CHUNK_SIZE_PROPERTY = "tokenize.chunkSize";
+
+  private static final int DEFAULT_CHUNK_SIZE = 1 << 18;
+
+  /**
+   * How far past the end of its chunk each chunk is tokenized, so that the rules of the
+   * tokenizer which look ahead of a token see the same text as when tokenizing the whole document.
+   */
+  private static final int CHUNK_LOOKAHEAD = 1024;
+
   private final boolean VERBOSE;
   private final TokenizerFactory<CoreLabel> factory;
+  private final boolean columnarTokens;
+  private final int nThreads;
+  private final int chunkSize;
 
   /** new segmenter properties **/
   private final boolean useSegmenter;
@@ -214,6 +246,9 @@ public class TokenizerAnnotator implements Annotator  {
       segmenterAnnotator = null;
     }
     VERBOSE = PropertiesUtils.getBool(props, "tokenize.verbose", verbose);
+    columnarTokens = PropertiesUtils.getBool(props, COLUMNAR_TOKENS_PROPERTY, false);
+    nThreads = PropertiesUtils.getInt(props, NTHREADS_PROPERTY, 1);
+    chunkSize = PropertiesUtils.getInt(props, CHUNK_SIZE_PROPERTY, DEFAULT_CHUNK_SIZE);
     TokenizerType type = TokenizerType.getTokenizerType(props);
     factory = initFactory(type, props, options);
   }
@@ -294,6 +329,165 @@ public class TokenizerAnnotator implements Annotator  {
     return factory.getTokenizer(r);
   }
 
+  /**
+   * Tokenizes into a fresh {@link CoreLabelColumns} for the document.  The PTBTokenizer builds its
+   * tokens there directly, as spans of the text; the tokens of other tokenizers are copied over.
+   */
+  private List<CoreLabel> tokenizeColumnar(Reader r, String text) {
+    if (factory instanceof PTBTokenizer.PTBTokenizerFactory) {
+      // PTB tokens average a little over 4 characters, plus whitespace
+      CoreLabelColumns columns = new CoreLabelColumns(text.length() / 5 + 16);
+      columns.setText(text);
+      return ((PTBTokenizer.PTBTokenizerFactory<CoreLabel>) factory).getTokenizer(r, new ColumnarCoreLabelTokenFactory(columns)).tokenize();
+    }
+    return CoreLabelColumns.copyOf(getTokenizer(r).tokenize());
+  }
+
+  /**
+   * Finds where a text can be cut into chunks of at least {@code chunkSize} characters.
+   * Each cut is at the start of a paragraph: the first character which isn't whitespace
+   * after a line containing only whitespace.
+   *
+   * @return The offsets of the starts of the chunks, beginning with 0
+   */
+  static List<Integer> chunkStarts(String text, int chunkSize) {
+    List<Integer> starts = new ArrayList<>();
+    starts.add(0);
+    int length = text.length();
+    int position = chunkSize;
+    while (position < length) {
+      int newline = text.indexOf('\n', position);
+      if (newline < 0) {
+        break;
+      }
+      int next = newline + 1;
+      boolean blankLine = false;
+      while (next < length && isBreakingWhitespace(text.charAt(next))) {
+        if (text.charAt(next) == '\n') {
+          blankLine = true;
+        }
+        next++;
+      }
+      if (blankLine && next < length) {
+        starts.add(next);
+        position = next + chunkSize;
+      } else {
+        position = next;
+      }
+    }
+    return starts;
+  }
+
+  private static boolean isBreakingWhitespace(char ch) {
+    return ch == '\n' || ch == ' ' || ch == '\t' || ch == '\r' || ch == '\f' || ch == '\u000B';
+  }
+
+  /**
+   * Tokenizes a long text by chunks in parallel, giving the same tokens as tokenizing it all at once.
+   * Each chunk is tokenized with a little of the text after it, and its tokens moved to their offsets
+   * in the whole text.  If a token runs over the end of its chunk, which the PTBTokenizer does not do
+   * at a paragraph break, the text is tokenized again in one go.
+   *
+   * @return The tokens, or null if the text is tokenized better in one go
+   */
+  private List<CoreLabel> tokenizeInChunks(String text) {
+    if (nThreads <= 1 || ! (factory instanceof PTBTokenizer.PTBTokenizerFactory) ||
+        text.length() < 2 * chunkSize) {
+      return null;
+    }
+    List<Integer> starts = chunkStarts(text, chunkSize);
+    if (starts.size() == 1) {
+      return null;
+    }
+    starts.add(text.length());
+
+    MulticoreWrapper<Integer, List<CoreLabel>> wrapper =
+        new MulticoreWrapper<>(Math.min(nThreads, starts.size() - 1), new ChunkTokenizer(text, starts));
+    List<List<CoreLabel>> chunks = new ArrayList<>();
+    for (int chunk = 0; chunk < starts.size() - 1; chunk++) {
+      wrapper.put(chunk);
+      while (wrapper.peek()) {
+        chunks.add(wrapper.poll());
+      }
+    }
+    wrapper.join();
+    while (wrapper.peek()) {
+      chunks.add(wrapper.poll());
+    }
+
+    List<CoreLabel> tokens = new ArrayList<>();
+    for (int chunk = 0; chunk < chunks.size(); chunk++) {
+      List<CoreLabel> chunkTokens = chunks.get(chunk);
+      if (chunkTokens.isEmpty()) {
+        continue;
+      }
+      if (chunkTokens.get(chunkTokens.size() - 1).endPosition() > starts.get(chunk + 1)) {
+        if (VERBOSE) {
+          log.info("A token crosses a paragraph break; tokenizing the document in one go");
+        }
+        return null;
+      }
+      if ( ! tokens.isEmpty()) {
+        // the whitespace between the chunks was only seen from one side of it
+        CoreLabel last = tokens.get(tokens.size() - 1);
+        CoreLabel first = chunkTokens.get(0);
+        if (last.containsKey(CoreAnnotations.AfterAnnotation.class)) {
+          String between = text.substring(last.endPosition(), first.beginPosition());
+          last.setAfter(between);
+          first.setBefore(between);
+        }
+      }
+      tokens.addAll(chunkTokens);
+    }
+    if ( ! tokens.isEmpty()) {
+      CoreLabel last = tokens.get(tokens.size() - 1);
+      if (last.containsKey(CoreAnnotations.AfterAnnotation.class)) {
+        last.setAfter(text.substring(last.endPosition()));
+      }
+    }
+    if (columnarTokens) {
+      tokens = CoreLabelColumns.copyOf(tokens);
+    }
+    return tokens;
+  }
+
+  /** Tokenizes the numbered chunk of a text. */
+  private class ChunkTokenizer implements ThreadsafeProcessor<Integer, List<CoreLabel>> {
+
+    private final String text;
+    private final List<Integer> starts;
+
+    ChunkTokenizer(String text, List<Integer> starts) {
+      this.text = text;
+      this.starts = starts;
+    }
+
+    @Override
+    public List<CoreLabel> process(Integer chunk) {
+      int start = starts.get(chunk);
+      int end = starts.get(chunk + 1);
+      String chunkText = text.substring(start, Math.min(text.length(), end + CHUNK_LOOKAHEAD));
+      List<CoreLabel> tokens = new ArrayList<>();
+      Tokenizer<CoreLabel> tokenizer = getTokenizer(new StringReader(chunkText));
+      while (tokenizer.hasNext()) {
+        CoreLabel token = tokenizer.next();
+        int begin = token.beginPosition() + start;
+        if (begin >= end) {
+          break;
+        }
+        token.setBeginPosition(begin);
+        token.setEndPosition(token.endPosition() + start);
+        tokens.add(token);
+      }
+      return tokens;
+    }
+
+    @Override
+    public ThreadsafeProcessor<Integer, List<CoreLabel>> newInstance() {
+      return this;
+    }
+  }
+
   /**
    * Helper method to set the TokenBeginAnnotation and TokenEndAnnotation of every token.
    */
@@ -343,7 +537,10 @@ public class TokenizerAnnotator implements Annotator  {
       Reader r = new StringReader(text);
       // don't wrap in BufferedReader.  It gives you nothing for in-memory String unless you need the readLine() method!
 
-      List<CoreLabel> tokens = getTokenizer(r).tokenize();
+      List<CoreLabel> tokens = tokenizeInChunks(text);
+      if (tokens == null) {
+        tokens = columnarTokens ? tokenizeColumnar(r, text) : getTokenizer(r).tokenize();
+      }
       // cdm 2010-05-15: This is now unnecessary, as it is done in CoreLabelTokenFactory
       // for (CoreLabel token: tokens) {
       // token.set(CoreAnnotations.TextAnnotation.class, token.get(CoreAnnotations.TextAnnotation.class));
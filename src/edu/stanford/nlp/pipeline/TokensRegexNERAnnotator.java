@@ -6,6 +6,8 @@ import edu.stanford.nlp.ling.CoreAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.tokensregex.*;
+import edu.stanford.nlp.ling.tokensregex.matcher.AhoCorasickMatcher;
+import edu.stanford.nlp.ling.tokensregex.matcher.Match;
 import edu.stanford.nlp.ling.tokensregex.matcher.TrieMap;
 import edu.stanford.nlp.sequences.SeqClassifierFlags;
 import edu.stanford.nlp.util.*;
@@ -119,6 +121,14 @@ import java.util.regex.Pattern;
  *      <td>{@code}</td></tr>
  *   <tr><td>{@code ignoreCase}</td><td>If true, case is ignored</td></td>
  *      <td>{@code false}</td></tr>
+ *   <tr><td>{@code compiled}</td>
+ *      <td>If true, rows which are plain sequences of tokens (no regex syntax) are all matched
+ *          together in one pass over the sentence by a token-level Aho-Corasick automaton,
+ *          and only the other rows are matched with TokensRegex.
+ *          This is much faster for large mapping files, such as gazetteers.
+ *          The same matches are found, except that when overlapping matches have the same
+ *          priority, weight and length, the row which comes first in the mapping files is taken.</td>
+ *      <td>{@code false}</td></tr>
  *   <tr><td>{@code verbose}</td><td>If true, turns on extra debugging messages.</td>
  *      <td>{@code false}</td></tr>
  * </table>
@@ -146,6 +156,11 @@ public class TokensRegexNERAnnotator implements Annotator  {
   private final List<Entry> entries;
   private final Map<SequencePattern<CoreMap>,Entry> patternToEntry;
   private final MultiPatternMatcher<CoreMap>  multiPatternMatcher;
+  // If compiled, the rows which are plain token sequences are matched by these instead of by multiPatternMatcher
+  private final boolean compiled;
+  private final AhoCorasickMatcher<String,List<Entry>> literalMatcher;
+  private final AhoCorasickMatcher<String,List<Entry>> caselessLiteralMatcher;
+  private final Map<Entry,Integer> entryOrder;
   private final List<Class> annotationFields; // list of fields to annotate (default to just NamedEntityTag)
 
   private final Set<String> myLabels;  // set of labels to always overwrite
@@ -175,6 +190,7 @@ public class TokensRegexNERAnnotator implements Annotator  {
           new PropertiesUtils.Property("mapping.field.<fieldname>", "", "Class mapping for annotation fields other than ner"),
           new PropertiesUtils.Property("commonWords", "", "Comma separated list of files for common words to not annotate (in case your mapping isn't very clean)"),
           new PropertiesUtils.Property("ignorecase", "false", "Whether to ignore case or not when matching patterns."),
+          new PropertiesUtils.Property("compiled", "false", "Whether to match the patterns which are plain token sequences with a single automaton instead of TokensRegex."),
           new PropertiesUtils.Property("validpospattern", "", "Regular expression pattern for matching POS tags."),
           new PropertiesUtils.Property("posmatchtype", DEFAULT_POS_MATCH_TYPE.name(), "How should 'validpospattern' be used to match the POS of the tokens."),
           new PropertiesUtils.Property("noDefaultOverwriteLabels", "", "Comma separated list of output types for which default NER labels are not overwritten.\n" +
@@ -280,6 +296,7 @@ public class TokensRegexNERAnnotator implements Annotator  {
     this.noDefaultOverwriteLabels = Collections.unmodifiableSet(CollectionUtils.asSet(noDefaultOverwriteLabelsProp.split("\\s*,\\s*")));
     this.ignoreCase = PropertiesUtils.getBool(properties, prefix + "ignorecase", false);
     this.verbose = PropertiesUtils.getBool(properties, prefix + "verbose", false);
+    this.compiled = PropertiesUtils.getBool(properties, prefix + "compiled", false);
 
     if (validPosRegex != null && !validPosRegex.equals("")) {
       validPosPattern = Pattern.compile(validPosRegex);
@@ -292,7 +309,32 @@ public class TokensRegexNERAnnotator implements Annotator  {
     processPerFileOptions(name, mappings, ignoreCaseList, validPosPatternList, ignoreCase, validPosPattern);
     entries = Collections.unmodifiableList(readEntries(name, noDefaultOverwriteLabels, ignoreCaseList, entryToMappingFileNumber, verbose, headerFields, annotationFieldnames, mappings));
     IdentityHashMap<SequencePattern<CoreMap>, Entry> patternToEntry = new IdentityHashMap<>();
-    multiPatternMatcher = createPatternMatcher(patternToEntry);
+    if (compiled) {
+      TrieMap<String,List<Entry>> literals = new TrieMap<>();
+      TrieMap<String,List<Entry>> caselessLiterals = new TrieMap<>();
+      List<Entry> regexEntries = new ArrayList<>();
+      entryOrder = new IdentityHashMap<>();
+      for (Entry entry : entries) {
+        entryOrder.put(entry, entryOrder.size());
+        if ( ! isPlainTokenSequence(entry)) {
+          regexEntries.add(entry);
+        } else if (ignoreCaseList.get(entryToMappingFileNumber.get(entry))) {
+          addLiteral(caselessLiterals, foldCase(entry.regex), entry);
+        } else {
+          addLiteral(literals, Arrays.asList(entry.regex), entry);
+        }
+      }
+      literalMatcher = literals.isEmpty() ? null : new AhoCorasickMatcher<>(literals);
+      caselessLiteralMatcher = caselessLiterals.isEmpty() ? null : new AhoCorasickMatcher<>(caselessLiterals);
+      multiPatternMatcher = createPatternMatcher(regexEntries, patternToEntry);
+      logger.log("TokensRegexNERAnnotator " + name + ": Compiled " + (entries.size() - regexEntries.size())
+          + " plain token sequences, leaving " + regexEntries.size() + " patterns for TokensRegex");
+    } else {
+      literalMatcher = null;
+      caselessLiteralMatcher = null;
+      entryOrder = null;
+      multiPatternMatcher = createPatternMatcher(entries, patternToEntry);
+    }
     this.patternToEntry = Collections.unmodifiableMap(patternToEntry);
     Set<String> myLabels = Generics.newHashSet();
     // Can always override background or none.
@@ -330,7 +372,7 @@ public class TokensRegexNERAnnotator implements Annotator  {
       logger.info("done.");
   }
 
-  private MultiPatternMatcher<CoreMap> createPatternMatcher(Map<SequencePattern<CoreMap>, Entry> patternToEntry) {
+  private MultiPatternMatcher<CoreMap> createPatternMatcher(List<Entry> entries, Map<SequencePattern<CoreMap>, Entry> patternToEntry) {
     // Convert to tokensregex pattern
 
     List<TokenSequencePattern> patterns = new ArrayList<>(entries.size());
@@ -372,21 +414,210 @@ public class TokensRegexNERAnnotator implements Annotator  {
     return TokenSequencePattern.getMultiPatternMatcher(patterns);
   }
 
-  private void annotateMatched(List<CoreLabel> tokens) {
-    List<SequenceMatchResult<CoreMap>> matched = multiPatternMatcher.findNonOverlapping(tokens);
-    for (SequenceMatchResult<CoreMap> m:matched) {
+  /** Whether the entry only matches tokens whose text equals its own (ignoring case if its file does) */
+  private static boolean isPlainTokenSequence(Entry entry) {
+    if (entry.tokensRegex != null || entry.annotateGroup != 0) {
+      return false;
+    }
+    for (String p : entry.regex) {
+      if ( ! ComplexNodePattern.isLiteral(p)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void addLiteral(TrieMap<String,List<Entry>> literals, List<String> key, Entry entry) {
+    List<Entry> keyEntries = literals.get(key);
+    if (keyEntries == null) {
+      keyEntries = new ArrayList<>(1);
+      literals.put(key, keyEntries);
+    }
+    keyEntries.add(entry);
+  }
+
+  /**
+   * Maps strings which are {@link String#equalsIgnoreCase equal ignoring case} to the same string,
+   * by folding each character the same way that method compares them.
+   */
+  private static String foldCase(String str) {
+    if (str == null) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder(str.length());
+    for (int i = 0; i < str.length(); i++) {
+      sb.append(Character.toLowerCase(Character.toUpperCase(str.charAt(i))));
+    }
+    return sb.toString();
+  }
+
+  private static List<String> foldCase(String[] strs) {
+    List<String> folded = new ArrayList<>(strs.length);
+    for (String str : strs) {
+      folded.add(foldCase(str));
+    }
+    return folded;
+  }
+
+  /** A match of an entry, found either by TokensRegex or by one of the compiled automata */
+  private static class EntryMatch implements HasInterval<Integer> {
+    final Entry entry;
+    final SequenceMatchResult<CoreMap> result; // null for a match of a compiled plain token sequence
+    final int start;
+    final int end;
+    final int order;
+    private Interval<Integer> interval;
+
+    EntryMatch(Entry entry, int start, int end, int order) {
+      this.entry = entry;
+      this.result = null;
+      this.start = start;
+      this.end = end;
+      this.order = order;
+    }
+
+    EntryMatch(Entry entry, SequenceMatchResult<CoreMap> result, int order) {
+      this.entry = entry;
+      this.result = result;
+      this.start = result.start();
+      this.end = result.end();
+      this.order = order;
+    }
+
+    int start(int group) {
+      return (result != null) ? result.start(group) : start;
+    }
+
+    int end(int group) {
+      return (result != null) ? result.end(group) : end;
+    }
+
+    String group(List<CoreLabel> tokens, int group) {
+      return (result != null) ? result.group(group)
+          : ChunkAnnotationUtils.getTokenText(tokens.subList(start, end), CoreAnnotations.TextAnnotation.class);
+    }
+
+    List<? extends CoreMap> groupNodes(List<CoreLabel> tokens, int group) {
+      return (result != null) ? result.groupNodes(group) : tokens.subList(start, end);
+    }
+
+    @Override
+    public Interval<Integer> getInterval() {
+      if (interval == null) {
+        interval = Interval.toInterval(start, end, Interval.INTERVAL_OPEN_END);
+      }
+      return interval;
+    }
+  }
+
+  /** Orders overlapping matches the same way as {@link SequenceMatchResult#DEFAULT_COMPARATOR} */
+  private static final Comparator<EntryMatch> ENTRY_MATCH_COMPARATOR = (m1, m2) -> {
+    if (m1.entry.priority != m2.entry.priority) {
+      return (m1.entry.priority > m2.entry.priority) ? -1 : 1;
+    }
+    if (m1.entry.weight != m2.entry.weight) {
+      return (m1.entry.weight > m2.entry.weight) ? -1 : 1;
+    }
+    int len1 = m1.end - m1.start;
+    int len2 = m2.end - m2.start;
+    if (len1 != len2) {
+      return (len1 > len2) ? -1 : 1;
+    }
+    if (m1.order != m2.order) {
+      return (m1.order < m2.order) ? -1 : 1;
+    }
+    if (m1.start != m2.start) {
+      return (m1.start < m2.start) ? -1 : 1;
+    }
+    return Integer.compare(m1.end, m2.end);
+  };
+
+  private List<EntryMatch> findMatches(List<CoreLabel> tokens) {
+    if ( ! compiled) {
+      List<SequenceMatchResult<CoreMap>> matched = multiPatternMatcher.findNonOverlapping(tokens);
+      List<EntryMatch> entryMatches = new ArrayList<>(matched.size());
+      for (SequenceMatchResult<CoreMap> m : matched) {
+        entryMatches.add(new EntryMatch(patternToEntry.get(m.pattern()), m, m.getOrder()));
+      }
+      return entryMatches;
+    }
+
+    List<EntryMatch> all = new ArrayList<>();
+    if (literalMatcher != null) {
+      List<String> words = new ArrayList<>(tokens.size());
+      for (CoreLabel token : tokens) {
+        words.add(token.word());
+      }
+      addLiteralMatches(literalMatcher, words, tokens, all);
+    }
+    if (caselessLiteralMatcher != null) {
+      List<String> words = new ArrayList<>(tokens.size());
+      for (CoreLabel token : tokens) {
+        words.add(foldCase(token.word()));
+      }
+      addLiteralMatches(caselessLiteralMatcher, words, tokens, all);
+    }
+    for (SequenceMatchResult<CoreMap> m : multiPatternMatcher.findAllNonOverlappingMatchesPerPattern(tokens)) {
       Entry entry = patternToEntry.get(m.pattern());
+      all.add(new EntryMatch(entry, m, entryOrder.get(entry)));
+    }
+    List<EntryMatch> matched = IntervalTree.getNonOverlapping(all, ENTRY_MATCH_COMPARATOR);
+    matched.sort((m1, m2) -> (m1.start != m2.start) ? Integer.compare(m1.start, m2.start) : Integer.compare(m1.end, m2.end));
+    return matched;
+  }
+
+  /**
+   * Adds the matches of an automaton over the words of the sentence.  As TokensRegex does
+   * for each pattern, an entry is matched from left to right without overlapping itself,
+   * and only where the POS tags fit, if they all have to.
+   */
+  private void addLiteralMatches(AhoCorasickMatcher<String,List<Entry>> matcher, List<String> words,
+                                 List<CoreLabel> tokens, List<EntryMatch> all) {
+    Map<Entry,Integer> lastEnd = new IdentityHashMap<>();
+    // all the matches of an entry have the same length, so these are in order of start too
+    for (Match<String,List<Entry>> match : matcher.findAllMatches(words)) {
+      int start = match.getBegin();
+      int end = match.getEnd();
+      for (Entry entry : match.getValue()) {
+        Integer prevEnd = lastEnd.get(entry);
+        if ((prevEnd == null || prevEnd <= start) && checkAllPosTags(entry, tokens, start, end)) {
+          lastEnd.put(entry, end);
+          all.add(new EntryMatch(entry, start, end, entryOrder.get(entry)));
+        }
+      }
+    }
+  }
+
+  /** For {@code MATCH_ALL_TOKENS}, checks every token against the POS pattern for the entry's mapping file */
+  private boolean checkAllPosTags(Entry entry, List<CoreLabel> tokens, int start, int end) {
+    Pattern posPattern = validPosPatternList.get(entryToMappingFileNumber.get(entry));
+    if (posPattern == null || ! PosMatchType.MATCH_ALL_TOKENS.equals(posMatchType)) {
+      return true;
+    }
+    for (int i = start; i < end; i++) {
+      String pos = tokens.get(i).tag();
+      if (pos == null || ! posPattern.matcher(pos).matches()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void annotateMatched(List<CoreLabel> tokens) {
+    List<EntryMatch> matched = findMatches(tokens);
+    for (EntryMatch m:matched) {
+      Entry entry = m.entry;
 
       // Check if we will overwrite the existing annotation with this annotation
       int g = entry.annotateGroup;
       int start = m.start(g);
       int end = m.end(g);
 
-      String str = m.group(g);
-      if (commonWords.contains(str)) {
+      String str = commonWords.isEmpty() ? null : m.group(tokens, g);
+      if (str != null && commonWords.contains(str)) {
         if (verbose) {
           logger.info("Not annotating (common word) '" + str + "': " +
-              StringUtils.joinFields(m.groupNodes(g), CoreAnnotations.NamedEntityTagAnnotation.class)
+              StringUtils.joinFields(m.groupNodes(tokens, g), CoreAnnotations.NamedEntityTagAnnotation.class)
               + " with " + entry.getTypeDescription() + ", sentence is '" + StringUtils.joinWords(tokens, " ") + "'");
         }
         continue;
@@ -406,8 +637,8 @@ public class TokensRegexNERAnnotator implements Annotator  {
         }
       } else {
         if (verbose) {
-          logger.info("Not annotating  '" + m.group(g) + "': " +
-                  StringUtils.joinFields(m.groupNodes(g), CoreAnnotations.NamedEntityTagAnnotation.class)
+          logger.info("Not annotating  '" + m.group(tokens, g) + "': " +
+                  StringUtils.joinFields(m.groupNodes(tokens, g), CoreAnnotations.NamedEntityTagAnnotation.class)
                   + " with " + entry.getTypeDescription() + ", sentence is '" + StringUtils.joinWords(tokens, " ") + "'");
         }
       }
@@ -0,0 +1,98 @@
+package edu.stanford.nlp.process;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.CoreLabelColumns;
+
+/**
+ * A {@link CoreLabelTokenFactory} which appends the tokens it makes to a
+ * {@link CoreLabelColumns}, rather than giving each its own arrays.
+ * Since the columns hold the tokens of one document, a new factory is
+ * needed for each document.
+ * If the columns have been given the text of the document, an invertible
+ * tokenizer can have the tokens added as {@link CoreLabelColumns#addSpan spans}
+ * of it (see {@link #spanText()}), whose whitespace before and after is only
+ * extracted on demand.
+ */
+public class ColumnarCoreLabelTokenFactory extends CoreLabelTokenFactory {
+
+  private final boolean addIndices;
+  private final CoreLabelColumns columns;
+  private boolean spans;
+
+  /**
+   * Constructor for a factory which stores its tokens in the given columns, and
+   * which will add in the word, the "current" annotation, and the begin/end position annotations.
+   */
+  public ColumnarCoreLabelTokenFactory(CoreLabelColumns columns) {
+    this(columns, true);
+  }
+
+  /**
+   * @param columns Where to store the tokens
+   * @param addIndices if true, begin and end position annotations will be included (this is the default)
+   */
+  public ColumnarCoreLabelTokenFactory(CoreLabelColumns columns, boolean addIndices) {
+    super(addIndices);
+    this.addIndices = addIndices;
+    this.columns = columns;
+  }
+
+  /** The storage the tokens of this factory go into. */
+  public CoreLabelColumns columns() {
+    return columns;
+  }
+
+  /**
+   * Whether the tokens are spans of the text, so that a tokenizer needn't work out
+   * the whitespace between them.
+   */
+  public boolean makesSpans() {
+    return spans;
+  }
+
+  /**
+   * Makes the tokens from now on spans of the text, if the columns have it and indices are added.
+   * Span tokens always have their whitespace before and after, so only an invertible
+   * tokenizer should ask for them.
+   *
+   * @return Whether the tokens will be spans
+   */
+  public boolean spanText() {
+    spans = addIndices && columns.text() != null;
+    return spans;
+  }
+
+  @Override
+  public CoreLabel makeToken(String tokenText, String originalText, int begin, int length) {
+    if (makesSpans()) {
+      return columns.addSpan(tokenText, originalText, begin, begin + length);
+    }
+    CoreLabel cl = columns.add();
+    cl.setValue(tokenText);
+    cl.setWord(tokenText);
+    cl.setOriginalText(originalText);
+    if (addIndices) {
+      cl.set(CoreAnnotations.CharacterOffsetBeginAnnotation.class, begin);
+      cl.set(CoreAnnotations.CharacterOffsetEndAnnotation.class, begin+length);
+    }
+    return cl;
+  }
+
+  @Override
+  public CoreLabel makeToken() {
+    return columns.add();
+  }
+
+  @Override
+  public CoreLabel makeToken(String[] keys, String[] values) {
+    return columns.add(new CoreLabel(keys, values));
+  }
+
+  @Override
+  public CoreLabel makeToken(CoreLabel labelToBeCopied) {
+    return columns.add(labelToBeCopied);
+  }
+
+  private static final long serialVersionUID = 1L;
+}
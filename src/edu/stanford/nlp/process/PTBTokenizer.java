@@ -669,6 +669,13 @@ public class PTBTokenizer<T extends HasWord> extends AbstractTokenizer<T>  {
       return new PTBTokenizer<>(r, factory, options);
     }
 
+    /** Returns a tokenizer wrapping the given Reader, with the options of this factory
+     *  but making its tokens with the given token factory instead.
+     */
+    public Tokenizer<T> getTokenizer(Reader r, LexedTokenFactory<T> tokenFactory) {
+      return new PTBTokenizer<>(r, tokenFactory, options);
+    }
+
     @Override
     public Tokenizer<T> getTokenizer(Reader r, String extraOptions) {
       if (options == null || options.isEmpty()) {
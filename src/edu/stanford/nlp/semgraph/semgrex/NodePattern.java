@@ -151,20 +151,7 @@ public class NodePattern extends SemgrexPattern  {
 
       // Get the node pattern
       Object toMatch = ignoreCase ? attr.getValue().second : attr.getValue().first;
-      boolean matches;
-      if (toMatch instanceof Boolean) {
-        matches = ((Boolean) toMatch);
-      } else if (toMatch instanceof String) {
-        if (ignoreCase) {
-          matches = nodeValue.equalsIgnoreCase(toMatch.toString());
-        } else {
-          matches = nodeValue.equals(toMatch.toString());
-        }
-      } else if (toMatch instanceof Pattern) {
-        matches = ((Pattern) toMatch).matcher(nodeValue).matches();
-      } else {
-        throw new IllegalStateException("Unknown matcher type: " + toMatch + " (of class + " + toMatch.getClass() + ")");
-      }
+      boolean matches = valueMatches(toMatch, nodeValue, ignoreCase);
 
       if (!matches) {
         // System.out.println("doesn't match");
@@ -177,6 +164,40 @@ public class NodePattern extends SemgrexPattern  {
     return !negDesc;
   }
 
+  /**
+   * Whether the (non-null) value of an attribute of a node matches the
+   * pattern for that attribute, as stored in {@link #attributes}.
+   */
+  static boolean valueMatches(Object toMatch, String nodeValue, boolean ignoreCase) {
+    if (toMatch instanceof Boolean) {
+      return ((Boolean) toMatch);
+    } else if (toMatch instanceof String) {
+      if (ignoreCase) {
+        return nodeValue.equalsIgnoreCase(toMatch.toString());
+      } else {
+        return nodeValue.equals(toMatch.toString());
+      }
+    } else if (toMatch instanceof Pattern) {
+      return ((Pattern) toMatch).matcher(nodeValue).matches();
+    } else {
+      throw new IllegalStateException("Unknown matcher type: " + toMatch + " (of class + " + toMatch.getClass() + ")");
+    }
+  }
+
+  /** The patterns for the attributes of the node, as (case sensitive, case insensitive) pairs. */
+  Map<String, Pair<Object, Object>> getAttributes() {
+    return Collections.unmodifiableMap(attributes);
+  }
+
+  GraphRelation getReln() {
+    return reln;
+  }
+
+  /** Whether the description of the node is negated, as in {@code !{word:foo}}. */
+  boolean isNegDesc() {
+    return negDesc;
+  }
+
   public void makeLink() {
     isLink = true;
   }
@@ -0,0 +1,337 @@
+package edu.stanford.nlp.semgraph.semgrex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphEdge;
+import edu.stanford.nlp.util.Pair;
+import edu.stanford.nlp.util.TypesafeMap;
+
+/**
+ * Matches a list of {@link SemgrexPattern}s against a {@link SemanticGraph} together,
+ * finding the same matches as a {@link SemgrexMatcher} for each of the patterns would.
+ *
+ * <p>
+ * A {@link SemgrexMatcher} tries its pattern at every node of the graph.  Here the graph is indexed
+ * first: its edges by relation, and its nodes by the values of the attributes the patterns look at
+ * (word, lemma, tag, ...).  Each pattern is then only tried at the nodes which could match its root node:
+ * those with the attributes the root node asks for, which also have the edges that the relations of the
+ * root to its children need.  For example, {@code {}=entity >appos ({lemma:/president|ceo/} >nn {ner:ORGANIZATION}=slot)}
+ * is only tried at the governors of appos edges whose dependent has one of the lemmas.
+ * Each distinct attribute value and relation name of the graph is compared with a pattern at most once,
+ * and a pattern which needs a node or an edge that the graph doesn't have is not tried at all.
+ *
+ * <p>
+ * The patterns still match from their own root node, as with their matchers, so the matches and the
+ * order they are found in don't change.  Patterns over aligned graphs are not supported.
+ */
+public class SemgrexBatchMatcher  {
+
+  private final List<SemgrexPattern> patterns;
+  private final boolean ignoreCase;
+  // What each of the patterns needs from a graph to match
+  private final List<Requirements> requirements;
+
+  public SemgrexBatchMatcher(List<SemgrexPattern> patterns) {
+    this(patterns, false);
+  }
+
+  public SemgrexBatchMatcher(List<SemgrexPattern> patterns, boolean ignoreCase) {
+    this.patterns = new ArrayList<>(patterns);
+    this.ignoreCase = ignoreCase;
+    this.requirements = new ArrayList<>(this.patterns.size());
+    for (SemgrexPattern pattern : this.patterns) {
+      requirements.add(new Requirements(pattern));
+    }
+  }
+
+  public List<SemgrexPattern> getPatterns() {
+    return Collections.unmodifiableList(patterns);
+  }
+
+  /**
+   * Finds all the matches of the patterns in the graph.
+   *
+   * @return For each of the patterns, its matches in the order {@link SemgrexMatcher#find()} finds them
+   */
+  public List<List<SemgrexMatch>> findAll(SemanticGraph sg) {
+    List<List<SemgrexMatch>> matches = new ArrayList<>(patterns.size());
+    for (int i = 0; i < patterns.size(); i++) {
+      matches.add(new ArrayList<>());
+    }
+    find(sg, (i, match) -> {
+      matches.get(i).add(match);
+      return false;
+    });
+    return matches;
+  }
+
+  /**
+   * Goes through the matches of the patterns until one is accepted.
+   * The graph is gone through once: at each node, the matches of each of the patterns there in turn.
+   *
+   * @return Whether a match was accepted
+   */
+  public boolean findAny(SemanticGraph sg, Predicate<SemgrexMatch> accept) {
+    return find(sg, (i, match) -> accept.test(match));
+  }
+
+  private boolean find(SemanticGraph sg, BiPredicate<Integer, SemgrexMatch> accept) {
+    GraphIndex index = new GraphIndex(sg, ignoreCase);
+    // The nodes each pattern is tried at (null for all of them), or skip for patterns which can't match
+    List<Set<IndexedWord>> candidates = new ArrayList<>(patterns.size());
+    boolean canMatch = false;
+    for (Requirements r : requirements) {
+      if (r.canMatch(index)) {
+        candidates.add(r.rootCandidates(index));
+        canMatch = true;
+      } else {
+        candidates.add(SKIP);
+      }
+    }
+    if ( ! canMatch) {
+      return false;
+    }
+    List<IndexedWord> nodes;
+    try {
+      nodes = SemgrexMatcher.topologicalSort(sg);
+    } catch (Exception ex) {
+      // same as SemgrexMatcher.find() for graphs with cycles
+      nodes = new ArrayList<>(sg.vertexSet());
+    }
+    SemgrexMatcher[] matchers = new SemgrexMatcher[patterns.size()];
+    for (IndexedWord node : nodes) {
+      for (int i = 0; i < matchers.length; i++) {
+        Set<IndexedWord> nodeCandidates = candidates.get(i);
+        if (nodeCandidates == SKIP || (nodeCandidates != null && ! nodeCandidates.contains(node))) {
+          continue;
+        }
+        SemgrexPattern pattern = patterns.get(i);
+        SemgrexMatcher m = matchers[i];
+        if (m == null) {
+          m = matchers[i] = pattern.matcher(sg, node, new HashMap<>(), new HashMap<>(), new VariableStrings(), ignoreCase);
+        }
+        m.resetChildIter(node);
+        while (m.matches()) {
+          if (accept.test(i, new SemgrexMatch(pattern, m))) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private static final Set<IndexedWord> SKIP = Collections.emptySet();
+
+  /** Returns the nodes in both sets, where null stands for all the nodes. */
+  private static Set<IndexedWord> intersect(Set<IndexedWord> a, Set<IndexedWord> b) {
+    if (a == null) {
+      return b;
+    } else if (b == null) {
+      return a;
+    }
+    if (a.size() > b.size()) {
+      Set<IndexedWord> tmp = a;
+      a = b;
+      b = tmp;
+    }
+    Set<IndexedWord> res = new HashSet<>();
+    for (IndexedWord node : a) {
+      if (b.contains(node)) {
+        res.add(node);
+      }
+    }
+    return res;
+  }
+
+
+  /**
+   * The parts of a pattern which any match has to have: these are the nodes and relations
+   * which are not negated, optional, or under a disjunction.
+   */
+  private static class Requirements {
+
+    // The root node of the pattern, unless it can be matched without matching its description
+    private final NodePattern root;
+    // The children of the root node which any match has to have
+    private final List<NodePattern> rootChildren = new ArrayList<>();
+    // All the nodes which any match has to have
+    private final List<NodePattern> required = new ArrayList<>();
+
+    Requirements(SemgrexPattern pattern) {
+      if (pattern instanceof NodePattern && ((NodePattern) pattern).getReln() == GraphRelation.ROOT &&
+          ! pattern.isNegated() && ! pattern.isOptional()) {
+        root = (NodePattern) pattern;
+        for (SemgrexPattern child : root.getChildren()) {
+          addRequired(child, rootChildren, false);
+        }
+      } else {
+        root = null;
+      }
+      addRequired(pattern, required, true);
+    }
+
+    private static void addRequired(SemgrexPattern pattern, List<NodePattern> required, boolean descendants) {
+      if (pattern.isNegated() || pattern.isOptional()) {
+        return;
+      }
+      if (pattern instanceof NodePattern) {
+        required.add((NodePattern) pattern);
+        if ( ! descendants) {
+          return;
+        }
+      } else if ( ! (pattern instanceof CoordinationPattern) || ! ((CoordinationPattern) pattern).isConj()) {
+        return;
+      }
+      for (SemgrexPattern child : pattern.getChildren()) {
+        addRequired(child, required, descendants);
+      }
+    }
+
+    /** Whether the graph has the nodes and the edges that any match needs. */
+    boolean canMatch(GraphIndex index) {
+      for (NodePattern node : required) {
+        Set<IndexedWord> matching = index.matchingNodes(node);
+        if (matching != null && matching.isEmpty()) {
+          return false;
+        }
+        if (isEdge(node.getReln()) && index.matchingEdges(node.getReln()).isEmpty()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /** The nodes the root of the pattern can match, or null if it could be any of them. */
+    Set<IndexedWord> rootCandidates(GraphIndex index) {
+      if (root == null) {
+        return null;
+      }
+      Set<IndexedWord> candidates = index.matchingNodes(root);
+      for (NodePattern child : rootChildren) {
+        GraphRelation reln = child.getReln();
+        if ( ! isEdge(reln)) {
+          continue;
+        }
+        boolean governor = ">".equals(reln.symbol);
+        Set<IndexedWord> childCandidates = index.matchingNodes(child);
+        Set<IndexedWord> withEdge = new HashSet<>();
+        for (SemanticGraphEdge edge : index.matchingEdges(reln)) {
+          IndexedWord other = governor ? edge.getTarget() : edge.getSource();
+          if (childCandidates == null || childCandidates.contains(other)) {
+            withEdge.add(governor ? edge.getSource() : edge.getTarget());
+          }
+        }
+        candidates = intersect(candidates, withEdge);
+      }
+      return candidates;
+    }
+
+    // Whether the relation is a single (typed) edge, to a dependent (">") or to a governor ("<")
+    private static boolean isEdge(GraphRelation reln) {
+      return reln != null && (">".equals(reln.symbol) || "<".equals(reln.symbol));
+    }
+
+  } // end static class Requirements
+
+
+  /** The nodes and edges of a graph, indexed as the patterns need them. */
+  private static class GraphIndex {
+
+    private final SemanticGraph sg;
+    private final boolean ignoreCase;
+    // The edges with each relation
+    private final Map<String, List<SemanticGraphEdge>> edgesByReln = new HashMap<>();
+    // The edges whose relation passes each relation type (by identity)
+    private final Map<Predicate<String>, List<SemanticGraphEdge>> edgesByType = new IdentityHashMap<>();
+    // The nodes with each value of an attribute, for the attributes looked at so far
+    private final Map<Class<?>, Map<String, List<IndexedWord>>> nodesByValue = new HashMap<>();
+    // The nodes matching the pattern for an attribute, by attribute and pattern
+    private final Map<Pair<Class<?>, Object>, Set<IndexedWord>> nodesByPattern = new HashMap<>();
+
+    GraphIndex(SemanticGraph sg, boolean ignoreCase) {
+      this.sg = sg;
+      this.ignoreCase = ignoreCase;
+      for (SemanticGraphEdge edge : sg.edgeIterable()) {
+        edgesByReln.computeIfAbsent(edge.getRelation().toString(), k -> new ArrayList<>()).add(edge);
+      }
+    }
+
+    /** The edges which the relation can follow. */
+    List<SemanticGraphEdge> matchingEdges(GraphRelation reln) {
+      return edgesByType.computeIfAbsent(reln.type, type -> {
+        List<SemanticGraphEdge> edges = new ArrayList<>();
+        for (Map.Entry<String, List<SemanticGraphEdge>> entry : edgesByReln.entrySet()) {
+          if (type.test(entry.getKey())) {
+            edges.addAll(entry.getValue());
+          }
+        }
+        return edges;
+      });
+    }
+
+    /** The nodes matching the description of the node pattern, or null if it could be any of them. */
+    Set<IndexedWord> matchingNodes(NodePattern node) {
+      if (node.isNegDesc() || node.isNull()) {
+        return null;
+      }
+      if (node.isRoot()) {
+        return new HashSet<>(sg.getRoots());
+      }
+      Set<IndexedWord> res = null;
+      for (Map.Entry<String, Pair<Object, Object>> attr : node.getAttributes().entrySet()) {
+        Class<?> c = Env.lookupAnnotationKey(node.env, attr.getKey());
+        if (c == null) {
+          continue;
+        }
+        Object toMatch = ignoreCase ? attr.getValue().second : attr.getValue().first;
+        Set<IndexedWord> matching = nodesByPattern.get(new Pair<>(c, toMatch));
+        if (matching == null) {
+          matching = matchingNodes(c, toMatch);
+          nodesByPattern.put(new Pair<>(c, toMatch), matching);
+        }
+        res = intersect(res, matching);
+      }
+      return res;
+    }
+
+    private Set<IndexedWord> matchingNodes(Class<?> c, Object toMatch) {
+      Map<String, List<IndexedWord>> byValue = nodesByValue.get(c);
+      if (byValue == null) {
+        byValue = new HashMap<>();
+        @SuppressWarnings("unchecked")
+        Class<? extends TypesafeMap.Key<Object>> key = (Class<? extends TypesafeMap.Key<Object>>) c;
+        for (IndexedWord node : sg.vertexSet()) {
+          Object value = node.get(key);
+          if (value != null) {
+            byValue.computeIfAbsent(value.toString(), k -> new ArrayList<>()).add(node);
+          }
+        }
+        nodesByValue.put(c, byValue);
+      }
+      if (toMatch instanceof String && ! ignoreCase) {
+        return new HashSet<>(byValue.getOrDefault(toMatch, Collections.emptyList()));
+      }
+      Set<IndexedWord> res = new HashSet<>();
+      for (Map.Entry<String, List<IndexedWord>> entry : byValue.entrySet()) {
+        if (NodePattern.valueMatches(toMatch, entry.getKey(), ignoreCase)) {
+          res.addAll(entry.getValue());
+        }
+      }
+      return res;
+    }
+
+  } // end static class GraphIndex
+
+}
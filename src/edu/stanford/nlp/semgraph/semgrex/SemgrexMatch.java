@@ -0,0 +1,77 @@
+package edu.stanford.nlp.semgraph.semgrex;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+
+/**
+ * One match of a {@link SemgrexPattern} in a {@link SemanticGraph}, as found by
+ * a {@link SemgrexBatchMatcher}.  This is a copy of what the {@link SemgrexMatcher}
+ * knew about the match when it was found, so unlike the matcher it doesn't
+ * change when the search goes on.
+ */
+public class SemgrexMatch  {
+
+  private final SemgrexPattern pattern;
+  private final SemanticGraph graph;
+  private final IndexedWord match;
+  private final Map<String, IndexedWord> namesToNodes;
+  private final Map<String, String> namesToRelations;
+
+  SemgrexMatch(SemgrexPattern pattern, SemgrexMatcher matcher) {
+    this.pattern = pattern;
+    this.graph = matcher.getGraph();
+    this.match = matcher.getMatch();
+    this.namesToNodes = new LinkedHashMap<>(matcher.namesToNodes);
+    this.namesToRelations = new LinkedHashMap<>(matcher.namesToRelations);
+  }
+
+  /** The pattern that matched. */
+  public SemgrexPattern getPattern() {
+    return pattern;
+  }
+
+  /** The graph the pattern matched in. */
+  public SemanticGraph getGraph() {
+    return graph;
+  }
+
+  /** The node that matched the root node of the pattern. */
+  public IndexedWord getMatch() {
+    return match;
+  }
+
+  /**
+   * Returns the node labeled with <code>name</code> in the pattern.
+   *
+   * @param name the name of the node, specified in the pattern.
+   * @return node labeled by the name
+   */
+  public IndexedWord getNode(String name) {
+    return namesToNodes.get(name);
+  }
+
+  public String getRelnString(String name) {
+    return namesToRelations.get(name);
+  }
+
+  /** Returns the set of names for named nodes in the pattern. */
+  public Set<String> getNodeNames() {
+    return Collections.unmodifiableSet(namesToNodes.keySet());
+  }
+
+  /** Returns the set of names for named relations in the pattern. */
+  public Set<String> getRelationNames() {
+    return Collections.unmodifiableSet(namesToRelations.keySet());
+  }
+
+  @Override
+  public String toString() {
+    return pattern + " matched " + match + " " + namesToNodes + " " + namesToRelations;
+  }
+
+}
@@ -128,6 +128,21 @@ public abstract class SemgrexMatcher  {
    */
   private static final WeakHashMap<Integer, List<IndexedWord>> topologicalSortCache = new WeakHashMap<>();
 
+  /**
+   * Returns the nodes of the graph in topological order (the order find() tries them in),
+   * from the cache if the graph has been sorted already.
+   */
+  static List<IndexedWord> topologicalSort(SemanticGraph sg) {
+    synchronized (topologicalSortCache) {
+      List<IndexedWord> topoSort = topologicalSortCache.get(System.identityHashCode(sg));
+      if (topoSort == null || topoSort.size() != sg.size()) {  // size check to mitigate a stale cache
+        topoSort = sg.topologicalSort();
+        topologicalSortCache.put(System.identityHashCode(sg), topoSort);
+      }
+      return topoSort;
+    }
+  }
+
   /**
    * Find the next match of the pattern in the graph
    *
@@ -138,25 +153,11 @@ public abstract class SemgrexMatcher  {
     if (findIterator == null) {
       try {
         if (hyp) {
-          synchronized (topologicalSortCache) {
-            List<IndexedWord> topoSort = topologicalSortCache.get(System.identityHashCode(sg));
-            if (topoSort == null || topoSort.size() != sg.size()) {  // size check to mitigate a stale cache
-              topoSort = sg.topologicalSort();
-              topologicalSortCache.put(System.identityHashCode(sg), topoSort);
-            }
-            findIterator = topoSort.iterator();
-          }
+          findIterator = topologicalSort(sg).iterator();
         } else if (sg_aligned == null) {
           return false;
         } else {
-          synchronized (topologicalSortCache) {
-            List<IndexedWord> topoSort = topologicalSortCache.get(System.identityHashCode(sg_aligned));
-            if (topoSort == null || topoSort.size() != sg_aligned.size()) {  // size check to mitigate a stale cache
-              topoSort = sg_aligned.topologicalSort();
-              topologicalSortCache.put(System.identityHashCode(sg_aligned), topoSort);
-            }
-            findIterator = topoSort.iterator();
-          }
+          findIterator = topologicalSort(sg_aligned).iterator();
         }
       } catch (Exception ex) {
         if (hyp) {
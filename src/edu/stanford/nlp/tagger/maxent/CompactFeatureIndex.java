@@ -0,0 +1,396 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.logging.Redwood;
+
+/**
+ * The features and weights of a tagger, in a form which takes much less
+ * memory than the tagger's {@code fAssociations} maps and lambda array,
+ * and which can be memory-mapped from a file.
+ * <br>
+ * Every (extractor, value) pair which has any weight is a key of a minimal
+ * perfect hash function: a function which maps the n keys onto 0 .. n-1
+ * without collisions, built by hashing the keys into buckets and searching
+ * for a displacement for each bucket which moves its keys into free slots
+ * (the "hash and displace" scheme of Belazzougui, Botelho and Dietzfelbinger).
+ * Such a function doesn't store the keys, and maps a string which isn't a key
+ * to an arbitrary slot, so each slot also keeps a 64 bit fingerprint of its key;
+ * a value which isn't a key is then mistaken for one with probability 2<sup>-64</sup>.
+ * The weights of the key in slot i are the tags {@code tags[offsets[i] .. offsets[i+1]]}
+ * with weights {@code weights[offsets[i] .. offsets[i+1]]}, kept as floats.
+ * <br>
+ * Use {@code -featureIndex compact} to build one when loading a tagger, or
+ * write one to a file with {@link #main} and then load the tagger with
+ * {@code -featureIndex <file>}, which maps the file into memory rather than
+ * reading the features of the model.
+ */
+public class CompactFeatureIndex {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(CompactFeatureIndex.class);
+
+  private static final int MAGIC = 0x54464958; // "TFIX"
+  private static final int VERSION = 1;
+
+  /** The average number of keys in a bucket */
+  private static final int BUCKET_SIZE = 4;
+  /** The slots beyond n in the table the keys are first placed in, per 100 keys */
+  private static final int SPARE_SLOTS_PERCENT = 2;
+
+  private final int numKeys;
+  private final int numSlots;
+  private final int numTags;
+
+  private final IntBuffer displacements;
+  /** Where the keys placed in slots numKeys and up have been moved to */
+  private final IntBuffer remap;
+  private final LongBuffer fingerprints;
+  private final IntBuffer offsets;
+  private final ShortBuffer tags;
+  private final FloatBuffer weights;
+
+  private CompactFeatureIndex(int numKeys, int numSlots, int numTags, IntBuffer displacements, IntBuffer remap,
+                              LongBuffer fingerprints, IntBuffer offsets, ShortBuffer tags, FloatBuffer weights) {
+    this.numKeys = numKeys;
+    this.numSlots = numSlots;
+    this.numTags = numTags;
+    this.displacements = displacements;
+    this.remap = remap;
+    this.fingerprints = fingerprints;
+    this.offsets = offsets;
+    this.tags = tags;
+    this.weights = weights;
+  }
+
+  /**
+   * Builds the index of a tagger's features.
+   *
+   * @param fAssociations For each extractor, the map from its values to the feature number for each tag (or -1)
+   * @param lambda The weights, indexed by feature number
+   * @param numTags The number of tags
+   */
+  static CompactFeatureIndex build(List<Map<String, int[]>> fAssociations, double[] lambda, int numTags) {
+    if (numTags > Short.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many tags for a compact feature index: " + numTags);
+    }
+    List<int[]> keyFeatures = new ArrayList<>();
+    long[] hashes = new long[16];
+    int numEntries = 0;
+    for (int extractor = 0; extractor < fAssociations.size(); extractor++) {
+      for (Map.Entry<String, int[]> entry : fAssociations.get(extractor).entrySet()) {
+        if (keyFeatures.size() == hashes.length) {
+          hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        }
+        hashes[keyFeatures.size()] = hash(extractor, entry.getKey());
+        keyFeatures.add(entry.getValue());
+        for (int fNum : entry.getValue()) {
+          if (fNum >= 0) {
+            numEntries++;
+          }
+        }
+      }
+    }
+    int numKeys = keyFeatures.size();
+    hashes = Arrays.copyOf(hashes, numKeys);
+
+    long[] sorted = hashes.clone();
+    Arrays.sort(sorted);
+    for (int i = 1; i < numKeys; i++) {
+      if (sorted[i] == sorted[i - 1]) {
+        throw new IllegalStateException("Two tagger features have the same 64 bit hash; can't build a compact feature index");
+      }
+    }
+
+    int numSlots = numKeys + numKeys * SPARE_SLOTS_PERCENT / 100 + 1;
+    int numBuckets = numKeys / BUCKET_SIZE + 1;
+    // the keys of each bucket, biggest bucket first
+    int[] bucketSizes = new int[numBuckets];
+    for (long h : hashes) {
+      bucketSizes[bucket(h, numBuckets)]++;
+    }
+    int[] bucketStarts = new int[numBuckets + 1];
+    for (int b = 0; b < numBuckets; b++) {
+      bucketStarts[b + 1] = bucketStarts[b] + bucketSizes[b];
+    }
+    int[] bucketKeys = new int[numKeys];
+    int[] filled = new int[numBuckets];
+    for (int key = 0; key < numKeys; key++) {
+      int b = bucket(hashes[key], numBuckets);
+      bucketKeys[bucketStarts[b] + filled[b]++] = key;
+    }
+    Integer[] order = new Integer[numBuckets];
+    for (int b = 0; b < numBuckets; b++) {
+      order[b] = b;
+    }
+    Arrays.sort(order, (x, y) -> bucketSizes[y] - bucketSizes[x]);
+
+    int[] displacements = new int[numBuckets];
+    int[] slotKey = new int[numSlots];
+    Arrays.fill(slotKey, -1);
+    int[] positions = new int[BUCKET_SIZE * 8];
+    for (int b : order) {
+      int size = bucketSizes[b];
+      if (size == 0) {
+        break;
+      }
+      if (positions.length < size) {
+        positions = new int[size];
+      }
+      for (int displacement = 0; ; displacement++) {
+        if (displacement < 0) {
+          throw new IllegalStateException("Could not find a perfect hash function for the tagger features");
+        }
+        boolean placed = true;
+        for (int i = 0; i < size && placed; i++) {
+          int slot = slot(hashes[bucketKeys[bucketStarts[b] + i]], displacement, numSlots);
+          if (slotKey[slot] >= 0) {
+            placed = false;
+          }
+          for (int j = 0; j < i && placed; j++) {
+            if (positions[j] == slot) {
+              placed = false;
+            }
+          }
+          positions[i] = slot;
+        }
+        if (placed) {
+          for (int i = 0; i < size; i++) {
+            slotKey[positions[i]] = bucketKeys[bucketStarts[b] + i];
+          }
+          displacements[b] = displacement;
+          break;
+        }
+      }
+    }
+
+    // move the keys in the spare slots into the free slots below numKeys
+    int[] remap = new int[numSlots - numKeys];
+    int free = 0;
+    for (int slot = numKeys; slot < numSlots; slot++) {
+      if (slotKey[slot] >= 0) {
+        while (slotKey[free] >= 0) {
+          free++;
+        }
+        slotKey[free] = slotKey[slot];
+        remap[slot - numKeys] = free;
+        free++;
+      }
+    }
+
+    long[] fingerprints = new long[numKeys];
+    int[] offsets = new int[numKeys + 1];
+    short[] tags = new short[numEntries];
+    float[] weights = new float[numEntries];
+    int entry = 0;
+    for (int slot = 0; slot < numKeys; slot++) {
+      int key = slotKey[slot];
+      fingerprints[slot] = hashes[key];
+      offsets[slot] = entry;
+      int[] fNums = keyFeatures.get(key);
+      for (int tag = 0; tag < fNums.length; tag++) {
+        if (fNums[tag] >= 0) {
+          tags[entry] = (short) tag;
+          weights[entry] = (float) lambda[fNums[tag]];
+          entry++;
+        }
+      }
+    }
+    offsets[numKeys] = entry;
+
+    return new CompactFeatureIndex(numKeys, numSlots, numTags, IntBuffer.wrap(displacements), IntBuffer.wrap(remap),
+        LongBuffer.wrap(fingerprints), IntBuffer.wrap(offsets), ShortBuffer.wrap(tags), FloatBuffer.wrap(weights));
+  }
+
+  /** A hash of the value of an extractor, which must not change, as it is saved in index files */
+  private static long hash(int extractor, String value) {
+    long h = 0xcbf29ce484222325L ^ (extractor * 0x9e3779b97f4a7c15L);
+    for (int i = 0, length = value.length(); i < length; i++) {
+      h = (h ^ value.charAt(i)) * 0x100000001b3L;
+    }
+    return mix(h);
+  }
+
+  /** The finalizer of SplitMix64, which spreads every input bit over the whole output */
+  private static long mix(long h) {
+    h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+    h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+    return h ^ (h >>> 31);
+  }
+
+  /** Maps the top 32 bits of the hash onto 0 .. n-1, with a multiplication rather than a (slow) remainder */
+  private static int reduce(long hash, int n) {
+    return (int) (((hash >>> 32) * n) >>> 32);
+  }
+
+  private static int bucket(long hash, int numBuckets) {
+    return reduce(hash, numBuckets);
+  }
+
+  private static int slot(long hash, int displacement, int numSlots) {
+    return reduce(mix(hash + displacement * 0x9e3779b97f4a7c15L), numSlots);
+  }
+
+  /** The slot of the given value of the given extractor, or -1 if it has no weights */
+  int find(int extractor, String value) {
+    if (numKeys == 0) {
+      // there is still one slot, so that the tables aren't empty, but nothing in it
+      return -1;
+    }
+    long hash = hash(extractor, value);
+    int slot = slot(hash, displacements.get(bucket(hash, displacements.capacity())), numSlots);
+    if (slot >= numKeys) {
+      slot = remap.get(slot - numKeys);
+    }
+    return fingerprints.get(slot) == hash ? slot : -1;
+  }
+
+  /** Adds the weights of the feature in the given slot to scores, which is indexed by tag */
+  void addWeights(int slot, double[] scores) {
+    for (int entry = offsets.get(slot), end = offsets.get(slot + 1); entry < end; entry++) {
+      scores[tags.get(entry)] += weights.get(entry);
+    }
+  }
+
+  /** As {@link #addWeights(int, double[])}, where scores[j] is the score of the tag tagIndices[j] */
+  void addWeights(int slot, int[] tagIndices, double[] scores) {
+    for (int entry = offsets.get(slot), end = offsets.get(slot + 1); entry < end; entry++) {
+      int tag = tags.get(entry);
+      for (int j = 0; j < tagIndices.length; j++) {
+        if (tagIndices[j] == tag) {
+          scores[j] += weights.get(entry);
+          break;
+        }
+      }
+    }
+  }
+
+  /** The number of (extractor, value) pairs with weights */
+  int numKeys() {
+    return numKeys;
+  }
+
+  /** The number of weights, that is, of (extractor, value, tag) triples */
+  int numWeights() {
+    return weights.capacity();
+  }
+
+  int numTags() {
+    return numTags;
+  }
+
+  /** Writes the index in the format {@link #load} maps into memory. */
+  void save(String filename) throws IOException {
+    try (DataOutputStream out = IOUtils.getDataOutputStream(filename)) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(numKeys);
+      out.writeInt(numSlots);
+      out.writeInt(numTags);
+      out.writeInt(displacements.capacity());
+      out.writeInt(weights.capacity());
+      out.writeInt(0); // padding, so that the longs are 8 byte aligned
+      for (int i = 0; i < numKeys; i++) {
+        out.writeLong(fingerprints.get(i));
+      }
+      for (int i = 0; i < displacements.capacity(); i++) {
+        out.writeInt(displacements.get(i));
+      }
+      for (int i = 0; i < remap.capacity(); i++) {
+        out.writeInt(remap.get(i));
+      }
+      for (int i = 0; i <= numKeys; i++) {
+        out.writeInt(offsets.get(i));
+      }
+      for (int i = 0; i < weights.capacity(); i++) {
+        out.writeFloat(weights.get(i));
+      }
+      for (int i = 0; i < tags.capacity(); i++) {
+        out.writeShort(tags.get(i));
+      }
+    }
+  }
+
+  /**
+   * Maps an index written by {@link #save} into memory.  The index is only
+   * read from the file as it is used, and the pages of the file can be shared
+   * by all the processes which load it.
+   */
+  static CompactFeatureIndex load(String filename) {
+    try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+         FileChannel channel = file.getChannel()) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+        throw new RuntimeIOException(filename + " is not a compact tagger feature index");
+      }
+      int numKeys = buffer.getInt(8);
+      int numSlots = buffer.getInt(12);
+      int numTags = buffer.getInt(16);
+      int numBuckets = buffer.getInt(20);
+      int numEntries = buffer.getInt(24);
+      int position = 32;
+      LongBuffer fingerprints = section(buffer, position, 8L * numKeys).asLongBuffer();
+      position += 8 * numKeys;
+      IntBuffer displacements = section(buffer, position, 4L * numBuckets).asIntBuffer();
+      position += 4 * numBuckets;
+      IntBuffer remap = section(buffer, position, 4L * (numSlots - numKeys)).asIntBuffer();
+      position += 4 * (numSlots - numKeys);
+      IntBuffer offsets = section(buffer, position, 4L * (numKeys + 1)).asIntBuffer();
+      position += 4 * (numKeys + 1);
+      FloatBuffer weights = section(buffer, position, 4L * numEntries).asFloatBuffer();
+      position += 4 * numEntries;
+      ShortBuffer tags = section(buffer, position, 2L * numEntries).asShortBuffer();
+      return new CompactFeatureIndex(numKeys, numSlots, numTags, displacements, remap, fingerprints, offsets, tags, weights);
+    } catch (IOException e) {
+      throw new RuntimeIOException("Could not map the tagger feature index " + filename, e);
+    }
+  }
+
+  /** The given bytes of the buffer, as a buffer of their own */
+  private static ByteBuffer section(ByteBuffer buffer, int position, long length) {
+    if (position + length > buffer.capacity()) {
+      throw new RuntimeIOException("Truncated compact tagger feature index");
+    }
+    ByteBuffer section = buffer.duplicate();
+    section.position(position);
+    section.limit((int) (position + length));
+    return section.slice(); // big endian, as DataOutputStream writes
+  }
+
+  /**
+   * Writes the compact feature index of a tagger to a file, for loading
+   * with {@code -featureIndex <file>}.
+   * <br>
+   * Usage: {@code java edu.stanford.nlp.tagger.maxent.CompactFeatureIndex -model tagger -output file}
+   */
+  public static void main(String[] args) throws IOException {
+    Properties props = StringUtils.argsToProperties(args);
+    String model = props.getProperty("model");
+    String output = props.getProperty("output");
+    if (model == null || output == null) {
+      log.info("Usage: java edu.stanford.nlp.tagger.maxent.CompactFeatureIndex -model tagger -output file");
+      return;
+    }
+    MaxentTagger tagger = new MaxentTagger(model, StringUtils.argsToProperties("-model", model, "-featureIndex", "compact"), false);
+    tagger.featureIndex().save(output);
+    log.info("Wrote " + tagger.featureIndex().numKeys() + " features with " +
+             tagger.featureIndex().numWeights() + " weights to " + output);
+  }
+
+}
@@ -0,0 +1,106 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.math.CompactWeights;
+
+/**
+ * The feature weights of a tagger, kept in float or int8 precision for tagging.
+ * Each weight belongs to one (feature, tag) pair, so, as in {@link CompactWeights},
+ * int8 weights have a separate scale for each tag.
+ */
+class CompactLambdas {
+
+  private final CompactWeights.Precision precision;
+  private final float[] floats;
+  private final byte[] bytes;
+  private final float[] tagScales;
+
+  /**
+   * @param lambda The weights, indexed by feature number
+   * @param fAssociations The tagger's map from extracted features to the feature number for each tag
+   * @param numTags The number of tags
+   * @param precision FLOAT or INT8
+   */
+  CompactLambdas(double[] lambda, List<Map<String, int[]>> fAssociations, int numTags, CompactWeights.Precision precision) {
+    this.precision = precision;
+    switch (precision) {
+      case FLOAT:
+        floats = new float[lambda.length];
+        for (int i = 0; i < lambda.length; i++) {
+          floats[i] = (float) lambda[i];
+        }
+        bytes = null;
+        tagScales = null;
+        break;
+      case INT8:
+        floats = null;
+        tagScales = new float[numTags];
+        for (Map<String, int[]> fAssociation : fAssociations) {
+          for (int[] fNums : fAssociation.values()) {
+            for (int tag = 0; tag < fNums.length; tag++) {
+              if (fNums[tag] >= 0) {
+                tagScales[tag] = Math.max(tagScales[tag], (float) Math.abs(lambda[fNums[tag]]));
+              }
+            }
+          }
+        }
+        for (int tag = 0; tag < numTags; tag++) {
+          tagScales[tag] /= Byte.MAX_VALUE;
+        }
+        bytes = new byte[lambda.length];
+        for (Map<String, int[]> fAssociation : fAssociations) {
+          for (int[] fNums : fAssociation.values()) {
+            for (int tag = 0; tag < fNums.length; tag++) {
+              int fNum = fNums[tag];
+              if (fNum >= 0 && tagScales[tag] != 0.0f) {
+                bytes[fNum] = (byte) Math.round(lambda[fNum] / tagScales[tag]);
+              }
+            }
+          }
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Tagger weights can only be compacted to float or int8, not " + precision);
+    }
+  }
+
+  /** The weight of feature number fNum, which is a feature of the given tag. */
+  double get(int fNum, int tag) {
+    if (bytes != null) {
+      return bytes[fNum] * tagScales[tag];
+    }
+    return floats[fNum];
+  }
+
+  int size() {
+    return floats != null ? floats.length : bytes.length;
+  }
+
+  CompactWeights.Precision precision() {
+    return precision;
+  }
+
+  /** Copies the weights back into double precision. */
+  double[] toArray(List<Map<String, int[]>> fAssociations) {
+    double[] lambda = new double[size()];
+    if (floats != null) {
+      for (int i = 0; i < lambda.length; i++) {
+        lambda[i] = floats[i];
+      }
+    } else {
+      for (Map<String, int[]> fAssociation : fAssociations) {
+        for (int[] fNums : fAssociation.values()) {
+          for (int tag = 0; tag < fNums.length; tag++) {
+            if (fNums[tag] >= 0) {
+              lambda[fNums[tag]] = get(fNums[tag], tag);
+            }
+          }
+        }
+      }
+    }
+    return lambda;
+  }
+
+}
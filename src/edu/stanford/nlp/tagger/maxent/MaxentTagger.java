@@ -33,6 +33,7 @@ import edu.stanford.nlp.ling.*;
 import edu.stanford.nlp.maxent.CGRunner;
 import edu.stanford.nlp.maxent.Problem;
 import edu.stanford.nlp.maxent.iis.LambdaSolve;
+import edu.stanford.nlp.math.CompactWeights;
 import edu.stanford.nlp.objectbank.ObjectBank;
 import edu.stanford.nlp.objectbank.ReaderIteratorFactory;
 import edu.stanford.nlp.process.DocumentPreprocessor;
@@ -361,6 +362,12 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
   }
 
   private LambdaSolveTagger prob;
+  /** The weights in reduced precision, if the tagger was loaded with a weightPrecision other than double.
+   *  The lambdas of prob are then null. */
+  private CompactLambdas compactLambdas; // = null
+  /** The features and weights, if the tagger was loaded with a featureIndex.
+   *  fAssociations is then empty and prob has no lambdas. */
+  private CompactFeatureIndex featureIndex; // = null
   // For each extractor index, we have a map from possible extracted
   // features to an array which maps from tag number to feature weight index in the lambdas array.
   List<Map<String, int[]>> fAssociations = Generics.newArrayList();
@@ -464,6 +471,111 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
     return prob;
   }
 
+  /** The weight of feature number fNum, which is a feature of the given tag. */
+  double lambda(int fNum, int tag) {
+    if (compactLambdas != null) {
+      return compactLambdas.get(fNum, tag);
+    }
+    return prob.lambda[fNum];
+  }
+
+  /** The compact feature index the tagger was loaded with, or null. */
+  CompactFeatureIndex featureIndex() {
+    return featureIndex;
+  }
+
+  /**
+   * Adds the weights of the given value of extractor number kf to the scores of all the tags.
+   * (Rare word extractors are numbered after the common ones.)
+   */
+  void addFeatureScores(int kf, String val, double[] scores) {
+    if (featureIndex != null) {
+      int slot = featureIndex.find(kf, val);
+      if (slot >= 0) {
+        featureIndex.addWeights(slot, scores);
+      }
+    } else {
+      int[] fNums = fAssociations.get(kf).get(val);
+      if (fNums != null) {
+        addLambdas(fNums, scores);
+      }
+    }
+  }
+
+  /** As {@link #addFeatureScores(int, String, double[])}, where scores[j] is the score of the tag tagIndices[j]. */
+  void addFeatureScores(int kf, String val, int[] tagIndices, double[] scores) {
+    if (featureIndex != null) {
+      int slot = featureIndex.find(kf, val);
+      if (slot >= 0) {
+        featureIndex.addWeights(slot, tagIndices, scores);
+      }
+    } else {
+      int[] fNums = fAssociations.get(kf).get(val);
+      if (fNums != null) {
+        addLambdas(fNums, tagIndices, scores);
+      }
+    }
+  }
+
+  /**
+   * Adds the weights of one feature to the scores of all the tags.
+   * fNums gives the number of the feature for each tag, or -1 if the
+   * feature has no weight for that tag.
+   */
+  void addLambdas(int[] fNums, double[] scores) {
+    if (compactLambdas != null) {
+      for (int tag = 0; tag < scores.length; tag++) {
+        int fNum = fNums[tag];
+        if (fNum > -1) {
+          scores[tag] += compactLambdas.get(fNum, tag);
+        }
+      }
+    } else {
+      double[] lambda = prob.lambda;
+      for (int tag = 0; tag < scores.length; tag++) {
+        int fNum = fNums[tag];
+        if (fNum > -1) {
+          scores[tag] += lambda[fNum];
+        }
+      }
+    }
+  }
+
+  /** As {@link #addLambdas(int[], double[])}, where scores[j] is the score of the tag tagIndices[j]. */
+  void addLambdas(int[] fNums, int[] tagIndices, double[] scores) {
+    if (compactLambdas != null) {
+      for (int j = 0; j < scores.length; j++) {
+        int fNum = fNums[tagIndices[j]];
+        if (fNum > -1) {
+          scores[j] += compactLambdas.get(fNum, tagIndices[j]);
+        }
+      }
+    } else {
+      double[] lambda = prob.lambda;
+      for (int j = 0; j < scores.length; j++) {
+        int fNum = fNums[tagIndices[j]];
+        if (fNum > -1) {
+          scores[j] += lambda[fNum];
+        }
+      }
+    }
+  }
+
+  /** The weights, copied back into double precision if they were compacted. */
+  double[] lambdas() {
+    if (compactLambdas != null) {
+      return compactLambdas.toArray(fAssociations);
+    }
+    return prob.lambda;
+  }
+
+  int numLambdas() {
+    if (featureIndex != null) {
+      return featureIndex.numWeights();
+    }
+    return compactLambdas != null ? compactLambdas.size() : prob.lambda.length;
+  }
+
   // TODO: make these constructors instead of init methods?
   void init(TaggerConfig config) {
     if (initted) return;  // TODO: why not reinit?
@@ -739,6 +851,9 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
   }
 
   protected void saveModel(DataOutputStream file) throws IOException {
+      if (featureIndex != null) {
+        throw new UnsupportedOperationException("A tagger loaded with a compact feature index can't be saved");
+      }
       config.saveConfig(file);
       file.writeInt(xSize);
       file.writeInt(ySize);
@@ -774,7 +889,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
         }
       }
 
-      LambdaSolve.save_lambdas(file, prob.lambda);
+      LambdaSolve.save_lambdas(file, lambdas());
   }
 
   /** This reads the complete tagger from a single model stored in a file, at a URL,
@@ -874,6 +989,11 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
       readExtractors(rf);
       dict.setAmbClasses(ambClasses, veryCommonWordThresh, tags);
 
+      String featureIndexOption = taggerConfig.getFeatureIndex();
+      // a feature index file replaces the features of the model, which are then read past
+      boolean mappedIndex = ! featureIndexOption.isEmpty() && ! featureIndexOption.equals("compact");
+      featureIndex = null;
+
       int[] numFA = new int[extractors.size() + extractorsRare.size()];
       int sizeAssoc = rf.readInt();
       fAssociations = Generics.newArrayList();
@@ -890,6 +1010,9 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
         FeatureKey fK = new FeatureKey();
         fK.read(rf);
         numFA[fK.num]++;
+        if (mappedIndex) {
+          continue;
+        }
 
         // TODO: rewrite the writing / reading code to store
         // fAssociations in a cleaner manner?  Only do this when
@@ -918,6 +1041,31 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
       if (VERBOSE) {
         log.info("prob read ");
       }
+      compactLambdas = null;
+      if (mappedIndex) {
+        featureIndex = CompactFeatureIndex.load(featureIndexOption);
+        if (featureIndex.numWeights() != sizeAssoc || featureIndex.numTags() != ySize) {
+          throw new IllegalArgumentException("The feature index " + featureIndexOption + " was not made from this tagger");
+        }
+        prob.lambda = null;
+      } else {
+        CompactWeights.Precision precision = CompactWeights.Precision.fromString(taggerConfig.getWeightPrecision());
+        if (precision != CompactWeights.Precision.DOUBLE) {
+          compactLambdas = new CompactLambdas(prob.lambda, fAssociations, ySize, precision);
+          prob.lambda = null;
+        }
+        if (featureIndexOption.equals("compact")) {
+          featureIndex = CompactFeatureIndex.build(fAssociations, lambdas(), ySize);
+          compactLambdas = null;
+          prob.lambda = null;
+        }
+      }
+      if (featureIndex != null) {
+        fAssociations = Generics.newArrayList();
+        for (int i = 0; i < extractors.size() + extractorsRare.size(); ++i) {
+          fAssociations.add(Collections.emptyMap());
+        }
+      }
       if (printLoading) {
         t.done(log, "Loading POS tagger from " + source);
       }
@@ -941,7 +1089,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
           if (association >= 0) {
             FeatureKey fk = new FeatureKey(i, featureValue, tags.getTag(j));
             out.println((fk.num < extractors.size() ? extractors.get(fk.num) : extractorsRare.get(fk.num - extractors.size()))
-                    + " " + fk.val + " " + fk.tag + ": " + nf.format(getLambdaSolve().lambda[association]));
+                    + " " + fk.val + " " + fk.tag + ": " + nf.format(lambda(association, j)));
           }
         }
       }
@@ -1013,16 +1161,42 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
    */
   @Override
   public List<List<TaggedWord>> process(List<? extends List<? extends HasWord>> sentences) {
-    List<List<TaggedWord>> taggedSentences = Generics.newArrayList();
+    return tagSentences(sentences, false);
+  }
+
+
+  /**
+   * Tags each of the given sentences, as {@link #tagSentence(List)} does.
+   * This is quicker than tagging them one at a time, as the sentences share
+   * the tagger's working state, which saves working out the scores of the
+   * features of a word again in every sentence it occurs in.
+   * It is safe to call from several threads at once: each call has its own state.
+   *
+   * @param sentences The sentences to tag
+   * @return The tagged sentences, in the same order
+   */
+  public List<List<TaggedWord>> tagSentences(List<? extends List<? extends HasWord>> sentences) {
+    return tagSentences(sentences, false);
+  }
 
+  /**
+   * Tags each of the given sentences, as {@link #tagSentence(List, boolean)} does.
+   * See {@link #tagSentences(List)}.
+   *
+   * @param sentences The sentences to tag
+   * @param reuseTags whether or not to reuse the given tags
+   * @return The tagged sentences, in the same order
+   */
+  public List<List<TaggedWord>> tagSentences(List<? extends List<? extends HasWord>> sentences,
+                                             boolean reuseTags) {
+    List<List<TaggedWord>> taggedSentences = new ArrayList<>(sentences.size());
     TestSentence testSentence = new TestSentence(this);
     for (List<? extends HasWord> sentence : sentences) {
-      taggedSentences.add(testSentence.tagSentence(sentence, false));
+      taggedSentences.add(testSentence.tagSentence(sentence, reuseTags));
     }
     return taggedSentences;
   }
 
-
   /**
    * Returns a new Sentence that is a copy of the given sentence with all the
    * words tagged with their part-of-speech. Convenience method when you only
@@ -67,7 +67,9 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
   OUTPUT_FILE = "",
   OUTPUT_FORMAT = "slashTags",
   OUTPUT_FORMAT_OPTIONS = "",
-  NTHREADS = "1";
+  NTHREADS = "1",
+  WEIGHT_PRECISION = "double",
+  FEATURE_INDEX = "";
 
   public static final String ENCODING_PROPERTY = "encoding",
   TAG_SEPARATOR_PROPERTY = "tagSeparator";
@@ -109,6 +111,8 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
     defaultValues.put("outputFormat", OUTPUT_FORMAT);
     defaultValues.put("outputFormatOptions", OUTPUT_FORMAT_OPTIONS);
     defaultValues.put("nthreads", NTHREADS);
+    defaultValues.put("weightPrecision", WEIGHT_PRECISION);
+    defaultValues.put("featureIndex", FEATURE_INDEX);
   }
 
   /**
@@ -258,6 +262,8 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
     this.setProperty("outputFormat", props.getProperty("outputFormat", this.getProperty("outputFormat")).trim()); //this isn't something we save from time to time
     this.setProperty("outputFormatOptions", props.getProperty("outputFormatOptions", this.getProperty("outputFormatOptions")).trim()); //this isn't something we save from time to time
     this.setProperty("nthreads", props.getProperty("nthreads", this.getProperty("nthreads", NTHREADS)).trim());
+    this.setProperty("weightPrecision", props.getProperty("weightPrecision", this.getProperty("weightPrecision", WEIGHT_PRECISION)).trim());
+    this.setProperty("featureIndex", props.getProperty("featureIndex", this.getProperty("featureIndex", FEATURE_INDEX)).trim()); //this isn't something we save from time to time
     String sentenceDelimiter = props.getProperty("sentenceDelimiter", this.getProperty("sentenceDelimiter"));
     if (sentenceDelimiter != null) {
       // this isn't something we save from time to time.
@@ -375,6 +381,13 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
 
   public int getNThreads() { return Integer.parseInt(getProperty("nthreads")); }
 
+  /** The precision the weights are kept in when tagging: double, float, or int8. */
+  public String getWeightPrecision() { return getProperty("weightPrecision", WEIGHT_PRECISION); }
+
+  /** How the features are indexed when tagging: empty for the usual maps,
+   *  "compact" for a {@link CompactFeatureIndex} built on loading, or the file of one. */
+  public String getFeatureIndex() { return getProperty("featureIndex", FEATURE_INDEX); }
+
 
   /** Return a regex of XML elements to tag inside of.  This may return an
    *  empty String, but never null.
@@ -473,6 +486,8 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
     pw.println("            outputFormat = " + getProperty("outputFormat"));
     pw.println("     outputFormatOptions = " + getProperty("outputFormatOptions"));
     pw.println("                nthreads = " + getProperty("nthreads"));
+    pw.println("         weightPrecision = " + getWeightPrecision());
+    pw.println("            featureIndex = " + getFeatureIndex());
     pw.flush();
   }
 
@@ -716,6 +731,17 @@ public class TaggerConfig extends Properties /* Inherits implementation of Seria
 
     out.println("# testFile and textFile can use multiple threads to process text.");
     out.println("# nthreads = " + NTHREADS);
+    out.println();
+
+    out.println("# The precision to keep the weights in when tagging: double, float, or int8.");
+    out.println("# float and int8 use less memory, but may change a few tags.");
+    out.println("# weightPrecision = " + WEIGHT_PRECISION);
+    out.println();
+
+    out.println("# The index of the features when tagging: blank for hash maps, compact for a");
+    out.println("# perfect hash index with float weights built on loading, or the file of such an");
+    out.println("# index written by CompactFeatureIndex, which is memory-mapped.");
+    out.println("# featureIndex = " + FEATURE_INDEX);
   }
 
   public Mode getMode() {
@@ -82,9 +82,19 @@ public class TestSentence implements SequenceModel  {
   int numWrongUnknown;
   private int endSizePairs; // = 0;
 
+  /**
+   * The most words whose local scores are kept from one sentence to the next,
+   * when a TestSentence is used to tag many sentences.
+   */
+  private static final int MAX_CACHED_WORDS = 50000;
+
   private volatile History history;
+  // the scores of the features of the word alone, which are the same wherever it occurs
   private volatile Map<String,double[]> localScores = Generics.newHashMap();
   private volatile double[][] localContextScores;
+  // the possible tags of each position of the current sentence, which the search asks for many times
+  private String[][] possibleTags;
+  private int[][] possibleTagIndices;
 
   protected final MaxentTagger maxentTagger;
 
@@ -115,6 +125,9 @@ public class TestSentence implements SequenceModel  {
   /**
    * Tags the sentence s by running maxent model.  Returns a sentence (List) of
    * TaggedWord objects.
+   * A TestSentence can be used to tag any number of sentences, one at a time,
+   * which saves working out the scores of the features of each word again
+   * in every sentence it occurs in.
    *
    * @param s Input sentence (List).  This isn't changed.
    * @return Tagged sentence
@@ -142,6 +155,11 @@ public class TestSentence implements SequenceModel  {
         }
       }
       originalTags.add(Tagger.EOS_TAG);
+    } else {
+      this.originalTags = null;
+    }
+    if (localScores.size() > MAX_CACHED_WORDS) {
+      localScores.clear();
     }
     size = sz + 1;
     if (VERBOSE) {
@@ -165,6 +183,8 @@ public class TestSentence implements SequenceModel  {
   protected void init() {
     //the eos are assumed already there
     localContextScores = new double[size][];
+    possibleTags = new String[size][];
+    possibleTagIndices = new int[size][];
     for (int i = 0; i < size - 1; i++) {
       if (maxentTagger.dict.isUnknown(sent.get(i))) {
         numUnknown++;
@@ -433,10 +453,12 @@ public class TestSentence implements SequenceModel  {
     String w = pairs.getWord(h.current);
     double[] lS, lcS;
     lS = localScores.get(w);
+    // exact scores are for all the tags, and so don't depend on which tags the word can have
+    int scoresLength = maxentTagger.hasApproximateScoring() ? tags.length : maxentTagger.ySize;
     if (lS == null) {
       lS = getHistories(tags, h, ex.local, rare ? exR.local : null);
       localScores.put(w,lS);
-    } else if (lS.length != tags.length) {
+    } else if (lS.length != scoresLength) {
       // This case can occur when a word was given a specific forced
       // tag, and then later it shows up without the forced tag.
       // TODO: if a word is given a forced tag, we should always get
@@ -471,75 +493,43 @@ public class TestSentence implements SequenceModel  {
       int kf = e.first();
       Extractor ex = e.second();
       String val = ex.extract(h);
-      int[] fAssociations = maxentTagger.fAssociations.get(kf).get(val);
-      if (fAssociations != null) {
-        for (int i = 0; i < maxentTagger.ySize; i++) {
-          int fNum = fAssociations[i];
-          if (fNum > -1) {
-            scores[i] += maxentTagger.getLambdaSolve().lambda[fNum];
-          }
-        }
-      }
+      maxentTagger.addFeatureScores(kf, val, scores);
     }
     if (extractorsRare != null) {
       for (Pair<Integer,Extractor> e : extractorsRare) {
         int kf = e.first();
         Extractor ex = e.second();
         String val = ex.extract(h);
-        int[] fAssociations = maxentTagger.fAssociations.get(kf+szCommon).get(val);
-        if (fAssociations != null) {
-          for (int i = 0; i < maxentTagger.ySize; i++) {
-            int fNum = fAssociations[i];
-            if (fNum > -1) {
-              scores[i] += maxentTagger.getLambdaSolve().lambda[fNum];
-            }
-          }
-        }
+        maxentTagger.addFeatureScores(kf+szCommon, val, scores);
       }
     }
     return scores;
   }
 
-  // todo [cdm 2016]: Could this be sped up a bit by caching lambda array, extracting method for shared code?
   // todo [cdm 2016]: Also it's allocating java.util.ArrayList$Itr for for loop - why can't it just random access array?
   /** Returns an unnormalized score (in log space) for each tag. */
   private double[] getApproximateHistories(String[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
 
     double[] scores = new double[tags.length];
     int szCommon = maxentTagger.extractors.size();
+    // look up the tags once, rather than once per feature
+    int[] tagIndices = new int[tags.length];
+    for (int j = 0; j < tags.length; j++) {
+      tagIndices[j] = maxentTagger.tags.getIndex(tags[j]);
+    }
 
     for (Pair<Integer,Extractor> e : extractors) {
       int kf = e.first();
       Extractor ex = e.second();
       String val = ex.extract(h);
-      int[] fAssociations = maxentTagger.fAssociations.get(kf).get(val);
-      if (fAssociations != null) {
-        for (int j = 0; j < tags.length; j++) {
-          String tag = tags[j];
-          int tagIndex = maxentTagger.tags.getIndex(tag);
-          int fNum = fAssociations[tagIndex];
-          if (fNum > -1) {
-            scores[j] += maxentTagger.getLambdaSolve().lambda[fNum];
-          }
-        }
-      }
+      maxentTagger.addFeatureScores(kf, val, tagIndices, scores);
     }
     if (extractorsRare != null) {
       for (Pair<Integer,Extractor> e : extractorsRare) {
         int kf = e.first();
         Extractor ex = e.second();
         String val = ex.extract(h);
-        int[] fAssociations = maxentTagger.fAssociations.get(szCommon+kf).get(val);
-        if (fAssociations != null) {
-          for (int j = 0; j < tags.length; j++) {
-            String tag = tags[j];
-            int tagIndex = maxentTagger.tags.getIndex(tag);
-            int fNum = fAssociations[tagIndex];
-            if (fNum > -1) {
-              scores[j] += maxentTagger.getLambdaSolve().lambda[fNum];
-            }
-          }
-        }
+        maxentTagger.addFeatureScores(szCommon+kf, val, tagIndices, scores);
       }
     }
     return scores;
@@ -700,11 +690,18 @@ public class TestSentence implements SequenceModel  {
 
   @Override
   public int[] getPossibleValues(int pos) {
+    int index = pos - leftWindow();
+    if (index >= 0 && index < size && possibleTagIndices[index] != null) {
+      return possibleTagIndices[index];
+    }
     String[] arr1 = stringTagsAt(pos);
     int[] arr = new int[arr1.length];
     for (int i = 0; i < arr.length; i++) {
       arr[i] = maxentTagger.tags.getIndex(arr1[i]);
     }
+    if (index >= 0 && index < size) {
+      possibleTagIndices[index] = arr;
+    }
 
     return arr;
   }
@@ -738,11 +735,19 @@ public class TestSentence implements SequenceModel  {
     return getScores(history);
   }
 
-  // todo [cdm 2013]: Tagging could be sped up quite a bit here if we cached int arrays of tags by index, not Strings
   protected String[] stringTagsAt(int pos) {
     if ((pos < leftWindow()) || (pos >= size + leftWindow())) {
       return naTagArr;
     }
+    String[] cached = possibleTags[pos - leftWindow()];
+    if (cached == null) {
+      cached = computeTagsAt(pos);
+      possibleTags[pos - leftWindow()] = cached;
+    }
+    return cached;
+  }
+
+  private String[] computeTagsAt(int pos) {
 
     String[] arr1;
     if (originalTags != null && originalTags.get(pos - leftWindow()) != null) {
@@ -74,6 +74,10 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
    * @param other The ArrayCoreMap to copy. It may not be null.
    */
   public ArrayCoreMap(ArrayCoreMap other) {
+    if ( ! other.isArrayBacked()) {
+      copyFrom(other);
+      return;
+    }
     size = other.size;
     keys = Arrays.copyOf(other.keys, size);
     values = Arrays.copyOf(other.values, size);
@@ -83,8 +87,12 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
    * Copy constructor.
    * @param other The ArrayCoreMap to copy. It may not be null.
    */
-  @SuppressWarnings("unchecked")
   public ArrayCoreMap(CoreMap other) {
+    copyFrom(other);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void copyFrom(CoreMap other) {
     Set<Class<?>> otherKeys = other.keySet();
 
     size = otherKeys.size();
@@ -99,6 +107,18 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
     }
   }
 
+  /**
+   * Whether every key of this map is stored in this class's own key and value arrays.
+   * A subclass which keeps some keys elsewhere (and overrides the accessors accordingly)
+   * must return false, so that copying and equality go through {@link #keySet()} and
+   * {@link #get(Class)} rather than reading the arrays directly.
+   *
+   * @return true, unless overridden
+   */
+  protected boolean isArrayBacked() {
+    return true;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -480,6 +500,11 @@ public class ArrayCoreMap implements CoreMap /*, Serializable */ {
       return obj.equals(this);
     }
 
+    if (obj instanceof ArrayCoreMap && ! ((ArrayCoreMap) obj).isArrayBacked()) {
+      // overridden behavior for ArrayCoreMaps not entirely stored in the arrays
+      return obj.equals(this);
+    }
+
     if (obj instanceof ArrayCoreMap) {
       // specialized equals for ArrayCoreMap
       return equals((ArrayCoreMap)obj);
@@ -0,0 +1,110 @@
+package edu.stanford.nlp.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations (in nanoseconds), for reporting latency percentiles.
+ * Recording a value is lock-free and allocation-free, so it is cheap enough to do
+ * on every call of a hot path from many threads at once.
+ *
+ * <p>As in an HDR histogram, buckets are logarithmic, with four buckets for every power of two,
+ * so any percentile is accurate to within 25% (plus or minus 12.5% around the bucket's middle,
+ * which is what is reported), from a nanosecond up to centuries.</p>
+ */
+public class LatencyHistogram {
+
+  /** log2 of the number of buckets per power of two. */
+  private static final int SUB_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int NUM_BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+
+  /** The bucket a (non-negative) value falls in. */
+  static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) Math.max(0, value);
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+  }
+
+  /** The smallest value in a bucket. */
+  static long lowerBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+    int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+    return ((long) (SUB_BUCKETS + sub)) << (exponent - SUB_BITS);
+  }
+
+  /** Record one duration. Negative durations (from a clock going backwards) count as 0. */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    counts.incrementAndGet(bucket(nanos));
+    count.increment();
+    sum.add(nanos);
+  }
+
+  /** The number of durations recorded. */
+  public long count() {
+    return count.sum();
+  }
+
+  /** The sum of the durations recorded, in nanoseconds. */
+  public long sumNanos() {
+    return sum.sum();
+  }
+
+  /** The mean duration, in nanoseconds, or 0 if nothing was recorded. */
+  public double meanNanos() {
+    long n = count();
+    return n == 0 ? 0.0 : ((double) sumNanos()) / n;
+  }
+
+  /**
+   * The approximate duration which the given fraction of the recorded durations don't exceed.
+   *
+   * @param quantile Between 0 and 1; e.g., 0.99 for the 99th percentile
+   * @return The middle of the bucket of that duration, in nanoseconds, or 0 if nothing was recorded
+   */
+  public long percentileNanos(double quantile) {
+    long[] snapshot = new long[NUM_BUCKETS];
+    long total = 0;
+    for (int i = 0; i < NUM_BUCKETS; ++i) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; ++i) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        long lower = lowerBound(i);
+        long upper = i + 1 < NUM_BUCKETS ? lowerBound(i + 1) : Long.MAX_VALUE;
+        return lower + (upper - lower) / 2;
+      }
+    }
+    return lowerBound(NUM_BUCKETS - 1);
+  }
+
+  /** Forget everything recorded.  Durations recorded at the same time may or may not be forgotten. */
+  public void reset() {
+    for (int i = 0; i < NUM_BUCKETS; ++i) {
+      counts.set(i, 0);
+    }
+    count.reset();
+    sum.reset();
+  }
+
+}
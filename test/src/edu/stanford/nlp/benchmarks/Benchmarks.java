@@ -158,6 +158,68 @@ public class Benchmarks {
     }
 
 
+    /**
+     * Trains a CRF as in benchmarkCRF(), then reloads it with each weight precision,
+     * and reports how many labels differ from the double precision labels, and how long tagging took.
+     */
+    public static void benchmarkCRFWeightPrecision() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("macro", "true"); // use a generic CRF configuration
+        props.setProperty("useIfInteger", "true");
+        props.setProperty("featureFactory", "edu.stanford.nlp.benchmarks.BenchmarkFeatureFactory");
+        props.setProperty("saveFeatureIndexToDisk", "false");
+
+        CRFClassifier<CoreLabel> crf = new CRFClassifier<>(props);
+
+        Random r = new Random(42);
+
+        List<List<CoreLabel>> data = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            List<CoreLabel> sentence = new ArrayList<>();
+            for (int j = 0; j < 20; j++) {
+                CoreLabel l = new CoreLabel();
+
+                l.setWord("j:"+j);
+
+                boolean tag = j % 2 == 0 ^ (r.nextDouble() > 0.7);
+                l.set(CoreAnnotations.AnswerAnnotation.class, "target:"+tag);
+                sentence.add(l);
+            }
+            data.add(sentence);
+        }
+        crf.train(data);
+
+        java.io.File model = java.io.File.createTempFile("crf", ".ser.gz");
+        model.deleteOnExit();
+        crf.serializeClassifier(model.getPath());
+
+        List<String> doubleLabels = null;
+        for (String precision : new String[] { "double", "float", "int8" }) {
+            Properties loadProps = new Properties();
+            loadProps.setProperty("weightPrecision", precision);
+            CRFClassifier<CoreLabel> loaded = CRFClassifier.getClassifier(model.getPath(), loadProps);
+
+            List<String> labels = new ArrayList<>();
+            long msStart = System.currentTimeMillis();
+            for (List<CoreLabel> sentence : data) {
+                for (CoreLabel l : loaded.classify(sentence)) {
+                    labels.add(l.get(CoreAnnotations.AnswerAnnotation.class));
+                }
+            }
+            long delay = System.currentTimeMillis() - msStart;
+            if (doubleLabels == null) {
+                doubleLabels = labels;
+            }
+            int differences = 0;
+            for (int i = 0; i < labels.size(); i++) {
+                if ( ! labels.get(i).equals(doubleLabels.get(i))) {
+                    differences++;
+                }
+            }
+            System.out.println(precision + ": tagging took " + delay + " ms, " + differences + " of " + labels.size() + " labels differ from double");
+        }
+    }
+
     public static void benchmarkSGD() {
         Dataset<String, String> data = new Dataset<>();
         for (int i = 0; i < 10000; i++) {
@@ -299,12 +361,13 @@ public class Benchmarks {
         System.out.println("Scanning with cache UNfriendly lookups took "+delay+" ms");
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         for (int i = 0; i < 100; i++) {
             // benchmarkRVFLogisticRegression();
             // benchmarkLogisticRegression();
             benchmarkSGD();
             // benchmarkCRF();
+            // benchmarkCRFWeightPrecision();
             // testAdjacency();
         }
     }
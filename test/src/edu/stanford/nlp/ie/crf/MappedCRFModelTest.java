@@ -0,0 +1,137 @@
+package edu.stanford.nlp.ie.crf;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.StringUtils;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Checks that a CRFClassifier loaded from a memory-mapped model behaves like the original.
+ */
+public class MappedCRFModelTest extends TestCase {
+
+  private static final String TRAINING =
+      "John\tPERSON\nSmith\tPERSON\nvisited\tO\nParis\tLOCATION\n.\tO\n\n" +
+      "Mary\tPERSON\nlives\tO\nin\tO\nLondon\tLOCATION\n.\tO\n\n" +
+      "Paris\tLOCATION\nis\tO\nbig\tO\n.\tO\n\n" +
+      "John\tPERSON\nlikes\tO\nMary\tPERSON\n.\tO\n";
+
+  private static final String TEXT = "John visited London . Mary likes Paris and Smith is big .";
+
+  private static CRFClassifier<CoreLabel> train(File dir) throws IOException {
+    File trainFile = new File(dir, "train.tsv");
+    trainFile.deleteOnExit();
+    try (Writer w = new FileWriter(trainFile)) {
+      w.write(TRAINING);
+    }
+    Properties props = StringUtils.argsToProperties(
+        "-trainFile", trainFile.getPath(), "-map", "word=0,answer=1",
+        "-useWord", "-usePrev", "-useNext", "-useSequences", "-usePrevSequences", "-maxLeft", "1",
+        "-useClassFeature", "-maxIterations", "20");
+    CRFClassifier<CoreLabel> crf = new CRFClassifier<>(props);
+    crf.train();
+    return crf;
+  }
+
+  private static File tempDir() throws IOException {
+    File dir = File.createTempFile("mappedcrf", "");
+    assertTrue(dir.delete());
+    assertTrue(dir.mkdir());
+    dir.deleteOnExit();
+    return dir;
+  }
+
+  public void testMappedModelClassifiesIdentically() throws Exception {
+    File dir = tempDir();
+    CRFClassifier<CoreLabel> crf = train(dir);
+    File mappedFile = new File(dir, "model.crf.mmap");
+    mappedFile.deleteOnExit();
+    crf.serializeMappedClassifier(mappedFile.getPath());
+    assertTrue(MappedCRFModel.isMappedModel(mappedFile.getPath()));
+
+    CRFClassifier<CoreLabel> mapped = CRFClassifier.getClassifier(mappedFile.getPath());
+    assertNull(mapped.weights);
+    assertEquals(crf.classifyToString(TEXT), mapped.classifyToString(TEXT));
+
+    Index<String> features = mapped.featureIndex;
+    assertEquals(crf.featureIndex.size(), features.size());
+    for (int i = 0; i < features.size(); i++) {
+      String feature = crf.featureIndex.get(i);
+      assertEquals(feature, features.get(i));
+      assertEquals(i, features.indexOf(feature));
+    }
+    assertEquals(-1, features.indexOf("not a feature"));
+
+    // Writing a mapped classifier back out in the ordinary format restores the weights
+    File serFile = new File(dir, "model.ser.gz");
+    serFile.deleteOnExit();
+    mapped.serializeClassifier(serFile.getPath());
+    assertFalse(MappedCRFModel.isMappedModel(serFile.getPath()));
+    CRFClassifier<CoreLabel> reloaded = CRFClassifier.getClassifier(serFile.getPath());
+    assertEquals(crf.weights.length, reloaded.weights.length);
+    for (int i = 0; i < crf.weights.length; i++) {
+      assertTrue(Arrays.equals(crf.weights[i], reloaded.weights[i]));
+    }
+    assertEquals(crf.classifyToString(TEXT), reloaded.classifyToString(TEXT));
+  }
+
+  public void testWeightsOfMappedModel() throws Exception {
+    File dir = tempDir();
+    CRFClassifier<CoreLabel> crf = train(dir);
+    File mappedFile = new File(dir, "model.crf.mmap");
+    mappedFile.deleteOnExit();
+    crf.serializeMappedClassifier(mappedFile.getPath());
+    CRFClassifier<CoreLabel> mapped = CRFClassifier.getClassifier(mappedFile.getPath());
+
+    assertEquals(crf.getNumWeights(), mapped.getNumWeights());
+    assertEquals(crf.topWeights(), mapped.topWeights());
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    crf.writeWeights(new PrintStream(expected));
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    mapped.writeWeights(new PrintStream(actual));
+    assertEquals(expected.toString(), actual.toString());
+
+    // Changed weights are used for classification from then on
+    crf.scaleWeights(-1.0);
+    mapped.scaleWeights(-1.0);
+    assertEquals(crf.classifyToString(TEXT), mapped.classifyToString(TEXT));
+
+    try {
+      mapped.combine(train(dir), 1.0);
+      fail("Expected combine to fail on a mapped model");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  public void testWeightsWithReducedPrecision() throws Exception {
+    File dir = tempDir();
+    CRFClassifier<CoreLabel> crf = train(dir);
+    File serFile = new File(dir, "model.ser.gz");
+    serFile.deleteOnExit();
+    crf.serializeClassifier(serFile.getPath());
+    for (String precision : new String[] { "float", "int8" }) {
+      CRFClassifier<CoreLabel> compact = CRFClassifier.getClassifier(serFile.getPath(),
+          StringUtils.argsToProperties("-weightPrecision", precision));
+      assertNull(compact.weights);
+      assertEquals(crf.getNumWeights(), compact.getNumWeights());
+      assertEquals(crf.topWeights().keySet(), compact.topWeights().keySet());
+      compact.writeWeights(new PrintStream(new ByteArrayOutputStream()));
+
+      CRFClassifier<CoreLabel> full = CRFClassifier.getClassifier(serFile.getPath());
+      full.scaleWeights(-1.0);
+      compact.scaleWeights(-1.0);
+      assertEquals(precision, full.classifyToString(TEXT), compact.classifyToString(TEXT));
+    }
+  }
+
+}
@@ -0,0 +1,142 @@
+package edu.stanford.nlp.ling;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Checks that a {@link ColumnarCoreLabel} behaves like an ordinary {@link CoreLabel}.
+ */
+public class CoreLabelColumnsTest extends TestCase {
+
+  private static CoreLabel fill(CoreLabel label) {
+    label.setWord("dogs");
+    label.setValue("dogs");
+    label.setTag("NNS");
+    label.setLemma("dog");
+    label.setBeginPosition(4);
+    label.setEndPosition(8);
+    label.setIndex(2);
+    label.set(CoreAnnotations.IsNewlineAnnotation.class, false);
+    label.set(CoreAnnotations.ShapeAnnotation.class, "xxxx");
+    return label;
+  }
+
+  public void testBehavesLikeCoreLabel() {
+    CoreLabelColumns columns = new CoreLabelColumns(1);
+    CoreLabel plain = fill(new CoreLabel());
+    CoreLabel columnar = fill(columns.add());
+
+    assertEquals(plain, columnar);
+    assertEquals(columnar, plain);
+    assertEquals(plain.hashCode(), columnar.hashCode());
+    assertEquals(plain.size(), columnar.size());
+    assertEquals(plain.keySet(), columnar.keySet());
+    assertEquals(plain.toString(CoreLabel.OutputFormat.ALL).length(), columnar.toString(CoreLabel.OutputFormat.ALL).length());
+    assertEquals("dog", columnar.lemma());
+    assertEquals(2, columnar.index());
+    assertEquals(Integer.valueOf(8), columnar.get(CoreAnnotations.CharacterOffsetEndAnnotation.class));
+    assertEquals(Boolean.FALSE, columnar.get(CoreAnnotations.IsNewlineAnnotation.class));
+    assertEquals("xxxx", columnar.get(CoreAnnotations.ShapeAnnotation.class));
+
+    CoreLabel other = fill(new CoreLabelColumns(1).add());
+    assertEquals(columnar, other);
+    assertEquals(columnar.hashCode(), other.hashCode());
+    // a different value in a column, and then in the arrays
+    other.setTag("NN");
+    assertFalse(columnar.equals(other));
+    assertFalse(plain.equals(other));
+    other.setTag("NNS");
+    other.set(CoreAnnotations.ShapeAnnotation.class, "Xxxx");
+    assertFalse(columnar.equals(other));
+    assertFalse(other.equals(plain));
+    // a missing key
+    plain.remove(CoreAnnotations.IsNewlineAnnotation.class);
+    assertFalse(columnar.equals(plain));
+    assertFalse(plain.equals(columnar));
+
+    // changing the word removes the lemma, as for CoreLabel
+    columnar.setWord("cats");
+    assertFalse(columnar.containsKey(CoreAnnotations.LemmaAnnotation.class));
+    assertNull(columnar.lemma());
+    assertEquals(-1, columns.add().index());
+    assertEquals(2, columns.size());
+  }
+
+  public void testRowsAreIndependentAndInterned() {
+    CoreLabelColumns columns = new CoreLabelColumns(1);
+    List<CoreLabel> tokens = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      CoreLabel token = columns.add();
+      token.setWord(Integer.toString(i % 10));
+      token.setTag(new String("CD"));
+      token.setIndex(i + 1);
+      tokens.add(token);
+    }
+    for (int i = 0; i < 100; i++) {
+      assertEquals(Integer.toString(i % 10), tokens.get(i).word());
+      assertEquals(i + 1, tokens.get(i).index());
+      assertSame(tokens.get(0).tag(), tokens.get(i).tag());
+    }
+  }
+
+  public void testSerializesAsCoreLabel() throws IOException, ClassNotFoundException {
+    CoreLabel columnar = fill(new CoreLabelColumns().add());
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(columnar);
+    }
+    Object read;
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      read = in.readObject();
+    }
+    assertEquals(CoreLabel.class, read.getClass());
+    assertEquals(columnar, read);
+  }
+
+  public void testSpansTakeWhitespaceFromText() {
+    String text = " The dogs  bark.\n";
+    CoreLabelColumns columns = new CoreLabelColumns(1);
+    try {
+      columns.addSpan("The", "The", 1, 4);
+      fail("Spans need the text");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    columns.setText(text);
+    CoreLabel the = columns.addSpan("The", "The", 1, 4);
+    CoreLabel dogs = columns.addSpan("dogs", "dogs", 5, 9);
+    CoreLabel bark = columns.addSpan("bark", "bark", 11, 15);
+    CoreLabel period = columns.addSpan(".", ".", 15, 16);
+
+    assertEquals(" ", the.before());
+    assertEquals(" ", the.after());
+    assertEquals("  ", dogs.after());
+    assertEquals("  ", bark.before());
+    assertEquals("", bark.after());
+    assertEquals("\n", period.after());
+    assertSame(the.after(), dogs.before());
+    assertSame(dogs.word(), dogs.originalText());
+    assertEquals(11, bark.beginPosition());
+    assertTrue(bark.containsKey(CoreAnnotations.BeforeAnnotation.class));
+
+    CoreLabel plain = new CoreLabel();
+    plain.setWord("dogs");
+    plain.setValue("dogs");
+    plain.setOriginalText("dogs");
+    plain.setBefore(" ");
+    plain.setAfter("  ");
+    plain.setBeginPosition(5);
+    plain.setEndPosition(9);
+    assertEquals(plain, dogs);
+
+    // whitespace which has been set explicitly takes precedence
+    period.setAfter("");
+    assertEquals("", period.after());
+    period.remove(CoreAnnotations.BeforeAnnotation.class);
+    assertFalse(period.containsKey(CoreAnnotations.BeforeAnnotation.class));
+  }
+
+}
@@ -0,0 +1,103 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.SentenceUtils;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class CompiledSequencePatternTest extends TestCase {
+
+  private static final String[] PATTERNS = {
+      "/a/ /b/",
+      "/a/ /b/? /c/",
+      "/a/+ /b/*",
+      "/a/+? /b/*?",
+      "(/a/ | /b/ /c/)+ /d/",
+      "(?: /a/ | /a/ /a/ )* /b/",
+      "(/a/) []{0,10} (/b/) []{0,10}? /c/",
+      "(?$first /a/|/b/) (?$second [!{word:a}]{2,})",
+      "([]{7,}) /c/",
+      "(/a/ (/b/)? )+ /c/",
+      "^ /a/* (/b/) | /c/ $",
+      "/e/ | /f/ | /a/ /b/ | /c/ | /d/ /d/ | /g/",
+      "(/a/ /a/ | /b/ | /c/ /d/ | /d/ | /e/ | /f/)+ /a/",
+  };
+
+  private static List<String> findAll(TokenSequencePattern pattern, List<CoreLabel> tokens) {
+    List<String> matches = new ArrayList<>();
+    TokenSequenceMatcher matcher = pattern.getMatcher(tokens);
+    while (matcher.find()) {
+      StringBuilder sb = new StringBuilder();
+      for (int g = 0; g <= matcher.groupCount(); g++) {
+        sb.append('(').append(matcher.start(g)).append(',').append(matcher.end(g)).append(')');
+      }
+      matches.add(sb.toString());
+    }
+    return matches;
+  }
+
+  public void testSameMatches() {
+    Random random = new Random(1);
+    for (String p : PATTERNS) {
+      TokenSequencePattern pattern = TokenSequencePattern.compile(p);
+      TokenSequencePattern compiledPattern = TokenSequencePattern.compile(p);
+      compiledPattern.setCompiledMatching(true);
+      assertNotNull(p, compiledPattern.getCompiledPattern());
+      for (int i = 0; i < 50; i++) {
+        List<CoreLabel> tokens = new ArrayList<>();
+        for (int j = random.nextInt(15); j > 0; j--) {
+          CoreLabel token = new CoreLabel();
+          token.setWord(String.valueOf("abcd".charAt(random.nextInt(4))));
+          tokens.add(token);
+        }
+        assertEquals(p + " on " + tokens, findAll(pattern, tokens), findAll(compiledPattern, tokens));
+      }
+    }
+  }
+
+  public void testMatches() {
+    TokenSequencePattern pattern = TokenSequencePattern.compile("(/a/ /b/?)+ (/c/)");
+    pattern.setCompiledMatching(true);
+    List<CoreLabel> tokens = SentenceUtils.toCoreLabelList("c", "a", "b", "a", "c", "a", "a");
+    TokenSequenceMatcher matcher = pattern.getMatcher(tokens);
+    assertTrue(matcher.find());
+    assertEquals(1, matcher.start());
+    assertEquals(5, matcher.end());
+    assertEquals(3, matcher.start(1));
+    assertEquals(4, matcher.end(1));
+    assertEquals(4, matcher.start(2));
+    assertFalse(matcher.find());
+  }
+
+  public void testNoBacktracking() {
+    // Tries all the ways of splitting the a's into ones and twos without the compiled NFA
+    TokenSequencePattern pattern = TokenSequencePattern.compile("(?: /a/ | /a/ /a/ )* /b/");
+    pattern.setCompiledMatching(true);
+    List<CoreLabel> tokens = SentenceUtils.toCoreLabelList(Collections.nCopies(200, "a").toArray(new String[0]));
+    assertFalse(pattern.getMatcher(tokens).find());
+  }
+
+  public void testUnsupported() {
+    // Back references are not compiled
+    TokenSequencePattern pattern = TokenSequencePattern.compile("(/a|b/) \\1");
+    pattern.setCompiledMatching(true);
+    assertNull(pattern.getCompiledPattern());
+    TokenSequenceMatcher matcher = pattern.getMatcher(SentenceUtils.toCoreLabelList("a", "b", "b", "a"));
+    assertTrue(matcher.find());
+    assertEquals(1, matcher.start());
+    assertEquals(3, matcher.end());
+  }
+
+  public void testEnv() {
+    Env env = TokenSequencePattern.getNewEnv();
+    assertFalse(TokenSequencePattern.compile(env, "/a/ /b/").isCompiledMatching());
+    env.setCompiledMatching(true);
+    assertTrue(TokenSequencePattern.compile(env, "/a/ /b/").isCompiledMatching());
+    assertTrue(TokenSequencePattern.compile(env, "/a/", "/b/").isCompiledMatching());
+  }
+
+}
@@ -0,0 +1,126 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.TypesafeMap;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SharedNodePatternsTest extends TestCase {
+
+  private static final String RULES =
+      "{ ruleType: \"tokens\", pattern: ( /[0-9]+/ /a/ ), result: \"NUM_A\" }\n" +
+      "{ ruleType: \"tokens\", pattern: ( /[0-9]+/ /b/+ ), result: \"NUM_B\" }\n" +
+      "{ ruleType: \"tokens\", pattern: ( [{word:/[0-9]+/}] /c/? ), result: \"NUM_C\" }\n" +
+      "{ ruleType: \"tokens\", pattern: ( [!{word:/[0-9]+/}] /y/ ), result: \"NOT_NUM_Y\" }\n" +
+      "{ ruleType: \"tokens\", pattern: ( /x/* /y/ ), result: \"XY\" }\n" +
+      "{ ruleType: \"tokens\", pattern: ( []{3,} /y/ ), result: \"ANY_Y\" }\n" +
+      "{ ruleType: \"tokens\", pattern: ( (/a/|/b/){2,}? /c/ ), result: \"AB_C\" }\n" +
+      "{ ruleType: \"tokens\", pattern: ( /a/? ), result: \"EMPTY\" }\n";
+
+  /** Counts how often the word of the tokens is looked at. */
+  private static class CountingLabel extends CoreLabel {
+    private static final long serialVersionUID = 1L;
+    static int count = 0;
+
+    @Override
+    public <VALUE> VALUE get(Class<? extends TypesafeMap.Key<VALUE>> key) {
+      if (CoreAnnotations.TextAnnotation.class.equals(key)) {
+        count++;
+      }
+      return super.get(key);
+    }
+  }
+
+  private static List<String> extract(boolean share, List<CoreLabel> tokens) throws Exception {
+    return extract(share, false, tokens);
+  }
+
+  private static List<String> extract(boolean share, boolean compiled, List<CoreLabel> tokens) throws Exception {
+    Env env = TokenSequencePattern.getNewEnv();
+    env.setCompiledMatching(compiled);
+    env.getDefaults().put("stage.shareNodeMatches", share);
+    CoreMapExpressionExtractor<MatchedExpression> extractor = CoreMapExpressionExtractor.createExtractorFromString(env, RULES);
+    CoreMap sentence = new ArrayCoreMap();
+    sentence.set(CoreAnnotations.TextAnnotation.class, tokens.isEmpty() ? "" :
+            String.format("%" + tokens.get(tokens.size() - 1).endPosition() + "s", ""));
+    sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    List<String> res = new ArrayList<>();
+    for (MatchedExpression expr : extractor.extractExpressions(sentence)) {
+      res.add(expr.getTokenOffsets() + "=" + expr.getValue());
+    }
+    return res;
+  }
+
+  private static List<CoreLabel> tokens(String... words) {
+    List<CoreLabel> tokens = new ArrayList<>();
+    int offset = 0;
+    for (String word : words) {
+      CoreLabel token = new CountingLabel();
+      token.setWord(word);
+      token.setBeginPosition(offset);
+      token.setEndPosition(offset + word.length());
+      offset += word.length() + 1;
+      tokens.add(token);
+    }
+    return tokens;
+  }
+
+  public void testSameExpressions() throws Exception {
+    String[] words = { "1", "22", "a", "b", "c", "x", "y" };
+    Random random = new Random(1);
+    for (int i = 0; i < 200; i++) {
+      String[] sentence = new String[random.nextInt(15)];
+      for (int j = 0; j < sentence.length; j++) {
+        sentence[j] = words[random.nextInt(words.length)];
+      }
+      List<String> expected = extract(false, tokens(sentence));
+      assertEquals(String.join(" ", sentence), expected, extract(true, tokens(sentence)));
+      assertEquals(String.join(" ", sentence), expected, extract(true, true, tokens(sentence)));
+    }
+  }
+
+  public void testSharedMatching() throws Exception {
+    List<CoreLabel> tokens = tokens("x", "12", "a", "b", "b", "x", "x", "y", "1", "c");
+    CountingLabel.count = 0;
+    List<String> expected = extract(false, tokens);
+    int count = CountingLabel.count;
+    CountingLabel.count = 0;
+    assertEquals(expected, extract(true, tokens));
+    assertTrue(CountingLabel.count + " >= " + count, CountingLabel.count < count);
+    assertTrue(expected.toString(), expected.contains("(8,10)=STRING(NUM_C)"));
+  }
+
+  public void testCanonicalKey() {
+    Env env = TokenSequencePattern.getNewEnv();
+    NodePattern<?> num1 = nodePattern(TokenSequencePattern.compile(env, "[{word:/[0-9]+/}]"));
+    NodePattern<?> num2 = nodePattern(TokenSequencePattern.compile(env, "/[0-9]+/"));
+    NodePattern<?> num3 = nodePattern(TokenSequencePattern.compile(env, "[{word:/[0-9]*/}]"));
+    NodePattern<?> date1 = nodePattern(TokenSequencePattern.compile(env, "[{ner:DATE} & !{word:/a|b/}]"));
+    NodePattern<?> date2 = nodePattern(TokenSequencePattern.compile(env, "[{ner:DATE} & !{word:/a|b/}]"));
+    NodePattern<?> date3 = nodePattern(TokenSequencePattern.compile(env, "[{ner:DATE} | !{word:/a|b/}]"));
+    assertNotNull(SharedNodePatterns.canonicalKey(num1));
+    assertEquals(SharedNodePatterns.canonicalKey(num1), SharedNodePatterns.canonicalKey(num2));
+    assertFalse(SharedNodePatterns.canonicalKey(num1).equals(SharedNodePatterns.canonicalKey(num3)));
+    assertNotNull(SharedNodePatterns.canonicalKey(date1));
+    assertEquals(SharedNodePatterns.canonicalKey(date1), SharedNodePatterns.canonicalKey(date2));
+    assertFalse(SharedNodePatterns.canonicalKey(date1).equals(SharedNodePatterns.canonicalKey(date3)));
+    assertNull(SharedNodePatterns.canonicalKey(new NodePattern.EqualsNodePattern<>("a")));
+  }
+
+  // The node pattern of a pattern for a single token
+  private static NodePattern<?> nodePattern(SequencePattern<?> pattern) {
+    for (SequencePattern.State state = pattern.root; state != null; state = state.next.iterator().next()) {
+      if (state instanceof SequencePattern.NodePatternState) {
+        return ((SequencePattern.NodePatternState) state).pattern;
+      }
+    }
+    return null;
+  }
+
+}
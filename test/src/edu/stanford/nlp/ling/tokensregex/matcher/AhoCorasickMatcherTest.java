@@ -0,0 +1,55 @@
+package edu.stanford.nlp.ling.tokensregex.matcher;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+public class AhoCorasickMatcherTest extends TestCase {
+
+  public void testFindAll() {
+    TrieMap<String,Boolean> trieMap = new TrieMap<>();
+    trieMap.put(new String[]{"a","white","cat"}, Boolean.TRUE);
+    trieMap.put(new String[]{"a","white","hat"}, Boolean.TRUE);
+    trieMap.put(new String[]{"a","black","cat"}, Boolean.TRUE);
+    trieMap.put(new String[]{"white"}, Boolean.TRUE);
+    trieMap.put(new String[]{"white","cat"}, Boolean.TRUE);
+    AhoCorasickMatcher<String,Boolean> matcher = new AhoCorasickMatcher<>(trieMap);
+    List<Match<String,Boolean>> matches =
+            matcher.findAllMatches(Arrays.asList("a","white","cat","is","wearing","a","white","hat"));
+    List<Match<String,Boolean>> expected = new ArrayList<>();
+    expected.add(new Match<>(Arrays.asList("white"), Boolean.TRUE, 1, 2));
+    expected.add(new Match<>(Arrays.asList("a", "white", "cat"), Boolean.TRUE, 0, 3));
+    expected.add(new Match<>(Arrays.asList("white", "cat"), Boolean.TRUE, 1, 3));
+    expected.add(new Match<>(Arrays.asList("white"), Boolean.TRUE, 6, 7));
+    expected.add(new Match<>(Arrays.asList("a", "white", "hat"), Boolean.TRUE, 5, 8));
+    assertEquals(expected, matches);
+
+    assertEquals(Collections.emptyList(), matcher.findAllMatches(Arrays.asList("a", null, "cat")));
+  }
+
+  public void testSameAsTrieMapMatcher() {
+    Random random = new Random(1);
+    TrieMap<Integer,String> trieMap = new TrieMap<>();
+    for (int i = 0; i < 200; i++) {
+      List<Integer> key = new ArrayList<>();
+      for (int j = random.nextInt(4); j >= 0; j--) {
+        key.add(random.nextInt(6));
+      }
+      trieMap.put(key, key.toString());
+    }
+    AhoCorasickMatcher<Integer,String> matcher = new AhoCorasickMatcher<>(trieMap);
+    TrieMapMatcher<Integer,String> trieMatcher = new TrieMapMatcher<>(trieMap);
+    for (int i = 0; i < 100; i++) {
+      List<Integer> list = new ArrayList<>();
+      for (int j = random.nextInt(30); j >= 0; j--) {
+        list.add(random.nextInt(7));
+      }
+      List<Match<Integer,String>> matches = matcher.findAllMatches(list);
+      assertEquals(new HashSet<>(trieMatcher.findAllMatches(list)), new HashSet<>(matches));
+      for (int j = 1; j < matches.size(); j++) {
+        assertTrue(matches.get(j - 1).getEnd() <= matches.get(j).getEnd());
+      }
+    }
+  }
+
+}
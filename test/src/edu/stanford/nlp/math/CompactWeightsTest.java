@@ -0,0 +1,76 @@
+package edu.stanford.nlp.math;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Checks that compacted weights stay within the precision they promise.
+ */
+public class CompactWeightsTest extends TestCase {
+
+  /** A ragged matrix, with rows of two lengths as in a CRF's node and edge features. */
+  private static double[][] randomWeights() {
+    Random r = new Random(1234);
+    double[][] weights = new double[500][];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = new double[i % 3 == 0 ? 9 : 3];
+      for (int j = 0; j < weights[i].length; j++) {
+        weights[i][j] = r.nextGaussian() * (j + 1);
+      }
+    }
+    weights[7] = new double[3]; // an all zero row
+    return weights;
+  }
+
+  public void testDoubleIsExact() {
+    double[][] weights = randomWeights();
+    CompactWeights compact = CompactWeights.compact(weights, CompactWeights.Precision.DOUBLE);
+    assertEquals(0.0, compact.maxError(weights));
+  }
+
+  public void testFloat() {
+    double[][] weights = randomWeights();
+    CompactWeights compact = CompactWeights.compact(weights, CompactWeights.Precision.FLOAT);
+    assertEquals(CompactWeights.Precision.FLOAT, compact.precision());
+    for (int i = 0; i < weights.length; i++) {
+      assertEquals(weights[i].length, compact.rowLength(i));
+      for (int j = 0; j < weights[i].length; j++) {
+        assertEquals((float) weights[i][j], compact.get(i, j), 0.0);
+      }
+    }
+  }
+
+  public void testInt8ErrorIsBoundedPerColumn() {
+    double[][] weights = randomWeights();
+    CompactWeights compact = CompactWeights.compact(weights, CompactWeights.Precision.INT8);
+    assertEquals(weights.length, compact.numRows());
+    for (int i = 0; i < weights.length; i++) {
+      for (int j = 0; j < weights[i].length; j++) {
+        // the largest magnitude in this column among rows of this length
+        double max = 0.0;
+        for (double[] row : weights) {
+          if (row.length == weights[i].length) {
+            max = Math.max(max, Math.abs(row[j]));
+          }
+        }
+        assertEquals(weights[i][j], compact.get(i, j), max / 254 + 1e-6);
+      }
+    }
+    assertEquals(0.0, compact.get(7, 1));
+    double[][] restored = compact.toArray();
+    assertEquals(0.0, compact.maxError(restored));
+  }
+
+  public void testPrecisionNames() {
+    assertEquals(CompactWeights.Precision.DOUBLE, CompactWeights.Precision.fromString(null));
+    assertEquals(CompactWeights.Precision.INT8, CompactWeights.Precision.fromString(" Int8"));
+    try {
+      CompactWeights.Precision.fromString("half");
+      fail("Expected an unknown precision to be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,90 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import junit.framework.TestCase;
+
+public class ChartArenaTest extends TestCase {
+
+  /** A chart laid out the way the parsers do, with rows only for start &lt; end */
+  private static float[][][] chart(ChartArena arena, int length, int numStates) {
+    float[][][] chart = new float[length][length + 1][];
+    float[][] rows = arena.takeFloatRows(numStates, length * (length + 1) / 2);
+    int row = 0;
+    for (int start = 0; start < length; start++) {
+      for (int end = start + 1; end <= length; end++) {
+        chart[start][end] = rows[row++];
+      }
+    }
+    return chart;
+  }
+
+  public void testReuse() {
+    ChartArena arena = new ChartArena(1L << 20);
+    float[][][] chart = chart(arena, 4, 10);
+    assertEquals(10, arena.rowsAllocated());
+    assertEquals(0, arena.rowsReused());
+    float[] row = chart[1][3];
+
+    arena.giveFloatChart(chart);
+    assertEquals(10 * (16 + 40), arena.bytes());
+
+    // rows of another length are not reused
+    arena.takeFloatRows(11, 2);
+    assertEquals(12, arena.rowsAllocated());
+    assertEquals(0, arena.rowsReused());
+
+    float[][] rows = arena.takeFloatRows(10, 12);
+    assertEquals(10, arena.rowsReused());
+    assertEquals(14, arena.rowsAllocated());
+    assertEquals(0, arena.bytes());
+    boolean found = false;
+    for (float[] r : rows) {
+      assertEquals(10, r.length);
+      found = found || r == row;
+    }
+    assertTrue(found);
+  }
+
+  public void testIntRows() {
+    ChartArena arena = new ChartArena(1L << 20);
+    int[][][] chart = new int[2][3][];
+    chart[0][1] = new int[5];
+    chart[0][2] = new int[5];
+    chart[1][2] = new int[5];
+    arena.giveIntChart(chart);
+    arena.giveIntChart(null);
+    int[][] rows = arena.takeIntRows(5, 3);
+    assertEquals(3, arena.rowsReused());
+    assertEquals(0, arena.rowsAllocated());
+    assertEquals(3, rows.length);
+    // int and float rows are pooled separately
+    arena.giveIntChart(chart);
+    arena.takeFloatRows(5, 1);
+    assertEquals(1, arena.rowsAllocated());
+  }
+
+  public void testCap() {
+    ChartArena arena = new ChartArena(3 * (16 + 40));
+    arena.giveFloatChart(chart(arena, 4, 10));
+    assertEquals(3 * (16 + 40), arena.bytes());
+    arena.takeFloatRows(10, 10);
+    assertEquals(3, arena.rowsReused());
+
+    arena.giveFloatChart(chart(arena, 2, 10));
+    arena.setMaxBytes(16 + 40);
+    assertEquals(0, arena.bytes());
+    arena.giveFloatChart(chart(arena, 2, 10));
+    assertEquals(16 + 40, arena.bytes());
+  }
+
+  public void testClear() {
+    ChartArena arena = new ChartArena(1L << 20);
+    arena.giveFloatChart(chart(arena, 3, 10));
+    assertTrue(arena.bytes() > 0);
+    arena.clear();
+    assertEquals(0, arena.bytes());
+    long allocated = arena.rowsAllocated();
+    arena.takeFloatRows(10, 6);
+    assertEquals(allocated + 6, arena.rowsAllocated());
+  }
+
+}
@@ -0,0 +1,146 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.Label;
+import edu.stanford.nlp.ling.Word;
+import edu.stanford.nlp.parser.common.ParserQuery;
+import edu.stanford.nlp.trees.MemoryTreebank;
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * Trains a small PCFG on random trees, and checks that the different
+ * ways of filling in the chart find the same parses.
+ */
+public class ExhaustivePCFGParserTest extends TestCase {
+
+  private static final String[] PHRASES = { "NP", "VP", "PP", "S", "SBAR", "ADJP", "ADVP" };
+  private static final String[] TAGS = { "NN", "NNS", "VB", "VBD", "JJ", "RB", "IN", "DT", "CD", "PRP" };
+  private static final int VOCAB_SIZE = 60;
+
+  private Random random;
+  private String[][] tagsOfWord;
+
+  private String leaf() {
+    int word = random.nextInt(VOCAB_SIZE);
+    String[] tags = tagsOfWord[word];
+    return "(" + tags[random.nextInt(tags.length)] + " w" + word + ")";
+  }
+
+  private String phrase(String label, int depth) {
+    if (depth > 4 || random.nextInt(6) < depth) {
+      return leaf();
+    }
+    StringBuilder tree = new StringBuilder("(" + label);
+    int children = 1 + random.nextInt(3);
+    for (int i = 0; i < children; i++) {
+      tree.append(' ');
+      if (random.nextInt(3) == 0) {
+        tree.append(leaf());
+      } else {
+        tree.append(phrase(PHRASES[random.nextInt(PHRASES.length)], depth + 1));
+      }
+    }
+    return tree.append(')').toString();
+  }
+
+  private Tree randomTree() {
+    return Tree.valueOf("(ROOT (S " + phrase("NP", 1) + " " + phrase("VP", 1) + " (. .)))");
+  }
+
+  @Override
+  public void setUp() {
+    random = new Random(1234);
+    tagsOfWord = new String[VOCAB_SIZE][];
+    for (int i = 0; i < VOCAB_SIZE; i++) {
+      tagsOfWord[i] = new String[1 + random.nextInt(2)];
+      for (int j = 0; j < tagsOfWord[i].length; j++) {
+        tagsOfWord[i][j] = TAGS[random.nextInt(TAGS.length)];
+      }
+    }
+  }
+
+  private static List<String> parseAll(LexicalizedParser parser, List<List<HasWord>> sentences) {
+    List<String> results = new ArrayList<>();
+    ParserQuery query = parser.parserQuery();
+    for (List<HasWord> sentence : sentences) {
+      assertTrue(query.parse(sentence));
+      results.add(query.getBestParse() + " " + query.getPCFGScore());
+    }
+    return results;
+  }
+
+  private LexicalizedParser trainParser() {
+    MemoryTreebank treebank = new MemoryTreebank();
+    for (int i = 0; i < 200; i++) {
+      treebank.add(randomTree());
+    }
+    Options op = new Options();
+    op.setOptions("-hMarkov", "2", "-vMarkov", "2");
+    op.doDep = false;
+    op.doPCFG = true;
+    return LexicalizedParser.trainFromTreebank(treebank, op);
+  }
+
+  private List<List<HasWord>> randomSentences() {
+    List<List<HasWord>> sentences = new ArrayList<>();
+    while (sentences.size() < 10) {
+      List<HasWord> sentence = new ArrayList<>();
+      for (Label label : randomTree().yield()) {
+        sentence.add(new Word(label.value()));
+      }
+      if (sentence.size() >= 8 && sentence.size() <= 20) {
+        sentences.add(sentence);
+      }
+    }
+    return sentences;
+  }
+
+  public void testPackedBinaryKernel() {
+    LexicalizedParser parser = trainParser();
+    List<List<HasWord>> sentences = randomSentences();
+
+    parser.getOp().testOptions.packedBinaryKernel = false;
+    List<String> expected = parseAll(parser, sentences);
+    parser.getOp().testOptions.packedBinaryKernel = true;
+    assertEquals(expected, parseAll(parser, sentences));
+  }
+
+  /** Parses the sentences coarse-to-fine, and returns how many cells and states were pruned. */
+  private static int countPruned(LexicalizedParser parser, List<List<HasWord>> sentences) {
+    LexicalizedParserQuery query = (LexicalizedParserQuery) parser.parserQuery();
+    CoarseToFinePCFGParser pcfg = (CoarseToFinePCFGParser) query.getPCFGParser();
+    int pruned = 0;
+    for (List<HasWord> sentence : sentences) {
+      assertTrue(query.parse(sentence));
+      pruned += pcfg.prunedCells() + pcfg.prunedStates();
+    }
+    return pruned;
+  }
+
+  /**
+   * With a threshold nothing falls below, coarse-to-fine parsing must find
+   * the exhaustive parses; with a tight one, it must prune more of the chart
+   * and still find a parse.
+   */
+  public void testCoarseToFine() {
+    LexicalizedParser parser = trainParser();
+    List<List<HasWord>> sentences = randomSentences();
+
+    List<String> expected = parseAll(parser, sentences);
+    parser.getOp().testOptions.coarseToFine = true;
+    parser.getOp().testOptions.coarseToFineThreshold = -1000.0f;
+    assertEquals(expected, parseAll(parser, sentences));
+    int loosePruned = countPruned(parser, sentences);
+    parser.getOp().testOptions.coarseToFineThreshold = -1.0f;
+    assertEquals(sentences.size(), parseAll(parser, sentences).size());
+    int tightPruned = countPruned(parser, sentences);
+    assertTrue("tight threshold pruned " + tightPruned + ", loose " + loosePruned, tightPruned > loosePruned);
+  }
+
+}
@@ -0,0 +1,60 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Checks that batched scoring in {@link Classifier} gives exactly the scores of one-at-a-time scoring.
+ */
+public class ClassifierTest extends TestCase {
+
+  private static double[][] randomMatrix(Random random, int rows, int cols) {
+    double[][] matrix = new double[rows][cols];
+    for (double[] row : matrix) {
+      for (int j = 0; j < cols; j++) {
+        row[j] = random.nextGaussian() * 0.1;
+      }
+    }
+    return matrix;
+  }
+
+  public void testBatchScoresMatchSingleScores() {
+    Properties props = new Properties();
+    props.setProperty("hiddenSize", "21");
+    props.setProperty("embeddingSize", "7");
+    Config config = new Config(props);
+    int vocabulary = 30;
+    int numLabels = 5;
+
+    Random random = new Random(1234);
+    double[][] E = randomMatrix(random, vocabulary, config.embeddingSize);
+    double[][] W1 = randomMatrix(random, config.hiddenSize, Config.numTokens * config.embeddingSize);
+    double[] b1 = randomMatrix(random, 1, config.hiddenSize)[0];
+    double[][] W2 = randomMatrix(random, numLabels, config.hiddenSize);
+    // pre-compute about half of the (token, position) pairs
+    List<Integer> preComputed = new ArrayList<>();
+    for (int tok = 0; tok < vocabulary; tok += 2) {
+      for (int pos = 0; pos < Config.numTokens; pos++) {
+        preComputed.add(tok * Config.numTokens + pos);
+      }
+    }
+    Classifier classifier = new Classifier(config, E, W1, b1, W2, preComputed);
+    classifier.preCompute();
+
+    int[][] features = new int[10][Config.numTokens];
+    for (int[] feature : features) {
+      for (int j = 0; j < feature.length; j++) {
+        feature[j] = random.nextInt(vocabulary);
+      }
+    }
+    int batchSize = 7;
+    double[][] batchScores = classifier.computeScores(features, batchSize);
+    assertEquals(batchSize, batchScores.length);
+    for (int b = 0; b < batchSize; b++) {
+      assertTrue(Arrays.equals(classifier.computeScores(features[b]), batchScores[b]));
+    }
+  }
+
+}
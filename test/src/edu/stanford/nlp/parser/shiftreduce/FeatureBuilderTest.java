@@ -0,0 +1,85 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.parser.lexparser.BinaryHeadFinder;
+import edu.stanford.nlp.parser.lexparser.Options;
+import edu.stanford.nlp.trees.HeadFinder;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.Trees;
+import edu.stanford.nlp.util.Generics;
+
+public class FeatureBuilderTest extends TestCase {
+  String[] treeStrings = {
+    "(ROOT (S (INTJ (RB No)) (@S (, ,) (@S (NP (PRP it)) (@S (VP (@VP (VBD was) (RB n't)) (NP (NNP Black) (NNP Monday))) (. .))))) (.$$. .$.))",
+    "(ROOT (FRAG (NP (DT A) (@NP (ADJP (JJ short) (@ADJP (, ,) (JJ simple))) (NN test)))))",
+    "(ROOT (S (NP (SBAR foo))))",
+  };
+
+  Tree convertTree(String treeText) {
+    Options op = new Options();
+    HeadFinder binaryHeadFinder = new BinaryHeadFinder(op.tlpParams.headFinder());
+    Tree tree = Tree.valueOf(treeText);
+    Trees.convertToCoreLabels(tree);
+    tree.percolateHeadAnnotations(binaryHeadFinder);
+    return tree;
+  }
+
+  /**
+   * The hashed features of every state on the way to a few trees
+   * must be the hashes of the String features of the same states
+   */
+  public void testHashedMatchesStrings() {
+    FeatureFactory factory = new BasicFeatureFactory();
+    for (String treeText : treeStrings) {
+      Tree tree = convertTree(treeText);
+      List<Transition> transitions = CreateTransitionSequence.createTransitionSequence(tree, true, Collections.singleton("ROOT"), Collections.singleton("ROOT"));
+      State state = ShiftReduceParser.initialStateFromGoldTagTree(tree);
+      for (Transition transition : transitions) {
+        List<String> features = factory.featurize(state);
+        FeatureBuilder.Hashed hashed = new FeatureBuilder.Hashed();
+        factory.featurize(state, hashed);
+        assertEquals(features.size(), hashed.size());
+        for (int i = 0; i < features.size(); ++i) {
+          assertEquals(features.get(i), FeatureBuilder.hash(features.get(i)), hashed.get(i));
+        }
+        state = transition.apply(state);
+      }
+    }
+  }
+
+  public void testAppendInt() {
+    for (int value : new int[] { 0, 7, -3, 10, 12345, Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+      FeatureBuilder.Hashed hashed = new FeatureBuilder.Hashed();
+      hashed.append("Sepb").append(value).append('-').end();
+      assertEquals(FeatureBuilder.hash("Sepb" + value + "-"), hashed.get(0));
+    }
+    FeatureBuilder.Hashed hashed = new FeatureBuilder.Hashed();
+    for (int i = 0; i < 1000; ++i) {
+      hashed.add("F" + i);
+    }
+    assertEquals(1000, hashed.size());
+    assertEquals(FeatureBuilder.hash("F999"), hashed.get(999));
+    hashed.clear();
+    assertEquals(0, hashed.size());
+  }
+
+  public void testHashedWeights() {
+    Map<String, Weight> featureWeights = Generics.newHashMap();
+    for (int i = 0; i < 100; ++i) {
+      Weight weight = new Weight();
+      weight.updateWeight(i % 5, i);
+      featureWeights.put("feature" + i, weight);
+    }
+    HashedFeatureWeights hashedWeights = new HashedFeatureWeights(featureWeights);
+    for (Map.Entry<String, Weight> entry : featureWeights.entrySet()) {
+      assertSame(entry.getValue(), hashedWeights.get(FeatureBuilder.hash(entry.getKey())));
+    }
+    assertNull(hashedWeights.get(FeatureBuilder.hash("unknown")));
+    assertNull(new HashedFeatureWeights(Generics.<String, Weight>newHashMap()).get(FeatureBuilder.hash("unknown")));
+  }
+}
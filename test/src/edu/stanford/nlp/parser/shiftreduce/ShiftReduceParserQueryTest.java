@@ -0,0 +1,194 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import edu.stanford.nlp.parser.lexparser.BinaryHeadFinder;
+import edu.stanford.nlp.parser.lexparser.Options;
+import edu.stanford.nlp.trees.HeadFinder;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.Trees;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * Parses with a model whose weights are random, but fixed, and
+ * checks that the different ways of searching the beam agree.
+ */
+public class ShiftReduceParserQueryTest extends TestCase {
+  String[] treeStrings = {
+    "(ROOT (S (INTJ (RB No)) (@S (, ,) (@S (NP (PRP it)) (@S (VP (@VP (VBD was) (RB n't)) (NP (NNP Black) (NNP Monday))) (. .))))) (.$$. .$.))",
+    "(ROOT (S (NP (NP (DT Some) (@NP (`` ``) (@NP (NN circuit) (@NP (NNS breakers) ('' ''))))) (VP (VBN installed) (PP (IN after) (NP (DT the) (@NP (NNP October) (@NP (CD 1987) (NN crash))))))) (@S (VP (@VP (@VP (VBD failed) (NP (PRP$ their) (@NP (JJ first) (NN test)))) (PRN (, ,) (@PRN (S (NP (NNS traders)) (VP (VBP say))) (, ,)))) (S (ADJP (JJ unable) (S (VP (TO to) (VP (VB cool) (NP (NP (DT the) (@NP (NN selling) (NN panic))) (PP (IN in) (NP (DT both) (@NP (@NP (NNS stocks) (CC and)) (NNS futures))))))))))) (. .))) (.$$. .$.))",
+    "(ROOT (FRAG (NP (DT A) (@NP (ADJP (JJ short) (@ADJP (, ,) (JJ simple))) (NN test)))))",
+  };
+
+  List<Tree> trees;
+  ShiftReduceOptions op;
+  PerceptronModel model;
+  ShiftReduceParser parser;
+
+  Tree convertTree(String treeText) {
+    Options op = new Options();
+    HeadFinder binaryHeadFinder = new BinaryHeadFinder(op.tlpParams.headFinder());
+    Tree tree = Tree.valueOf(treeText);
+    Trees.convertToCoreLabels(tree);
+    tree.percolateHeadAnnotations(binaryHeadFinder);
+    return tree;
+  }
+
+  @Override
+  public void setUp() {
+    trees = Generics.newArrayList();
+    for (String treeString : treeStrings) {
+      trees.add(convertTree(treeString));
+    }
+    Set<String> rootStates = Collections.singleton("ROOT");
+    Set<String> knownStates = ShiftReduceParser.findKnownStates(trees);
+
+    op = new ShiftReduceOptions();
+    op.testOptions().beamSize = 8;
+    List<List<Transition>> transitionLists = CreateTransitionSequence.createTransitionSequences(trees, op.compoundUnaries, rootStates, rootStates);
+    Index<Transition> transitionIndex = new HashIndex<>();
+    for (List<Transition> transitions : transitionLists) {
+      transitionIndex.addAll(transitions);
+    }
+    model = new PerceptronModel(op, transitionIndex, knownStates, rootStates, rootStates);
+
+    // Give every feature seen on the way to the gold trees some random weights
+    Random random = new Random(1234);
+    for (int i = 0; i < trees.size(); ++i) {
+      State state = ShiftReduceParser.initialStateFromGoldTagTree(trees.get(i));
+      for (Transition transition : transitionLists.get(i)) {
+        for (String feature : model.featureFactory.featurize(state)) {
+          if (model.featureWeights.containsKey(feature)) {
+            continue;
+          }
+          Weight weight = new Weight();
+          for (int j = 0; j < 3; ++j) {
+            weight.updateWeight(random.nextInt(transitionIndex.size()), random.nextFloat() - 0.5f);
+          }
+          model.featureWeights.put(feature, weight);
+        }
+        state = transition.apply(state);
+      }
+    }
+    parser = new ShiftReduceParser(op, model);
+  }
+
+  private List<String> parseAll() {
+    List<String> results = Generics.newArrayList();
+    for (Tree tree : trees) {
+      ShiftReduceParserQuery query = (ShiftReduceParserQuery) parser.parserQuery();
+      assertTrue(query.parse(tree));
+      results.add(query.getBestBinarizedParse() + " " + query.getPCFGScore());
+    }
+    return results;
+  }
+
+  public void testParallelBeam() {
+    List<String> expected = parseAll();
+    op.testOptions().parallelBeam = true;
+    assertEquals(expected, parseAll());
+  }
+
+  public void testStringFeatures() {
+    List<String> expected = parseAll();
+    op.testOptions().stringFeatures = true;
+    assertEquals(expected, parseAll());
+  }
+
+  public void testScoreEveryState() {
+    List<String> expected = parseAll();
+    op.testOptions().scoreEveryState = true;
+    assertEquals(expected, parseAll());
+
+    op.testOptions().mergeEquivalentStates = true;
+    expected = parseAll();
+    op.testOptions().scoreEveryState = false;
+    assertEquals(expected, parseAll());
+  }
+
+  public void testMergeEquivalentStates() {
+    op.testOptions().mergeEquivalentStates = true;
+    List<String> expected = parseAll();
+    op.testOptions().parallelBeam = true;
+    assertEquals(expected, parseAll());
+  }
+
+  public void testEquivalentStates() {
+    Tree tree = trees.get(2);
+    State state = ShiftReduceParser.initialStateFromGoldTagTree(tree);
+    Transition shift = new ShiftTransition();
+    State shifted = shift.apply(shift.apply(state, 1.0), 2.0);
+    State other = shift.apply(shift.apply(state, 0.0), 0.0);
+    assertNotSame(shifted, other);
+    assertTrue(shifted.isEquivalent(other));
+    assertEquals(shifted.equivalenceHashCode(), other.equivalenceHashCode());
+    assertFalse(shifted.isEquivalent(shift.apply(shifted)));
+    assertFalse(state.isEquivalent(shifted));
+
+    // Once a state is finished, idling doesn't change what follows
+    State finished = state;
+    for (Transition transition : CreateTransitionSequence.createTransitionSequence(tree, op.compoundUnaries, Collections.singleton("ROOT"), Collections.singleton("ROOT"))) {
+      finished = transition.apply(finished);
+    }
+    assertTrue(finished.isFinished());
+    State idle = new IdleTransition().apply(finished, 1.0);
+    assertTrue(idle.isEquivalent(finished));
+    assertEquals(finished.equivalenceHashCode(), idle.equivalenceHashCode());
+    assertEquals(model.featureFactory.featurize(finished), model.featureFactory.featurize(idle));
+  }
+
+  public void testLeftAndRightAreNotEquivalent() {
+    Tree tree = trees.get(2);
+    Transition shift = new ShiftTransition();
+    State state = shift.apply(shift.apply(ShiftReduceParser.initialStateFromGoldTagTree(tree)));
+    State left = new BinaryTransition("NP", BinaryTransition.Side.LEFT).apply(state);
+    State right = new BinaryTransition("NP", BinaryTransition.Side.RIGHT).apply(state);
+    // The same tree, with different heads
+    assertEquals(left.stack.peek(), right.stack.peek());
+    assertFalse(left.isEquivalent(right));
+    assertFalse(model.featureFactory.featurize(left).equals(model.featureFactory.featurize(right)));
+  }
+
+  /**
+   * Goes through the states reachable from the start of each sentence
+   * by the transitions of the model, and checks that equivalent states
+   * have the same features, and that states whose stacks are the same
+   * trees but with different heads are not equivalent.
+   */
+  public void testEquivalentStatesHaveSameFeatures() {
+    int differentHeads = 0;
+    for (Tree tree : trees) {
+      Map<Integer, List<State>> seen = Generics.newHashMap();
+      List<State> agenda = Generics.newArrayList();
+      agenda.add(ShiftReduceParser.initialStateFromGoldTagTree(tree));
+      for (int i = 0; i < agenda.size() && agenda.size() < 5000; ++i) {
+        State state = agenda.get(i);
+        List<String> features = model.featureFactory.featurize(state);
+        for (State other : seen.computeIfAbsent(state.stack.hashCode() * 31 + state.tokenPosition, k -> Generics.newArrayList())) {
+          if (other.isEquivalent(state)) {
+            assertEquals(other.equivalenceHashCode(), state.equivalenceHashCode());
+            assertEquals(model.featureFactory.featurize(other), features);
+          } else if (other.stack.equals(state.stack) && other.finished == state.finished) {
+            ++differentHeads;
+          }
+        }
+        seen.get(state.stack.hashCode() * 31 + state.tokenPosition).add(state);
+        for (Transition transition : model.transitionIndex) {
+          if (transition.isLegal(state, null)) {
+            agenda.add(transition.apply(state));
+          }
+        }
+      }
+    }
+    assertTrue(differentHeads > 0);
+  }
+
+}
@@ -0,0 +1,200 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Checks that an {@link AnnotationBatcher} annotates every document once, in batches.
+ */
+public class AnnotationBatcherTest extends TestCase {
+
+  /** Records which thread annotated each document, and fails on documents containing "fail". */
+  private static class ThreadRecordingAnnotator implements Annotator {
+    @Override
+    public void annotate(Annotation annotation) {
+      String text = annotation.get(CoreAnnotations.TextAnnotation.class);
+      if (text.contains("fail")) {
+        throw new IllegalStateException(text);
+      }
+      annotation.set(CoreAnnotations.DocIDAnnotation.class, Thread.currentThread().getName());
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  private ExecutorService executor;
+  private ScheduledExecutorService timer;
+
+  @Override
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(2);
+    timer = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @Override
+  public void tearDown() {
+    executor.shutdownNow();
+    timer.shutdownNow();
+  }
+
+  private static AnnotationPipeline pipeline() {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new ThreadRecordingAnnotator());
+    return pipeline;
+  }
+
+  public void testBatchesBySize() throws InterruptedException {
+    AnnotationBatcher batcher = new AnnotationBatcher(executor, timer, 5, 1000000, 60000);
+    AnnotationPipeline pipeline = pipeline();
+    CountDownLatch done = new CountDownLatch(20);
+    List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    for (int i = 0; i < 20; ++i) {
+      batcher.submit("key", pipeline, new Annotation("doc " + i), () -> false, (ann, error) -> {
+        if (error != null) {
+          errors.add(error);
+        }
+        assertNotNull(ann.get(CoreAnnotations.DocIDAnnotation.class));
+        done.countDown();
+      });
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertTrue(errors.isEmpty());
+    assertEquals(4, batcher.batchesRun());
+    assertEquals(20, batcher.documentsRun());
+    assertEquals(0, batcher.pending());
+  }
+
+  public void testBatchesByTimeAndKey() throws InterruptedException {
+    AnnotationBatcher batcher = new AnnotationBatcher(executor, timer, 100, 1000000, 20);
+    AnnotationPipeline pipeline = pipeline();
+    CountDownLatch done = new CountDownLatch(6);
+    for (int i = 0; i < 6; ++i) {
+      batcher.submit(i % 2 == 0 ? "even" : "odd", pipeline, new Annotation("doc " + i), () -> false,
+          (ann, error) -> done.countDown());
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(2, batcher.batchesRun());
+  }
+
+  public void testLargeDocumentsAreNotBatched() throws InterruptedException {
+    AnnotationBatcher batcher = new AnnotationBatcher(executor, timer, 100, 10, 60000);
+    CountDownLatch done = new CountDownLatch(2);
+    batcher.submit("key", pipeline(), new Annotation("a long document"), () -> false, (ann, error) -> done.countDown());
+    batcher.submit("key", pipeline(), new Annotation("another long document"), () -> false, (ann, error) -> done.countDown());
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(2, batcher.batchesRun());
+  }
+
+  public void testErrorsAndCancellation() throws InterruptedException {
+    AnnotationBatcher batcher = new AnnotationBatcher(executor, timer, 3, 1000000, 60000);
+    AnnotationPipeline pipeline = pipeline();
+    CountDownLatch done = new CountDownLatch(2);
+    List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    batcher.submit("key", pipeline, new Annotation("fail"), () -> false, (ann, error) -> {
+      errors.add(error);
+      done.countDown();
+    });
+    batcher.submit("key", pipeline, new Annotation("cancelled"), () -> true, (ann, error) -> fail());
+    batcher.submit("key", pipeline, new Annotation("ok"), () -> false, (ann, error) -> {
+      errors.add(error);
+      done.countDown();
+    });
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(2, errors.size());
+    assertTrue(errors.get(0) instanceof IllegalStateException);
+    assertNull(errors.get(1));
+    assertEquals(2, batcher.documentsRun());
+  }
+
+  public void testBatchIsAnnotatedTogether() throws InterruptedException {
+    AnnotationBatcher batcher = new AnnotationBatcher(executor, timer, 3, 6, 1000000, 60000);
+    AnnotationPipeline pipeline = pipeline();
+    CountDownLatch done = new CountDownLatch(6);
+    Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+    List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+    for (int i = 0; i < 6; ++i) {
+      batcher.submit("key", pipeline, new Annotation(i == 2 ? "fail" : "doc " + i), () -> false, (ann, error) -> {
+        if (error != null) {
+          errors.add(error);
+        } else {
+          threads.add(ann.get(CoreAnnotations.DocIDAnnotation.class));
+        }
+        done.countDown();
+      });
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(1, batcher.batchesRun());
+    // Each document is answered once; the failing one with its own exception
+    assertEquals(1, errors.size());
+    assertTrue(errors.get(0) instanceof IllegalStateException);
+    assertFalse(threads.isEmpty());
+  }
+
+  public void testStagedPipelineErrors() throws InterruptedException {
+    AnnotationBatcher batcher = new AnnotationBatcher(executor, timer, 3, 1000000, 60000);
+    AnnotationPipeline pipeline = new AnnotationPipeline() {
+      @Override
+      public void annotate(Iterable<Annotation> annotations, int numThreads, Consumer<Annotation> callback) {
+        annotateStaged(annotations, new int[]{numThreads}, 2, callback);
+      }
+    };
+    pipeline.addAnnotator(new ThreadRecordingAnnotator());
+    CountDownLatch done = new CountDownLatch(3);
+    Map<String, Throwable> errors = new ConcurrentHashMap<>();
+    for (String text : new String[]{"doc 0", "fail", "doc 2"}) {
+      batcher.submit("key", pipeline, new Annotation(text), () -> false, (ann, error) -> {
+        if (error != null) {
+          errors.put(text, error);
+        }
+        done.countDown();
+      });
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(1, batcher.batchesRun());
+    // The staged pipeline hands the failed document on rather than throwing; it must still be answered with its error
+    assertEquals(Collections.singleton("fail"), errors.keySet());
+    assertTrue(errors.get("fail") instanceof IllegalStateException);
+  }
+
+  public void testCancelRunningBatch() throws InterruptedException {
+    AnnotationBatcher batcher = new AnnotationBatcher(executor, timer, 1, 1000000, 0);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new ThreadRecordingAnnotator() {
+      @Override
+      public void annotate(Annotation annotation) {
+        started.countDown();
+        try {
+          Thread.sleep(60000);
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+        }
+      }
+    });
+    AtomicBoolean timedOut = new AtomicBoolean(false);
+    Runnable cancel = batcher.submit("key", pipeline, new Annotation("slow"), timedOut::get, (ann, error) -> { });
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    // Not interrupted while the document is still waited for
+    cancel.run();
+    assertFalse(interrupted.await(100, TimeUnit.MILLISECONDS));
+    timedOut.set(true);
+    cancel.run();
+    assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+  }
+
+}
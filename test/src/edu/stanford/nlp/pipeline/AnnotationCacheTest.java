@@ -0,0 +1,83 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Checks that an {@link AnnotationCache} returns what was put in it, evicts by size, and persists.
+ */
+public class AnnotationCacheTest extends TestCase {
+
+  private static Annotation annotate(String text) {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new TokenizerAnnotator(false, new Properties()));
+    pipeline.addAnnotator(new WordsToSentencesAnnotator(false));
+    Annotation doc = new Annotation(text);
+    pipeline.annotate(doc);
+    return doc;
+  }
+
+  private static void assertSameTokens(Annotation expected, Annotation actual) {
+    assertEquals(expected.get(CoreAnnotations.TextAnnotation.class), actual.get(CoreAnnotations.TextAnnotation.class));
+    List<CoreLabel> expectedTokens = expected.get(CoreAnnotations.TokensAnnotation.class);
+    List<CoreLabel> actualTokens = actual.get(CoreAnnotations.TokensAnnotation.class);
+    assertEquals(expectedTokens.size(), actualTokens.size());
+    for (int i = 0; i < expectedTokens.size(); ++i) {
+      assertEquals(expectedTokens.get(i).word(), actualTokens.get(i).word());
+      assertEquals(expectedTokens.get(i).beginPosition(), actualTokens.get(i).beginPosition());
+    }
+    assertEquals(expected.get(CoreAnnotations.SentencesAnnotation.class).size(),
+        actual.get(CoreAnnotations.SentencesAnnotation.class).size());
+  }
+
+  public void testKeys() {
+    assertEquals(AnnotationCache.key("text", "sig"), AnnotationCache.key("text", "sig"));
+    assertFalse(AnnotationCache.key("text", "sig").equals(AnnotationCache.key("text", "sig2")));
+    assertFalse(AnnotationCache.key("text", "sig").equals(AnnotationCache.key("text2", "sig")));
+  }
+
+  public void testGetAndEvict() {
+    AnnotationCache cache = new AnnotationCache(1 << 20, null);
+    Annotation doc = annotate("The cat sat. It was happy.");
+    String key = AnnotationCache.key("The cat sat. It was happy.", "tokenize,ssplit");
+    assertNull(cache.get(key));
+    assertTrue(cache.put(key, doc));
+    assertSameTokens(doc, cache.get(key));
+    assertEquals(1, cache.hits());
+    assertEquals(1, cache.misses());
+
+    // A cache with room for only one document keeps the most recent one
+    AnnotationCache small = new AnnotationCache(cache.bytes() + 10, null);
+    small.put("a", doc);
+    small.put("b", doc);
+    assertNull(small.get("a"));
+    assertNotNull(small.get("b"));
+    assertEquals(1, small.evictions());
+    assertEquals(1, small.size());
+  }
+
+  public void testPersistence() throws IOException {
+    File dir = File.createTempFile("annotationcache", "");
+    assertTrue(dir.delete());
+    dir.deleteOnExit();
+    Annotation doc = annotate("Persist me, please.");
+    String key = AnnotationCache.key("Persist me, please.", "");
+    new AnnotationCache(1 << 20, dir).put(key, doc);
+
+    AnnotationCache reopened = new AnnotationCache(1 << 20, dir);
+    assertSameTokens(doc, reopened.get(key));
+    assertEquals(1, reopened.diskHits());
+    assertNotNull(reopened.get(key));
+    assertEquals(1, reopened.hits());
+    for (File file : dir.listFiles()) {
+      assertTrue(file.delete());
+    }
+  }
+
+}
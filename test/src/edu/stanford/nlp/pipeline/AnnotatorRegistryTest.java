@@ -0,0 +1,132 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.util.Lazy;
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checks the eviction, pinning, and bookkeeping of an {@link AnnotatorRegistry}.
+ */
+public class AnnotatorRegistryTest extends TestCase {
+
+  /** Counts how often it is unmounted. */
+  private static class DummyAnnotator implements Annotator {
+    int unmounts; // = 0
+
+    @Override
+    public void annotate(Annotation annotation) { }
+
+    @Override
+    public void unmount() {
+      unmounts++;
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  private static StanfordCoreNLP.AnnotatorSignature sig(String name) {
+    return new StanfordCoreNLP.AnnotatorSignature(name, "");
+  }
+
+  /** A registry where every annotator is 100 bytes, with annotators a, b, and c registered. */
+  private static AnnotatorRegistry registry() {
+    AnnotatorRegistry registry = new AnnotatorRegistry(new ConcurrentHashMap<>(), annotator -> 100L);
+    for (String name : new String[]{"a", "b", "c"}) {
+      registry.register(sig(name), DummyAnnotator::new);
+    }
+    return registry;
+  }
+
+  private static AnnotatorRegistry.Stats stats(AnnotatorRegistry registry, String name) {
+    for (AnnotatorRegistry.Stats stats : registry.stats()) {
+      if (stats.name.equals(name)) {
+        return stats;
+      }
+    }
+    throw new AssertionError("No annotator " + name);
+  }
+
+  public void testRegisterIsIdempotent() {
+    AnnotatorRegistry registry = registry();
+    Lazy<Annotator> a = registry.register(sig("a"), DummyAnnotator::new);
+    assertSame(a, registry.register(sig("a"), DummyAnnotator::new));
+    assertSame(a.get(), a.get());
+    assertEquals(3, registry.stats().size());
+    assertEquals(1, stats(registry, "a").loads);
+    assertEquals(2, stats(registry, "a").requests);
+  }
+
+  public void testLeastRecentlyUsedIsEvicted() {
+    AnnotatorRegistry registry = registry();
+    registry.setMaxBytes(200);
+    Lazy<Annotator> a = registry.register(sig("a"), DummyAnnotator::new);
+    Lazy<Annotator> b = registry.register(sig("b"), DummyAnnotator::new);
+    Lazy<Annotator> c = registry.register(sig("c"), DummyAnnotator::new);
+    DummyAnnotator first = (DummyAnnotator) a.get();
+    b.get();
+    a.get();
+    c.get();  // b is the least recently used
+    assertTrue(stats(registry, "a").loaded);
+    assertFalse(stats(registry, "b").loaded);
+    assertTrue(stats(registry, "c").loaded);
+    assertEquals(200, registry.loadedBytes());
+
+    b.get();  // now a is
+    assertFalse(stats(registry, "a").loaded);
+    assertEquals(1, first.unmounts);
+    assertEquals(1, stats(registry, "a").evictions);
+
+    assertNotSame(first, a.get());
+    assertEquals(1, stats(registry, "a").reloads());
+  }
+
+  public void testHeldAndPinnedAreNotEvicted() {
+    AnnotatorRegistry registry = registry();
+    Object pipeline = new Object();
+    AnnotatorRegistry.Entry a = (AnnotatorRegistry.Entry) registry.register(sig("a"), DummyAnnotator::new);
+    a.get(pipeline);
+    registry.register(sig("b"), DummyAnnotator::new).get();
+    assertTrue(registry.pin(sig("b")));
+    registry.register(sig("c"), DummyAnnotator::new).get();
+
+    registry.setMaxBytes(0);
+    assertTrue(stats(registry, "a").loaded);
+    assertEquals(1, stats(registry, "a").holders);
+    assertTrue(stats(registry, "b").loaded);
+    assertFalse(stats(registry, "c").loaded);
+
+    registry.release(pipeline);
+    assertFalse(stats(registry, "a").loaded);
+    assertTrue(registry.unpin(sig("b")));
+    assertFalse(stats(registry, "b").loaded);
+    assertEquals(0, registry.loadedBytes());
+    assertFalse(registry.pin(sig("d")));
+  }
+
+  public void testEvictUnusedAndClear() {
+    AnnotatorRegistry registry = registry();
+    Object pipeline = new Object();
+    AnnotatorRegistry.Entry a = (AnnotatorRegistry.Entry) registry.register(sig("a"), DummyAnnotator::new);
+    DummyAnnotator held = (DummyAnnotator) a.get(pipeline);
+    registry.register(sig("b"), DummyAnnotator::new).get();
+    assertEquals(1, registry.evictUnused());
+    assertEquals(100, registry.loadedBytes());
+
+    registry.clear();
+    assertEquals(0, held.unmounts);  // still in use
+    assertEquals(0, registry.loadedBytes());
+    assertTrue(registry.stats().isEmpty());
+  }
+
+}
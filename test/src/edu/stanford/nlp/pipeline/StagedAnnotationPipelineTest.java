@@ -0,0 +1,115 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Checks that the staged (assembly line) mode of {@link AnnotationPipeline} runs every
+ * annotator on every document, in order.
+ */
+public class StagedAnnotationPipelineTest extends TestCase {
+
+  /** Appends its name to the document's text, failing on documents containing "fail". */
+  private static class AppendingAnnotator implements Annotator {
+    private final String name;
+
+    AppendingAnnotator(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void annotate(Annotation annotation) {
+      String text = annotation.get(CoreAnnotations.TextAnnotation.class);
+      if (text.contains("fail")) {
+        throw new IllegalStateException(name);
+      }
+      annotation.set(CoreAnnotations.TextAnnotation.class, text + name);
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  private static AnnotationPipeline pipeline() {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new AppendingAnnotator("a"));
+    pipeline.addAnnotator(new AppendingAnnotator("b"));
+    pipeline.addAnnotator(new AppendingAnnotator("c"));
+    return pipeline;
+  }
+
+  public void testAllDocumentsGoThroughAllStages() {
+    List<Annotation> docs = new ArrayList<>();
+    for (int i = 0; i < 200; ++i) {
+      docs.add(new Annotation(Integer.toString(i)));
+    }
+    Collection<Annotation> done = new ConcurrentLinkedQueue<>();
+    AnnotationPipeline pipeline = pipeline();
+    pipeline.annotateStaged(docs, new int[]{1, 3, 2}, 2, done::add);
+
+    assertEquals(docs.size(), done.size());
+    Set<String> texts = new HashSet<>();
+    for (Annotation doc : done) {
+      texts.add(doc.get(CoreAnnotations.TextAnnotation.class));
+    }
+    for (int i = 0; i < docs.size(); ++i) {
+      assertTrue(texts.contains(i + "abc"));
+    }
+    assertTrue(Arrays.equals(new int[3], pipeline.stageQueueDepths()));
+  }
+
+  public void testFailureSkipsLaterStages() {
+    List<Annotation> docs = Arrays.asList(new Annotation("ok"), new Annotation("fail"));
+    Collection<Annotation> done = new ConcurrentLinkedQueue<>();
+    pipeline().annotateStaged(docs, new int[]{2, 2, 2}, 1, done::add);
+
+    assertEquals(2, done.size());
+    assertEquals("okabc", docs.get(0).get(CoreAnnotations.TextAnnotation.class));
+    assertFalse(docs.get(0).containsKey(CoreAnnotations.ExceptionAnnotation.class));
+    assertEquals("fail", docs.get(1).get(CoreAnnotations.TextAnnotation.class));
+    Throwable t = docs.get(1).get(CoreAnnotations.ExceptionAnnotation.class);
+    assertNotNull(t);
+    assertEquals("a", t.getMessage());
+  }
+
+  public void testCallbackFailureIsRethrown() {
+    List<Annotation> docs = new ArrayList<>();
+    for (int i = 0; i < 500; ++i) {
+      docs.add(new Annotation(Integer.toString(i)));
+    }
+    Collection<Annotation> done = new ConcurrentLinkedQueue<>();
+    try {
+      pipeline().annotateStaged(docs, new int[]{1, 2, 1}, 1, ann -> {
+        if (done.size() == 3) {
+          throw new IllegalStateException("callback");
+        }
+        done.add(ann);
+      });
+      fail("Expected the exception from the callback to be rethrown");
+    } catch (IllegalStateException e) {
+      assertEquals("callback", e.getMessage());
+    }
+    assertEquals(3, done.size());
+  }
+
+  public void testStageSizesMustMatchAnnotators() {
+    try {
+      pipeline().annotateStaged(Collections.emptyList(), new int[]{1, 1}, 1, ann -> {});
+      fail("Expected a mismatch in the number of stages to be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,126 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Checks that annotating a stream finds the same sentences as annotating the whole text.
+ */
+public class StreamingAnnotationPipelineTest extends TestCase {
+
+  private static final String TEXT;
+
+  static {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 40; ++i) {
+      sb.append("Sentence number ").append(i).append(" was written by Mr. Smith in the U.S. ");
+      if (i % 7 == 0) {
+        sb.append("\n\n");
+      }
+      sb.append("It has \"quotes\" (and parentheses).  ");
+    }
+    TEXT = sb.toString();
+  }
+
+  private static AnnotationPipeline pipeline() {
+    Properties props = new Properties();
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new TokenizerAnnotator(false, props));
+    pipeline.addAnnotator(new WordsToSentencesAnnotator(false));
+    return pipeline;
+  }
+
+  /** Each sentence's text, taken from the offsets of its tokens in the input. */
+  private static List<String> sentences(Annotation doc, int offset) {
+    String text = doc.get(CoreAnnotations.TextAnnotation.class);
+    List<String> sentences = new ArrayList<>();
+    for (CoreMap sentence : doc.get(CoreAnnotations.SentencesAnnotation.class)) {
+      List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+      int begin = tokens.get(0).beginPosition();
+      int end = tokens.get(tokens.size() - 1).endPosition();
+      assertEquals(TEXT.substring(offset + begin, offset + end), text.substring(begin, end));
+      sentences.add((offset + begin) + ":" + text.substring(begin, end));
+    }
+    return sentences;
+  }
+
+  private static void checkStream(int windowSentences, int chunkChars) throws IOException {
+    Annotation whole = new Annotation(TEXT);
+    pipeline().annotate(whole);
+    List<String> expected = sentences(whole, 0);
+
+    List<String> streamed = new ArrayList<>();
+    List<Annotation> windows = new ArrayList<>();
+    long count = pipeline().annotateStream(new StringReader(TEXT), windowSentences, chunkChars, window -> {
+      windows.add(window);
+      int offset = window.get(CoreAnnotations.CharacterOffsetBeginAnnotation.class);
+      assertEquals(streamed.size(), window.get(CoreAnnotations.SentenceIndexAnnotation.class).intValue());
+      assertEquals(TEXT.substring(offset, window.get(CoreAnnotations.CharacterOffsetEndAnnotation.class)),
+          window.get(CoreAnnotations.TextAnnotation.class));
+      streamed.addAll(sentences(window, offset));
+    });
+
+    assertEquals(expected.size(), count);
+    assertEquals(expected, streamed);
+    for (int i = 0; i < windows.size() - 1; ++i) {
+      assertTrue(windows.get(i).get(CoreAnnotations.SentencesAnnotation.class).size() >= windowSentences);
+    }
+  }
+
+  public void testSentenceAtATime() throws IOException {
+    checkStream(1, 16);
+    checkStream(1, 100);
+  }
+
+  public void testWindows() throws IOException {
+    checkStream(10, 50);
+    checkStream(25, 1000);
+    checkStream(1000, 100);
+  }
+
+  public void testLongSentenceIsNotSplitForEveryChunk() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 2000; ++i) {
+      sb.append("word").append(i).append(' ');
+    }
+    sb.append(". Done .");
+    String text = sb.toString();
+    long[] tokenized = new long[1];
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new TokenizerAnnotator(false, new Properties()) {
+      @Override
+      public void annotate(Annotation annotation) {
+        tokenized[0] += annotation.get(CoreAnnotations.TextAnnotation.class).length();
+        super.annotate(annotation);
+      }
+    });
+    pipeline.addAnnotator(new WordsToSentencesAnnotator(false));
+    assertEquals(2, pipeline.annotateStream(new StringReader(text), 1, 8, window -> { }));
+    // Splitting again after every chunk of 8 would tokenize over a million characters
+    assertTrue("tokenized " + tokenized[0] + " characters", tokenized[0] < 4 * text.length());
+  }
+
+  public void testEmptyInput() throws IOException {
+    assertEquals(0, pipeline().annotateStream(new StringReader("  \n "), 1, 10, window -> fail()));
+  }
+
+  public void testNeedsSentences() {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new TokenizerAnnotator(false, new Properties()));
+    try {
+      pipeline.annotateStream(new StringReader(TEXT), 1, 10, window -> { });
+      fail();
+    } catch (IllegalArgumentException | IOException e) {
+      // expected
+    }
+  }
+
+}
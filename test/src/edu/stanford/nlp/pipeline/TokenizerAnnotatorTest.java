@@ -3,6 +3,7 @@ package edu.stanford.nlp.pipeline;
 import java.util.*;
 
 import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.ColumnarCoreLabel;
 import edu.stanford.nlp.ling.CoreLabel;
 import junit.framework.TestCase;
 
@@ -43,6 +44,62 @@ public class TokenizerAnnotatorTest extends TestCase {
     assertFalse("Too few tokens in new CoreLabel usage", it2.hasNext());
   }
 
+  public void testColumnarTokensMatchOrdinaryTokens() {
+    Properties props = new Properties();
+    props.setProperty("annotators", "tokenize,ssplit");
+    props.setProperty("tokenize.options", "invertible");
+    Annotation plain = new Annotation(text);
+    new TokenizerAnnotator(false, props).annotate(plain);
+    props.setProperty(TokenizerAnnotator.COLUMNAR_TOKENS_PROPERTY, "true");
+    Annotation columnar = new Annotation(text);
+    new TokenizerAnnotator(false, props).annotate(columnar);
+
+    List<CoreLabel> plainTokens = plain.get(CoreAnnotations.TokensAnnotation.class);
+    List<CoreLabel> columnarTokens = columnar.get(CoreAnnotations.TokensAnnotation.class);
+    assertEquals(plainTokens.size(), columnarTokens.size());
+    for (int i = 0; i < plainTokens.size(); i++) {
+      assertTrue(columnarTokens.get(i) instanceof ColumnarCoreLabel);
+      assertEquals(plainTokens.get(i), columnarTokens.get(i));
+      assertEquals(columnarTokens.get(i), plainTokens.get(i));
+      assertEquals(plainTokens.get(i).beginPosition(), columnarTokens.get(i).beginPosition());
+      assertEquals(plainTokens.get(i).after(), columnarTokens.get(i).after());
+    }
+  }
+
+  public void testChunkStarts() {
+    String paragraphs = "First para.\nStill first.\n\nSecond para.\n \t\n  Third para.\n\n";
+    assertEquals(Arrays.asList(0), TokenizerAnnotator.chunkStarts(paragraphs, 100));
+    assertEquals(Arrays.asList(0, 26, 44), TokenizerAnnotator.chunkStarts(paragraphs, 1));
+    assertEquals(Arrays.asList(0, 44), TokenizerAnnotator.chunkStarts(paragraphs, 27));
+  }
+
+  public void testParallelTokenizationMatchesSequential() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 50; i++) {
+      sb.append("  Mr. Smith paid $").append(i).append("-").append(i + 1).append(" for it.\n");
+      sb.append("\"Don't,\" he said (to me) at 5 p.m.\n\n");
+      if (i % 3 == 0) {
+        sb.append(" \u007F \n \n");
+      }
+    }
+    String longText = sb.toString();
+    Properties props = new Properties();
+    props.setProperty("annotators", "tokenize,ssplit");
+    Annotation sequential = new Annotation(longText);
+    new TokenizerAnnotator(false, props, "tokenizeNLs,").annotate(sequential);
+    props.setProperty(TokenizerAnnotator.NTHREADS_PROPERTY, "3");
+    props.setProperty(TokenizerAnnotator.CHUNK_SIZE_PROPERTY, "100");
+    Annotation parallel = new Annotation(longText);
+    new TokenizerAnnotator(false, props, "tokenizeNLs,").annotate(parallel);
+
+    List<CoreLabel> sequentialTokens = sequential.get(CoreAnnotations.TokensAnnotation.class);
+    List<CoreLabel> parallelTokens = parallel.get(CoreAnnotations.TokensAnnotation.class);
+    assertEquals(sequentialTokens.size(), parallelTokens.size());
+    for (int i = 0; i < sequentialTokens.size(); i++) {
+      assertEquals(sequentialTokens.get(i), parallelTokens.get(i));
+    }
+  }
+
   public void testBadLanguage() {
     Properties props = new Properties();
     props.setProperty("annotators", "tokenize");
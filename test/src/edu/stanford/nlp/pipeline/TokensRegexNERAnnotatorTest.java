@@ -0,0 +1,169 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.StringUtils;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Checks that the compiled mode of TokensRegexNERAnnotator, which matches the rows that are
+ * plain token sequences with an automaton, labels tokens the same as the default mode.
+ */
+public class TokensRegexNERAnnotatorTest extends TestCase {
+
+  private static final String NAME = "tokensregexner";
+
+  // pattern, ner, overwrite, priority.  No two rows which can overlap have the same priority and length,
+  // as those ties are broken differently by the two modes.
+  private static final String[][] ROWS = {
+      { "New York", "CITY", "LOCATION", "2" },
+      { "New York City", "CITY", "LOCATION", "1" },
+      { "York City Council", "ORGANIZATION", "LOCATION,CITY", "3" },
+      { "Stanford University", "SCHOOL", "ORGANIZATION", "1" },
+      { "Stanford", "PERSON", "", "0.5" },
+      { "University of California", "SCHOOL", "ORGANIZATION,LOCATION", "1" },
+      { "( /University/ /of/ [ {ner:LOCATION} ] )", "SCHOOL", "LOCATION", "1.5" },
+      { "John Smith", "PERSON", "", "0" },
+      { "Bank of America", "ORGANIZATION", "", "1" },
+      { "America", "COUNTRY", "LOCATION", "0" },
+      { "the Bank", "MISC", "", "4" },
+      { "big apple", "NICKNAME", "", "0" },
+      { "/[Bb]ig/ /[Aa]pple/ /[Pp]ie/", "FOOD", "", "2" },
+      { "New York New York", "SONG", "CITY,LOCATION", "0.25" },
+      { "Council", "ORGANIZATION", "", "0" },
+  };
+
+  // Each token is word/POS/NER
+  private static final String[] SENTENCES = {
+      "John/NNP/PERSON Smith/NNP/PERSON moved/VBD/O to/TO/O New/NNP/LOCATION York/NNP/LOCATION City/NNP/LOCATION ./././O",
+      "The/DT/O New/NNP/O York/NNP/O City/NNP/O Council/NNP/ORGANIZATION met/VBD/O ./././O",
+      "She/PRP/O studied/VBD/O at/IN/O Stanford/NNP/ORGANIZATION University/NNP/ORGANIZATION and/CC/O the/DT/O University/NNP/ORGANIZATION of/IN/ORGANIZATION California/NNP/LOCATION ./././O",
+      "Stanford/NNP/PERSON said/VBD/O the/DT/O Bank/NNP/O of/IN/O America/NNP/LOCATION was/VBD/O big/JJ/O ./././O",
+      "We/PRP/O ate/VBD/O big/JJ/O apple/NN/O pie/NN/O in/IN/O the/DT/MISC Big/NNP/MISC Apple/NNP/MISC ./././O",
+      "New/NNP/O York/NNP/O New/NNP/O York/NNP/O is/VBZ/O a/DT/O song/NN/O about/IN/O New/NNP/CITY York/NNP/CITY ./././O",
+      "University/NNP/O of/IN/O Texas/NNP/LOCATION and/CC/O University/NNP/O of/IN/O California/NNP/O and/CC/O america/NN/O ./././O",
+  };
+
+  private static File mappingFile(String[][] rows) throws IOException {
+    File file = File.createTempFile("tokensregexnertest.patterns", ".txt");
+    file.deleteOnExit();
+    try (PrintWriter pw = IOUtils.getPrintWriter(file.getAbsolutePath())) {
+      for (String[] row : rows) {
+        pw.println(StringUtils.join(row, "\t"));
+      }
+    }
+    return file;
+  }
+
+  private static List<Annotation> documents() {
+    Properties props = new Properties();
+    TokenizerAnnotator tokenizer = new TokenizerAnnotator(false, props);
+    WordsToSentencesAnnotator ssplit = new WordsToSentencesAnnotator(false);
+    List<Annotation> documents = new ArrayList<>();
+    for (String sentence : SENTENCES) {
+      String[] tokens = sentence.split(" ");
+      StringBuilder text = new StringBuilder();
+      for (String token : tokens) {
+        text.append(token.substring(0, token.indexOf('/', 1))).append(' ');
+      }
+      Annotation document = new Annotation(text.toString().trim());
+      tokenizer.annotate(document);
+      ssplit.annotate(document);
+      List<CoreLabel> labels = document.get(CoreAnnotations.TokensAnnotation.class);
+      assertEquals(sentence, tokens.length, labels.size());
+      for (int i = 0; i < tokens.length; ++i) {
+        int tag = tokens[i].indexOf('/', 1);
+        int ner = tokens[i].lastIndexOf('/');
+        labels.get(i).setTag(tokens[i].substring(tag + 1, ner));
+        labels.get(i).setNER(tokens[i].substring(ner + 1));
+      }
+      documents.add(document);
+    }
+    return documents;
+  }
+
+  private static List<String> labels(Properties props) {
+    List<String> labels = new ArrayList<>();
+    TokensRegexNERAnnotator annotator = new TokensRegexNERAnnotator(NAME, props);
+    for (Annotation document : documents()) {
+      annotator.annotate(document);
+      StringBuilder sb = new StringBuilder();
+      for (CoreLabel token : document.get(CoreAnnotations.TokensAnnotation.class)) {
+        sb.append(token.word()).append('/').append(token.ner()).append(' ');
+      }
+      labels.add(sb.toString().trim());
+    }
+    return labels;
+  }
+
+  /** Labels the documents with and without the compiled mode, and checks they agree. */
+  private static List<String> checkSameLabels(Properties props) {
+    props.setProperty(NAME + ".compiled", "false");
+    List<String> expected = labels(props);
+    props.setProperty(NAME + ".compiled", "true");
+    assertEquals(expected, labels(props));
+    return expected;
+  }
+
+  private static Properties properties(String mapping) {
+    Properties props = new Properties();
+    props.setProperty(NAME + ".mapping", mapping);
+    return props;
+  }
+
+  public void testSameLabels() throws IOException {
+    String mapping = mappingFile(ROWS).getAbsolutePath();
+    List<String> labels = checkSameLabels(properties(mapping));
+    // A few of the labels, to make sure the rows do apply
+    assertEquals("John/PERSON Smith/PERSON moved/O to/O New/CITY York/CITY City/LOCATION ./O", labels.get(0));
+    assertEquals("The/O New/O York/ORGANIZATION City/ORGANIZATION Council/ORGANIZATION met/O ./O", labels.get(1));
+    assertTrue(labels.get(4), labels.get(4).contains("big/NICKNAME apple/NICKNAME pie/O"));
+  }
+
+  public void testIgnoreCase() throws IOException {
+    Properties props = properties(mappingFile(ROWS).getAbsolutePath());
+    props.setProperty(NAME + ".ignorecase", "true");
+    List<String> labels = checkSameLabels(props);
+    assertTrue(labels.get(6), labels.get(6).endsWith("america/COUNTRY ./O"));
+  }
+
+  public void testValidPosPattern() throws IOException {
+    String mapping = mappingFile(ROWS).getAbsolutePath();
+    for (String posMatchType : new String[] { "MATCH_ALL_TOKENS", "MATCH_AT_LEAST_ONE_TOKEN", "MATCH_ONE_TOKEN_PHRASE_ONLY" }) {
+      Properties props = properties(mapping);
+      props.setProperty(NAME + ".validpospattern", "^NNP");
+      props.setProperty(NAME + ".posmatchtype", posMatchType);
+      checkSameLabels(props);
+    }
+  }
+
+  public void testPerFileOptions() throws IOException {
+    String[][] cased = { ROWS[0], ROWS[1], ROWS[2], ROWS[6], ROWS[8], ROWS[12] };
+    String[][] caseless = { ROWS[3], ROWS[4], ROWS[5], ROWS[9], ROWS[10], ROWS[11] };
+    String mapping = "validpospattern=^NN," + mappingFile(cased).getAbsolutePath() + ";" +
+        "ignorecase=true," + mappingFile(caseless).getAbsolutePath();
+    checkSameLabels(properties(mapping));
+  }
+
+  public void testOverwriteRules() throws IOException {
+    String mapping = mappingFile(ROWS).getAbsolutePath();
+    Properties props = properties(mapping);
+    props.setProperty(NAME + ".backgroundSymbol", "O");
+    props.setProperty(NAME + ".noDefaultOverwriteLabels", "CITY,ORGANIZATION");
+    checkSameLabels(props);
+
+    props = properties(mapping);
+    props.setProperty(NAME + ".backgroundSymbol", "O,MISC,LOCATION");
+    props.setProperty(NAME + ".noDefaultOverwriteLabels", "");
+    checkSameLabels(props);
+  }
+
+}
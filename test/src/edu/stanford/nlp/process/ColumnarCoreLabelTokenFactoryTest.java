@@ -0,0 +1,56 @@
+package edu.stanford.nlp.process;
+
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.CoreLabelColumns;
+
+
+/**
+ * Checks that tokenizing into columns gives the same tokens as the ordinary {@link CoreLabelTokenFactory},
+ * whether or not the tokens are made as spans of the text.
+ */
+public class ColumnarCoreLabelTokenFactoryTest extends TestCase {
+
+  private static final String[] TEXTS = {
+      " The dogs  bark.\n",
+      "\"Hello,\" she said -- (quietly) -- and left at 5:00 p.m. on Jan. 3rd.\n\nNew paragraph... ",
+      "It's $3.50 & cheap; isn't it?\tYes! ",
+      "",
+  };
+
+  private static List<CoreLabel> tokenize(String text, String options, CoreLabelTokenFactory factory) {
+    return new PTBTokenizer<>(new StringReader(text), factory, options).tokenize();
+  }
+
+  private static void checkSameTokens(String options, boolean expectSpans) {
+    for (String text : TEXTS) {
+      List<CoreLabel> expected = tokenize(text, options, new CoreLabelTokenFactory());
+      CoreLabelColumns columns = new CoreLabelColumns(1);
+      columns.setText(text);
+      ColumnarCoreLabelTokenFactory factory = new ColumnarCoreLabelTokenFactory(columns);
+      List<CoreLabel> actual = tokenize(text, options, factory);
+      assertEquals(expectSpans, factory.makesSpans());
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); ++i) {
+        assertEquals(expected.get(i).keySet(), actual.get(i).keySet());
+        assertEquals(expected.get(i), actual.get(i));
+      }
+    }
+  }
+
+  public void testInvertibleMakesSpans() {
+    checkSameTokens("invertible", true);
+    checkSameTokens("invertible,ptb3Escaping=false", true);
+  }
+
+  public void testNotInvertibleMakesNoSpans() {
+    checkSameTokens("", false);
+    checkSameTokens("ptb3Escaping=false", false);
+    checkSameTokens("invertible=false,tokenizeNLs", false);
+  }
+
+}
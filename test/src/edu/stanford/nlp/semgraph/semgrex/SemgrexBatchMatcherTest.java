@@ -0,0 +1,118 @@
+package edu.stanford.nlp.semgraph.semgrex;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import edu.stanford.nlp.semgraph.SemanticGraph;
+
+public class SemgrexBatchMatcherTest extends TestCase {
+
+  private static final String[] GRAPHS = {
+      "[ate subj>Bill dobj>[muffins compound>blueberry]]",
+      "[loved/VBD-2\nnsubj>Hughes/NNP-1\ndobj>[wife/NN-4 nmod:poss>his/PRP$-3 appos>Gracia/NNP-5]\nconj:and>[obsessed/JJ-9\ncop>was/VBD-7\nadvmod>absolutely/RB-8\nnmod:with>[Elicia/NN-14 nmod:poss>his/PRP$-11 amod>little/JJ-12 compound>daughter/NN-13]]]",
+      "[A obj>[B obj>C] subj>[D obj>C] nmod>[E obj>[F subj>B]]]",
+  };
+
+  private static final String[] PATTERNS = {
+      "{}",
+      "{}=a >obj {}=b",
+      "{word:ate} >/.*obj/ {}=b",
+      "{word:/[A-E]/}=a >obj ({}=b >obj {word:C})",
+      "{}=a <obj {word:B}",
+      "{}=a </nmod:poss/ {tag:NN}",
+      "{tag:/VB.?/} > {}=b",
+      "{} >nsubj {}=subj >dobj ({}=obj >appos {}=appos)",
+      "{} >obj {}=b !>subj {}",
+      "{} >obj {}=b ?>subj {}=c",
+      "{} [>obj {word:C} | >subj {}=b]",
+      "{} >obj {word:C} >obj=r {}=b",
+      "{} >>obj {word:C}=c",
+      "!{word:C} >obj {}=b",
+      "{$} >/.*/=r {}=b",
+      "{} >obj {}=b : {}=b >obj {word:C}",
+      "{word:muffins} < {}=gov",
+      "{word:nothere} >obj {}",
+      "{} >nothere {}",
+      "{word:/.*e.*/} >compound {word:blueberry}",
+      "{}=a > {}=b >subj {}=b",
+  };
+
+  // What each match found, in order, as a string
+  private static List<String> describe(SemgrexPattern pattern, SemanticGraph graph) {
+    List<String> res = new ArrayList<>();
+    SemgrexMatcher matcher = pattern.matcher(graph);
+    while (matcher.find()) {
+      TreeMap<String, String> nodes = new TreeMap<>();
+      for (String name : matcher.getNodeNames()) {
+        nodes.put(name, String.valueOf(matcher.getNode(name)));
+      }
+      TreeMap<String, String> relns = new TreeMap<>();
+      for (String name : matcher.getRelationNames()) {
+        relns.put(name, matcher.getRelnString(name));
+      }
+      res.add(matcher.getMatch() + " " + nodes + " " + relns);
+    }
+    return res;
+  }
+
+  private static List<String> describe(List<SemgrexMatch> matches) {
+    List<String> res = new ArrayList<>();
+    for (SemgrexMatch match : matches) {
+      TreeMap<String, String> nodes = new TreeMap<>();
+      for (String name : match.getNodeNames()) {
+        nodes.put(name, String.valueOf(match.getNode(name)));
+      }
+      TreeMap<String, String> relns = new TreeMap<>();
+      for (String name : match.getRelationNames()) {
+        relns.put(name, match.getRelnString(name));
+      }
+      res.add(match.getMatch() + " " + nodes + " " + relns);
+    }
+    return res;
+  }
+
+  public void testSameMatches() {
+    List<SemgrexPattern> patterns = new ArrayList<>();
+    for (String p : PATTERNS) {
+      patterns.add(SemgrexPattern.compile(p));
+    }
+    SemgrexBatchMatcher batch = new SemgrexBatchMatcher(patterns);
+    for (String g : GRAPHS) {
+      SemanticGraph graph = SemanticGraph.valueOf(g);
+      List<List<SemgrexMatch>> matches = batch.findAll(graph);
+      assertEquals(patterns.size(), matches.size());
+      for (int i = 0; i < patterns.size(); i++) {
+        assertEquals(PATTERNS[i] + " on " + g, describe(patterns.get(i), graph), describe(matches.get(i)));
+      }
+    }
+  }
+
+  public void testFindAny() {
+    SemanticGraph graph = SemanticGraph.valueOf(GRAPHS[2]);
+    SemgrexBatchMatcher batch = new SemgrexBatchMatcher(Arrays.asList(
+        SemgrexPattern.compile("{}=a >subj {}=b"),
+        SemgrexPattern.compile("{}=a >obj {}=b")));
+    List<String> seen = new ArrayList<>();
+    assertTrue(batch.findAny(graph, match -> {
+      seen.add(match.getNode("a").word() + match.getNode("b").word());
+      return match.getNode("b").word().equals("C");
+    }));
+    // The graph is gone through node by node, with the patterns in order at each node
+    assertEquals(Arrays.asList("AD", "AB", "EF", "FB", "DC"), seen);
+    assertFalse(batch.findAny(graph, match -> false));
+  }
+
+  public void testIgnoreCase() {
+    SemanticGraph graph = SemanticGraph.valueOf(GRAPHS[0]);
+    List<SemgrexPattern> patterns = Arrays.asList(SemgrexPattern.compile("{word:BILL}=b <subj {}"));
+    assertEquals(0, new SemgrexBatchMatcher(patterns).findAll(graph).get(0).size());
+    List<SemgrexMatch> matches = new SemgrexBatchMatcher(patterns, true).findAll(graph).get(0);
+    assertEquals(1, matches.size());
+    assertEquals("Bill", matches.get(0).getNode("b").word());
+  }
+
+}
@@ -0,0 +1,106 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class CompactFeatureIndexTest extends TestCase {
+
+  private static final int NUM_TAGS = 12;
+
+  private List<Map<String, int[]>> fAssociations;
+  private double[] lambda;
+
+  @Override
+  public void setUp() {
+    Random random = new Random(42);
+    fAssociations = new ArrayList<>();
+    int numFeatures = 0;
+    for (int extractor = 0; extractor < 4; extractor++) {
+      Map<String, int[]> values = new HashMap<>();
+      while (values.size() < 3000) {
+        // the same values occur with several extractors
+        String value = "v" + random.nextInt(5000);
+        if (values.containsKey(value)) {
+          continue;
+        }
+        int[] fNums = new int[NUM_TAGS];
+        Arrays.fill(fNums, -1);
+        for (int tag = 0; tag < NUM_TAGS; tag++) {
+          if (random.nextInt(4) == 0) {
+            fNums[tag] = numFeatures++;
+          }
+        }
+        values.put(value, fNums);
+      }
+      fAssociations.add(values);
+    }
+    lambda = new double[numFeatures];
+    for (int i = 0; i < numFeatures; i++) {
+      lambda[i] = random.nextGaussian();
+    }
+  }
+
+  private void checkIndex(CompactFeatureIndex index) {
+    int numKeys = 0;
+    for (int extractor = 0; extractor < fAssociations.size(); extractor++) {
+      numKeys += fAssociations.get(extractor).size();
+      for (Map.Entry<String, int[]> entry : fAssociations.get(extractor).entrySet()) {
+        int slot = index.find(extractor, entry.getKey());
+        assertTrue(slot >= 0);
+        double[] scores = new double[NUM_TAGS];
+        index.addWeights(slot, scores);
+        int[] fNums = entry.getValue();
+        for (int tag = 0; tag < NUM_TAGS; tag++) {
+          double expected = fNums[tag] >= 0 ? (float) lambda[fNums[tag]] : 0.0;
+          assertEquals(expected, scores[tag], 0.0);
+        }
+        int[] tagIndices = { 3, 0, 7 };
+        double[] someScores = new double[tagIndices.length];
+        index.addWeights(slot, tagIndices, someScores);
+        for (int j = 0; j < tagIndices.length; j++) {
+          assertEquals(scores[tagIndices[j]], someScores[j], 0.0);
+        }
+      }
+      assertEquals(-1, index.find(extractor, "not a value"));
+      assertEquals(-1, index.find(extractor, "v5000"));
+    }
+    assertEquals(-1, index.find(fAssociations.size(), "v1"));
+    assertEquals(numKeys, index.numKeys());
+    assertEquals(lambda.length, index.numWeights());
+    assertEquals(NUM_TAGS, index.numTags());
+  }
+
+  public void testBuild() {
+    checkIndex(CompactFeatureIndex.build(fAssociations, lambda, NUM_TAGS));
+  }
+
+  public void testEmpty() throws IOException {
+    List<Map<String, int[]>> none = new ArrayList<>();
+    none.add(new HashMap<>());
+    CompactFeatureIndex index = CompactFeatureIndex.build(none, new double[0], NUM_TAGS);
+    assertEquals(0, index.numKeys());
+    assertEquals(-1, index.find(0, "v1"));
+    assertEquals(-1, index.find(1, ""));
+
+    File file = File.createTempFile("features", ".idx");
+    file.deleteOnExit();
+    index.save(file.getPath());
+    assertEquals(-1, CompactFeatureIndex.load(file.getPath()).find(0, "v1"));
+  }
+
+  public void testSaveAndLoad() throws IOException {
+    File file = File.createTempFile("features", ".idx");
+    file.deleteOnExit();
+    CompactFeatureIndex.build(fAssociations, lambda, NUM_TAGS).save(file.getPath());
+    checkIndex(CompactFeatureIndex.load(file.getPath()));
+  }
+
+}
@@ -0,0 +1,64 @@
+package edu.stanford.nlp.util;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class LatencyHistogramTest extends TestCase {
+
+  public void testBucketBounds() {
+    for (long value : new long[] {0, 1, 3, 4, 5, 7, 8, 1000, 123456789L, Long.MAX_VALUE}) {
+      int bucket = LatencyHistogram.bucket(value);
+      assertTrue(value + " below its bucket", LatencyHistogram.lowerBound(bucket) <= value);
+      if (value < Long.MAX_VALUE) {
+        assertTrue(value + " above its bucket", LatencyHistogram.lowerBound(bucket + 1) > value);
+      }
+    }
+    for (int bucket = 0; bucket < 200; ++bucket) {
+      assertEquals(bucket, LatencyHistogram.bucket(LatencyHistogram.lowerBound(bucket)));
+    }
+  }
+
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.percentileNanos(0.5));
+    for (int i = 1; i <= 1000; ++i) {
+      histogram.record(i * 1000L);
+    }
+    assertEquals(1000, histogram.count());
+    assertEquals(500500000L, histogram.sumNanos());
+    assertEquals(500500.0, histogram.meanNanos(), 1e-6);
+    assertEquals(500000.0, histogram.percentileNanos(0.5), 500000 * 0.25);
+    assertEquals(990000.0, histogram.percentileNanos(0.99), 990000 * 0.25);
+    assertEquals(1000.0, histogram.percentileNanos(0.0), 1000 * 0.25);
+  }
+
+  public void testRandomAccuracy() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Random random = new Random(42);
+    long[] values = new long[10000];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = 1 + (long) Math.exp(random.nextDouble() * 25);
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+    for (double quantile : new double[] {0.1, 0.5, 0.9, 0.99}) {
+      long exact = values[(int) Math.ceil(quantile * values.length) - 1];
+      assertEquals(exact, histogram.percentileNanos(quantile), exact * 0.25);
+    }
+  }
+
+  public void testReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    histogram.record(100);
+    assertEquals(2, histogram.count());
+    assertEquals(100, histogram.sumNanos());
+    histogram.reset();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.sumNanos());
+    assertEquals(0, histogram.percentileNanos(0.99));
+  }
+
+}